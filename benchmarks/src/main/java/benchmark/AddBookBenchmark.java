@@ -0,0 +1,67 @@
+package benchmark;
+
+import exception.InvalidBookTypeException;
+import factory.BookFactory;
+import factory.BookTypes;
+import logging.StoreLogger;
+import model.Book;
+import org.openjdk.jmh.annotations.*;
+import service.QuantumBookStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adding books and of creating them through the factory or the
+ * typed BookTypes creators
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AddBookBenchmark {
+    private QuantumBookStore store;
+    private long next;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+        next = 0;
+    }
+
+    @Benchmark
+    public void addPaperBook() {
+        store.addBook("paper", Long.toString(next++), "Clean Code", 2008, 45.99, 10);
+    }
+
+    @Benchmark
+    public boolean addTypedPaperBook() {
+        return store.addBook(BookTypes.PAPER.create(Long.toString(next++), "Clean Code", 2008, 45.99, 10));
+    }
+
+    @Benchmark
+    public void addDuplicateBook() {
+        store.addBook("paper", "duplicate", "Clean Code", 2008, 45.99, 10);
+    }
+
+    @Benchmark
+    public Book createPaperBook() throws InvalidBookTypeException {
+        return BookFactory.createBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+    }
+
+    @Benchmark
+    public Book createTypedPaperBook() {
+        return BookTypes.PAPER.create("978-1234567890", "Clean Code", 2008, 45.99, 10);
+    }
+
+    @Benchmark
+    public Book createEBook() throws InvalidBookTypeException {
+        return BookFactory.createBook("ebook", "978-0987654321", "Design Patterns", 1994, 29.99, "epub");
+    }
+
+    @Benchmark
+    public Book createShowcaseBook() throws InvalidBookTypeException {
+        return BookFactory.createBook("showcase", "978-1111111111", "New Release Preview", 2024, 0.0);
+    }
+}
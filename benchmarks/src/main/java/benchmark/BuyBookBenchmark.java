@@ -0,0 +1,95 @@
+package benchmark;
+
+import dto.PurchaseResult;
+import logging.StoreLogger;
+import metrics.MetricsRegistry;
+import org.openjdk.jmh.annotations.*;
+import service.QuantumBookStore;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single-threaded cost of each buyBook outcome, through the message-building
+ * wrapper and through the exception-free tryBuyBook fast path, with and
+ * without metrics recording
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BuyBookBenchmark {
+    private QuantumBookStore store;
+    private QuantumBookStore meteredStore;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = stock(QuantumBookStore.builder().logger(StoreLogger.off()).build());
+        meteredStore = stock(QuantumBookStore.builder().logger(StoreLogger.off())
+                .metrics(new MetricsRegistry()).build());
+    }
+
+    private static QuantumBookStore stock(QuantumBookStore store) {
+        store.addBook("paper", "paper", "Clean Code", 2008, 45.99, Integer.MAX_VALUE);
+        store.addBook("paper", "sold-out", "Refactoring", 2018, 40.00, 0);
+        store.addBook("ebook", "ebook", "Design Patterns", 1994, 29.99, "epub");
+        store.addBook("showcase", "showcase", "New Release Preview", 2024, 0.0);
+        return store;
+    }
+
+    @Benchmark
+    public PurchaseResult paperSuccess() {
+        return store.buyBook("paper", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult ebookSuccess() {
+        return store.buyBook("ebook", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult insufficientStock() {
+        return store.buyBook("sold-out", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult notFound() {
+        return store.buyBook("missing", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult showcase() {
+        return store.buyBook("showcase", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult fastPathPaperSuccess() {
+        return store.tryBuyBook("paper", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult fastPathInsufficientStock() {
+        return store.tryBuyBook("sold-out", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult fastPathNotFound() {
+        return store.tryBuyBook("missing", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult fastPathShowcase() {
+        return store.tryBuyBook("showcase", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult meteredFastPathPaperSuccess() {
+        return meteredStore.tryBuyBook("paper", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult meteredFastPathInsufficientStock() {
+        return meteredStore.tryBuyBook("sold-out", 1, "a@d.com", "Addr");
+    }
+}
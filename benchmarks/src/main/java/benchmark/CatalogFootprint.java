@@ -0,0 +1,55 @@
+package benchmark;
+
+import interfaces.Catalog;
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import storage.ColumnarCatalog;
+import storage.HashMapCatalog;
+
+import java.util.function.Supplier;
+
+/**
+ * Compares the retained heap of the HashMap and columnar catalog backends.
+ * Run with e.g.
+ * {@code java -Xmx16g -cp benchmarks/target/benchmarks.jar benchmark.CatalogFootprint 20000000}
+ */
+public class CatalogFootprint {
+    public static void main(String[] args) {
+        int titles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.printf("%-16s %12s %14s %12s%n", "backend", "titles", "heap (MB)", "bytes/title");
+        measure("HashMapCatalog", titles, HashMapCatalog::new);
+        measure("ColumnarCatalog", titles, () -> new ColumnarCatalog(titles));
+    }
+
+    private static void measure(String name, int titles, Supplier<Catalog> backend) {
+        long before = usedHeap();
+        Catalog catalog = backend.get();
+        for (int i = 0; i < titles; i++) {
+            catalog.add(book(i));
+        }
+        long used = usedHeap() - before;
+        System.out.printf("%-16s %12d %14.1f %12.1f%n", name, catalog.size(),
+                used / (1024.0 * 1024.0), (double) used / titles);
+        if (catalog.size() != titles) {
+            throw new IllegalStateException("lost titles");
+        }
+    }
+
+    private static Book book(int i) {
+        String isbn = "978-" + (1_000_000_000L + i);
+        String title = "Title " + i;
+        if (i % 4 == 0) {
+            return new EBook(isbn, title, 1950 + i % 75, 9.99, i % 8 == 0 ? "pdf" : "epub");
+        }
+        return new PaperBook(isbn, title, 1950 + i % 75, 19.99, i % 100);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,46 @@
+package benchmark;
+
+import dto.PurchaseResult;
+import logging.StoreLogger;
+import org.openjdk.jmh.annotations.*;
+import service.QuantumBookStore;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Multi-threaded purchase throughput: every thread on one hot title,
+ * and threads spread across many titles
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ContendedPurchaseBenchmark {
+    private static final int TITLES = 1024;
+
+    private QuantumBookStore store;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+        store.addBook("paper", "hot", "Bestseller", 2024, 19.99, Integer.MAX_VALUE);
+        for (int i = 0; i < TITLES; i++) {
+            store.addBook("paper", "title-" + i, "Title " + i, 2020, 9.99, Integer.MAX_VALUE);
+        }
+    }
+
+    @Benchmark
+    public PurchaseResult sameTitle() {
+        return store.buyBook("hot", 1, "a@d.com", "Addr");
+    }
+
+    @Benchmark
+    public PurchaseResult spreadTitles() {
+        int title = ThreadLocalRandom.current().nextInt(TITLES);
+        return store.buyBook("title-" + title, 1, "a@d.com", "Addr");
+    }
+}
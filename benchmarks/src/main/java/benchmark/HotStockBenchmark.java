@@ -0,0 +1,65 @@
+package benchmark;
+
+import interfaces.StockCell;
+import model.AtomicStockCell;
+import model.StripedStockCell;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Take throughput on one bestseller's stock cell: a single atomic counter
+ * against the adaptive striped cell. Run main to sweep 1 to 64 threads, e.g.
+ * {@code java -cp benchmarks/target/benchmarks.jar benchmark.HotStockBenchmark}
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class HotStockBenchmark {
+    private static final int[] THREADS = {1, 2, 4, 8, 16, 32, 64};
+
+    @Param({"atomic", "striped"})
+    public String cell;
+
+    private StockCell stock;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        stock = "atomic".equals(cell) ? new AtomicStockCell(Integer.MAX_VALUE) : new StripedStockCell(Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public boolean take() {
+        return stock.tryTake(1);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        System.out.printf("%8s %16s %16s%n", "threads", "atomic (ops/us)", "striped (ops/us)");
+        for (int threads : THREADS) {
+            Collection<RunResult> results = new Runner(new OptionsBuilder()
+                    .include(HotStockBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+            double atomic = 0;
+            double striped = 0;
+            for (RunResult result : results) {
+                double score = result.getPrimaryResult().getScore();
+                if ("atomic".equals(result.getParams().getParam("cell"))) {
+                    atomic = score;
+                } else {
+                    striped = score;
+                }
+            }
+            System.out.printf("%8d %16.1f %16.1f%n", threads, atomic, striped);
+        }
+    }
+}
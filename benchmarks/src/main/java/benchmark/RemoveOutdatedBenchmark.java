@@ -0,0 +1,70 @@
+package benchmark;
+
+import logging.StoreLogger;
+import model.Book;
+import org.openjdk.jmh.annotations.*;
+import service.OutdatedBookEvictor;
+import service.QuantumBookStore;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of removeOutdatedBooks against catalogs of increasing size.
+ * A sweep that matches nothing measures the scan; a sweep that removes
+ * one publication year measures removal, with the removed titles re-added
+ * before each invocation. The evictor variant removes the same year in
+ * parallel batches on the common fork-join pool.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@State(Scope.Benchmark)
+public class RemoveOutdatedBenchmark {
+    private static final int FIRST_YEAR = 1950;
+    private static final int YEARS = 75;
+
+    @Param({"10000", "1000000", "10000000"})
+    public int titles;
+
+    private QuantumBookStore store;
+    private List<Book> removed = List.of();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+        for (int i = 0; i < titles; i++) {
+            store.addBook("paper", Integer.toString(i), "Title " + i, FIRST_YEAR + i % YEARS, 9.99, 5);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void restore() {
+        for (Book book : removed) {
+            store.addBook("paper", book.getIsbn(), book.getTitle(), book.getYear(), book.getPrice(), 5);
+        }
+        removed = List.of();
+    }
+
+    @Benchmark
+    public List<Book> scanWithoutMatches() {
+        return store.removeOutdatedBooks(1000);
+    }
+
+    @Benchmark
+    public List<Book> removeOldestYear() {
+        int age = java.time.LocalDate.now().getYear() - FIRST_YEAR - 1;
+        removed = store.removeOutdatedBooks(age);
+        return removed;
+    }
+
+    @Benchmark
+    public List<Book> evictOldestYearInParallel() {
+        int age = java.time.LocalDate.now().getYear() - FIRST_YEAR - 1;
+        removed = new OutdatedBookEvictor(store, age).evictAll(ForkJoinPool.commonPool());
+        return removed;
+    }
+}
@@ -0,0 +1,49 @@
+package bulk;
+
+import dto.BulkReport;
+import service.QuantumBookStore;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Streaming exporter for catalog files. Books are formatted and written one
+ * at a time as the store walks its catalog, so no copy of the catalog is held.
+ */
+public class CatalogExporter {
+
+    /**
+     * Writes every book in the store to a catalog file
+     * @param store the store to export
+     * @param file the file to write, replaced if it exists
+     * @param format the format to write
+     * @return the row count and throughput of the export
+     */
+    public BulkReport export(QuantumBookStore store, Path file, CatalogFormat format) throws IOException {
+        long start = System.nanoTime();
+        long[] rows = new long[1];
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            if (format.header() != null) {
+                out.write(format.header());
+                out.newLine();
+            }
+            store.forEachBook(book -> {
+                try {
+                    out.write(format.format(book));
+                    out.newLine();
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new BulkReport(rows[0], rows[0], 0, 0, Collections.emptyList(), System.nanoTime() - start);
+    }
+}
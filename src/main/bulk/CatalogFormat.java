@@ -0,0 +1,327 @@
+package bulk;
+
+import factory.BookType;
+import factory.BookTypeRegistry;
+import factory.BookTypes;
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Line formats for bulk catalog files. Each book is one line, so files can
+ * be read and written as a stream. Parsing builds books with the typed
+ * BookTypes creators rather than through BookFactory, so no type string is
+ * lower-cased or switched on and no parameter is boxed per row.
+ */
+public enum CatalogFormat {
+    /**
+     * {@code type,isbn,title,year,price,extra} with a header row, where extra
+     * is the stock of a paper book or the filetype of an ebook. Fields holding
+     * commas or quotes are quoted, with quotes doubled.
+     */
+    CSV {
+        @Override
+        public String header() {
+            return "type,isbn,title,year,price,extra";
+        }
+
+        @Override
+        public Book parse(String line) {
+            String[] fields = splitCsv(line);
+            if (fields.length < 5 || fields.length > 6) {
+                throw new IllegalArgumentException("Expected 5 or 6 fields but found " + fields.length);
+            }
+            return build(fields[0], fields[1], fields[2], fields[3], fields[4],
+                    fields.length == 6 ? fields[5] : "");
+        }
+
+        @Override
+        public String format(Book book) {
+            return String.join(",", typeOf(book), quoteCsv(book.getIsbn()), quoteCsv(book.getTitle()),
+                    Integer.toString(book.getYear()), Double.toString(book.getPrice()), quoteCsv(extraOf(book)));
+        }
+    },
+
+    /**
+     * One flat JSON object per line, e.g.
+     * {@code {"type":"paper","isbn":"978-1","title":"Clean Code","year":2008,"price":45.99,"stock":5}};
+     * ebooks carry "filetype" instead of "stock".
+     */
+    JSON_LINES {
+        @Override
+        public String header() {
+            return null;
+        }
+
+        @Override
+        public Book parse(String line) {
+            Map<String, String> fields = parseJsonObject(line);
+            String type = fields.getOrDefault("type", "");
+            String extra = type.equalsIgnoreCase("paper") ? fields.getOrDefault("stock", "")
+                    : fields.getOrDefault("filetype", "");
+            return build(type, fields.get("isbn"), fields.get("title"),
+                    fields.get("year"), fields.get("price"), extra);
+        }
+
+        @Override
+        public String format(Book book) {
+            StringBuilder json = new StringBuilder(128)
+                    .append("{\"type\":\"").append(typeOf(book))
+                    .append("\",\"isbn\":").append(quoteJson(book.getIsbn()))
+                    .append(",\"title\":").append(quoteJson(book.getTitle()))
+                    .append(",\"year\":").append(book.getYear())
+                    .append(",\"price\":").append(book.getPrice());
+            if (book instanceof PaperBook) {
+                json.append(",\"stock\":").append(((PaperBook) book).getStock());
+            } else if (book instanceof EBook) {
+                json.append(",\"filetype\":").append(quoteJson(((EBook) book).getFiletype()));
+            }
+            return json.append('}').toString();
+        }
+    };
+
+    private static final BookTypeRegistry BUILT_IN_TYPES = BookTypeRegistry.withDefaults();
+
+    /**
+     * @return the first line of a file in this format, or null if it has none
+     */
+    public abstract String header();
+
+    /**
+     * Parses and validates one line
+     * @throws IllegalArgumentException if the line is malformed or a field is invalid
+     */
+    public abstract Book parse(String line);
+
+    /**
+     * @throws IllegalArgumentException if the book's class has no type name
+     */
+    public abstract String format(Book book);
+
+    private static Book build(String type, String isbn, String title, String year, String price, String extra) {
+        if (isbn == null || isbn.isBlank()) {
+            throw new IllegalArgumentException("Missing ISBN");
+        }
+        if (title == null || title.isBlank()) {
+            throw new IllegalArgumentException("Missing title for " + isbn);
+        }
+        int parsedYear = parseInt(year, "year");
+        double parsedPrice;
+        try {
+            parsedPrice = Double.parseDouble(price);
+        } catch (NullPointerException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid price: " + price);
+        }
+        if (!(parsedPrice >= 0) || Double.isInfinite(parsedPrice)) {
+            throw new IllegalArgumentException("Invalid price: " + price);
+        }
+        BookType<?> bookType = BUILT_IN_TYPES.find(type);
+        if (bookType == BookTypes.PAPER) {
+            int stock = extra.isEmpty() ? 0 : parseInt(extra, "stock");
+            if (stock < 0) {
+                throw new IllegalArgumentException("Negative stock: " + stock);
+            }
+            return BookTypes.PAPER.create(isbn, title, parsedYear, parsedPrice, stock);
+        }
+        if (bookType == BookTypes.EBOOK) {
+            return BookTypes.EBOOK.create(isbn, title, parsedYear, parsedPrice, extra.isEmpty() ? "pdf" : extra);
+        }
+        if (bookType == BookTypes.SHOWCASE) {
+            return BookTypes.SHOWCASE.create(isbn, title, parsedYear, parsedPrice);
+        }
+        throw new IllegalArgumentException("Invalid book type: " + type);
+    }
+
+    private static int parseInt(String value, String field) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + field + ": " + value);
+        }
+    }
+
+    private static String typeOf(Book book) {
+        if (book.getClass() == PaperBook.class) {
+            return "paper";
+        }
+        if (book.getClass() == EBook.class) {
+            return "ebook";
+        }
+        if (book.getClass() == ShowcaseBook.class) {
+            return "showcase";
+        }
+        throw new IllegalArgumentException("Cannot export " + book.getClass().getSimpleName());
+    }
+
+    private static String extraOf(Book book) {
+        if (book instanceof PaperBook) {
+            return Integer.toString(((PaperBook) book).getStock());
+        }
+        return book instanceof EBook ? ((EBook) book).getFiletype() : "";
+    }
+
+    private static String[] splitCsv(String line) {
+        String[] fields = new String[7];
+        int count = 0;
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                if (count == fields.length - 1) {
+                    throw new IllegalArgumentException("Too many fields");
+                }
+                fields[count++] = field.toString();
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Unterminated quote");
+        }
+        fields[count++] = field.toString();
+        return Arrays.copyOf(fields, count);
+    }
+
+    private static String quoteCsv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String quoteJson(String value) {
+        StringBuilder out = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.append('\\').append(c);
+            } else if (c < 0x20) {
+                out.append(String.format("\\u%04x", (int) c));
+            } else {
+                out.append(c);
+            }
+        }
+        return out.append('"').toString();
+    }
+
+    /**
+     * Parses a flat JSON object whose values are strings, numbers, booleans
+     * or null; values are returned as their raw text, strings unescaped
+     */
+    private static Map<String, String> parseJsonObject(String line) {
+        Map<String, String> fields = new HashMap<>();
+        int[] pos = {skipSpace(line, 0)};
+        expect(line, pos, '{');
+        if (peek(line, pos) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String key = readJsonString(line, pos);
+                expect(line, pos, ':');
+                String value = peek(line, pos) == '"' ? readJsonString(line, pos) : readJsonLiteral(line, pos);
+                fields.put(key, value);
+                if (peek(line, pos) == ',') {
+                    pos[0]++;
+                    continue;
+                }
+                expect(line, pos, '}');
+                break;
+            }
+        }
+        if (skipSpace(line, pos[0]) != line.length()) {
+            throw new IllegalArgumentException("Trailing characters after JSON object");
+        }
+        return fields;
+    }
+
+    private static String readJsonString(String line, int[] pos) {
+        expect(line, pos, '"');
+        StringBuilder value = new StringBuilder();
+        int i = pos[0];
+        while (i < line.length()) {
+            char c = line.charAt(i++);
+            if (c == '"') {
+                pos[0] = i;
+                return value.toString();
+            }
+            if (c != '\\') {
+                value.append(c);
+                continue;
+            }
+            if (i >= line.length()) {
+                break;
+            }
+            char escaped = line.charAt(i++);
+            switch (escaped) {
+                case 'n': value.append('\n'); break;
+                case 't': value.append('\t'); break;
+                case 'r': value.append('\r'); break;
+                case 'b': value.append('\b'); break;
+                case 'f': value.append('\f'); break;
+                case 'u':
+                    if (i + 4 > line.length()) {
+                        throw new IllegalArgumentException("Bad unicode escape");
+                    }
+                    value.append((char) Integer.parseInt(line.substring(i, i + 4), 16));
+                    i += 4;
+                    break;
+                default: value.append(escaped);
+            }
+        }
+        throw new IllegalArgumentException("Unterminated string");
+    }
+
+    private static String readJsonLiteral(String line, int[] pos) {
+        int start = pos[0];
+        int i = start;
+        while (i < line.length() && ",}".indexOf(line.charAt(i)) < 0 && !Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        if (i == start) {
+            throw new IllegalArgumentException("Missing value at column " + start);
+        }
+        pos[0] = i;
+        String literal = line.substring(start, i);
+        return literal.equals("null") ? null : literal;
+    }
+
+    private static char peek(String line, int[] pos) {
+        pos[0] = skipSpace(line, pos[0]);
+        if (pos[0] >= line.length()) {
+            throw new IllegalArgumentException("Unexpected end of line");
+        }
+        return line.charAt(pos[0]);
+    }
+
+    private static void expect(String line, int[] pos, char c) {
+        if (peek(line, pos) != c) {
+            throw new IllegalArgumentException("Expected '" + c + "' at column " + pos[0]);
+        }
+        pos[0]++;
+    }
+
+    private static int skipSpace(String line, int i) {
+        while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
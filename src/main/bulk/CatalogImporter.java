@@ -0,0 +1,195 @@
+package bulk;
+
+import dto.BulkReport;
+import model.Book;
+import service.QuantumBookStore;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streaming bulk loader for catalog files.
+ * A reader thread cuts the file into batches of lines and hands each batch
+ * to a parser pool. The calling thread takes the parsed batches back in file
+ * order and adds each one to the store with a single addBooks call.
+ * At most a fixed number of batches are in flight, so memory use depends on
+ * the batch size and thread count rather than the size of the file.
+ * Duplicate ISBNs are found in the same pass: the store rejects an ISBN it
+ * already holds, whether it came from the catalog or from an earlier row.
+ */
+public class CatalogImporter {
+    private static final int MAX_ERRORS = 100;
+    private static final Future<Batch> END_OF_FILE = CompletableFuture.completedFuture(null);
+
+    private final int parserThreads;
+    private final int batchSize;
+
+    /**
+     * @param parserThreads the number of threads parsing and validating rows
+     * @param batchSize the number of lines per batch
+     */
+    public CatalogImporter(int parserThreads, int batchSize) {
+        this.parserThreads = parserThreads;
+        this.batchSize = batchSize;
+    }
+
+    public CatalogImporter() {
+        this(Runtime.getRuntime().availableProcessors(), 1024);
+    }
+
+    /**
+     * Imports every row of a catalog file into the store
+     * @param file the file to read
+     * @param format the format of the file
+     * @param store the store to add the books to
+     * @return the row counts and throughput of the import
+     */
+    public BulkReport importInto(Path file, CatalogFormat format, QuantumBookStore store) throws IOException {
+        long start = System.nanoTime();
+        BlockingQueue<Future<Batch>> parsed = new ArrayBlockingQueue<>(parserThreads * 2);
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, daemon("catalog-parser"));
+        IOException[] readFailure = new IOException[1];
+        Thread reader = daemon("catalog-reader").newThread(() -> {
+            try {
+                readBatches(file, format, parsers, parsed);
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (RejectedExecutionException e) {
+                // the import was abandoned and its parsers shut down
+                Thread.currentThread().interrupt();
+            } finally {
+                if (Thread.currentThread().isInterrupted()) {
+                    // the consumer gave up and no longer drains the queue
+                    parsed.offer(END_OF_FILE);
+                } else {
+                    try {
+                        parsed.put(END_OF_FILE);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        long rows = 0;
+        long accepted = 0;
+        long rejected = 0;
+        List<String> errors = new ArrayList<>();
+        try {
+            while (true) {
+                Future<Batch> next = parsed.take();
+                if (next == END_OF_FILE) {
+                    break;
+                }
+                Batch batch = next.get();
+                rows += batch.rows;
+                rejected += batch.errors.size();
+                for (int i = 0; i < batch.errors.size() && errors.size() < MAX_ERRORS; i++) {
+                    errors.add(batch.errors.get(i));
+                }
+                accepted += store.addBooks(batch.books);
+            }
+            reader.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Parser failed", e.getCause());
+        } finally {
+            // whatever ended the import, the reader must not stay blocked
+            // on a queue nobody drains, holding the file open
+            reader.interrupt();
+            parsers.shutdownNow();
+        }
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+        long duplicates = rows - rejected - accepted;
+        return new BulkReport(rows, accepted, duplicates, rejected, errors, System.nanoTime() - start);
+    }
+
+    private void readBatches(Path file, CatalogFormat format, ExecutorService parsers,
+                             BlockingQueue<Future<Batch>> parsed) throws IOException, InterruptedException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            long firstLine = 1;
+            if (line != null && line.equals(format.header())) {
+                line = in.readLine();
+                firstLine = 2;
+            }
+            List<String> lines = new ArrayList<>(batchSize);
+            while (line != null) {
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    submit(lines, firstLine, format, parsers, parsed);
+                    firstLine += batchSize;
+                    lines = new ArrayList<>(batchSize);
+                }
+                line = in.readLine();
+            }
+            if (!lines.isEmpty()) {
+                submit(lines, firstLine, format, parsers, parsed);
+            }
+        }
+    }
+
+    /**
+     * Queues a batch for parsing, blocking while too many are in flight
+     */
+    private static void submit(List<String> lines, long firstLine, CatalogFormat format,
+                               ExecutorService parsers, BlockingQueue<Future<Batch>> parsed)
+            throws InterruptedException {
+        parsed.put(parsers.submit(() -> parse(lines, firstLine, format)));
+    }
+
+    private static Batch parse(List<String> lines, long firstLine, CatalogFormat format) {
+        Batch batch = new Batch(lines.size());
+        for (int i = 0; i < lines.size(); i++) {
+            if (lines.get(i).isBlank()) {
+                continue;
+            }
+            batch.rows++;
+            try {
+                batch.books.add(format.parse(lines.get(i)));
+            } catch (IllegalArgumentException e) {
+                batch.errors.add("line " + (firstLine + i) + ": " + e.getMessage());
+            }
+        }
+        return batch;
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return task -> {
+            Thread thread = new Thread(task, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Batch {
+        final List<Book> books;
+        final List<String> errors = new ArrayList<>();
+        int rows;
+
+        Batch(int lines) {
+            this.books = new ArrayList<>(lines);
+        }
+    }
+}
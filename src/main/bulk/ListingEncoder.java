@@ -0,0 +1,235 @@
+package bulk;
+
+import dto.BookField;
+import dto.InventoryPage;
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+import service.QuantumBookStore;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Encodes inventory listings as JSON lines holding only the projected
+ * fields, e.g. {@code {"isbn":"978-1","title":"Clean Code","stock":5}}.
+ * Fields are written straight into a ByteBuffer: numbers digit by digit and
+ * text char by char as UTF-8, so no string is built per book. writeAll pages
+ * through the store with one reusable buffer, so a listing of any size runs
+ * in constant memory.
+ * <p>
+ * An encoder reuses its buffers and must not be shared between threads.
+ */
+public class ListingEncoder {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[][] NAMES = new byte[BookField.values().length][];
+    private static final byte[] PAPER = ascii("paper");
+    private static final byte[] EBOOK = ascii("ebook");
+    private static final byte[] SHOWCASE = ascii("showcase");
+    private static final byte[] HEX = ascii("0123456789abcdef");
+
+    static {
+        for (BookField field : BookField.values()) {
+            NAMES[field.ordinal()] = ascii('"' + field.name().toLowerCase(Locale.ROOT) + "\":");
+        }
+    }
+
+    private final BookField[] fields;
+    private final byte[] digits = new byte[20];
+    private ByteBuffer buffer;
+
+    /**
+     * @param fields the fields to write, always in declaration order
+     */
+    public ListingEncoder(Set<BookField> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("At least one field is required");
+        }
+        this.fields = EnumSet.copyOf(fields).toArray(new BookField[0]);
+    }
+
+    /**
+     * Appends one book as a JSON line
+     * @param book the book to encode
+     * @param out the buffer to write to
+     * @return false, with the buffer unchanged, if the line did not fit
+     */
+    public boolean encode(Book book, ByteBuffer out) {
+        int start = out.position();
+        try {
+            out.put((byte) '{');
+            boolean first = true;
+            for (BookField field : fields) {
+                if (field == BookField.STOCK && !(book instanceof PaperBook)) {
+                    continue;
+                }
+                if (!first) {
+                    out.put((byte) ',');
+                }
+                first = false;
+                out.put(NAMES[field.ordinal()]);
+                switch (field) {
+                    case TYPE:
+                        putType(book, out);
+                        break;
+                    case ISBN:
+                        putText(book.getIsbn(), out);
+                        break;
+                    case TITLE:
+                        putText(book.getTitle(), out);
+                        break;
+                    case YEAR:
+                        putLong(book.getYear(), out);
+                        break;
+                    case PRICE:
+                        putCents(Math.round(book.getPrice() * 100), out);
+                        break;
+                    case STOCK:
+                        putLong(((PaperBook) book).getStock(), out);
+                        break;
+                }
+            }
+            out.put((byte) '}').put((byte) '\n');
+            return true;
+        } catch (BufferOverflowException e) {
+            out.position(start);
+            return false;
+        }
+    }
+
+    /**
+     * Writes every book of a page, flushing the reusable buffer to the
+     * stream whenever it fills
+     * @param page the page to write
+     * @param out the stream to write to; it is not flushed
+     * @throws IllegalArgumentException if one book's line exceeds the buffer
+     */
+    public void writePage(InventoryPage page, OutputStream out) throws IOException {
+        ByteBuffer buf = buffer();
+        for (Book book : page.getBooks()) {
+            if (!encode(book, buf)) {
+                drain(buf, out);
+                if (!encode(book, buf)) {
+                    throw new IllegalArgumentException("Listing line for " + book.getIsbn() + " exceeds "
+                            + BUFFER_SIZE + " bytes");
+                }
+            }
+        }
+        drain(buf, out);
+    }
+
+    /**
+     * Lists the whole catalog page by page
+     * @param store the store to list
+     * @param pageSize the books fetched per page
+     * @param out the stream to write to; it is not flushed
+     * @return the number of books written
+     */
+    public long writeAll(QuantumBookStore store, int pageSize, OutputStream out) throws IOException {
+        long written = 0;
+        String token = null;
+        do {
+            InventoryPage page = store.listInventory(token, pageSize);
+            writePage(page, out);
+            written += page.getBooks().size();
+            token = page.getNextPageToken();
+        } while (token != null);
+        return written;
+    }
+
+    private ByteBuffer buffer() {
+        if (buffer == null) {
+            buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        return buffer;
+    }
+
+    private static void drain(ByteBuffer buf, OutputStream out) throws IOException {
+        out.write(buf.array(), buf.arrayOffset(), buf.position());
+        buf.clear();
+    }
+
+    private static void putType(Book book, ByteBuffer out) {
+        out.put((byte) '"');
+        if (book.getClass() == PaperBook.class) {
+            out.put(PAPER);
+        } else if (book.getClass() == EBook.class) {
+            out.put(EBOOK);
+        } else if (book.getClass() == ShowcaseBook.class) {
+            out.put(SHOWCASE);
+        } else {
+            putChars(book.getClass().getSimpleName(), out);
+        }
+        out.put((byte) '"');
+    }
+
+    private static void putText(String value, ByteBuffer out) {
+        out.put((byte) '"');
+        putChars(value, out);
+        out.put((byte) '"');
+    }
+
+    /**
+     * Writes a string as escaped JSON string content in UTF-8
+     */
+    private static void putChars(String value, ByteBuffer out) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                out.put((byte) '\\').put((byte) c);
+            } else if (c < 0x20) {
+                out.put((byte) '\\').put((byte) 'u').put((byte) '0').put((byte) '0')
+                        .put(HEX[c >> 4]).put(HEX[c & 0xF]);
+            } else if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                out.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3F))
+                        .put((byte) (0x80 | cp >> 6 & 0x3F)).put((byte) (0x80 | cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                out.put((byte) '?');
+            } else {
+                out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+            }
+        }
+    }
+
+    private void putLong(long value, ByteBuffer out) {
+        if (value < 0) {
+            out.put((byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) {
+            out.put(digits[--n]);
+        }
+    }
+
+    private void putCents(long cents, ByteBuffer out) {
+        if (cents < 0) {
+            out.put((byte) '-');
+            cents = -cents;
+        }
+        putLong(cents / 100, out);
+        long fraction = cents % 100;
+        out.put((byte) '.').put((byte) ('0' + fraction / 10)).put((byte) ('0' + fraction % 10));
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,81 @@
+package cluster;
+
+import java.util.Arrays;
+
+/**
+ * Immutable consistent-hash ring mapping ISBNs to shard ids. Each shard
+ * owns many virtual nodes spread around a 64-bit ring, and an ISBN belongs
+ * to the first node at or after its hash. Adding a shard only moves the
+ * ISBNs that land on the new shard's nodes, about 1/N of the catalog.
+ */
+final class HashRing {
+    private final long[] positions;
+    private final int[] owners;
+    private final int virtualNodes;
+
+    private HashRing(long[] positions, int[] owners, int virtualNodes) {
+        this.positions = positions;
+        this.owners = owners;
+        this.virtualNodes = virtualNodes;
+    }
+
+    /**
+     * @param virtualNodes the number of ring positions per shard
+     * @return a ring with no shards
+     */
+    static HashRing empty(int virtualNodes) {
+        return new HashRing(new long[0], new int[0], virtualNodes);
+    }
+
+    /**
+     * @param shardId the id of the shard to add
+     * @return a new ring that also holds the shard's virtual nodes
+     */
+    HashRing with(int shardId) {
+        int size = positions.length + virtualNodes;
+        long[] nodes = Arrays.copyOf(positions, size);
+        for (int v = 0; v < virtualNodes; v++) {
+            nodes[positions.length + v] = mix(((long) shardId << 32) | v);
+        }
+        Arrays.sort(nodes);
+        int[] nodeOwners = new int[size];
+        for (int i = 0; i < size; i++) {
+            int existing = Arrays.binarySearch(positions, nodes[i]);
+            nodeOwners[i] = existing >= 0 ? owners[existing] : shardId;
+        }
+        return new HashRing(nodes, nodeOwners, virtualNodes);
+    }
+
+    /**
+     * @param isbn the ISBN to place
+     * @return the id of the shard owning the ISBN
+     */
+    int owner(String isbn) {
+        int index = Arrays.binarySearch(positions, hash(isbn));
+        if (index < 0) {
+            index = -index - 1;
+            if (index == positions.length) {
+                index = 0;
+            }
+        }
+        return owners[index];
+    }
+
+    /**
+     * 64-bit FNV-1a over the ISBN's characters, finished with a mixer so
+     * ISBNs sharing a long prefix still spread over the whole ring
+     */
+    static long hash(String isbn) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < isbn.length(); i++) {
+            h = (h ^ isbn.charAt(i)) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h = (h ^ (h >>> 33)) * 0xff51afd7ed558ccdL;
+        h = (h ^ (h >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+}
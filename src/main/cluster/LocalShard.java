@@ -0,0 +1,93 @@
+package cluster;
+
+import dto.FulfilmentStatus;
+import dto.PurchaseResult;
+import interfaces.Shard;
+import model.Book;
+import service.QuantumBookStore;
+import storage.BookCodec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Shard backed by a QuantumBookStore in the same JVM
+ */
+public class LocalShard implements Shard {
+    private final QuantumBookStore store;
+
+    public LocalShard(QuantumBookStore store) {
+        this.store = store;
+    }
+
+    /**
+     * @return the store holding this shard's books
+     */
+    public QuantumBookStore getStore() {
+        return store;
+    }
+
+    @Override
+    public boolean add(Book book) {
+        return store.addBooks(List.of(book)) == 1;
+    }
+
+    @Override
+    public Book get(String isbn) {
+        return store.getBook(isbn);
+    }
+
+    @Override
+    public PurchaseResult buyBook(String isbn, int quantity, String email, String address) {
+        return store.buyBook(isbn, quantity, email, address);
+    }
+
+    @Override
+    public PurchaseResult tryBuyBook(String isbn, int quantity, String email, String address) {
+        return store.tryBuyBook(isbn, quantity, email, address);
+    }
+
+    @Override
+    public List<Book> removeOutdatedBooks(int years) {
+        return store.removeOutdatedBooks(years);
+    }
+
+    /**
+     * Copies the removed book, since catalog backends may hand out views
+     * that stop tracking their record once it is removed
+     */
+    @Override
+    public Book take(String isbn) {
+        Book book = store.removeBook(isbn);
+        if (book == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+            BookCodec.write(new DataOutputStream(bytes), book);
+            return BookCodec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void forEachBook(Consumer<Book> action) {
+        store.forEachBook(action);
+    }
+
+    @Override
+    public FulfilmentStatus getFulfilmentStatus(long orderId) {
+        return store.getFulfilmentStatus(orderId);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,203 @@
+package cluster;
+
+import dto.FulfilmentStatus;
+import dto.PurchaseResult;
+import interfaces.Shard;
+import model.Book;
+import storage.BookCodec;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Shard served by a ShardServer, usually in another process.
+ * Requests are sent over a small pool of connections, each carrying one
+ * request at a time, so up to the pool size of requests run concurrently.
+ * A connection that fails is discarded and the request throws
+ * UncheckedIOException; the next request opens a fresh connection.
+ */
+public class RemoteShard implements Shard {
+    private static final FulfilmentStatus[] FULFILMENT_STATUSES = FulfilmentStatus.values();
+
+    private final InetSocketAddress address;
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idle;
+    private volatile boolean closed;
+
+    /**
+     * @param address the address the ShardServer is bound to
+     * @param maxConnections the most requests in flight at once
+     */
+    public RemoteShard(InetSocketAddress address, int maxConnections) {
+        this.address = address;
+        this.permits = new Semaphore(maxConnections);
+        this.idle = new ArrayBlockingQueue<>(maxConnections);
+    }
+
+    public RemoteShard(InetSocketAddress address) {
+        this(address, 4);
+    }
+
+    @Override
+    public boolean add(Book book) {
+        return call(ShardProtocol.ADD, out -> BookCodec.write(out, book), DataInputStream::readBoolean);
+    }
+
+    @Override
+    public Book get(String isbn) {
+        return call(ShardProtocol.GET, out -> out.writeUTF(isbn), RemoteShard::readOptionalBook);
+    }
+
+    @Override
+    public PurchaseResult buyBook(String isbn, int quantity, String email, String address) {
+        return purchase(ShardProtocol.BUY, isbn, quantity, email, address);
+    }
+
+    @Override
+    public PurchaseResult tryBuyBook(String isbn, int quantity, String email, String address) {
+        return purchase(ShardProtocol.TRY_BUY, isbn, quantity, email, address);
+    }
+
+    private PurchaseResult purchase(byte op, String isbn, int quantity, String email, String address) {
+        return call(op, out -> {
+            out.writeUTF(isbn);
+            out.writeInt(quantity);
+            out.writeUTF(email);
+            out.writeUTF(address);
+        }, ShardProtocol::readResult);
+    }
+
+    @Override
+    public List<Book> removeOutdatedBooks(int years) {
+        return call(ShardProtocol.REMOVE_OUTDATED, out -> out.writeInt(years), in -> {
+            int count = in.readInt();
+            List<Book> removed = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                removed.add(BookCodec.read(in));
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public Book take(String isbn) {
+        return call(ShardProtocol.TAKE, out -> out.writeUTF(isbn), RemoteShard::readOptionalBook);
+    }
+
+    /**
+     * Books are handed to the action as they arrive, so the connection stays
+     * busy until the action has seen every book
+     */
+    @Override
+    public void forEachBook(Consumer<Book> action) {
+        call(ShardProtocol.FOR_EACH, out -> { }, in -> {
+            while (in.readByte() != 0) {
+                action.accept(BookCodec.read(in));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public FulfilmentStatus getFulfilmentStatus(long orderId) {
+        return call(ShardProtocol.FULFILMENT_STATUS, out -> out.writeLong(orderId),
+                in -> FULFILMENT_STATUSES[in.readUnsignedByte()]);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private <T> T call(byte op, Request request, Response<T> response) {
+        if (closed) {
+            throw new IllegalStateException("Shard client is closed");
+        }
+        permits.acquireUninterruptibly();
+        Connection connection = null;
+        try {
+            connection = idle.poll();
+            if (connection == null) {
+                connection = new Connection(address);
+            }
+            connection.out.writeByte(op);
+            request.write(connection.out);
+            connection.out.flush();
+            if (connection.in.readByte() == ShardProtocol.ERROR) {
+                String message = connection.in.readUTF();
+                release(connection);
+                connection = null;
+                throw new IllegalStateException("Shard at " + address + " failed: " + message);
+            }
+            T result = response.read(connection.in);
+            release(connection);
+            connection = null;
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Shard at " + address + " unreachable", e);
+        } finally {
+            if (connection != null) {
+                connection.close();
+            }
+            permits.release();
+        }
+    }
+
+    private void release(Connection connection) {
+        if (closed || !idle.offer(connection)) {
+            connection.close();
+        }
+    }
+
+    private static Book readOptionalBook(DataInputStream in) throws IOException {
+        return in.readBoolean() ? BookCodec.read(in) : null;
+    }
+
+    @FunctionalInterface
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    private interface Response<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static final class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(InetSocketAddress address) throws IOException {
+            socket = new Socket();
+            socket.setTcpNoDelay(true);
+            socket.connect(address);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // nothing left to release
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package cluster;
+
+import dto.PurchaseResult;
+import dto.PurchaseStatus;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Request and response encoding shared by ShardServer and RemoteShard.
+ * A request is an op byte followed by its arguments. A response is a status
+ * byte, then either the result or an error message. Books travel in the
+ * BookCodec encoding; FOR_EACH streams them, each preceded by a 1 byte and
+ * the last followed by a 0 byte.
+ */
+final class ShardProtocol {
+    static final byte ADD = 1;
+    static final byte GET = 2;
+    static final byte BUY = 3;
+    static final byte TRY_BUY = 4;
+    static final byte REMOVE_OUTDATED = 5;
+    static final byte TAKE = 6;
+    static final byte FOR_EACH = 7;
+    static final byte FULFILMENT_STATUS = 8;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    private static final PurchaseStatus[] STATUSES = PurchaseStatus.values();
+
+    private ShardProtocol() {
+    }
+
+    static void writeResult(DataOutput out, PurchaseResult result) throws IOException {
+        out.writeByte(result.getStatus().ordinal());
+        if (result.isSuccessful()) {
+            out.writeDouble(result.getPaidAmount());
+            out.writeInt(result.getQuantity());
+            out.writeUTF(result.getTitle() == null ? "" : result.getTitle());
+            out.writeLong(result.getOrderId());
+        } else {
+            out.writeUTF(result == result.getStatus().failure() ? "" : result.getMessage());
+        }
+    }
+
+    /**
+     * A shared failure result travels as an empty message and decodes back to
+     * the shared result of its status
+     */
+    static PurchaseResult readResult(DataInput in) throws IOException {
+        PurchaseStatus status = STATUSES[in.readUnsignedByte()];
+        if (status == PurchaseStatus.SUCCESS) {
+            double amount = in.readDouble();
+            int quantity = in.readInt();
+            String title = in.readUTF();
+            return PurchaseResult.purchased(amount, quantity, title, in.readLong());
+        }
+        String message = in.readUTF();
+        return message.isEmpty() ? status.failure() : PurchaseResult.failure(status, message);
+    }
+}
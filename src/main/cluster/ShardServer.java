@@ -0,0 +1,222 @@
+package cluster;
+
+import dto.PurchaseResult;
+import model.Book;
+import service.QuantumBookStore;
+import storage.BookCodec;
+import storage.Journal;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serves one shard's QuantumBookStore to RemoteShard clients over TCP, with
+ * one thread per connection. Run it as its own process with
+ * {@code java -cp target/classes cluster.ShardServer <port> [journal-dir]}.
+ */
+public class ShardServer implements Closeable {
+    private final QuantumBookStore store;
+    private final ServerSocket serverSocket;
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor;
+
+    /**
+     * Binds the address and starts accepting connections
+     * @param store the store holding this shard's books
+     * @param address the address to bind, port 0 for any free port
+     */
+    public ShardServer(QuantumBookStore store, InetSocketAddress address) throws IOException {
+        this.store = store;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        this.acceptor = new Thread(this::acceptLoop, "shard-acceptor-" + getPort());
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("Usage: ShardServer <port> [journal-dir]");
+            System.exit(2);
+        }
+        QuantumBookStore.Builder builder = QuantumBookStore.builder();
+        if (args.length > 1) {
+            builder.journal(Journal.open(Path.of(args[1])));
+        }
+        ShardServer server = new ShardServer(builder.build(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(args[0])));
+        System.out.println("Shard listening on port " + server.getPort());
+        server.acceptor.join();
+    }
+
+    /**
+     * @return the bound port
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Stops accepting and closes every open connection
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket connection : connections) {
+            connection.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                connections.add(socket);
+                Thread handler = new Thread(() -> serve(socket), "shard-connection-" + socket.getPort());
+                handler.setDaemon(true);
+                handler.start();
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                // a failed accept only affects that client
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                byte op;
+                try {
+                    op = in.readByte();
+                } catch (EOFException e) {
+                    return;
+                }
+                handle(op, in, out);
+                out.flush();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            // the client sees the connection drop
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    /**
+     * Reads the arguments of one request and writes its response. Errors
+     * thrown by the store are returned to the client; a failure part way
+     * through streaming books drops the connection instead.
+     */
+    private void handle(byte op, DataInputStream in, DataOutputStream out) throws IOException {
+        switch (op) {
+            case ShardProtocol.ADD: {
+                Book book = BookCodec.read(in);
+                boolean added;
+                try {
+                    added = store.addBooks(List.of(book)) == 1;
+                } catch (RuntimeException e) {
+                    writeError(out, e);
+                    return;
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeBoolean(added);
+                return;
+            }
+            case ShardProtocol.GET:
+            case ShardProtocol.TAKE: {
+                String isbn = in.readUTF();
+                Book book;
+                try {
+                    book = op == ShardProtocol.GET ? store.getBook(isbn) : store.removeBook(isbn);
+                } catch (RuntimeException e) {
+                    writeError(out, e);
+                    return;
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeBoolean(book != null);
+                if (book != null) {
+                    BookCodec.write(out, book);
+                }
+                return;
+            }
+            case ShardProtocol.BUY:
+            case ShardProtocol.TRY_BUY: {
+                String isbn = in.readUTF();
+                int quantity = in.readInt();
+                String email = in.readUTF();
+                String address = in.readUTF();
+                PurchaseResult result;
+                try {
+                    result = op == ShardProtocol.BUY ? store.buyBook(isbn, quantity, email, address)
+                            : store.tryBuyBook(isbn, quantity, email, address);
+                } catch (RuntimeException e) {
+                    writeError(out, e);
+                    return;
+                }
+                out.writeByte(ShardProtocol.OK);
+                ShardProtocol.writeResult(out, result);
+                return;
+            }
+            case ShardProtocol.REMOVE_OUTDATED: {
+                int years = in.readInt();
+                List<Book> removed;
+                try {
+                    removed = store.removeOutdatedBooks(years);
+                } catch (RuntimeException e) {
+                    writeError(out, e);
+                    return;
+                }
+                out.writeByte(ShardProtocol.OK);
+                out.writeInt(removed.size());
+                for (Book book : removed) {
+                    BookCodec.write(out, book);
+                }
+                return;
+            }
+            case ShardProtocol.FOR_EACH: {
+                out.writeByte(ShardProtocol.OK);
+                store.forEachBook(book -> {
+                    try {
+                        out.writeByte(1);
+                        BookCodec.write(out, book);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                out.writeByte(0);
+                return;
+            }
+            case ShardProtocol.FULFILMENT_STATUS: {
+                long orderId = in.readLong();
+                out.writeByte(ShardProtocol.OK);
+                out.writeByte(store.getFulfilmentStatus(orderId).ordinal());
+                return;
+            }
+            default:
+                throw new IOException("Unknown shard op " + op);
+        }
+    }
+
+    private static void writeError(DataOutputStream out, RuntimeException e) throws IOException {
+        out.writeByte(ShardProtocol.ERROR);
+        out.writeUTF(String.valueOf(e.getMessage()));
+    }
+}
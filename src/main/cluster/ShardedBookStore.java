@@ -0,0 +1,343 @@
+package cluster;
+
+import dto.FulfilmentStatus;
+import dto.PurchaseResult;
+import exception.DuplicateBookException;
+import exception.InvalidBookTypeException;
+import factory.BookFactory;
+import interfaces.Shard;
+import logging.StoreLogger;
+import model.Book;
+import service.EpochGate;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+/**
+ * Router over a set of shards, each owning the books whose ISBN hashes to
+ * it on a consistent-hash ring. Single-book operations go to one shard;
+ * removeOutdatedBooks and displayInventory fan out to every shard in
+ * parallel and merge the results. Order ids carry the id of the shard that
+ * issued them, so fulfilment lookups route back to it.
+ * <p>
+ * addShard rebalances while the store stays live. Once every operation
+ * routed under the old ring has finished, only the ISBNs moving to the new
+ * shard wait; the rest keep being served. Each moving book is taken from its
+ * old shard with its final stock and added to the new one, so no purchase
+ * can land on a copy that is being moved. The router must be the only
+ * client of its shards.
+ */
+public class ShardedBookStore implements Closeable {
+    private static final int VIRTUAL_NODES = 128;
+    private static final int ORDER_BITS = 40;
+    private static final long ORDER_MASK = (1L << ORDER_BITS) - 1;
+
+    private final StoreLogger logger;
+    private final EpochGate gate = new EpochGate();
+    private final ExecutorService fanOut;
+    private volatile Topology topology = new Topology(HashRing.empty(VIRTUAL_NODES), new Shard[0]);
+    private volatile Migration migration;
+
+    /**
+     * @param shards the initial shards, which must start empty
+     * @param logger the logger for router events
+     */
+    public ShardedBookStore(List<? extends Shard> shards, StoreLogger logger) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard is required");
+        }
+        this.logger = logger;
+        this.fanOut = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "shard-fan-out");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Shard shard : shards) {
+            topology = topology.with(shard);
+        }
+    }
+
+    public ShardedBookStore(List<? extends Shard> shards) {
+        this(shards, StoreLogger.console());
+    }
+
+    /**
+     * Adds a book to the shard owning its ISBN
+     * @see service.QuantumBookStore#addBook
+     */
+    public void addBook(String type, String isbn, String title,
+                        int year, double price, Object... additionalParams) {
+        try {
+            Book book = BookFactory.createBook(type, isbn, title, year, price, additionalParams);
+            if (!route(isbn, (id, shard) -> shard.add(book))) {
+                throw new DuplicateBookException(isbn);
+            }
+            logger.info("Added book - {}", book);
+        } catch (InvalidBookTypeException | DuplicateBookException | IllegalArgumentException e) {
+            logger.info("Failed to add book - {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @see service.QuantumBookStore#getBook
+     */
+    public Book getBook(String isbn) {
+        return route(isbn, (id, shard) -> shard.get(isbn));
+    }
+
+    /**
+     * @see service.QuantumBookStore#buyBook
+     */
+    public PurchaseResult buyBook(String isbn, int quantity, String email, String address) {
+        return routePurchase(isbn, shard -> shard.buyBook(isbn, quantity, email, address));
+    }
+
+    /**
+     * @see service.QuantumBookStore#tryBuyBook
+     */
+    public PurchaseResult tryBuyBook(String isbn, int quantity, String email, String address) {
+        return routePurchase(isbn, shard -> shard.tryBuyBook(isbn, quantity, email, address));
+    }
+
+    /**
+     * Removes outdated books from every shard in parallel
+     * @param years the age threshold in years
+     * @return the removed books of all shards
+     */
+    public List<Book> removeOutdatedBooks(int years) {
+        List<List<Book>> perShard = fanOut(shard -> shard.removeOutdatedBooks(years));
+        List<Book> removed = new ArrayList<>();
+        perShard.forEach(removed::addAll);
+        return removed;
+    }
+
+    /**
+     * Displays the books of every shard, merged in ISBN order
+     */
+    public void displayInventory() {
+        List<List<Book>> perShard = fanOut(shard -> {
+            List<Book> books = new ArrayList<>();
+            shard.forEachBook(books::add);
+            return books;
+        });
+        List<Book> books = new ArrayList<>();
+        perShard.forEach(books::addAll);
+        books.sort(Comparator.comparing(Book::getIsbn));
+        logger.info("Current Inventory:");
+        books.forEach(book -> logger.info("  {}", book));
+    }
+
+    /**
+     * @param orderId the order id from a successful PurchaseResult
+     * @return the fulfilment status reported by the shard that issued it
+     */
+    public FulfilmentStatus getFulfilmentStatus(long orderId) {
+        int shardId = (int) (orderId >>> ORDER_BITS);
+        Shard[] shards = topology.shards;
+        if (orderId <= 0 || shardId >= shards.length) {
+            return FulfilmentStatus.UNKNOWN;
+        }
+        return shards[shardId].getFulfilmentStatus(orderId & ORDER_MASK);
+    }
+
+    /**
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return topology.shards.length;
+    }
+
+    /**
+     * @param isbn an ISBN
+     * @return the shard that owns the ISBN under the current ring
+     */
+    public Shard shardFor(String isbn) {
+        Topology current = topology;
+        return current.shards[current.ring.owner(isbn)];
+    }
+
+    /**
+     * Adds an empty shard and moves to it every book whose ISBN it now owns.
+     * If a shard fails part way, the books already moved are handed back
+     * and the ring is left unchanged.
+     * @param shard the shard to add, which must start empty
+     * @return the number of books moved
+     */
+    public synchronized int addShard(Shard shard) {
+        Topology from = topology;
+        Topology to = from.with(shard);
+        int newId = to.shards.length - 1;
+        Migration move = new Migration(to);
+        migration = move;
+        gate.advance();
+
+        List<Book> moved = new ArrayList<>();
+        try {
+            for (Shard old : from.shards) {
+                List<String> leaving = new ArrayList<>();
+                old.forEachBook(book -> {
+                    if (to.ring.owner(book.getIsbn()) == newId) {
+                        leaving.add(book.getIsbn());
+                    }
+                });
+                for (String isbn : leaving) {
+                    Book book = old.take(isbn);
+                    if (book != null) {
+                        moved.add(book);
+                        shard.add(book);
+                    }
+                }
+            }
+            topology = to;
+        } catch (RuntimeException e) {
+            for (Book book : moved) {
+                Book back = null;
+                try {
+                    back = shard.take(book.getIsbn());
+                } catch (RuntimeException unreachable) {
+                    e.addSuppressed(unreachable);
+                }
+                from.shards[from.ring.owner(book.getIsbn())].add(back != null ? back : book);
+            }
+            throw e;
+        } finally {
+            migration = null;
+            move.done.countDown();
+        }
+        logger.info("Added shard {} and moved {} books", newId, moved.size());
+        return moved.size();
+    }
+
+    /**
+     * Closes every shard and stops the fan-out threads
+     */
+    @Override
+    public void close() throws IOException {
+        fanOut.shutdownNow();
+        for (Shard shard : topology.shards) {
+            shard.close();
+        }
+    }
+
+    /**
+     * Tags the order id of a successful purchase with the issuing shard's id
+     */
+    private PurchaseResult routePurchase(String isbn, Function<Shard, PurchaseResult> purchase) {
+        return route(isbn, (id, shard) -> {
+            PurchaseResult result = purchase.apply(shard);
+            if (!result.isSuccessful() || result.getOrderId() == 0) {
+                return result;
+            }
+            return PurchaseResult.purchased(result.getPaidAmount(), result.getQuantity(), result.getTitle(),
+                    (long) id << ORDER_BITS | result.getOrderId());
+        });
+    }
+
+    /**
+     * Runs an operation on the shard owning the ISBN. During a rebalance an
+     * ISBN that is moving waits until the move is over, then routes again.
+     */
+    private <T> T route(String isbn, ShardCall<T> operation) {
+        while (true) {
+            long token = gate.enter();
+            Migration move = null;
+            try {
+                move = migration;
+                Topology current = topology;
+                int owner = current.ring.owner(isbn);
+                if (move == null || move.to.ring.owner(isbn) == owner) {
+                    return operation.call(owner, current.shards[owner]);
+                }
+            } finally {
+                gate.exit(token);
+            }
+            move.awaitDone();
+        }
+    }
+
+    /**
+     * Runs an operation on every shard in parallel, first waiting out any
+     * rebalance so no book is missed while in transit
+     */
+    private <T> List<T> fanOut(Function<Shard, T> operation) {
+        while (true) {
+            long token = gate.enter();
+            Migration move;
+            try {
+                move = migration;
+                if (move == null) {
+                    Shard[] shards = topology.shards;
+                    List<CompletableFuture<T>> calls = new ArrayList<>(shards.length);
+                    for (Shard shard : shards) {
+                        calls.add(CompletableFuture.supplyAsync(() -> operation.apply(shard), fanOut));
+                    }
+                    List<T> results = new ArrayList<>(shards.length);
+                    for (CompletableFuture<T> call : calls) {
+                        results.add(call.join());
+                    }
+                    return results;
+                }
+            } finally {
+                gate.exit(token);
+            }
+            move.awaitDone();
+        }
+    }
+
+    /**
+     * The ring and the shards indexed by shard id, replaced as a unit
+     */
+    private static final class Topology {
+        final HashRing ring;
+        final Shard[] shards;
+
+        Topology(HashRing ring, Shard[] shards) {
+            this.ring = ring;
+            this.shards = shards;
+        }
+
+        Topology with(Shard shard) {
+            Shard[] grown = Arrays.copyOf(shards, shards.length + 1);
+            grown[shards.length] = shard;
+            return new Topology(ring.with(shards.length), grown);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<T> {
+        T call(int shardId, Shard shard);
+    }
+
+    private static final class Migration {
+        final Topology to;
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Migration(Topology to) {
+            this.to = to;
+        }
+
+        void awaitDone() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package dto;
+
+/**
+ * Book fields a listing can be projected onto
+ */
+public enum BookField {
+    TYPE,
+    ISBN,
+    TITLE,
+    YEAR,
+    PRICE,
+    /**
+     * The stock of a paper book; omitted for books without stock
+     */
+    STOCK
+}
@@ -0,0 +1,66 @@
+package dto;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data Transfer Object for the outcome of a bulk catalog import or export
+ */
+public class BulkReport {
+    private final long rows;
+    private final long accepted;
+    private final long duplicates;
+    private final long rejected;
+    private final List<String> errors;
+    private final long elapsedNanos;
+
+    public BulkReport(long rows, long accepted, long duplicates, long rejected,
+                      List<String> errors, long elapsedNanos) {
+        this.rows = rows;
+        this.accepted = accepted;
+        this.duplicates = duplicates;
+        this.rejected = rejected;
+        this.errors = Collections.unmodifiableList(errors);
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * @return the data rows read or written
+     */
+    public long getRows() { return rows; }
+
+    /**
+     * @return the books added by an import, or written by an export
+     */
+    public long getAccepted() { return accepted; }
+
+    /**
+     * @return the rows skipped because their ISBN was already in the catalog or earlier in the file
+     */
+    public long getDuplicates() { return duplicates; }
+
+    /**
+     * @return the rows that failed to parse or validate
+     */
+    public long getRejected() { return rejected; }
+
+    /**
+     * @return messages for the first rejected rows, prefixed with their line number
+     */
+    public List<String> getErrors() { return errors; }
+
+    public long getElapsedNanos() { return elapsedNanos; }
+
+    /**
+     * @return the throughput over the whole run
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d rows (%d accepted, %d duplicates, %d rejected) at %.0f rows/sec",
+                rows, accepted, duplicates, rejected, getRowsPerSecond());
+    }
+}
@@ -0,0 +1,51 @@
+package dto;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A batch of order lines checked out together, delivered to one email and address
+ */
+public class Cart {
+    private final String email;
+    private final String address;
+    private final List<Line> lines = new ArrayList<>();
+
+    public Cart(String email, String address) {
+        this.email = email;
+        this.address = address;
+    }
+
+    /**
+     * Adds a line to the cart
+     * @param isbn the ISBN of the book
+     * @param quantity the quantity to purchase
+     * @return this cart, for chaining
+     */
+    public Cart add(String isbn, int quantity) {
+        lines.add(new Line(isbn, quantity));
+        return this;
+    }
+
+    public String getEmail() { return email; }
+    public String getAddress() { return address; }
+    public List<Line> getLines() { return Collections.unmodifiableList(lines); }
+    public boolean isEmpty() { return lines.isEmpty(); }
+
+    /**
+     * A single ISBN and quantity within a cart
+     */
+    public static class Line {
+        private final String isbn;
+        private final int quantity;
+
+        public Line(String isbn, int quantity) {
+            this.isbn = isbn;
+            this.quantity = quantity;
+        }
+
+        public String getIsbn() { return isbn; }
+        public int getQuantity() { return quantity; }
+    }
+}
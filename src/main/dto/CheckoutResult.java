@@ -0,0 +1,47 @@
+package dto;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Data Transfer Object for the aggregated outcome of a cart checkout
+ */
+public class CheckoutResult {
+    private final double paidAmount;
+    private final String message;
+    private final boolean successful;
+    private final Map<String, PurchaseResult> lineResults;
+    private final long orderId;
+
+    public CheckoutResult(double paidAmount, String message, boolean successful,
+                          Map<String, PurchaseResult> lineResults, long orderId) {
+        this.paidAmount = paidAmount;
+        this.message = message;
+        this.successful = successful;
+        this.lineResults = Collections.unmodifiableMap(lineResults);
+        this.orderId = orderId;
+    }
+
+    public static CheckoutResult success(double amount, String message,
+                                         Map<String, PurchaseResult> lineResults, long orderId) {
+        return new CheckoutResult(amount, message, true, lineResults, orderId);
+    }
+
+    public static CheckoutResult failure(String message, Map<String, PurchaseResult> lineResults) {
+        return new CheckoutResult(0.0, message, false, lineResults, 0L);
+    }
+
+    public double getPaidAmount() { return paidAmount; }
+    public String getMessage() { return message; }
+    public boolean isSuccessful() { return successful; }
+
+    /**
+     * @return the id to track fulfilment of the whole order with, or 0 if it failed
+     */
+    public long getOrderId() { return orderId; }
+
+    /**
+     * @return results keyed by ISBN; lines for the same ISBN are merged
+     */
+    public Map<String, PurchaseResult> getLineResults() { return lineResults; }
+}
@@ -0,0 +1,15 @@
+package dto;
+
+/**
+ * Delivery state of an order's shipping and email jobs
+ */
+public enum FulfilmentStatus {
+    /** The order id was never issued or its status is no longer retained */
+    UNKNOWN,
+    /** Deliveries are queued or being retried */
+    PENDING,
+    /** Every delivery for the order completed */
+    DELIVERED,
+    /** At least one delivery exhausted its retries */
+    FAILED
+}
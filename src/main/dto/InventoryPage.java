@@ -0,0 +1,30 @@
+package dto;
+
+import model.Book;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Data Transfer Object for one page of a cursor-based inventory listing
+ */
+public class InventoryPage {
+    private final List<Book> books;
+    private final String nextPageToken;
+
+    public InventoryPage(List<Book> books, String nextPageToken) {
+        this.books = Collections.unmodifiableList(books);
+        this.nextPageToken = nextPageToken;
+    }
+
+    /**
+     * @return the books of this page, ordered by publication year, then ISBN
+     */
+    public List<Book> getBooks() { return books; }
+
+    /**
+     * @return the token to fetch the following page with, or null on the last page
+     */
+    public String getNextPageToken() { return nextPageToken; }
+    public boolean hasNext() { return nextPageToken != null; }
+}
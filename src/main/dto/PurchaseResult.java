@@ -4,25 +4,94 @@ package dto;
  * Data Transfer Object for purchase operation results
  */
 public class PurchaseResult {
+    private final PurchaseStatus status;
     private final double paidAmount;
-    private final String message;
-    private final boolean successful;
+    private final long orderId;
+    private final int quantity;
+    private final String title;
+    private String message;
 
     public PurchaseResult(double paidAmount, String message, boolean successful) {
+        this(paidAmount, message, successful, 0L);
+    }
+
+    public PurchaseResult(double paidAmount, String message, boolean successful, long orderId) {
+        this(successful ? PurchaseStatus.SUCCESS : PurchaseStatus.FAILED, paidAmount, message, orderId);
+    }
+
+    PurchaseResult(PurchaseStatus status, double paidAmount, String message, long orderId) {
+        this.status = status;
         this.paidAmount = paidAmount;
         this.message = message;
-        this.successful = successful;
+        this.orderId = orderId;
+        this.quantity = 0;
+        this.title = null;
+    }
+
+    private PurchaseResult(double paidAmount, long orderId, int quantity, String title) {
+        this.status = PurchaseStatus.SUCCESS;
+        this.paidAmount = paidAmount;
+        this.orderId = orderId;
+        this.quantity = quantity;
+        this.title = title;
     }
 
     public static PurchaseResult success(double amount, String message) {
         return new PurchaseResult(amount, message, true);
     }
 
+    public static PurchaseResult success(double amount, String message, long orderId) {
+        return new PurchaseResult(amount, message, true, orderId);
+    }
+
+    /**
+     * Creates a success result whose message is only formatted if requested
+     * @param amount the amount paid
+     * @param quantity the number of copies purchased
+     * @param title the title of the purchased book
+     * @param orderId the id to track fulfilment with
+     */
+    public static PurchaseResult purchased(double amount, int quantity, String title, long orderId) {
+        return new PurchaseResult(amount, orderId, quantity, title);
+    }
+
     public static PurchaseResult failure(String message) {
         return new PurchaseResult(0.0, message, false);
     }
 
+    /**
+     * Creates a failure result carrying a specific status and a detailed message
+     * @param status the failure status
+     * @param message the detailed failure message
+     */
+    public static PurchaseResult failure(PurchaseStatus status, String message) {
+        return new PurchaseResult(status, 0.0, message, 0L);
+    }
+
     public double getPaidAmount() { return paidAmount; }
-    public String getMessage() { return message; }
-    public boolean isSuccessful() { return successful; }
-}
\ No newline at end of file
+    public boolean isSuccessful() { return status == PurchaseStatus.SUCCESS; }
+    public PurchaseStatus getStatus() { return status; }
+
+    /**
+     * @return the number of copies purchased, or 0 if unknown
+     */
+    public int getQuantity() { return quantity; }
+
+    /**
+     * @return the title of the purchased book, or null if unknown
+     */
+    public String getTitle() { return title; }
+
+    public String getMessage() {
+        if (message == null) {
+            message = String.format("Quantum book store: Successfully purchased %d copies of %s",
+                    quantity, title);
+        }
+        return message;
+    }
+
+    /**
+     * @return the id to track fulfilment of this purchase with, or 0 if it failed
+     */
+    public long getOrderId() { return orderId; }
+}
@@ -0,0 +1,32 @@
+package dto;
+
+/**
+ * Outcome code of a purchase attempt. Every failure carries one shared,
+ * immutable PurchaseResult so failed fast-path purchases allocate nothing.
+ */
+public enum PurchaseStatus {
+    SUCCESS(null),
+    INVALID_QUANTITY("Purchase failed - Invalid purchase quantity"),
+    BOOK_NOT_FOUND("Purchase failed - Book not found"),
+    NOT_PURCHASABLE("Purchase failed - Book not for sale"),
+    INSUFFICIENT_STOCK("Purchase failed - Insufficient stock"),
+    HOLD_NOT_FOUND("Purchase failed - Hold not found or expired"),
+    RATE_LIMITED("Purchase failed - Too many purchase attempts, try again later"),
+    OVERLOADED("Purchase failed - Store is busy, try again later"),
+    SHUT_DOWN("Purchase failed - Store is not taking orders"),
+    FAILED("Purchase failed");
+
+    private final PurchaseResult failure;
+
+    PurchaseStatus(String message) {
+        this.failure = message == null ? null
+                : new PurchaseResult(this, 0.0, "Quantum book store: " + message, 0L);
+    }
+
+    /**
+     * @return the shared failure result for this status, or null for SUCCESS
+     */
+    public PurchaseResult failure() {
+        return failure;
+    }
+}
@@ -0,0 +1,46 @@
+package dto;
+
+/**
+ * Data Transfer Object for the outcome of a stock hold request
+ */
+public class Reservation {
+    private final PurchaseStatus status;
+    private final long token;
+    private final String isbn;
+    private final int quantity;
+
+    private Reservation(PurchaseStatus status, long token, String isbn, int quantity) {
+        this.status = status;
+        this.token = token;
+        this.isbn = isbn;
+        this.quantity = quantity;
+    }
+
+    /**
+     * @param token the token to commit or release the hold with
+     * @param isbn the held ISBN
+     * @param quantity the number of copies held
+     */
+    public static Reservation held(long token, String isbn, int quantity) {
+        return new Reservation(PurchaseStatus.SUCCESS, token, isbn, quantity);
+    }
+
+    /**
+     * @param status why no hold was placed
+     * @param isbn the requested ISBN
+     * @param quantity the requested number of copies
+     */
+    public static Reservation failure(PurchaseStatus status, String isbn, int quantity) {
+        return new Reservation(status, 0L, isbn, quantity);
+    }
+
+    public boolean isSuccessful() { return status == PurchaseStatus.SUCCESS; }
+    public PurchaseStatus getStatus() { return status; }
+
+    /**
+     * @return the token identifying the hold, or 0 if none was placed
+     */
+    public long getToken() { return token; }
+    public String getIsbn() { return isbn; }
+    public int getQuantity() { return quantity; }
+}
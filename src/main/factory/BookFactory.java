@@ -7,9 +7,10 @@ import model.*;
  * Factory class for creating different types of books
  */
 public class BookFactory {
+    private static final BookTypeRegistry DEFAULT_TYPES = BookTypeRegistry.withDefaults();
 
     /**
-     * Creates a book of the specified type
+     * Creates a book of one of the built-in types
      * @param type the type of book to create
      * @param isbn the book's ISBN
      * @param title the book's title
@@ -18,21 +19,12 @@ public class BookFactory {
      * @param additionalParams additional parameters specific to book type
      * @return a Book instance of the specified type
      * @throws InvalidBookTypeException if the book type is not recognized
+     * @throws IllegalArgumentException if a parameter has the wrong type
+     * @see BookTypeRegistry for types registered at runtime
      */
     public static Book createBook(String type, String isbn, String title,
                                   int year, double price, Object... additionalParams)
             throws InvalidBookTypeException {
-        switch (type.toLowerCase()) {
-            case "paper":
-                int stock = additionalParams.length > 0 ? (Integer) additionalParams[0] : 0;
-                return new PaperBook(isbn, title, year, price, stock);
-            case "ebook":
-                String filetype = additionalParams.length > 0 ? (String) additionalParams[0] : "pdf";
-                return new EBook(isbn, title, year, price, filetype);
-            case "showcase":
-                return new ShowcaseBook(isbn, title, year, price);
-            default:
-                throw new InvalidBookTypeException(type);
-        }
+        return DEFAULT_TYPES.resolve(type).create(isbn, title, year, price, additionalParams);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,58 @@
+package factory;
+
+import model.Book;
+
+/**
+ * A kind of book the store can create by name. Subclasses add a typed
+ * create method taking the type's own fields, which is the allocation-free
+ * path; the untyped one serves addBook(type, ...) and checks its parameters
+ * instead of casting them blindly.
+ * @param <B> the class of book this type creates
+ */
+public abstract class BookType<B extends Book> {
+    private final String name;
+    private final Class<B> bookClass;
+
+    /**
+     * @param name the name books of this type are added under, matched ignoring case
+     * @param bookClass the class of book this type creates
+     */
+    protected BookType(String name, Class<B> bookClass) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Book type name must not be empty");
+        }
+        this.name = name;
+        this.bookClass = bookClass;
+    }
+
+    public String getName() { return name; }
+    public Class<B> getBookClass() { return bookClass; }
+
+    /**
+     * Creates a book from the type-specific parameters passed to addBook
+     * @param params the type-specific parameters, possibly empty
+     * @return the new book
+     * @throws IllegalArgumentException if a parameter has the wrong type
+     */
+    public abstract B create(String isbn, String title, int year, double price, Object... params);
+
+    /**
+     * @return the parameter at the index, or the fallback if there is none
+     * @throws IllegalArgumentException if the parameter is not of the expected class
+     */
+    protected final <T> T param(Object[] params, int index, Class<T> expected, T fallback) {
+        if (params.length <= index || params[index] == null) {
+            return fallback;
+        }
+        if (!expected.isInstance(params[index])) {
+            throw new IllegalArgumentException("Parameter " + (index + 1) + " of a " + name + " book must be "
+                    + expected.getSimpleName() + " but was " + params[index].getClass().getSimpleName());
+        }
+        return expected.cast(params[index]);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
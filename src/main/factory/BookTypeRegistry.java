@@ -0,0 +1,69 @@
+package factory;
+
+import exception.InvalidBookTypeException;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Book types by name. Lookups read an immutable map through one volatile
+ * field, so resolving a type takes no lock; registering copies the map.
+ * Each type is stored under its lower-case name, so the usual lower-case
+ * lookup is one hash probe and only other spellings pay for lower-casing.
+ */
+public class BookTypeRegistry {
+    private volatile Map<String, BookType<?>> types = Map.of();
+
+    /**
+     * @return a registry holding the paper, ebook and showcase types
+     */
+    public static BookTypeRegistry withDefaults() {
+        return new BookTypeRegistry()
+                .register(BookTypes.PAPER)
+                .register(BookTypes.EBOOK)
+                .register(BookTypes.SHOWCASE);
+    }
+
+    /**
+     * @param type the type to add
+     * @return this registry
+     * @throws IllegalArgumentException if a type with the same name, ignoring case, is registered
+     */
+    public synchronized BookTypeRegistry register(BookType<?> type) {
+        String key = type.getName().toLowerCase(Locale.ROOT);
+        if (types.containsKey(key)) {
+            throw new IllegalArgumentException("Book type already registered: " + type.getName());
+        }
+        Map<String, BookType<?>> copy = new HashMap<>(types);
+        copy.put(key, type);
+        types = Map.copyOf(copy);
+        return this;
+    }
+
+    /**
+     * @param name the type name, matched ignoring case
+     * @return the type
+     * @throws InvalidBookTypeException if no type has the name
+     */
+    public BookType<?> resolve(String name) throws InvalidBookTypeException {
+        BookType<?> type = find(name);
+        if (type == null) {
+            throw new InvalidBookTypeException(name);
+        }
+        return type;
+    }
+
+    /**
+     * @param name the type name, matched ignoring case
+     * @return the type, or null if no type has the name
+     */
+    public BookType<?> find(String name) {
+        if (name == null) {
+            return null;
+        }
+        Map<String, BookType<?>> current = types;
+        BookType<?> type = current.get(name);
+        return type != null ? type : current.get(name.toLowerCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,71 @@
+package factory;
+
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+/**
+ * The built-in book types
+ */
+public final class BookTypes {
+    public static final Paper PAPER = new Paper();
+    public static final Ebook EBOOK = new Ebook();
+    public static final Showcase SHOWCASE = new Showcase();
+
+    private BookTypes() {
+    }
+
+    /**
+     * Paper books; the optional parameter is the Integer stock, 0 by default
+     */
+    public static final class Paper extends BookType<PaperBook> {
+        private Paper() {
+            super("paper", PaperBook.class);
+        }
+
+        public PaperBook create(String isbn, String title, int year, double price, int stock) {
+            return new PaperBook(isbn, title, year, price, stock);
+        }
+
+        @Override
+        public PaperBook create(String isbn, String title, int year, double price, Object... params) {
+            return create(isbn, title, year, price, param(params, 0, Integer.class, 0).intValue());
+        }
+    }
+
+    /**
+     * Ebooks; the optional parameter is the String filetype, "pdf" by default
+     */
+    public static final class Ebook extends BookType<EBook> {
+        private Ebook() {
+            super("ebook", EBook.class);
+        }
+
+        public EBook create(String isbn, String title, int year, double price, String filetype) {
+            return new EBook(isbn, title, year, price, filetype);
+        }
+
+        @Override
+        public EBook create(String isbn, String title, int year, double price, Object... params) {
+            return create(isbn, title, year, price, param(params, 0, String.class, "pdf"));
+        }
+    }
+
+    /**
+     * Showcase books, which take no parameters
+     */
+    public static final class Showcase extends BookType<ShowcaseBook> {
+        private Showcase() {
+            super("showcase", ShowcaseBook.class);
+        }
+
+        public ShowcaseBook create(String isbn, String title, int year, double price) {
+            return new ShowcaseBook(isbn, title, year, price);
+        }
+
+        @Override
+        public ShowcaseBook create(String isbn, String title, int year, double price, Object... params) {
+            return create(isbn, title, year, price);
+        }
+    }
+}
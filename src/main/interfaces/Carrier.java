@@ -0,0 +1,17 @@
+package interfaces;
+
+import model.PaperBook;
+
+import java.util.List;
+
+/**
+ * Downstream carrier that accepts parcel manifests
+ */
+public interface Carrier {
+    /**
+     * Dispatches one parcel containing every listed book
+     * @param address the delivery address
+     * @param manifest the books packed into the parcel
+     */
+    void dispatch(String address, List<PaperBook> manifest);
+}
@@ -0,0 +1,97 @@
+package interfaces;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Storage backend for the store's catalog. Implementations must be safe for
+ * concurrent use; stock changes go through each PaperBook's StockCell.
+ */
+public interface Catalog {
+    /**
+     * Publication year, then ISBN: the order of listAfter
+     */
+    Comparator<Book> CATALOG_ORDER = Comparator.comparingInt(Book::getYear).thenComparing(Book::getIsbn);
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return the book, or null if there is none
+     */
+    Book get(String isbn);
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return true if a book with the ISBN is stored
+     */
+    boolean contains(String isbn);
+
+    /**
+     * Stores a book unless one with the same ISBN already exists. Backends
+     * may copy the book's fields rather than keep the object, so callers
+     * must read it back through get before mutating its stock.
+     * @param book the book to store
+     * @return true if the book was stored, false if the ISBN was taken
+     */
+    boolean add(Book book);
+
+    /**
+     * Removes the book stored under the book's ISBN, if it is still that book
+     * @param book the book to remove
+     * @return true if this call removed it
+     */
+    boolean remove(Book book);
+
+    List<Book> findByYearRange(int fromYear, int toYear);
+
+    List<Book> findByPriceRange(double minPrice, double maxPrice);
+
+    <T extends Book> List<T> findByType(Class<T> type);
+
+    List<Book> searchTitlePrefix(String prefix);
+
+    /**
+     * Lists books in catalog order: by publication year, then ISBN. Neither
+     * field ever changes, so the order is stable and a listing can resume
+     * after any book it has returned. Backends without an ordered index keep
+     * only the best {@code limit} books of one full pass.
+     * @param year the year of the last book already listed
+     * @param isbn the ISBN of the last book already listed, or null to start
+     * from the beginning
+     * @param limit the most books to return
+     * @return up to limit books following the given one, in catalog order
+     */
+    default List<Book> listAfter(int year, String isbn, int limit) {
+        PriorityQueue<Book> best = new PriorityQueue<>(limit + 1, CATALOG_ORDER.reversed());
+        forEach(book -> {
+            if (isbn != null && (book.getYear() < year
+                    || book.getYear() == year && book.getIsbn().compareTo(isbn) <= 0)) {
+                return;
+            }
+            if (best.size() < limit) {
+                best.add(book);
+            } else if (CATALOG_ORDER.compare(book, best.peek()) < 0) {
+                best.poll();
+                best.add(book);
+            }
+        });
+        List<Book> page = new ArrayList<>(best);
+        page.sort(CATALOG_ORDER);
+        return page;
+    }
+
+    /**
+     * Visits every stored book
+     * @param action the action to run per book
+     */
+    void forEach(Consumer<Book> action);
+
+    /**
+     * @return the number of stored books
+     */
+    int size();
+}
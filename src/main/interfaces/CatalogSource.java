@@ -0,0 +1,41 @@
+package interfaces;
+
+import model.Book;
+
+import java.util.function.Consumer;
+
+/**
+ * Authoritative, slower tier holding the full catalog, e.g. a remote store.
+ * Books are passed by value: a loaded book is a copy, and saving a book
+ * records its current fields, including the stock of a paper book.
+ */
+public interface CatalogSource {
+    /**
+     * @param isbn the ISBN to load
+     * @return a copy of the stored book, or null if there is none
+     */
+    Book load(String isbn);
+
+    /**
+     * Stores the book, replacing any book with the same ISBN
+     * @param book the book to save
+     */
+    void save(Book book);
+
+    /**
+     * @param isbn the ISBN to delete
+     * @return true if a book was deleted
+     */
+    boolean delete(String isbn);
+
+    /**
+     * Visits a copy of every stored book
+     * @param action the action to run per book
+     */
+    void forEach(Consumer<Book> action);
+
+    /**
+     * @return the number of stored books
+     */
+    int size();
+}
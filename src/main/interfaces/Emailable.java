@@ -2,6 +2,8 @@ package interfaces;
 
 import service.MailService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for books that can be emailed
  */
@@ -12,4 +14,15 @@ public interface Emailable {
      * @param mailService the mail service to use
      */
     void email(String emailAddress, MailService mailService);
+
+    /**
+     * Emails the book and reports when it has actually gone out
+     * @param emailAddress the recipient's email address
+     * @param mailService the mail service to use
+     * @return a future completed once the ebook has been sent
+     */
+    default CompletableFuture<Void> emailAsync(String emailAddress, MailService mailService) {
+        email(emailAddress, mailService);
+        return CompletableFuture.completedFuture(null);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,17 @@
+package interfaces;
+
+import model.EBook;
+
+import java.util.List;
+
+/**
+ * Downstream mail transport that sends messages with ebook attachments
+ */
+public interface MailTransport {
+    /**
+     * Sends one message carrying every listed ebook as an attachment
+     * @param emailAddress the recipient's email address
+     * @param attachments the ebooks to attach
+     */
+    void send(String emailAddress, List<EBook> attachments);
+}
@@ -19,4 +19,17 @@ public interface Purchasable {
      * @throws InsufficientStockException if not enough stock is available
      */
     void processPurchase(int quantity) throws InsufficientStockException;
+
+    /**
+     * Processes the purchase if enough stock is available, without throwing
+     * @param quantity the quantity to purchase
+     * @return true if the purchase was processed, false if stock was insufficient
+     */
+    boolean tryPurchase(int quantity);
+
+    /**
+     * Reverts a previously processed purchase, returning the quantity to stock
+     * @param quantity the quantity to return
+     */
+    void cancelPurchase(int quantity);
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package interfaces;
+
+import dto.FulfilmentStatus;
+import dto.PurchaseResult;
+import model.Book;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * One partition of a sharded store, owning the books whose ISBNs hash to it.
+ * Implementations may run in the same JVM or in another process; the
+ * router never relies on sharing Book objects with a shard.
+ */
+public interface Shard extends Closeable {
+    /**
+     * @param book the book to store
+     * @return true if the book was stored, false if the ISBN was taken
+     */
+    boolean add(Book book);
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return the book, or null if this shard has none
+     */
+    Book get(String isbn);
+
+    /**
+     * Purchases with a detailed message, as QuantumBookStore.buyBook does
+     */
+    PurchaseResult buyBook(String isbn, int quantity, String email, String address);
+
+    /**
+     * Purchases without formatting a failure message, as QuantumBookStore.tryBuyBook does
+     */
+    PurchaseResult tryBuyBook(String isbn, int quantity, String email, String address);
+
+    /**
+     * @param years the age threshold in years
+     * @return the books this shard removed
+     */
+    List<Book> removeOutdatedBooks(int years);
+
+    /**
+     * Removes a book so it can be handed to another shard
+     * @param isbn the ISBN of the book to remove
+     * @return a detached copy of the removed book with its final stock, or null if there was none
+     */
+    Book take(String isbn);
+
+    /**
+     * Visits every book on this shard
+     * @param action the action to run per book
+     */
+    void forEachBook(Consumer<Book> action);
+
+    /**
+     * @param orderId an order id issued by this shard
+     * @return the fulfilment status of the order
+     */
+    FulfilmentStatus getFulfilmentStatus(long orderId);
+}
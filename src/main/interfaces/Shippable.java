@@ -2,6 +2,8 @@ package interfaces;
 
 import service.ShippingService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface for books that can be shipped
  */
@@ -12,4 +14,15 @@ public interface Shippable {
      * @param shippingService the shipping service to use
      */
     void ship(String address, ShippingService shippingService);
+
+    /**
+     * Ships the book and reports when it has actually left
+     * @param address the shipping address
+     * @param shippingService the shipping service to use
+     * @return a future completed once the book has been handed to the carrier
+     */
+    default CompletableFuture<Void> shipAsync(String address, ShippingService shippingService) {
+        ship(address, shippingService);
+        return CompletableFuture.completedFuture(null);
+    }
 }
\ No newline at end of file
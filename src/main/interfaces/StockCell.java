@@ -0,0 +1,25 @@
+package interfaces;
+
+/**
+ * Storage for the stock count of one title. Implementations must make
+ * tryTake atomic so concurrent purchases can never drive the count below zero.
+ */
+public interface StockCell {
+    /**
+     * @return the current stock count
+     */
+    int get();
+
+    /**
+     * Atomically removes the quantity if that much stock is available
+     * @param quantity the quantity to remove
+     * @return true if the stock was removed, false if it was insufficient
+     */
+    boolean tryTake(int quantity);
+
+    /**
+     * Atomically adds the quantity back to stock
+     * @param quantity the quantity to add
+     */
+    void add(int quantity);
+}
@@ -0,0 +1,147 @@
+package logging;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Appender that hands events to a background thread through a bounded,
+ * lock-free ring buffer. Producers claim a preallocated slot with one CAS
+ * and never block or allocate; when the buffer is full, or the appender is
+ * closed, the event is dropped and counted. The background thread formats
+ * events and forwards them to the delegate, so request threads never wait
+ * on the console. Arguments are formatted when delivered, so mutable ones
+ * show their state at that time.
+ */
+public class AsyncAppender implements LogAppender, AutoCloseable {
+    private final LogAppender delegate;
+    private final Slot[] slots;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread consumer;
+    private long head;
+    private volatile boolean running = true;
+
+    /**
+     * @param delegate the appender events are forwarded to
+     * @param capacity the ring size, rounded up to a power of two
+     */
+    public AsyncAppender(LogAppender delegate, int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.delegate = delegate;
+        this.slots = new Slot[size];
+        this.sequences = new AtomicLongArray(size);
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+            sequences.set(i, i);
+        }
+        this.consumer = new Thread(this::drainLoop, "async-log");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    @Override
+    public void append(LogLevel level, String template, Object arg1, Object arg2) {
+        if (!running) {
+            dropped.incrementAndGet();
+            return;
+        }
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long diff = sequences.get(index) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    Slot slot = slots[index];
+                    slot.level = level;
+                    slot.template = template;
+                    slot.arg1 = arg1;
+                    slot.arg2 = arg2;
+                    sequences.lazySet(index, pos + 1);
+                    return;
+                }
+            } else if (diff < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+            pos = tail.get();
+        }
+    }
+
+    /**
+     * @return the number of events dropped because the buffer was full or
+     * the appender was closed
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Stops the background thread after delivering every buffered event.
+     * Events that slip into the buffer after its last pass are counted as
+     * dropped. If interrupted while waiting, returns with the interrupt
+     * flag set.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(consumer);
+        try {
+            consumer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (!consumer.isAlive()) {
+            long undelivered = tail.get() - head;
+            if (undelivered > 0) {
+                dropped.addAndGet(undelivered);
+            }
+        }
+    }
+
+    private void drainLoop() {
+        while (running) {
+            if (!drain()) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        drain();
+    }
+
+    private boolean drain() {
+        boolean any = false;
+        while (true) {
+            int index = (int) (head & mask);
+            if (sequences.get(index) != head + 1) {
+                return any;
+            }
+            Slot slot = slots[index];
+            LogLevel level = slot.level;
+            String template = slot.template;
+            Object arg1 = slot.arg1;
+            Object arg2 = slot.arg2;
+            slot.template = null;
+            slot.arg1 = null;
+            slot.arg2 = null;
+            sequences.lazySet(index, head + mask + 1);
+            head++;
+            any = true;
+            try {
+                delegate.append(level, template, arg1, arg2);
+            } catch (RuntimeException ignored) {
+                // a failing delegate must not stop delivery of later events
+            }
+        }
+    }
+
+    private static final class Slot {
+        LogLevel level;
+        String template;
+        Object arg1;
+        Object arg2;
+    }
+}
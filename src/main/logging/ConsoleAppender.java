@@ -0,0 +1,13 @@
+package logging;
+
+/**
+ * Appender that formats events on the calling thread and prints them to
+ * standard output with the store's prefix
+ */
+public class ConsoleAppender implements LogAppender {
+
+    @Override
+    public void append(LogLevel level, String template, Object arg1, Object arg2) {
+        System.out.println("Quantum book store: " + StoreLogger.format(template, arg1, arg2));
+    }
+}
@@ -0,0 +1,16 @@
+package logging;
+
+/**
+ * Destination for log events. Events arrive unformatted so an appender can
+ * defer formatting, e.g. to a background thread.
+ */
+public interface LogAppender {
+    /**
+     * Appends one event
+     * @param level the event's level
+     * @param template the message with {} placeholders
+     * @param arg1 the value for the first placeholder, may be null
+     * @param arg2 the value for the second placeholder, may be null
+     */
+    void append(LogLevel level, String template, Object arg1, Object arg2);
+}
@@ -0,0 +1,12 @@
+package logging;
+
+/**
+ * Severity of a log event; OFF disables logging entirely
+ */
+public enum LogLevel {
+    DEBUG,
+    INFO,
+    WARN,
+    ERROR,
+    OFF
+}
@@ -0,0 +1,93 @@
+package logging;
+
+/**
+ * Leveled logger used by the store and its delivery services.
+ * Messages are templates with {} placeholders and are only formatted by the
+ * appender, so a disabled level costs one volatile read and nothing else.
+ * Callers passing primitives should guard with isEnabled to avoid boxing.
+ */
+public final class StoreLogger {
+    private final LogAppender appender;
+    private volatile LogLevel threshold;
+
+    public StoreLogger(LogLevel threshold, LogAppender appender) {
+        this.threshold = threshold;
+        this.appender = appender;
+    }
+
+    /**
+     * @return a logger printing INFO and above to standard output on the calling thread
+     */
+    public static StoreLogger console() {
+        return new StoreLogger(LogLevel.INFO, new ConsoleAppender());
+    }
+
+    /**
+     * @return a logger that discards everything
+     */
+    public static StoreLogger off() {
+        return new StoreLogger(LogLevel.OFF, new ConsoleAppender());
+    }
+
+    public boolean isEnabled(LogLevel level) {
+        return level.compareTo(threshold) >= 0 && threshold != LogLevel.OFF;
+    }
+
+    public LogLevel getThreshold() { return threshold; }
+
+    /**
+     * Changes the minimum level that is logged; OFF disables logging
+     * @param threshold the new minimum level
+     */
+    public void setThreshold(LogLevel threshold) {
+        this.threshold = threshold;
+    }
+
+    public void debug(String template, Object arg1, Object arg2) {
+        log(LogLevel.DEBUG, template, arg1, arg2);
+    }
+
+    public void info(String template) {
+        log(LogLevel.INFO, template, null, null);
+    }
+
+    public void info(String template, Object arg) {
+        log(LogLevel.INFO, template, arg, null);
+    }
+
+    public void info(String template, Object arg1, Object arg2) {
+        log(LogLevel.INFO, template, arg1, arg2);
+    }
+
+    public void warn(String template, Object arg1, Object arg2) {
+        log(LogLevel.WARN, template, arg1, arg2);
+    }
+
+    public void log(LogLevel level, String template, Object arg1, Object arg2) {
+        if (isEnabled(level)) {
+            appender.append(level, template, arg1, arg2);
+        }
+    }
+
+    /**
+     * Substitutes up to two {} placeholders in order
+     * @param template the message with {} placeholders
+     * @param arg1 the value for the first placeholder
+     * @param arg2 the value for the second placeholder
+     * @return the formatted message
+     */
+    public static String format(String template, Object arg1, Object arg2) {
+        int first = template.indexOf("{}");
+        if (first < 0) {
+            return template;
+        }
+        StringBuilder out = new StringBuilder(template.length() + 32);
+        out.append(template, 0, first).append(arg1);
+        int second = template.indexOf("{}", first + 2);
+        if (second < 0) {
+            return out.append(template, first + 2, template.length()).toString();
+        }
+        return out.append(template, first + 2, second).append(arg2)
+                .append(template, second + 2, template.length()).toString();
+    }
+}
@@ -0,0 +1,39 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonic counter backed by a LongAdder, so concurrent increments from
+ * request threads land on separate cells instead of contending on one value.
+ * The exported value is the sum times a fixed scale, e.g. 0.01 for cents.
+ */
+public class Counter {
+    private final LongAdder sum = new LongAdder();
+    private final double scale;
+
+    Counter(double scale) {
+        this.scale = scale;
+    }
+
+    public void increment() {
+        sum.increment();
+    }
+
+    public void add(long amount) {
+        sum.add(amount);
+    }
+
+    /**
+     * @return the raw, unscaled count
+     */
+    public long sum() {
+        return sum.sum();
+    }
+
+    /**
+     * @return the count times the scale
+     */
+    public double value() {
+        return sum.sum() * scale;
+    }
+}
@@ -0,0 +1,222 @@
+package metrics;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Named registry of counters, latency histograms and gauges, exported in
+ * the Prometheus text format. Registration is synchronized. Recording goes
+ * straight to the returned Counter or LatencyHistogram, so it never touches
+ * the registry. Gauges are sampled only when the registry is exported.
+ */
+public class MetricsRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    /**
+     * @param name the metric name
+     * @param help the description exported with the metric
+     * @param labels alternating label names and values
+     * @return the counter for the labels, created on first use
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return scaledCounter(name, help, 1, labels);
+    }
+
+    /**
+     * @param scale the factor applied to the raw count on export
+     * @see #counter
+     */
+    public synchronized Counter scaledCounter(String name, String help, double scale, String... labels) {
+        return (Counter) family(name, help, "counter")
+                .metrics.computeIfAbsent(labelsOf(labels), key -> new Counter(scale));
+    }
+
+    /**
+     * Registers a histogram, exported as a summary in seconds
+     * @see #counter
+     */
+    public synchronized LatencyHistogram histogram(String name, String help, String... labels) {
+        return (LatencyHistogram) family(name, help, "summary")
+                .metrics.computeIfAbsent(labelsOf(labels), key -> new LatencyHistogram());
+    }
+
+    /**
+     * @param value sampled each time the registry is exported
+     * @see #counter
+     */
+    public synchronized void gauge(String name, String help, LongSupplier value, String... labels) {
+        family(name, help, "gauge").metrics.put(labelsOf(labels), value);
+    }
+
+    /**
+     * @return every current sample keyed by its Prometheus series name, e.g.
+     * {@code bookstore_purchases_total{type="PaperBook"}}
+     */
+    public Map<String, Double> snapshot() {
+        Map<String, Double> samples = new TreeMap<>();
+        forEachSample((name, family, series, value) -> samples.put(series, value));
+        return samples;
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        String[] current = {null};
+        try {
+            forEachSample((name, family, series, value) -> {
+                try {
+                    if (!name.equals(current[0])) {
+                        out.write("# HELP " + name + " " + family.help + "\n");
+                        out.write("# TYPE " + name + " " + family.type + "\n");
+                        current[0] = name;
+                    }
+                    out.write(series + " " + formatValue(value) + "\n");
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the Prometheus text to a file, replacing it atomically so a
+     * scraper reading the file never sees a partial export
+     */
+    public void exportTo(Path file) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            writePrometheus(out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Serves the Prometheus text at /metrics on a background thread
+     * @param address the address to bind, port 0 for any free port
+     * @return the running server; stop it to release the port
+     */
+    public HttpServer serve(InetSocketAddress address) throws IOException {
+        HttpServer server = HttpServer.create(address, 0);
+        server.createContext("/metrics", exchange -> {
+            StringWriter text = new StringWriter();
+            writePrometheus(text);
+            byte[] body = text.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+        return server;
+    }
+
+    private void forEachSample(SampleVisitor visitor) {
+        List<Map.Entry<String, Family>> registered;
+        synchronized (this) {
+            registered = new ArrayList<>();
+            for (Map.Entry<String, Family> family : families.entrySet()) {
+                registered.add(Map.entry(family.getKey(), family.getValue().copy()));
+            }
+        }
+        for (Map.Entry<String, Family> entry : registered) {
+            String name = entry.getKey();
+            Family family = entry.getValue();
+            for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+                String labels = metric.getKey();
+                Object value = metric.getValue();
+                if (value instanceof Counter) {
+                    visitor.visit(name, family, name + braces(labels), ((Counter) value).value());
+                } else if (value instanceof LongSupplier) {
+                    visitor.visit(name, family, name + braces(labels), (double) ((LongSupplier) value).getAsLong());
+                } else {
+                    LatencyHistogram histogram = (LatencyHistogram) value;
+                    String prefix = labels.isEmpty() ? "" : labels + ",";
+                    for (double q : QUANTILES) {
+                        visitor.visit(name, family, name + "{" + prefix + "quantile=\"" + q + "\"}",
+                                histogram.percentileNanos(q) / 1e9);
+                    }
+                    visitor.visit(name, family, name + "_sum" + braces(labels), histogram.sumNanos() / 1e9);
+                    visitor.visit(name, family, name + "_count" + braces(labels), (double) histogram.count());
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static String labelsOf(String... labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("Labels must be name/value pairs");
+        }
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (i > 0) {
+                out.append(',');
+            }
+            out.append(labels[i]).append("=\"")
+                    .append(labels[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return out.toString();
+    }
+
+    private static String braces(String labels) {
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static String formatValue(double value) {
+        return value == Math.rint(value) && Math.abs(value) < 1e15
+                ? Long.toString((long) value) : Double.toString(value);
+    }
+
+    @FunctionalInterface
+    private interface SampleVisitor {
+        void visit(String name, Family family, String series, double value);
+    }
+
+    private static final class Family {
+        final String help;
+        final String type;
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+
+        Family(String help, String type) {
+            this.help = help;
+            this.type = type;
+        }
+
+        Family copy() {
+            Family copy = new Family(help, type);
+            copy.metrics.putAll(metrics);
+            return copy;
+        }
+    }
+}
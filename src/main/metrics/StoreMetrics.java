@@ -0,0 +1,101 @@
+package metrics;
+
+import dto.PurchaseStatus;
+import interfaces.Catalog;
+import model.Book;
+import model.PaperBook;
+
+import java.util.Locale;
+
+/**
+ * The store's metrics, resolved once so the hot path only touches
+ * preregistered counters and histograms: no lookup, lock or allocation
+ * beyond two System.nanoTime reads and a few LongAdder increments.
+ * Counters per book type are created the first time a type is sold.
+ */
+public class StoreMetrics {
+    private final MetricsRegistry registry;
+    private final Counter[] failures = new Counter[PurchaseStatus.values().length];
+    private final Counter revenueCents;
+    private final LatencyHistogram buyLatency;
+    private final LatencyHistogram checkoutLatency;
+    private final LatencyHistogram addLatency;
+    private final LatencyHistogram removeLatency;
+    private final LatencyHistogram shippingLatency;
+    private final LatencyHistogram emailLatency;
+    private final ClassValue<Counter[]> sales = new ClassValue<>() {
+        @Override
+        protected Counter[] computeValue(Class<?> type) {
+            String name = type.getSimpleName();
+            return new Counter[] {
+                    registry.counter("bookstore_purchases_total", "Successful purchase lines by book type", "type", name),
+                    registry.counter("bookstore_copies_sold_total", "Copies sold by book type", "type", name)
+            };
+        }
+    };
+
+    /**
+     * Registers the store's metrics, including gauges sampling the catalog
+     * @param registry the registry to register in
+     * @param catalog the catalog the size and stock gauges read
+     */
+    public StoreMetrics(MetricsRegistry registry, Catalog catalog) {
+        this.registry = registry;
+        for (PurchaseStatus status : PurchaseStatus.values()) {
+            if (status != PurchaseStatus.SUCCESS) {
+                failures[status.ordinal()] = registry.counter("bookstore_purchase_failures_total",
+                        "Failed purchases by reason", "reason", status.name().toLowerCase(Locale.ROOT));
+            }
+        }
+        this.revenueCents = registry.scaledCounter("bookstore_revenue_total",
+                "Revenue from successful purchases in dollars", 0.01);
+        String operations = "bookstore_operation_duration_seconds";
+        String operationsHelp = "Latency of store operations";
+        this.buyLatency = registry.histogram(operations, operationsHelp, "operation", "buy_book");
+        this.checkoutLatency = registry.histogram(operations, operationsHelp, "operation", "checkout");
+        this.addLatency = registry.histogram(operations, operationsHelp, "operation", "add_book");
+        this.removeLatency = registry.histogram(operations, operationsHelp, "operation", "remove_outdated_books");
+        String deliveries = "bookstore_delivery_duration_seconds";
+        String deliveriesHelp = "Latency of calls to the delivery services";
+        this.shippingLatency = registry.histogram(deliveries, deliveriesHelp, "service", "shipping");
+        this.emailLatency = registry.histogram(deliveries, deliveriesHelp, "service", "mail");
+        registry.gauge("bookstore_catalog_size", "Books in the catalog", catalog::size);
+        registry.gauge("bookstore_stock_total", "Copies in stock across all paper books", () -> {
+            long[] total = {0};
+            catalog.forEach(book -> {
+                if (book instanceof PaperBook) {
+                    total[0] += ((PaperBook) book).getStock();
+                }
+            });
+            return total[0];
+        });
+    }
+
+    /**
+     * @return the registry the metrics are registered in
+     */
+    public MetricsRegistry getRegistry() {
+        return registry;
+    }
+
+    public void recordPurchase(Book book, int quantity, double amount) {
+        Counter[] counters = sales.get(book.getClass());
+        counters[0].increment();
+        counters[1].add(quantity);
+        revenueCents.add(Math.round(amount * 100));
+    }
+
+    public void recordFailure(PurchaseStatus status) {
+        Counter counter = failures[status.ordinal()];
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    public LatencyHistogram buyLatency() { return buyLatency; }
+    public LatencyHistogram checkoutLatency() { return checkoutLatency; }
+    public LatencyHistogram addLatency() { return addLatency; }
+    public LatencyHistogram removeLatency() { return removeLatency; }
+    public LatencyHistogram shippingLatency() { return shippingLatency; }
+    public LatencyHistogram emailLatency() { return emailLatency; }
+}
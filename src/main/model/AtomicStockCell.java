@@ -0,0 +1,38 @@
+package model;
+
+import interfaces.StockCell;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Heap stock cell backed by an AtomicInteger and decremented with a CAS loop
+ */
+public class AtomicStockCell implements StockCell {
+    private final AtomicInteger stock;
+
+    public AtomicStockCell(int stock) {
+        this.stock = new AtomicInteger(stock);
+    }
+
+    @Override
+    public int get() {
+        return stock.get();
+    }
+
+    @Override
+    public boolean tryTake(int quantity) {
+        int current;
+        do {
+            current = stock.get();
+            if (current < quantity) {
+                return false;
+            }
+        } while (!stock.compareAndSet(current, current - quantity));
+        return true;
+    }
+
+    @Override
+    public void add(int quantity) {
+        stock.addAndGet(quantity);
+    }
+}
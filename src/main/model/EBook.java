@@ -5,6 +5,8 @@ import interfaces.Emailable;
 import interfaces.Purchasable;
 import service.MailService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Digital book that can be purchased and emailed
  */
@@ -28,11 +30,26 @@ public class EBook extends Book implements Purchasable, Emailable {
 
     }
 
+    @Override
+    public boolean tryPurchase(int quantity) {
+        return true;
+    }
+
+    @Override
+    public void cancelPurchase(int quantity) {
+
+    }
+
     @Override
     public void email(String emailAddress, MailService mailService) {
         mailService.sendEBook(this, emailAddress);
     }
 
+    @Override
+    public CompletableFuture<Void> emailAsync(String emailAddress, MailService mailService) {
+        return mailService.sendEBookAsync(this, emailAddress);
+    }
+
     @Override
     public String toString() {
         return super.toString() + ", Filetype: " + filetype;
@@ -3,32 +3,92 @@ package model;
 import exception.InsufficientStockException;
 import interfaces.Purchasable;
 import interfaces.Shippable;
+import interfaces.StockCell;
 import service.ShippingService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Physical book that can be purchased and shipped
  */
 public class PaperBook extends Book implements Purchasable, Shippable {
-    private int stock;
+    private final StockCell stock;
 
     public PaperBook(String isbn, String title, int year, double price, int stock) {
+        this(isbn, title, year, price, new StripedStockCell(stock));
+    }
+
+    /**
+     * Creates a paper book whose stock lives in the given cell, e.g. a
+     * column of an off-object catalog backend
+     */
+    public PaperBook(String isbn, String title, int year, double price, StockCell stock) {
         super(isbn, title, year, price);
         this.stock = stock;
     }
 
-    public int getStock() { return stock; }
+    public int getStock() { return stock.get(); }
 
     @Override
     public boolean canPurchase(int quantity) {
-        return stock >= quantity;
+        return stock.get() >= quantity;
     }
 
     @Override
     public void processPurchase(int quantity) throws InsufficientStockException {
-        if (!canPurchase(quantity)) {
-            throw new InsufficientStockException(getTitle(), quantity, stock);
+        if (!tryPurchase(quantity)) {
+            throw new InsufficientStockException(getTitle(), stock.get(), quantity);
+        }
+    }
+
+    /**
+     * Atomically decrements the stock, so concurrent purchases of the same
+     * title can never oversell it
+     */
+    @Override
+    public boolean tryPurchase(int quantity) {
+        return stock.tryTake(quantity);
+    }
+
+    @Override
+    public void cancelPurchase(int quantity) {
+        stock.add(quantity);
+    }
+
+    /**
+     * Atomically adds copies to stock, safely alongside concurrent purchases
+     * @param quantity the number of copies received
+     * @throws IllegalArgumentException if the quantity is not positive
+     */
+    public void restock(int quantity) {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Restock quantity must be positive: " + quantity);
+        }
+        stock.add(quantity);
+    }
+
+    /**
+     * Atomically adds or removes copies. A removal larger than the stock on
+     * hand empties it rather than failing, since copies a warehouse writes
+     * off may already have been sold.
+     * @param delta the change in copies
+     * @return the change actually applied
+     */
+    public int adjustStock(int delta) {
+        if (delta >= 0) {
+            stock.add(delta);
+            return delta;
+        }
+        long wanted = -(long) delta;
+        while (true) {
+            int take = (int) Math.min(stock.get(), wanted);
+            if (take <= 0) {
+                return 0;
+            }
+            if (stock.tryTake(take)) {
+                return -take;
+            }
         }
-        stock -= quantity;
     }
 
     @Override
@@ -36,8 +96,13 @@ public class PaperBook extends Book implements Purchasable, Shippable {
         shippingService.ship(this, address);
     }
 
+    @Override
+    public CompletableFuture<Void> shipAsync(String address, ShippingService shippingService) {
+        return shippingService.shipAsync(this, address);
+    }
+
     @Override
     public String toString() {
-        return super.toString() + ", Stock: " + stock;
+        return super.toString() + ", Stock: " + stock.get();
     }
-}
\ No newline at end of file
+}
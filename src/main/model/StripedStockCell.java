@@ -0,0 +1,266 @@
+package model;
+
+import interfaces.StockCell;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Heap stock cell that splits itself when a title gets hot. It starts as
+ * one int decremented with a CAS loop, like AtomicStockCell. When CAS
+ * failures pile up within a millisecond, the stock is spread over padded
+ * per-core sub-counters so concurrent buyers stop retrying on one cache
+ * line.
+ * <p>
+ * In split mode a buyer takes from its own sub-counter. When that runs
+ * short, the buyer takes under the cell's lock from the shared base and
+ * refills its sub-counter with an allotment of what is left there. Only if
+ * the base is short too are the other sub-counters drained back into it.
+ * Every counter is CAS-guarded, so none ever goes below zero, and a
+ * purchase fails only if the whole stock is short. Once a period passes
+ * with few sales, the sub-counters are merged back into the base.
+ */
+public class StripedStockCell implements StockCell {
+    private static final VarHandle BASE;
+    private static final int PAD = 16;
+    private static final int MAX_STRIPES = 64;
+    private static final long STOCK = 0xFFFFFFFFL;
+    private static final long TAKE = 1L << 32;
+    private static final int SPLIT_COLLISIONS = 64;
+    private static final long COLLISION_WINDOW = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int MERGE_TAKES = 64;
+    private static final long COOL_PERIOD = TimeUnit.MILLISECONDS.toNanos(100);
+
+    static {
+        try {
+            BASE = MethodHandles.lookup().findVarHandle(StripedStockCell.class, "base", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private volatile int base;
+    private volatile Stripes stripes;
+    // approximate on purpose: a lost update only delays a split
+    private int collisions;
+    private long collisionWindow;
+
+    public StripedStockCell(int stock) {
+        this.base = stock;
+    }
+
+    @Override
+    public int get() {
+        // stripes are cleared only after they are drained, so once they
+        // read null the base holds the whole stock
+        if (stripes == null) {
+            return base;
+        }
+        synchronized (this) {
+            Stripes current = stripes;
+            if (current != null && cooled(current)) {
+                merge(current);
+            }
+            return total();
+        }
+    }
+
+    @Override
+    public boolean tryTake(int quantity) {
+        while (true) {
+            Stripes current = stripes;
+            if (current == null) {
+                int stock = base;
+                if (stock >= quantity) {
+                    if (BASE.compareAndSet(this, stock, stock - quantity)) {
+                        return true;
+                    }
+                    collided();
+                    continue;
+                }
+                // after a concurrent split part of the stock may sit in stripes
+                if (stripes == null) {
+                    return false;
+                }
+                continue;
+            }
+            AtomicLongArray cells = current.cells;
+            int slot = slot(current);
+            long cell = cells.get(slot);
+            if ((int) (cell & STOCK) < quantity) {
+                return takeSlow(quantity);
+            }
+            if (cells.compareAndSet(slot, cell, cell - quantity + TAKE)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public void add(int quantity) {
+        BASE.getAndAdd(this, quantity);
+    }
+
+    /**
+     * Splits the stock now, e.g. ahead of a launch, instead of waiting for
+     * contention; it still merges back once the title cools down
+     */
+    public synchronized void split() {
+        if (stripes == null) {
+            int count = Math.min(MAX_STRIPES,
+                    Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2);
+            stripes = new Stripes(count, System.nanoTime());
+        }
+    }
+
+    /**
+     * Merges the sub-counters back into the base now instead of waiting
+     * for the title to cool down
+     */
+    public synchronized void merge() {
+        Stripes current = stripes;
+        if (current != null) {
+            merge(current);
+        }
+    }
+
+    /**
+     * @return true while the stock is spread over sub-counters
+     */
+    public boolean isSplit() {
+        return stripes != null;
+    }
+
+    private void collided() {
+        long now = System.nanoTime();
+        if (now - collisionWindow > COLLISION_WINDOW) {
+            collisionWindow = now;
+            collisions = 1;
+        } else if (++collisions >= SPLIT_COLLISIONS) {
+            split();
+        }
+    }
+
+    private synchronized boolean takeSlow(int quantity) {
+        Stripes current = stripes;
+        if (current != null && cooled(current)) {
+            merge(current);
+            current = null;
+        }
+        if (current == null) {
+            return takeBase(quantity);
+        }
+        AtomicLongArray cells = current.cells;
+        int slot = slot(current);
+        long cell;
+        while ((int) ((cell = cells.get(slot)) & STOCK) >= quantity) {
+            // another thread sharing the stripe refilled it
+            if (cells.compareAndSet(slot, cell, cell - quantity + TAKE)) {
+                return true;
+            }
+        }
+        if (!takeBase(quantity)) {
+            drain(current);
+            if (!takeBase(quantity)) {
+                return false;
+            }
+        }
+        int allotment = base / (2 * current.count);
+        if (allotment > 0 && takeBase(allotment)) {
+            cells.getAndAdd(slot, allotment);
+        }
+        return true;
+    }
+
+    private boolean takeBase(int quantity) {
+        int stock;
+        do {
+            stock = base;
+            if (stock < quantity) {
+                return false;
+            }
+        } while (!BASE.compareAndSet(this, stock, stock - quantity));
+        return true;
+    }
+
+    /**
+     * Moves every sub-counter's stock back to the base, keeping the take
+     * counts in the high bits
+     */
+    private void drain(Stripes current) {
+        AtomicLongArray cells = current.cells;
+        for (int i = 0; i < current.count; i++) {
+            long cell;
+            do {
+                cell = cells.get(i * PAD);
+            } while (!cells.compareAndSet(i * PAD, cell, cell & ~STOCK));
+            BASE.getAndAdd(this, (int) (cell & STOCK));
+        }
+    }
+
+    /**
+     * Drains before clearing, so a lock-free buyer that sees no stripes
+     * also sees the whole stock in the base. Allotments are made only under
+     * the lock, so nothing refills a sub-counter meanwhile.
+     */
+    private void merge(Stripes current) {
+        drain(current);
+        stripes = null;
+    }
+
+    /**
+     * Called under the lock; measures the sales since the last check once
+     * a cool period has passed
+     */
+    private boolean cooled(Stripes current) {
+        long now = System.nanoTime();
+        if (now - current.checkedAt < COOL_PERIOD) {
+            return false;
+        }
+        int takes = 0;
+        for (int i = 0; i < current.count; i++) {
+            takes += (int) (current.cells.get(i * PAD) >>> 32);
+        }
+        int recent = takes - current.takesAtCheck;
+        current.checkedAt = now;
+        current.takesAtCheck = takes;
+        return recent < MERGE_TAKES;
+    }
+
+    /**
+     * Called under the lock, so no stock is between counters
+     */
+    private int total() {
+        long sum = base;
+        Stripes current = stripes;
+        if (current != null) {
+            for (int i = 0; i < current.count; i++) {
+                sum += current.cells.get(i * PAD) & STOCK;
+            }
+        }
+        return (int) sum;
+    }
+
+    private static int slot(Stripes current) {
+        return ((int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & current.count - 1) * PAD;
+    }
+
+    /**
+     * Sub-counters a cache line or more apart, each holding its stock in the
+     * low 32 bits and a count of the takes it served in the high 32 bits
+     */
+    private static final class Stripes {
+        final AtomicLongArray cells;
+        final int count;
+        long checkedAt;
+        int takesAtCheck;
+
+        Stripes(int count, long now) {
+            this.cells = new AtomicLongArray(count * PAD);
+            this.count = count;
+            this.checkedAt = now;
+        }
+    }
+}
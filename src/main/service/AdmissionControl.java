@@ -0,0 +1,220 @@
+package service;
+
+import dto.PurchaseResult;
+import dto.PurchaseStatus;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Admission control in front of a store's purchases. A purchase is turned
+ * away with a shared, preformatted result before any inventory lookup,
+ * exception or delivery when:
+ * <ul>
+ * <li>the store is shedding load: its fulfilment backlog, or the mean
+ * latency of admitted purchases over the last check interval, is above
+ * its threshold. Shedding is re-evaluated at most once per interval, by
+ * whichever purchase arrives first after it ends.</li>
+ * <li>the customer's email, or the ISBN, is over its rate. Rates are
+ * token buckets in bounded lock-free tables that reuse idle keys' slots.</li>
+ * </ul>
+ * An instance serves one store.
+ */
+public class AdmissionControl {
+    private static final AtomicLongFieldUpdater<AdmissionControl> NEXT_CHECK =
+            AtomicLongFieldUpdater.newUpdater(AdmissionControl.class, "nextCheck");
+
+    private final TokenBuckets emails;
+    private final TokenBuckets isbns;
+    private final int maxBacklog;
+    private final long maxLatencyNanos;
+    private final long checkIntervalNanos;
+    private final LongAdder latencyCount = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+    private volatile IntSupplier backlog;
+    private volatile long nextCheck;
+    private volatile boolean shedding;
+    // guarded by winning the CAS on nextCheck
+    private long checkedCount;
+    private long checkedNanos;
+
+    private AdmissionControl(Builder builder) {
+        this.emails = builder.emailRate > 0
+                ? new TokenBuckets(builder.maxKeys, builder.emailRate, builder.emailBurst) : null;
+        this.isbns = builder.isbnRate > 0
+                ? new TokenBuckets(builder.maxKeys, builder.isbnRate, builder.isbnBurst) : null;
+        this.maxBacklog = builder.maxBacklog;
+        this.maxLatencyNanos = builder.maxLatencyNanos;
+        this.checkIntervalNanos = builder.checkIntervalNanos;
+        this.nextCheck = System.nanoTime();
+    }
+
+    /**
+     * @return a builder with no limits set
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Connects the fulfilment backlog of the store this instance serves
+     */
+    void bind(IntSupplier backlog) {
+        this.backlog = backlog;
+    }
+
+    /**
+     * @param isbn the ISBN being bought
+     * @param email the customer's email address
+     * @return null if the purchase may go ahead, otherwise the shared
+     * OVERLOADED or RATE_LIMITED result
+     */
+    PurchaseResult admit(String isbn, String email) {
+        long now = System.nanoTime();
+        if (shedding(now)) {
+            shed.increment();
+            return PurchaseStatus.OVERLOADED.failure();
+        }
+        if ((emails != null && email != null && !emails.tryAcquire(email, now))
+                || (isbns != null && isbn != null && !isbns.tryAcquire(isbn, now))) {
+            rateLimited.increment();
+            return PurchaseStatus.RATE_LIMITED.failure();
+        }
+        return null;
+    }
+
+    /**
+     * Records the latency of an admitted purchase
+     * @param startNanos the System.nanoTime at which it started
+     */
+    void recordSince(long startNanos) {
+        if (maxLatencyNanos > 0) {
+            latencyNanos.add(System.nanoTime() - startNanos);
+            latencyCount.increment();
+        }
+    }
+
+    private boolean shedding(long now) {
+        long check = nextCheck;
+        if (now - check >= 0 && NEXT_CHECK.compareAndSet(this, check, now + checkIntervalNanos)) {
+            boolean overloaded = false;
+            IntSupplier queued = backlog;
+            if (maxBacklog > 0 && queued != null && queued.getAsInt() > maxBacklog) {
+                overloaded = true;
+            }
+            if (maxLatencyNanos > 0) {
+                long count = latencyCount.sum();
+                long nanos = latencyNanos.sum();
+                long admitted = count - checkedCount;
+                if (admitted > 0 && (nanos - checkedNanos) / admitted > maxLatencyNanos) {
+                    overloaded = true;
+                }
+                checkedCount = count;
+                checkedNanos = nanos;
+            }
+            shedding = overloaded;
+        }
+        return shedding;
+    }
+
+    /**
+     * @return true while purchases are being shed
+     */
+    public boolean isShedding() {
+        return shedding;
+    }
+
+    /**
+     * @return the purchases turned away for exceeding a rate
+     */
+    public long getRateLimitedCount() {
+        return rateLimited.sum();
+    }
+
+    /**
+     * @return the purchases turned away while shedding load
+     */
+    public long getShedCount() {
+        return shed.sum();
+    }
+
+    /**
+     * Builder for admission limits; every limit is off unless set
+     */
+    public static class Builder {
+        private double emailRate;
+        private int emailBurst;
+        private double isbnRate;
+        private int isbnBurst;
+        private int maxKeys = 65_536;
+        private int maxBacklog;
+        private long maxLatencyNanos;
+        private long checkIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+        private Builder() {
+        }
+
+        /**
+         * Limits the purchases of each email address
+         * @param permitsPerSecond the sustained rate
+         * @param burst the purchases allowed at once after a quiet spell
+         */
+        public Builder perEmail(double permitsPerSecond, int burst) {
+            this.emailRate = permitsPerSecond;
+            this.emailBurst = burst;
+            return this;
+        }
+
+        /**
+         * Limits the purchases of each ISBN
+         * @param permitsPerSecond the sustained rate
+         * @param burst the purchases allowed at once after a quiet spell
+         */
+        public Builder perIsbn(double permitsPerSecond, int burst) {
+            this.isbnRate = permitsPerSecond;
+            this.isbnBurst = burst;
+            return this;
+        }
+
+        /**
+         * Bounds each rate table, 65536 keys by default; beyond it the
+         * fullest buckets are reused
+         */
+        public Builder maxKeys(int maxKeys) {
+            this.maxKeys = maxKeys;
+            return this;
+        }
+
+        /**
+         * Sheds purchases while more deliveries than this are queued
+         */
+        public Builder maxBacklog(int maxBacklog) {
+            this.maxBacklog = maxBacklog;
+            return this;
+        }
+
+        /**
+         * Sheds purchases while admitted ones take longer than this on average
+         */
+        public Builder maxLatency(long latency, TimeUnit unit) {
+            this.maxLatencyNanos = unit.toNanos(latency);
+            return this;
+        }
+
+        /**
+         * Sets how often shedding is re-evaluated, 10 ms by default
+         */
+        public Builder checkInterval(long interval, TimeUnit unit) {
+            this.checkIntervalNanos = unit.toNanos(interval);
+            return this;
+        }
+
+        public AdmissionControl build() {
+            return new AdmissionControl(this);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package service;
+
+import dto.Cart;
+import dto.CheckoutResult;
+import dto.FulfilmentStatus;
+import dto.PurchaseResult;
+import model.Book;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Non-blocking facade over a QuantumBookStore. Every call runs on the
+ * facade's executor and completes a future, so callers never block on a
+ * journal fsync, a full fulfilment queue or a delivery. inventoryStream
+ * publishes the catalog with backpressure: the walk stops while the
+ * subscriber has no outstanding demand.
+ * <p>
+ * The default executor starts one virtual thread per task on JDK 21 and
+ * later, so tens of thousands of purchases can be in flight at once.
+ * On older JDKs it falls back to a cached pool of daemon threads.
+ */
+public class AsyncBookStore implements AutoCloseable {
+    private static final int STREAM_BUFFER = 256;
+
+    private final QuantumBookStore store;
+    private final Executor executor;
+    private final ExecutorService owned;
+
+    /**
+     * @param store the store to run calls against
+     * @param executor the executor to run calls and inventory walks on; it
+     * needs at least two threads, as a paused walk holds one while the
+     * subscriber is fed on another
+     */
+    public AsyncBookStore(QuantumBookStore store, Executor executor) {
+        this.store = store;
+        this.executor = executor;
+        this.owned = null;
+    }
+
+    public AsyncBookStore(QuantumBookStore store) {
+        this.store = store;
+        this.owned = defaultExecutor();
+        this.executor = owned;
+    }
+
+    /**
+     * @see QuantumBookStore#addBook
+     */
+    public CompletableFuture<Void> addBookAsync(String type, String isbn, String title,
+                                                int year, double price, Object... additionalParams) {
+        return CompletableFuture.runAsync(
+                () -> store.addBook(type, isbn, title, year, price, additionalParams), executor);
+    }
+
+    /**
+     * @see QuantumBookStore#buyBook
+     */
+    public CompletableFuture<PurchaseResult> buyBookAsync(String isbn, int quantity, String email, String address) {
+        return CompletableFuture.supplyAsync(() -> store.buyBook(isbn, quantity, email, address), executor);
+    }
+
+    /**
+     * @see QuantumBookStore#tryBuyBook
+     */
+    public CompletableFuture<PurchaseResult> tryBuyBookAsync(String isbn, int quantity, String email, String address) {
+        return CompletableFuture.supplyAsync(() -> store.tryBuyBook(isbn, quantity, email, address), executor);
+    }
+
+    /**
+     * @see QuantumBookStore#checkout
+     */
+    public CompletableFuture<CheckoutResult> checkoutAsync(Cart cart) {
+        return CompletableFuture.supplyAsync(() -> store.checkout(cart), executor);
+    }
+
+    /**
+     * Completes once the purchase's deliveries have finished. Waiting
+     * orders hold no thread, only a callback on the fulfilment pipeline.
+     * @param purchase a pending purchase
+     * @return the final fulfilment status; a failed purchase completes
+     * with UNKNOWN
+     */
+    public CompletableFuture<FulfilmentStatus> fulfilmentOf(CompletableFuture<PurchaseResult> purchase) {
+        return purchase.thenCompose(result -> result.isSuccessful()
+                ? store.onFulfilment(result.getOrderId())
+                : CompletableFuture.completedFuture(FulfilmentStatus.UNKNOWN));
+    }
+
+    /**
+     * Publishes every book in the catalog to each subscriber. Each
+     * subscription walks the catalog on its own executor task, pausing
+     * whenever the subscriber's buffer is full, and stops early if the
+     * subscriber cancels.
+     * @return a cold publisher of the catalog
+     */
+    public Flow.Publisher<Book> inventoryStream() {
+        return subscriber -> {
+            SubmissionPublisher<Book> publisher = new SubmissionPublisher<>(executor, STREAM_BUFFER);
+            publisher.subscribe(subscriber);
+            executor.execute(() -> {
+                try {
+                    store.forEachBook(book -> {
+                        if (!publisher.hasSubscribers()) {
+                            throw new CancellationException();
+                        }
+                        publisher.submit(book);
+                    });
+                    publisher.close();
+                } catch (CancellationException e) {
+                    publisher.close();
+                } catch (RuntimeException e) {
+                    publisher.closeExceptionally(e);
+                }
+            });
+        };
+    }
+
+    /**
+     * Shuts down the default executor; a supplied executor is left running
+     */
+    @Override
+    public void close() {
+        if (owned != null) {
+            owned.shutdown();
+        }
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor reflectively so the
+     * store still builds and runs on JDK 17
+     */
+    private static ExecutorService defaultExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "async-store-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package service;
+
+import interfaces.MailTransport;
+import logging.StoreLogger;
+import model.EBook;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mail service that merges ebook deliveries to the same email address
+ * into one message with several attachments
+ */
+public class BatchingMailService extends MailService implements AutoCloseable {
+    private final CoalescingBatcher<String, EBook> batcher;
+
+    /**
+     * @param transport the transport messages are sent through
+     * @param maxAttachments the number of ebooks that triggers an immediate send
+     * @param maxDelay the longest a delivery waits for others to the same address
+     * @param unit the unit of maxDelay
+     */
+    public BatchingMailService(MailTransport transport, int maxAttachments, long maxDelay, TimeUnit unit) {
+        this(transport, maxAttachments, maxDelay, unit, StoreLogger.console());
+    }
+
+    public BatchingMailService(MailTransport transport, int maxAttachments, long maxDelay, TimeUnit unit,
+                               StoreLogger logger) {
+        super(logger);
+        this.batcher = new CoalescingBatcher<>(maxAttachments, maxDelay, unit,
+                (email, attachments) -> send(transport, email, attachments), logger);
+    }
+
+    /**
+     * Queues an ebook for the next message to the email address and returns
+     * without waiting for the message to be sent
+     * @param book the ebook to send
+     * @param email the recipient's email address
+     */
+    @Override
+    public void sendEBook(EBook book, String email) {
+        sendEBookAsync(book, email);
+    }
+
+    /**
+     * Queues an ebook for the next message to the email address
+     * @param book the ebook to send
+     * @param email the recipient's email address
+     * @return a future completed once the message holding the ebook has been
+     * sent, or completed exceptionally if the transport refused it
+     */
+    @Override
+    public CompletableFuture<Void> sendEBookAsync(EBook book, String email) {
+        return batcher.add(email == null ? "" : email.trim().toLowerCase(Locale.ROOT), book);
+    }
+
+    /**
+     * Sends every pending message immediately
+     */
+    public void flush() {
+        batcher.flush();
+    }
+
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    private void send(MailTransport transport, String email, List<EBook> attachments) {
+        transport.send(email, attachments);
+        logger.info("Sending {} ebooks to {}", attachments.size(), email);
+    }
+}
@@ -0,0 +1,74 @@
+package service;
+
+import interfaces.Carrier;
+import logging.StoreLogger;
+import model.PaperBook;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shipping service that merges shipments to the same address into one
+ * parcel manifest, so a burst of orders costs one carrier call per address
+ */
+public class BatchingShippingService extends ShippingService implements AutoCloseable {
+    private final CoalescingBatcher<String, PaperBook> batcher;
+
+    /**
+     * @param carrier the carrier parcels are dispatched to
+     * @param maxParcelSize the number of books that triggers an immediate dispatch
+     * @param maxDelay the longest a shipment waits for others to the same address
+     * @param unit the unit of maxDelay
+     */
+    public BatchingShippingService(Carrier carrier, int maxParcelSize, long maxDelay, TimeUnit unit) {
+        this(carrier, maxParcelSize, maxDelay, unit, StoreLogger.console());
+    }
+
+    public BatchingShippingService(Carrier carrier, int maxParcelSize, long maxDelay, TimeUnit unit,
+                                   StoreLogger logger) {
+        super(logger);
+        this.batcher = new CoalescingBatcher<>(maxParcelSize, maxDelay, unit,
+                (address, manifest) -> dispatch(carrier, address, manifest), logger);
+    }
+
+    /**
+     * Queues a paper book for the next parcel to the address and returns
+     * without waiting for the parcel to be dispatched
+     * @param book the book to ship
+     * @param address the shipping address
+     */
+    @Override
+    public void ship(PaperBook book, String address) {
+        shipAsync(book, address);
+    }
+
+    /**
+     * Queues a paper book for the next parcel to the address
+     * @param book the book to ship
+     * @param address the shipping address
+     * @return a future completed once the parcel holding the book has been
+     * dispatched, or completed exceptionally if the carrier refused it
+     */
+    @Override
+    public CompletableFuture<Void> shipAsync(PaperBook book, String address) {
+        return batcher.add(address == null ? "" : address.trim(), book);
+    }
+
+    /**
+     * Dispatches every pending parcel immediately
+     */
+    public void flush() {
+        batcher.flush();
+    }
+
+    @Override
+    public void close() {
+        batcher.close();
+    }
+
+    private void dispatch(Carrier carrier, String address, List<PaperBook> manifest) {
+        carrier.dispatch(address, manifest);
+        logger.info("Shipping parcel of {} books to {}", manifest.size(), address);
+    }
+}
@@ -0,0 +1,228 @@
+package service;
+
+import interfaces.Catalog;
+import model.Book;
+import model.PaperBook;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Point-in-time view of a store's catalog, stock and revenue for reporting.
+ * Every purchase, hold, adjustment, addition and removal is either wholly
+ * in the view or wholly absent from it, and the view never changes however
+ * long it is read, while the store keeps selling.
+ * <p>
+ * Nothing is copied when the snapshot is taken besides references to the
+ * books. Stock is versioned lazily: the first write to a title after the
+ * snapshot saves the stock it overwrites, and reads prefer that saved value
+ * to the live one. Writers pay for this only while a snapshot is open, and
+ * only once per title. Close the snapshot when done so they stop paying.
+ */
+public class CatalogSnapshot implements AutoCloseable {
+    private static final Comparator<Book> BY_ISBN = Comparator.comparing(Book::getIsbn);
+    private static final long UNSET = Long.MIN_VALUE;
+
+    private final SnapshotRegistry registry;
+    private final int epoch;
+    private final Map<String, Integer> stockBefore = new ConcurrentHashMap<>();
+    private final AtomicLong revenueBefore = new AtomicLong(UNSET);
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean ready;
+    private volatile Set<String> added = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, Book> removed = new ConcurrentHashMap<>();
+    private Book[] books;
+
+    CatalogSnapshot(SnapshotRegistry registry, int epoch) {
+        this.registry = registry;
+        this.epoch = epoch;
+    }
+
+    /**
+     * Lists the books present at the snapshot's epoch. Writers from that
+     * epoch on report the ISBNs they add and the books they remove until
+     * the list is built, so the live catalog can be walked meanwhile.
+     */
+    void capture(Catalog catalog, LongAdder revenue) {
+        long liveRevenue = revenue.sum();
+        revenueBefore.compareAndSet(UNSET, liveRevenue);
+
+        Set<String> newIsbns = added;
+        List<Book> members = new ArrayList<>(catalog.size() + 16);
+        catalog.forEach(book -> {
+            if (!newIsbns.contains(book.getIsbn())) {
+                members.add(book);
+            }
+        });
+        members.addAll(removed.values());
+        added = null;
+        removed = null;
+
+        // a book removed while the catalog was walked may be listed twice;
+        // the sort is stable, so the removed copy comes last and is kept
+        Book[] sorted = members.toArray(new Book[0]);
+        Arrays.parallelSort(sorted, BY_ISBN);
+        int size = 0;
+        for (Book book : sorted) {
+            if (size > 0 && sorted[size - 1].getIsbn().equals(book.getIsbn())) {
+                size--;
+            }
+            sorted[size++] = book;
+        }
+        books = Arrays.copyOf(sorted, size);
+    }
+
+    /**
+     * @return true if a writer of the given epoch must save old values;
+     * it first waits for the writers before the snapshot to finish, so
+     * what it saves already includes their changes
+     */
+    boolean covers(int writerEpoch) {
+        if (writerEpoch - epoch < 0) {
+            return false;
+        }
+        while (!ready) {
+            Thread.yield();
+        }
+        return true;
+    }
+
+    void ready() {
+        ready = true;
+    }
+
+    void saveStock(PaperBook book) {
+        String isbn = book.getIsbn();
+        if (!stockBefore.containsKey(isbn)) {
+            stockBefore.putIfAbsent(isbn, book.getStock());
+        }
+    }
+
+    void saveRevenue(LongAdder revenue) {
+        if (revenueBefore.get() == UNSET) {
+            revenueBefore.compareAndSet(UNSET, revenue.sum());
+        }
+    }
+
+    void saveAdd(String isbn, Catalog catalog) {
+        Set<String> newIsbns = added;
+        if (newIsbns != null && !catalog.contains(isbn)) {
+            newIsbns.add(isbn);
+        }
+    }
+
+    void saveRemove(Book book) {
+        Set<String> newIsbns = added;
+        Map<String, Book> gone = removed;
+        if (gone != null && newIsbns != null && !newIsbns.contains(book.getIsbn())) {
+            gone.putIfAbsent(book.getIsbn(), book);
+        }
+        if (book instanceof PaperBook) {
+            saveStock((PaperBook) book);
+        }
+    }
+
+    /**
+     * @return the number of books in the snapshot
+     */
+    public int size() {
+        return books.length;
+    }
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return the book as it was in the catalog, or null if it was not
+     */
+    public Book getBook(String isbn) {
+        int lo = 0;
+        int hi = books.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = books[mid].getIsbn().compareTo(isbn);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return books[mid];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return the copies in stock at the snapshot; 0 for books without
+     * stock and ISBNs not in the snapshot
+     */
+    public int getStock(String isbn) {
+        Book book = getBook(isbn);
+        return book == null ? 0 : stockOf(book);
+    }
+
+    /**
+     * Visits every book in ISBN order with its stock at the snapshot.
+     * A book's own getStock reads the live stock, so use the given value.
+     * @param action the action to run per book and stock
+     */
+    public void forEach(ObjIntConsumer<Book> action) {
+        for (Book book : books) {
+            action.accept(book, stockOf(book));
+        }
+    }
+
+    /**
+     * @return the copies in stock across every title, summed in parallel
+     */
+    public long getTotalStock() {
+        return Arrays.stream(books).parallel().mapToLong(this::stockOf).sum();
+    }
+
+    /**
+     * @return the list-price value of the stock across every title,
+     * summed in parallel
+     */
+    public double getStockValue() {
+        return Arrays.stream(books).parallel().mapToDouble(book -> book.getPrice() * stockOf(book)).sum();
+    }
+
+    /**
+     * @return the revenue from every purchase made before the snapshot
+     */
+    public double getRevenue() {
+        return revenueBefore.get() / 100.0;
+    }
+
+    /**
+     * Reads the live stock first: a writer saves the old value before it
+     * writes, so a saved value found afterwards always wins
+     */
+    private int stockOf(Book book) {
+        if (!(book instanceof PaperBook)) {
+            return 0;
+        }
+        int live = ((PaperBook) book).getStock();
+        Integer before = stockBefore.get(book.getIsbn());
+        return before != null ? before : live;
+    }
+
+    /**
+     * Stops writers saving old values for this snapshot; it must not be
+     * read afterwards
+     */
+    @Override
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            registry.close(this);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package service;
+
+import logging.StoreLogger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * Groups items by key and hands each group downstream as one batch.
+ * A batch is flushed when it reaches the size threshold, or by a background
+ * sweep once its first item has waited longer than the time threshold.
+ * Each item gets a future that completes when its batch has been handed to
+ * the sink, or fails with the sink's exception, so a caller can retry its
+ * item instead of it being lost with the batch.
+ * @param <K> the key items are coalesced by
+ * @param <V> the item type
+ */
+public class CoalescingBatcher<K, V> implements AutoCloseable {
+    private final Map<K, Batch<V>> pending = new ConcurrentHashMap<>();
+    private final BiConsumer<K, List<V>> sink;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ScheduledExecutorService sweeper;
+    private final StoreLogger logger;
+    private volatile boolean closed;
+
+    /**
+     * @param maxBatchSize the number of items that triggers an immediate flush
+     * @param maxDelay the longest an item waits before its batch is flushed
+     * @param unit the unit of maxDelay
+     * @param sink receives each flushed key and its batch
+     * @param logger reports batches the sink failed to accept
+     */
+    public CoalescingBatcher(int maxBatchSize, long maxDelay, TimeUnit unit,
+                             BiConsumer<K, List<V>> sink, StoreLogger logger) {
+        this.logger = logger;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = unit.toNanos(maxDelay);
+        this.sink = sink;
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "batch-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1, unit.toMillis(maxDelay) / 2);
+        sweeper.scheduleAtFixedRate(this::flushExpired, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds an item to the batch for its key, flushing the batch if it is full.
+     * Once the batcher is closed, items are flushed as soon as they are added.
+     * @param key the key to coalesce by
+     * @param item the item to add
+     * @return a future completed once the item's batch has been handed to the
+     * sink, or completed exceptionally with the exception the sink threw
+     */
+    public CompletableFuture<Void> add(K key, V item) {
+        CompletableFuture<Void> delivered = new CompletableFuture<>();
+        List<Batch<V>> full = new ArrayList<>(1);
+        pending.compute(key, (k, batch) -> {
+            if (batch == null) {
+                batch = new Batch<>(System.nanoTime());
+            }
+            batch.items.add(item);
+            batch.waiters.add(delivered);
+            if (batch.items.size() >= maxBatchSize) {
+                full.add(batch);
+                return null;
+            }
+            return batch;
+        });
+        if (!full.isEmpty()) {
+            deliver(key, full.get(0));
+        } else if (closed) {
+            // close() may already have flushed past this key
+            flush();
+        }
+        return delivered;
+    }
+
+    /**
+     * Flushes every pending batch regardless of size or age. A batch the sink
+     * rejects fails the futures of its items; the rest are still flushed.
+     */
+    public void flush() {
+        for (K key : pending.keySet()) {
+            Batch<V> batch = pending.remove(key);
+            if (batch != null) {
+                deliver(key, batch);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        sweeper.shutdownNow();
+        flush();
+    }
+
+    private void flushExpired() {
+        long now = System.nanoTime();
+        for (Map.Entry<K, Batch<V>> entry : pending.entrySet()) {
+            Batch<V> batch = entry.getValue();
+            if (now - batch.createdAt >= maxDelayNanos && pending.remove(entry.getKey(), batch)) {
+                deliver(entry.getKey(), batch);
+            }
+        }
+    }
+
+    /**
+     * Hands a batch to the sink and settles the futures of its items. A sink
+     * failure is logged rather than thrown, so it can neither cancel the
+     * periodic sweep nor surface on whichever caller happened to fill the batch.
+     */
+    private void deliver(K key, Batch<V> batch) {
+        try {
+            sink.accept(key, batch.items);
+        } catch (RuntimeException e) {
+            logger.warn("Failed to flush batch for {} - {}", key, e.getMessage());
+            batch.waiters.forEach(waiter -> waiter.completeExceptionally(e));
+            return;
+        }
+        batch.waiters.forEach(waiter -> waiter.complete(null));
+    }
+
+    private static final class Batch<V> {
+        final long createdAt;
+        final List<V> items = new ArrayList<>();
+        final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        Batch(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+}
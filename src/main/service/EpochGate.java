@@ -0,0 +1,76 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lets one thread wait until every operation that began before a point in
+ * time has finished, without blocking operations that begin after it.
+ * Operations count themselves in and out under the current epoch's parity;
+ * advance flips the epoch and waits for the old parity to drain. Counters
+ * are striped by thread so entering rarely contends, and each thread always
+ * uses the same stripe so no stripe ever reads below its true count.
+ */
+public final class EpochGate {
+    private static final int PAD = 16;
+
+    private final AtomicLongArray active;
+    private final int mask;
+    private volatile int epoch;
+
+    public EpochGate() {
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)) * 2;
+        this.mask = stripes - 1;
+        this.active = new AtomicLongArray(stripes * 2 * PAD);
+    }
+
+    /**
+     * @return the token to pass to exit; epochOf tells the epoch it entered
+     */
+    public long enter() {
+        int stripe = (int) (Thread.currentThread().getId() * 0x9E3779B9L >>> 16) & mask;
+        while (true) {
+            int e = epoch;
+            int slot = (stripe * 2 + (e & 1)) * PAD;
+            active.incrementAndGet(slot);
+            if (epoch == e) {
+                return (long) e << 32 | slot;
+            }
+            active.decrementAndGet(slot);
+        }
+    }
+
+    public void exit(long token) {
+        active.decrementAndGet((int) token);
+    }
+
+    /**
+     * @param token a token from enter
+     * @return the epoch the operation entered under
+     */
+    public static int epochOf(long token) {
+        return (int) (token >>> 32);
+    }
+
+    /**
+     * @return the current epoch
+     */
+    public int epoch() {
+        return epoch;
+    }
+
+    /**
+     * Starts a new epoch and waits until every operation that entered before
+     * it has exited; only one thread may advance at a time
+     * @return the new epoch
+     */
+    public int advance() {
+        int old = epoch;
+        epoch = old + 1;
+        for (int stripe = 0; stripe <= mask; stripe++) {
+            while (active.get((stripe * 2 + (old & 1)) * PAD) != 0) {
+                Thread.yield();
+            }
+        }
+        return old + 1;
+    }
+}
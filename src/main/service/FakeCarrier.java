@@ -0,0 +1,25 @@
+package service;
+
+import interfaces.Carrier;
+import model.PaperBook;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for a real carrier that only counts dispatches,
+ * used to measure how many downstream calls batching saves
+ */
+public class FakeCarrier implements Carrier {
+    private final AtomicLong parcels = new AtomicLong();
+    private final AtomicLong books = new AtomicLong();
+
+    @Override
+    public void dispatch(String address, List<PaperBook> manifest) {
+        parcels.incrementAndGet();
+        books.addAndGet(manifest.size());
+    }
+
+    public long getParcelCount() { return parcels.get(); }
+    public long getBookCount() { return books.get(); }
+}
@@ -0,0 +1,25 @@
+package service;
+
+import interfaces.MailTransport;
+import model.EBook;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Local stand-in for an SMTP server that only counts messages,
+ * used to measure how many downstream calls batching saves
+ */
+public class FakeMailTransport implements MailTransport {
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong attachments = new AtomicLong();
+
+    @Override
+    public void send(String emailAddress, List<EBook> ebooks) {
+        messages.incrementAndGet();
+        attachments.addAndGet(ebooks.size());
+    }
+
+    public long getMessageCount() { return messages.get(); }
+    public long getAttachmentCount() { return attachments.get(); }
+}
@@ -0,0 +1,333 @@
+package service;
+
+import dto.FulfilmentStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Asynchronous fulfilment of shipping and email deliveries.
+ * Deliveries are queued on a bounded queue drained by a worker pool, so a
+ * purchase returns as soon as its stock is committed. A full queue blocks
+ * the submitting thread, which applies backpressure to checkout instead of
+ * buffering without limit. Failed deliveries are retried with a fixed backoff.
+ * A delivery may also be staged: it returns a future, for example from a
+ * batching service that sends later, and only counts as delivered once that
+ * future completes.
+ */
+public class FulfilmentPipeline {
+    private static final int RETAINED_ORDERS = 100_000;
+
+    private final BlockingQueue<Job> queue;
+    private final ExecutorService workers;
+    private final ScheduledExecutorService retries;
+    private final int maxAttempts;
+    private final long retryBackoffMillis;
+    private final Map<Long, Order> orders = new ConcurrentHashMap<>();
+    private final Queue<Long> completedOrders = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger retainedOrders = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile boolean accepting = true;
+
+    /**
+     * Creates a pipeline whose workers run on the given thread factory;
+     * pass a virtual thread factory to avoid a platform thread per worker
+     * @param workerCount the number of worker threads
+     * @param queueCapacity the maximum number of queued deliveries
+     * @param maxAttempts the attempts made per delivery before it fails
+     * @param retryBackoffMillis the delay before a failed delivery is retried
+     * @param threadFactory the factory for worker threads
+     */
+    public FulfilmentPipeline(int workerCount, int queueCapacity, int maxAttempts,
+                              long retryBackoffMillis, ThreadFactory threadFactory) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.workers = Executors.newFixedThreadPool(workerCount, threadFactory);
+        this.retries = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.maxAttempts = maxAttempts;
+        this.retryBackoffMillis = retryBackoffMillis;
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    public FulfilmentPipeline(int workerCount, int queueCapacity) {
+        this(workerCount, queueCapacity, 3, 100, daemonThreads());
+    }
+
+    /**
+     * Queues the deliveries of an order, blocking while the queue is full
+     * @param orderId the order the deliveries belong to
+     * @param deliveries the shipping and email calls to run
+     * @throws RejectedExecutionException if the pipeline is shutting down
+     */
+    public void submit(long orderId, List<Runnable> deliveries) {
+        List<Supplier<? extends CompletionStage<?>>> staged = new ArrayList<>(deliveries.size());
+        for (Runnable delivery : deliveries) {
+            staged.add(() -> {
+                delivery.run();
+                return CompletableFuture.completedFuture(null);
+            });
+        }
+        submitStaged(orderId, staged);
+    }
+
+    /**
+     * Queues staged deliveries of an order, blocking while the queue is full.
+     * A delivery succeeds when the future it returns completes normally.
+     * @param orderId the order the deliveries belong to
+     * @param deliveries the shipping and email calls to start
+     * @throws RejectedExecutionException if the pipeline is shutting down
+     */
+    public void submitStaged(long orderId, List<? extends Supplier<? extends CompletionStage<?>>> deliveries) {
+        if (!admit()) {
+            throw new RejectedExecutionException("Fulfilment pipeline is shut down");
+        }
+        submitAdmitted(orderId, deliveries);
+    }
+
+    /**
+     * Reserves room for one order before it is placed, so a store never
+     * makes a sale the pipeline then refuses to deliver. Shutdown waits for
+     * admitted orders as it does for queued deliveries. Every successful
+     * admit must be followed by exactly one submitAdmitted or withdraw.
+     * @return false if the pipeline is shutting down
+     */
+    boolean admit() {
+        inFlight.incrementAndGet();
+        if (!accepting) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Gives back an admission whose order was not placed
+     */
+    void withdraw() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Queues the staged deliveries of an admitted order, even if shutdown
+     * has begun since it was admitted
+     */
+    void submitAdmitted(long orderId, List<? extends Supplier<? extends CompletionStage<?>>> deliveries) {
+        try {
+            Order order = new Order(deliveries.size());
+            orders.put(orderId, order);
+            if (deliveries.isEmpty()) {
+                complete(orderId, order, FulfilmentStatus.DELIVERED);
+                return;
+            }
+            for (Supplier<? extends CompletionStage<?>> delivery : deliveries) {
+                inFlight.incrementAndGet();
+                try {
+                    queue.put(new Job(orderId, order, delivery));
+                } catch (InterruptedException e) {
+                    inFlight.decrementAndGet();
+                    Thread.currentThread().interrupt();
+                    complete(orderId, order, FulfilmentStatus.FAILED);
+                    return;
+                }
+            }
+        } finally {
+            withdraw();
+        }
+    }
+
+    /**
+     * @param orderId the order to inspect
+     * @return the current fulfilment status of the order
+     */
+    public FulfilmentStatus status(long orderId) {
+        Order order = orders.get(orderId);
+        if (order == null) {
+            return FulfilmentStatus.UNKNOWN;
+        }
+        return order.done.getNow(FulfilmentStatus.PENDING);
+    }
+
+    /**
+     * Waits for every delivery of an order to finish
+     * @param orderId the order to wait for
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the final status, or PENDING if the timeout elapsed first
+     */
+    public FulfilmentStatus await(long orderId, long timeout, TimeUnit unit) throws InterruptedException {
+        Order order = orders.get(orderId);
+        if (order == null) {
+            return FulfilmentStatus.UNKNOWN;
+        }
+        try {
+            return order.done.get(timeout, unit);
+        } catch (TimeoutException e) {
+            return FulfilmentStatus.PENDING;
+        } catch (ExecutionException e) {
+            return FulfilmentStatus.FAILED;
+        }
+    }
+
+    /**
+     * @param orderId the order to watch
+     * @return a future completed with the final status once every delivery
+     * of the order has finished, without blocking a thread meanwhile
+     */
+    public CompletableFuture<FulfilmentStatus> completion(long orderId) {
+        Order order = orders.get(orderId);
+        if (order == null) {
+            return CompletableFuture.completedFuture(FulfilmentStatus.UNKNOWN);
+        }
+        return order.done.copy();
+    }
+
+    /**
+     * @return the number of deliveries queued, running or awaiting a retry,
+     * plus orders admitted but not yet queued
+     */
+    public int backlog() {
+        return inFlight.get();
+    }
+
+    /**
+     * Stops accepting orders and waits for admitted orders and queued
+     * deliveries to drain
+     * @param timeout the maximum time to wait for the drain
+     * @param unit the unit of the timeout
+     * @return true if every delivery finished before the timeout
+     */
+    public boolean shutdown(long timeout, TimeUnit unit) throws InterruptedException {
+        accepting = false;
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        boolean drained = inFlight.get() == 0;
+        retries.shutdownNow();
+        workers.shutdownNow();
+        return drained;
+    }
+
+    /**
+     * Registers a JVM shutdown hook that drains the pipeline before exit
+     * @param timeout the maximum time the hook waits for the drain
+     * @param unit the unit of the timeout
+     */
+    public void drainOnShutdown(long timeout, TimeUnit unit) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                shutdown(timeout, unit);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "fulfilment-drain"));
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Job job;
+            try {
+                job = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            run(job);
+        }
+    }
+
+    private void run(Job job) {
+        CompletionStage<?> stage;
+        try {
+            stage = job.delivery.get();
+        } catch (RuntimeException e) {
+            attemptFailed(job);
+            return;
+        }
+        stage.whenComplete((result, failure) -> {
+            if (failure == null) {
+                finish(job);
+            } else {
+                attemptFailed(job);
+            }
+        });
+    }
+
+    private void attemptFailed(Job job) {
+        if (++job.attempts < maxAttempts && !retries.isShutdown()) {
+            try {
+                retries.schedule(() -> requeue(job), retryBackoffMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (RejectedExecutionException e) {
+                // shut down between the check and the schedule
+            }
+        }
+        job.order.failed = true;
+        finish(job);
+    }
+
+    private void finish(Job job) {
+        if (job.order.remaining.decrementAndGet() == 0) {
+            complete(job.orderId, job.order,
+                    job.order.failed ? FulfilmentStatus.FAILED : FulfilmentStatus.DELIVERED);
+        }
+        inFlight.decrementAndGet();
+    }
+
+    private void requeue(Job job) {
+        if (!queue.offer(job)) {
+            run(job);
+        }
+    }
+
+    private void complete(long orderId, Order order, FulfilmentStatus status) {
+        if (!order.done.complete(status)) {
+            return;
+        }
+        completedOrders.add(orderId);
+        if (retainedOrders.incrementAndGet() > RETAINED_ORDERS) {
+            Long oldest = completedOrders.poll();
+            if (oldest != null) {
+                orders.remove(oldest);
+                retainedOrders.decrementAndGet();
+            }
+        }
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "fulfilment-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Order {
+        final AtomicInteger remaining;
+        final CompletableFuture<FulfilmentStatus> done = new CompletableFuture<>();
+        volatile boolean failed;
+
+        Order(int deliveries) {
+            this.remaining = new AtomicInteger(deliveries);
+        }
+    }
+
+    private static final class Job {
+        final long orderId;
+        final Order order;
+        final Supplier<? extends CompletionStage<?>> delivery;
+        volatile int attempts;
+
+        Job(long orderId, Order order, Supplier<? extends CompletionStage<?>> delivery) {
+            this.orderId = orderId;
+            this.order = order;
+            this.delivery = delivery;
+        }
+    }
+}
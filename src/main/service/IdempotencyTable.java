@@ -0,0 +1,142 @@
+package service;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Remembers the result of each request key for a time window, so a
+ * retried request gets the original result instead of running again.
+ * A retry that arrives while the original is still running waits for it.
+ * <p>
+ * Keys sit in one concurrent map and, in arrival order, on an expiry
+ * queue. Each request reclaims up to two keys from the head of the queue,
+ * those past the window or beyond maxKeys. Concurrent requests reclaim
+ * side by side, as the queue's poll hands each head to one of them, so
+ * expiry costs O(1) per request, never a sweep, and the keys held stay
+ * within maxKeys plus the number of requests in flight however many keys
+ * arrive. A key past its window is treated as new even before it is
+ * reclaimed.
+ */
+final class IdempotencyTable<R> {
+    private static final int RECLAIM_PER_CALL = 2;
+
+    private final Map<String, Entry<R>> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry<R>> expiry = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final long windowNanos;
+    private final int maxKeys;
+    private final Predicate<R> remember;
+
+    /**
+     * @param window how long a key is remembered
+     * @param unit the unit of the window
+     * @param maxKeys the most keys remembered; beyond it the oldest go early
+     * @param remember whether a result should be replayed; others, e.g.
+     * transient rejections, leave the key free for a real retry
+     */
+    IdempotencyTable(long window, TimeUnit unit, int maxKeys, Predicate<R> remember) {
+        if (window <= 0 || maxKeys <= 0) {
+            throw new IllegalArgumentException("Window and key limit must be positive");
+        }
+        this.windowNanos = unit.toNanos(window);
+        this.maxKeys = maxKeys;
+        this.remember = remember;
+    }
+
+    /**
+     * Runs the request unless its key was seen within the window
+     * @param key the client's idempotency key
+     * @param request the request to run the first time
+     * @return the result of the first run of the key
+     */
+    R run(String key, Supplier<R> request) {
+        long now = System.nanoTime();
+        reclaim(now);
+        Entry<R> mine = null;
+        while (true) {
+            Entry<R> existing = entries.get(key);
+            if (existing != null && !existing.expired(now, windowNanos)) {
+                try {
+                    return existing.join();
+                } catch (CompletionException | CancellationException e) {
+                    // the first attempt threw and released the key
+                    continue;
+                }
+            }
+            if (mine == null) {
+                mine = new Entry<>(key, now);
+            }
+            if (existing == null ? entries.putIfAbsent(key, mine) == null : entries.replace(key, existing, mine)) {
+                break;
+            }
+        }
+        expiry.offer(mine);
+        queued.incrementAndGet();
+
+        R result;
+        try {
+            result = request.get();
+        } catch (RuntimeException | Error e) {
+            entries.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+        if (!remember.test(result)) {
+            entries.remove(key, mine);
+        }
+        mine.complete(result);
+        return result;
+    }
+
+    /**
+     * @return the number of keys awaiting reclamation, an upper bound on
+     * the keys remembered
+     */
+    int size() {
+        return queued.get();
+    }
+
+    private void reclaim(long now) {
+        for (int i = 0; i < RECLAIM_PER_CALL; i++) {
+            Entry<R> head = expiry.peek();
+            if (head == null || (!head.expired(now, windowNanos) && queued.get() <= maxKeys)) {
+                return;
+            }
+            // another request may have taken the head since the peek; the
+            // one polled instead is the next oldest
+            Entry<R> oldest = expiry.poll();
+            if (oldest == null) {
+                return;
+            }
+            queued.decrementAndGet();
+            entries.remove(oldest.key, oldest);
+        }
+    }
+
+    /**
+     * A key's entry is also the future of its result, so remembering a
+     * key costs one object besides the map and queue nodes
+     */
+    private static final class Entry<R> extends CompletableFuture<R> {
+        final String key;
+        final long createdAt;
+
+        Entry(String key, long createdAt) {
+            this.key = key;
+            this.createdAt = createdAt;
+        }
+
+        boolean expired(long now, long windowNanos) {
+            return now - createdAt > windowNanos;
+        }
+    }
+}
@@ -1,11 +1,24 @@
 package service;
 
+import logging.LogLevel;
+import logging.StoreLogger;
 import model.EBook;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Service for handling email delivery of ebooks
  */
 public class MailService {
+    protected final StoreLogger logger;
+
+    public MailService() {
+        this(StoreLogger.console());
+    }
+
+    public MailService(StoreLogger logger) {
+        this.logger = logger;
+    }
 
     /**
      * Sends an ebook to the specified email address
@@ -13,7 +26,20 @@ public class MailService {
      * @param email the recipient's email address
      */
     public void sendEBook(EBook book, String email) {
-        System.out.println("Quantum book store: Sending " + book.getTitle() +
-                " (" + book.getFiletype() + ") to " + email);
+        if (logger.isEnabled(LogLevel.INFO)) {
+            logger.info("Sending {} to {}", book.getTitle() + " (" + book.getFiletype() + ")", email);
+        }
+    }
+
+    /**
+     * Sends an ebook, for callers that need to know when it has actually
+     * gone out. This sends inline; services that defer sending override it.
+     * @param book the ebook to send
+     * @param email the recipient's email address
+     * @return a future completed once the ebook has been sent
+     */
+    public CompletableFuture<Void> sendEBookAsync(EBook book, String email) {
+        sendEBook(book, email);
+        return CompletableFuture.completedFuture(null);
     }
-}
\ No newline at end of file
+}
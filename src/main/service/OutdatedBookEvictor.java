@@ -0,0 +1,226 @@
+package service;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Removes outdated books from a store without a stop-the-world sweep.
+ * A sweep lists the outdated books once, oldest first, and removes them in
+ * small batches through the store, so no lock is ever held across batches
+ * and purchases run at full speed throughout; with a journal, a purchase
+ * waits at most for one batch to be logged.
+ * <p>
+ * evictAll splits the list on publication-year boundaries and removes the
+ * buckets in parallel on a fork-join pool. Each batch may wait for a
+ * journal fsync, so it runs as a managed block and the pool compensates
+ * with a spare worker instead of starving. evictFor removes batches until a
+ * time budget is spent and resumes where it stopped on the next call; start
+ * runs it periodically on a background thread.
+ */
+public class OutdatedBookEvictor implements AutoCloseable {
+    private final QuantumBookStore store;
+    private final int years;
+    private final int batchSize;
+    private final AtomicLong evicted = new AtomicLong();
+    private ScheduledExecutorService scheduler;
+
+    private List<Book> pending = List.of();
+    private int next;
+
+    /**
+     * @param store the store to evict from
+     * @param years the age threshold in years
+     * @param batchSize the most books removed per batch
+     */
+    public OutdatedBookEvictor(QuantumBookStore store, int years, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.store = store;
+        this.years = years;
+        this.batchSize = batchSize;
+    }
+
+    public OutdatedBookEvictor(QuantumBookStore store, int years) {
+        this(store, years, 256);
+    }
+
+    /**
+     * Removes every outdated book, one fork-join task per group of
+     * publication years
+     * @param pool the pool to run the sweep on
+     * @return the removed books, oldest first
+     */
+    public List<Book> evictAll(ForkJoinPool pool) {
+        List<Book> outdated = store.findOutdated(years);
+        List<Book> removed = pool.invoke(new Sweep(outdated, 0, outdated.size()));
+        evicted.addAndGet(removed.size());
+        return removed;
+    }
+
+    /**
+     * Removes batches of outdated books until the budget is spent, resuming
+     * the previous sweep if it is unfinished. At least one batch is removed
+     * per call, so a tiny budget still makes progress.
+     * @param budget the time to spend
+     * @param unit the unit of the budget
+     * @return the number of books removed by this call
+     */
+    public synchronized int evictFor(long budget, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(budget);
+        if (next >= pending.size()) {
+            pending = store.findOutdated(years);
+            next = 0;
+        }
+        int removed = 0;
+        do {
+            int end = Math.min(next + batchSize, pending.size());
+            if (next >= end) {
+                break;
+            }
+            removed += store.evict(pending.subList(next, end)).size();
+            next = end;
+        } while (System.nanoTime() - deadline < 0);
+        if (next >= pending.size()) {
+            pending = List.of();
+            next = 0;
+        }
+        evicted.addAndGet(removed);
+        return removed;
+    }
+
+    /**
+     * Runs evictFor on a background thread at a fixed rate
+     * @param period the time between slices
+     * @param sliceBudget the time each slice may spend
+     * @param unit the unit of both times
+     */
+    public synchronized void start(long period, long sliceBudget, TimeUnit unit) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Evictor already started");
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "book-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> evictFor(sliceBudget, unit), 0, period, unit);
+    }
+
+    /**
+     * @return the number of books removed by this evictor so far
+     */
+    public long getEvictedCount() {
+        return evicted.get();
+    }
+
+    /**
+     * Stops background eviction, waiting for a running slice to finish.
+     * If interrupted while waiting, returns with the interrupt flag set.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService running;
+        synchronized (this) {
+            running = scheduler;
+            scheduler = null;
+        }
+        if (running != null) {
+            running.shutdown();
+            try {
+                running.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Removes books[from, to), splitting at the year boundary nearest the
+     * middle while the range spans more than one batch
+     */
+    private final class Sweep extends RecursiveTask<List<Book>> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<Book> books;
+        private final int from;
+        private final int to;
+
+        Sweep(List<Book> books, int from, int to) {
+            this.books = books;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected List<Book> compute() {
+            if (to - from <= batchSize) {
+                Batch batch = new Batch(books.subList(from, to));
+                try {
+                    ForkJoinPool.managedBlock(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return batch.removed != null ? batch.removed : List.of();
+            }
+            int split = yearBoundary(from + (to - from) / 2);
+            Sweep older = new Sweep(books, from, split);
+            older.fork();
+            List<Book> newer = new Sweep(books, split, to).compute();
+            List<Book> removed = new ArrayList<>(older.join());
+            removed.addAll(newer);
+            return removed;
+        }
+
+        /**
+         * @return where mid's year starts, or where it ends if it starts the
+         * range, or mid itself if the whole range is one year
+         */
+        private int yearBoundary(int mid) {
+            int year = books.get(mid).getYear();
+            int start = mid;
+            while (start > from && books.get(start - 1).getYear() == year) {
+                start--;
+            }
+            if (start > from) {
+                return start;
+            }
+            int end = mid;
+            while (end < to && books.get(end).getYear() == year) {
+                end++;
+            }
+            return end < to ? end : mid;
+        }
+    }
+
+    /**
+     * One batch removal, which blocks while the journal logs it
+     */
+    private final class Batch implements ForkJoinPool.ManagedBlocker {
+        private final List<Book> books;
+        private List<Book> removed;
+
+        Batch(List<Book> books) {
+            this.books = books;
+        }
+
+        @Override
+        public boolean block() {
+            removed = store.evict(books);
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return removed != null;
+        }
+    }
+}
@@ -2,25 +2,113 @@ package service;
 
 import model.*;
 import interfaces.*;
-import factory.BookFactory;
+import logging.LogLevel;
+import logging.StoreLogger;
+import metrics.MetricsRegistry;
+import metrics.StoreMetrics;
+import factory.BookTypeRegistry;
+import dto.Cart;
+import dto.CheckoutResult;
+import dto.FulfilmentStatus;
+import dto.InventoryPage;
 import dto.PurchaseResult;
+import dto.PurchaseStatus;
+import dto.Reservation;
 import exception.*;
+import storage.HashMapCatalog;
+import storage.Journal;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
- * Main service class for the Quantum Bookstore
+ * Main service class for the Quantum Bookstore.
+ * Safe for concurrent use: the inventory is a concurrent Catalog backend and
+ * stock is reserved per book with compare-and-set, so purchases of different ISBNs
+ * never contend and purchases of the same ISBN never oversell.
+ * With a Journal configured, every mutation is made durable before it is
+ * acknowledged, and the catalog is rebuilt from the journal on construction.
  */
-public class QuantumBookStore {
-    private final Map<String, Book> inventory;
+public class QuantumBookStore implements AutoCloseable {
+    private final Catalog inventory;
     private final ShippingService shippingService;
     private final MailService mailService;
+    private final FulfilmentPipeline fulfilment;
+    private final Journal journal;
+    private final StoreMetrics metrics;
+    private final StoreLogger logger;
+    private final BookTypeRegistry bookTypes;
+    private final AdmissionControl admission;
+    private final IdempotencyTable<PurchaseResult> purchaseKeys;
+    private final IdempotencyTable<CheckoutResult> checkoutKeys;
+    private final AtomicLong orderSequence = new AtomicLong();
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+    // copies held per ISBN; an entry is removed once its last hold settles
+    private final Map<String, Integer> heldStock = new ConcurrentHashMap<>();
+    private volatile TimingWheel holdTimer;
+    // the timer this store started itself, guarded by holds
+    private TimingWheel ownedHoldTimer;
+    private final SnapshotRegistry snapshots = new SnapshotRegistry();
+    private final LongAdder revenueCents = new LongAdder();
+
+    static final int EVICTION_BATCH = 1024;
 
     public QuantumBookStore() {
-        this.inventory = new HashMap<>();
-        this.shippingService = new ShippingService();
-        this.mailService = new MailService();
+        this(builder());
+    }
+
+    private QuantumBookStore(Builder builder) {
+        this.inventory = builder.catalog != null ? builder.catalog : new HashMapCatalog();
+        this.logger = builder.logger;
+        this.bookTypes = builder.bookTypes != null ? builder.bookTypes : BookTypeRegistry.withDefaults();
+        this.shippingService = builder.shippingService != null
+                ? builder.shippingService : new ShippingService(logger);
+        this.mailService = builder.mailService != null
+                ? builder.mailService : new MailService(logger);
+        this.fulfilment = builder.fulfilment;
+        this.journal = builder.journal;
+        this.holdTimer = builder.holdTimer;
+        this.admission = builder.admission;
+        this.purchaseKeys = new IdempotencyTable<>(builder.idempotencyWindowNanos, TimeUnit.NANOSECONDS,
+                builder.idempotencyMaxKeys, result -> result.getStatus() != PurchaseStatus.RATE_LIMITED
+                        && result.getStatus() != PurchaseStatus.OVERLOADED);
+        this.checkoutKeys = new IdempotencyTable<>(builder.idempotencyWindowNanos, TimeUnit.NANOSECONDS,
+                builder.idempotencyMaxKeys, result -> true);
+        if (admission != null && fulfilment != null) {
+            admission.bind(fulfilment::backlog);
+        }
+        this.metrics = builder.metrics == null ? null : new StoreMetrics(builder.metrics, inventory);
+        if (metrics != null && fulfilment != null) {
+            builder.metrics.gauge("bookstore_fulfilment_backlog", "Deliveries queued for fulfilment", fulfilment::backlog);
+        }
+        if (journal != null) {
+            try {
+                journal.recover(inventory);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Journal recovery failed", e);
+            }
+            orderSequence.set(journal.getOrderCount());
+            logger.info("Recovered {} books from journal", inventory.size());
+        }
+    }
+
+    /**
+     * @return a builder for a store with custom delivery services or fulfilment
+     */
+    public static Builder builder() {
+        return new Builder();
     }
 
     /**
@@ -35,41 +123,300 @@ public class QuantumBookStore {
      */
     public void addBook(String type, String isbn, String title,
                         int year, double price, Object... additionalParams) {
+        long start = metrics == null ? 0 : System.nanoTime();
         try {
-            if (inventory.containsKey(isbn)) {
+            if (inventory.contains(isbn)) {
                 throw new DuplicateBookException(isbn);
             }
-            Book book = BookFactory.createBook(type, isbn, title, year, price, additionalParams);
-            inventory.put(isbn, book);
-            System.out.println("Quantum book store: Added book - " + book);
-        } catch (InvalidBookTypeException | DuplicateBookException e) {
-            System.out.println("Quantum book store: Failed to add book - " + e.getMessage());
+            Book book = bookTypes.resolve(type).create(isbn, title, year, price, additionalParams);
+            if (!insert(book)) {
+                throw new DuplicateBookException(isbn);
+            }
+            logger.info("Added book - {}", book);
+        } catch (InvalidBookTypeException | DuplicateBookException | IllegalArgumentException e) {
+            logger.info("Failed to add book - {}", e.getMessage());
+        }
+        if (metrics != null) {
+            metrics.addLatency().recordSince(start);
+        }
+    }
+
+    /**
+     * Adds a book built with a typed create method such as
+     * {@code BookTypes.PAPER.create(isbn, title, year, price, stock)}.
+     * Unlike the string-typed addBook this needs no varargs array, no type
+     * name lookup and, when the ISBN is free, no exception; the catalog
+     * still allocates whatever it needs to store and index the book.
+     * @param book the book to add
+     * @return false if a book with the ISBN already exists
+     * @throws IllegalArgumentException if the store has a journal and the
+     * book is of a class the journal cannot encode
+     */
+    public boolean addBook(Book book) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        boolean added = insert(book);
+        if (added) {
+            logger.info("Added book - {}", book);
+        } else if (logger.isEnabled(LogLevel.INFO)) {
+            logger.info("Failed to add book - {}", new DuplicateBookException(book.getIsbn()).getMessage());
+        }
+        if (metrics != null) {
+            metrics.addLatency().recordSince(start);
+        }
+        return added;
+    }
+
+    /**
+     * @return the book types addBook resolves names against; register
+     * new types here at runtime. With a journal, only books of the built-in
+     * classes can be added, as only those can be journaled.
+     */
+    public BookTypeRegistry getBookTypes() {
+        return bookTypes;
+    }
+
+    private boolean insert(Book book) {
+        return journal == null ? add(book) : journal.commitAdd(book, () -> add(book));
+    }
+
+    /**
+     * This and the other in-memory changes below each run inside the
+     * snapshot gate, and inside the journal lock when there is one, so a
+     * snapshot sees every change whole or not at all and never waits on an fsync
+     */
+    private boolean add(Book book) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordAdd(token, book.getIsbn(), inventory);
+            return inventory.add(book);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private boolean remove(Book book) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordRemove(token, book);
+            return inventory.remove(book);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private boolean take(Book book, int quantity) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordStock(token, book);
+            return ((Purchasable) book).tryPurchase(quantity);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private boolean sell(Book book, int quantity, long cents) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordStock(token, book);
+            if (!((Purchasable) book).tryPurchase(quantity)) {
+                return false;
+            }
+            snapshots.recordRevenue(token, revenueCents);
+            revenueCents.add(cents);
+            return true;
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private boolean sellAll(SortedMap<String, Integer> quantities, Map<String, Purchasable> books,
+                            String[] shortIsbn, long cents) {
+        long token = snapshots.enter();
+        try {
+            for (Purchasable book : books.values()) {
+                snapshots.recordStock(token, (Book) book);
+            }
+            if (!reserveAll(quantities, books, shortIsbn)) {
+                return false;
+            }
+            snapshots.recordRevenue(token, revenueCents);
+            revenueCents.add(cents);
+            return true;
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private int adjust(PaperBook book, int delta) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordStock(token, book);
+            return book.adjustStock(delta);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private void sellHeld(Hold hold, long cents) {
+        long token = snapshots.enter();
+        try {
+            unhold(hold);
+            snapshots.recordRevenue(token, revenueCents);
+            revenueCents.add(cents);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    private void putBack(Hold hold) {
+        long token = snapshots.enter();
+        try {
+            snapshots.recordStock(token, hold.book);
+            unhold(hold);
+            ((Purchasable) hold.book).cancelPurchase(hold.quantity);
+        } finally {
+            snapshots.exit(token);
+        }
+    }
+
+    /**
+     * Adds already built books in one batch, skipping ISBNs that are taken.
+     * Logs a single summary line instead of one line per book.
+     * @param books the books to add
+     * @return the number of books added
+     * @throws IllegalArgumentException if the store has a journal and one of
+     * the books is of a class the journal cannot encode; none is then added
+     */
+    public int addBooks(List<Book> books) {
+        int added;
+        if (journal != null) {
+            added = journal.commitAddAll(books, this::add);
+        } else {
+            added = 0;
+            for (Book book : books) {
+                if (add(book)) {
+                    added++;
+                }
+            }
         }
+        logger.debug("Added {} of {} books", added, books.size());
+        return added;
     }
 
     /**
-     * Removes and returns books older than the specified number of years
+     * Removes a single book, e.g. to hand it over to another shard
+     * @param isbn the ISBN of the book to remove
+     * @return the removed book, or null if there was none
+     */
+    public Book removeBook(String isbn) {
+        Book book = lookup(isbn);
+        if (book == null) {
+            return null;
+        }
+        boolean removed = journal == null ? remove(book)
+                : journal.commitRemove(isbn, () -> remove(book));
+        if (!removed) {
+            return null;
+        }
+        logger.info("Removed book - {}", book);
+        return book;
+    }
+
+    /**
+     * Removes and returns books older than the specified number of years.
+     * Books are removed in batches, oldest first, so purchases are never
+     * blocked for longer than one batch, even with a journal configured.
+     * Use an OutdatedBookEvictor to sweep in parallel or in the background.
      * @param years the age threshold in years
      * @return list of removed books
      */
     public List<Book> removeOutdatedBooks(int years) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<Book> candidates = findOutdated(years);
+        List<Book> outdatedBooks = new ArrayList<>();
+        for (int from = 0; from < candidates.size(); from += EVICTION_BATCH) {
+            outdatedBooks.addAll(evict(candidates.subList(from, Math.min(from + EVICTION_BATCH, candidates.size()))));
+        }
+        if (metrics != null) {
+            metrics.removeLatency().recordSince(start);
+        }
+
+        return outdatedBooks;
+    }
+
+    /**
+     * @param years the age threshold in years
+     * @return the books older than the threshold, oldest first
+     */
+    List<Book> findOutdated(int years) {
         int currentYear = java.time.LocalDate.now().getYear();
         int cutoffYear = currentYear - years;
+        return inventory.findByYearRange(Integer.MIN_VALUE, cutoffYear - 1);
+    }
 
-        List<Book> outdatedBooks = inventory.values().stream()
-                .filter(book -> book.getYear() < cutoffYear)
-                .collect(Collectors.toList());
+    /**
+     * Removes the given books that are still in the catalog. With a journal
+     * the batch is logged under one short lock and made durable with one wait.
+     * @param books the books to remove
+     * @return the books this call removed
+     */
+    List<Book> evict(List<Book> books) {
+        List<Book> removed;
+        if (journal != null) {
+            removed = journal.commitRemoveAll(books, this::remove);
+        } else {
+            removed = new ArrayList<>(books.size());
+            for (Book book : books) {
+                if (remove(book)) {
+                    removed.add(book);
+                }
+            }
+        }
+        removed.forEach(book -> logger.info("Removed outdated book - {}", book));
+        return removed;
+    }
 
-        outdatedBooks.forEach(book -> {
-            inventory.remove(book.getIsbn());
-            System.out.println("Quantum book store: Removed outdated book - " + book);
-        });
+    /**
+     * Finds books published within a range of years
+     * @param fromYear the first year, inclusive
+     * @param toYear the last year, inclusive
+     * @return matching books, oldest first
+     */
+    public List<Book> findByYearRange(int fromYear, int toYear) {
+        return inventory.findByYearRange(fromYear, toYear);
+    }
 
-        return outdatedBooks;
+    /**
+     * Finds books priced within a range
+     * @param minPrice the lowest price, inclusive
+     * @param maxPrice the highest price, inclusive
+     * @return matching books, cheapest first
+     */
+    public List<Book> findByPriceRange(double minPrice, double maxPrice) {
+        return inventory.findByPriceRange(minPrice, maxPrice);
+    }
+
+    /**
+     * Finds every book of one type
+     * @param type the book class, e.g. PaperBook.class
+     * @return matching books in no particular order
+     */
+    public <T extends Book> List<T> findByType(Class<T> type) {
+        return inventory.findByType(type);
+    }
+
+    /**
+     * Finds books whose title starts with a prefix, ignoring case
+     * @param prefix the title prefix
+     * @return matching books in title order
+     */
+    public List<Book> searchTitlePrefix(String prefix) {
+        return inventory.searchTitlePrefix(prefix);
     }
 
     /**
-     * Purchases a book from the inventory
+     * Purchases a book from the inventory. A purchase turned away by
+     * admission control returns its shared result without logging.
      * @param isbn the ISBN of the book to purchase
      * @param quantity the quantity to purchase
      * @param email the customer's email address
@@ -77,53 +424,752 @@ public class QuantumBookStore {
      * @return PurchaseResult containing the outcome of the purchase
      */
     public PurchaseResult buyBook(String isbn, int quantity, String email, String address) {
+        PurchaseResult result = tryBuyBook(isbn, quantity, email, address);
+        if (result.isSuccessful()) {
+            if (logger.isEnabled(LogLevel.INFO)) {
+                logger.info("Successfully purchased {} copies of {}", quantity, result.getTitle());
+            }
+            return result;
+        }
+        if (result.getStatus() == PurchaseStatus.RATE_LIMITED || result.getStatus() == PurchaseStatus.OVERLOADED) {
+            return result;
+        }
+        String reason = describeFailure(result.getStatus(), isbn, quantity);
+        logger.info("Purchase failed - {}", reason);
+        return PurchaseResult.failure(result.getStatus(), "Quantum book store: Purchase failed - " + reason);
+    }
+
+    /**
+     * Purchases a book at most once per idempotency key. A retry of the key
+     * within the idempotency window, e.g. after a client timeout, returns
+     * the original result without touching stock or delivering again; a
+     * retry while the original is still running waits for it. Transient
+     * admission rejections are not remembered. Keys are not journaled, so
+     * they are forgotten on restart.
+     * @param idempotencyKey the client's unique key for this purchase
+     * @param isbn the ISBN of the book to purchase
+     * @param quantity the quantity to purchase
+     * @param email the customer's email address
+     * @param address the shipping address
+     * @return the result of the first purchase with the key
+     */
+    public PurchaseResult buyBook(String idempotencyKey, String isbn, int quantity, String email, String address) {
+        return purchaseKeys.run(idempotencyKey, () -> buyBook(isbn, quantity, email, address));
+    }
+
+    /**
+     * Purchases a book without throwing, formatting or printing anything.
+     * Failures return the shared result of their PurchaseStatus, so a failed
+     * attempt allocates nothing; a success message is only formatted if read.
+     * @param isbn the ISBN of the book to purchase
+     * @param quantity the quantity to purchase
+     * @param email the customer's email address
+     * @param address the shipping address
+     * @return PurchaseResult whose status tells the outcome of the purchase
+     */
+    public PurchaseResult tryBuyBook(String isbn, int quantity, String email, String address) {
+        if (admission != null) {
+            PurchaseResult rejected = admission.admit(isbn, email);
+            if (rejected != null) {
+                if (metrics != null) {
+                    metrics.recordFailure(rejected.getStatus());
+                }
+                return rejected;
+            }
+        }
+        if (metrics == null && admission == null) {
+            return purchase(isbn, quantity, email, address);
+        }
+        long start = System.nanoTime();
+        PurchaseResult result = purchase(isbn, quantity, email, address);
+        if (admission != null) {
+            admission.recordSince(start);
+        }
+        if (metrics != null) {
+            metrics.buyLatency().recordSince(start);
+            if (!result.isSuccessful()) {
+                metrics.recordFailure(result.getStatus());
+            }
+        }
+        return result;
+    }
+
+    private PurchaseResult purchase(String isbn, int quantity, String email, String address) {
+        if (quantity <= 0) {
+            return PurchaseStatus.INVALID_QUANTITY.failure();
+        }
+        Book book = lookup(isbn);
+        if (book == null) {
+            return PurchaseStatus.BOOK_NOT_FOUND.failure();
+        }
+        if (!(book instanceof Purchasable)) {
+            return PurchaseStatus.NOT_PURCHASABLE.failure();
+        }
+        if (!admitOrder()) {
+            return PurchaseStatus.SHUT_DOWN.failure();
+        }
+        double amount = book.getPrice() * quantity;
+        long cents = Math.round(amount * 100);
+        long orderId;
+        boolean placed = false;
+        try {
+            if (!(journal == null ? sell(book, quantity, cents)
+                    : journal.commitOrder(isbn, quantity, () -> sell(book, quantity, cents)))) {
+                return PurchaseStatus.INSUFFICIENT_STOCK.failure();
+            }
+            orderId = orderSequence.incrementAndGet();
+            placed = true;
+            fulfil(orderId, book, email, address);
+        } finally {
+            if (!placed) {
+                withdrawOrder();
+            }
+        }
+        if (metrics != null) {
+            metrics.recordPurchase(book, quantity, amount);
+        }
+        return PurchaseResult.purchased(amount, quantity, book.getTitle(), orderId);
+    }
+
+    /**
+     * Adds received copies to a paper book's stock, safely alongside
+     * concurrent purchases
+     * @param isbn the ISBN of the book to restock
+     * @param quantity the number of copies received
+     * @throws BookNotFoundException if no book has the ISBN
+     * @throws IllegalArgumentException if the quantity is not positive or
+     * the book has no stock
+     */
+    public void restock(String isbn, int quantity) throws BookNotFoundException {
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Restock quantity must be positive: " + quantity);
+        }
+        adjustStock(isbn, quantity);
+    }
+
+    /**
+     * Adds or removes copies of a paper book. Only copies on hand can be
+     * removed: held copies are not, and a removal larger than the stock
+     * empties it rather than failing.
+     * @param isbn the ISBN of the book to adjust
+     * @param delta the change in copies
+     * @return the change actually applied
+     * @throws BookNotFoundException if no book has the ISBN
+     * @throws IllegalArgumentException if the book has no stock
+     */
+    public int adjustStock(String isbn, int delta) throws BookNotFoundException {
+        Book book = lookup(isbn);
+        if (book == null) {
+            throw new BookNotFoundException(isbn);
+        }
+        if (!(book instanceof PaperBook)) {
+            throw new IllegalArgumentException(book.getTitle() + " has no stock to adjust");
+        }
+        PaperBook paper = (PaperBook) book;
+        int applied = journal == null ? adjust(paper, delta)
+                : journal.commitAdjust(isbn, () -> adjust(paper, delta));
+        logger.info("Adjusted stock of {} by {}", book.getTitle(), applied);
+        return applied;
+    }
+
+    /**
+     * Applies a batch of stock changes, one atomic update per title, and
+     * with a journal waits once for the whole batch. ISBNs that are unknown
+     * or have no stock are skipped.
+     * @param deltas the change in copies per ISBN
+     * @return the number of titles whose stock changed
+     */
+    public int adjustStockAll(Map<String, Integer> deltas) {
+        int adjusted;
+        if (journal != null) {
+            adjusted = journal.commitAdjustAll(deltas, this::adjustIfStocked);
+        } else {
+            adjusted = 0;
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                if (adjustIfStocked(delta.getKey(), delta.getValue()) != 0) {
+                    adjusted++;
+                }
+            }
+        }
+        logger.debug("Adjusted stock of {} of {} titles", adjusted, deltas.size());
+        return adjusted;
+    }
+
+    private int adjustIfStocked(String isbn, int delta) {
+        Book book = lookup(isbn);
+        return book instanceof PaperBook ? adjust((PaperBook) book, delta) : 0;
+    }
+
+    /**
+     * Holds copies of a book while the customer pays. The copies leave the
+     * available stock at once, so nothing else can sell them, and return to
+     * it when the hold is released or expires. With a journal the hold is
+     * durable before it is acknowledged.
+     * @param isbn the ISBN of the book to hold
+     * @param quantity the number of copies to hold
+     * @param ttl how long the hold lasts unless committed or released
+     * @param unit the unit of the ttl
+     * @return the hold's token, or the reason no hold was placed
+     */
+    public Reservation reserve(String isbn, int quantity, long ttl, TimeUnit unit) {
+        if (quantity <= 0) {
+            return Reservation.failure(PurchaseStatus.INVALID_QUANTITY, isbn, quantity);
+        }
+        Book book = lookup(isbn);
+        if (book == null) {
+            return Reservation.failure(PurchaseStatus.BOOK_NOT_FOUND, isbn, quantity);
+        }
+        if (!(book instanceof Purchasable)) {
+            return Reservation.failure(PurchaseStatus.NOT_PURCHASABLE, isbn, quantity);
+        }
+        long token = newHoldToken();
+        if (!(journal == null ? take(book, quantity)
+                : journal.commitHold(token, isbn, quantity, () -> take(book, quantity)))) {
+            return Reservation.failure(PurchaseStatus.INSUFFICIENT_STOCK, isbn, quantity);
+        }
+        Hold hold = new Hold(token, book, quantity);
+        holds.put(token, hold);
+        heldStock.merge(isbn, quantity, Integer::sum);
+        hold.expiry = holdTimer().schedule(() -> expire(hold), ttl, unit);
+        if (logger.isEnabled(LogLevel.DEBUG)) {
+            logger.debug("Held {} copies of {}", quantity, book.getTitle());
+        }
+        return Reservation.held(token, isbn, quantity);
+    }
+
+    /**
+     * Completes the purchase of held copies and delivers them
+     * @param token the token from a successful Reservation
+     * @param email the customer's email address
+     * @param address the shipping address
+     * @return the purchase result, failing with HOLD_NOT_FOUND if the hold
+     * expired, was released or was already committed
+     */
+    public PurchaseResult commit(long token, String email, String address) {
+        if (!admitOrder()) {
+            return PurchaseStatus.SHUT_DOWN.failure();
+        }
+        Hold hold;
+        Book book;
+        double amount;
+        long orderId;
+        boolean placed = false;
+        try {
+            hold = settle(token);
+            if (hold == null) {
+                return PurchaseStatus.HOLD_NOT_FOUND.failure();
+            }
+            book = hold.book;
+            amount = book.getPrice() * hold.quantity;
+            long cents = Math.round(amount * 100);
+            if (journal == null) {
+                sellHeld(hold, cents);
+            } else {
+                journal.commitHeldOrder(token, book.getIsbn(), hold.quantity, () -> sellHeld(hold, cents));
+            }
+            orderId = orderSequence.incrementAndGet();
+            placed = true;
+            fulfil(orderId, book, email, address);
+        } finally {
+            if (!placed) {
+                withdrawOrder();
+            }
+        }
+        if (metrics != null) {
+            metrics.recordPurchase(book, hold.quantity, amount);
+        }
+        return PurchaseResult.purchased(amount, hold.quantity, book.getTitle(), orderId);
+    }
+
+    /**
+     * Returns held copies to the available stock
+     * @param token the token from a successful Reservation
+     * @return false if the hold had already expired, been released or been committed
+     */
+    public boolean release(long token) {
+        Hold hold = settle(token);
+        if (hold == null) {
+            return false;
+        }
+        returnStock(hold);
+        return true;
+    }
+
+    /**
+     * @param isbn the ISBN to look up
+     * @return the copies currently held and not yet committed
+     */
+    public int getHeldStock(String isbn) {
+        Integer held = heldStock.get(isbn);
+        return held == null ? 0 : held;
+    }
+
+    /**
+     * @return the number of holds neither committed, released nor expired
+     */
+    public int getOpenHoldCount() {
+        return holds.size();
+    }
+
+    private TimingWheel holdTimer() {
+        TimingWheel timer = holdTimer;
+        if (timer == null) {
+            synchronized (holds) {
+                timer = holdTimer;
+                if (timer == null) {
+                    timer = new TimingWheel(10, TimeUnit.MILLISECONDS);
+                    ownedHoldTimer = timer;
+                    holdTimer = timer;
+                }
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Tokens are random so they cannot be guessed and stay unique across
+     * restarts; 0 is reserved for failed reservations
+     */
+    private long newHoldToken() {
+        long token;
+        do {
+            token = ThreadLocalRandom.current().nextLong();
+        } while (token == 0 || holds.containsKey(token));
+        return token;
+    }
+
+    /**
+     * Claims an open hold for commit or release, so exactly one of commit,
+     * release and expiry acts on it
+     */
+    private Hold settle(long token) {
+        Hold hold = holds.get(token);
+        if (hold == null || !hold.settled.compareAndSet(false, true)) {
+            return null;
+        }
+        holds.remove(token, hold);
+        TimingWheel.Timeout expiry = hold.expiry;
+        if (expiry != null) {
+            expiry.cancel();
+        }
+        return hold;
+    }
+
+    private void expire(Hold hold) {
+        if (hold.settled.compareAndSet(false, true)) {
+            holds.remove(hold.token, hold);
+            returnStock(hold);
+            if (logger.isEnabled(LogLevel.DEBUG)) {
+                logger.debug("Hold on {} copies of {} expired", hold.quantity, hold.book.getTitle());
+            }
+        }
+    }
+
+    private void returnStock(Hold hold) {
+        if (journal == null) {
+            putBack(hold);
+        } else {
+            journal.commitRelease(hold.token, hold.book.getIsbn(), hold.quantity, () -> putBack(hold));
+        }
+    }
+
+    private void unhold(Hold hold) {
+        heldStock.computeIfPresent(hold.book.getIsbn(),
+                (isbn, held) -> held == hold.quantity ? null : held - hold.quantity);
+    }
+
+    /**
+     * Builds the detailed message for a failed purchase from the matching
+     * domain exception; only the slow, message-bearing paths pay for this
+     */
+    private String describeFailure(PurchaseStatus status, String isbn, int quantity) {
+        Book book = lookup(isbn);
+        String title = book == null ? isbn : book.getTitle();
+        switch (status) {
+            case INVALID_QUANTITY:
+                return new InvalidQuantityException(quantity).getMessage();
+            case BOOK_NOT_FOUND:
+                return new BookNotFoundException(isbn).getMessage();
+            case NOT_PURCHASABLE:
+                return new BookNotPurchasableException(title).getMessage();
+            case INSUFFICIENT_STOCK:
+                int available = book instanceof PaperBook ? ((PaperBook) book).getStock() : 0;
+                return new InsufficientStockException(title, available, quantity).getMessage();
+            default:
+                return status.failure().getMessage();
+        }
+    }
+
+    /**
+     * Checks out every line of a cart as a single all-or-nothing order.
+     * Lines for the same ISBN are merged and stock is reserved in ISBN order,
+     * so concurrent checkouts always reserve titles in the same sequence.
+     * If any line fails, every reservation already made is rolled back.
+     * @param cart the cart to check out
+     * @return CheckoutResult with the order total and a result per ISBN
+     */
+    public CheckoutResult checkout(Cart cart) {
+        if (metrics == null) {
+            return checkoutCart(cart);
+        }
+        long start = System.nanoTime();
+        CheckoutResult result = checkoutCart(cart);
+        metrics.checkoutLatency().recordSince(start);
+        if (!result.isSuccessful()) {
+            result.getLineResults().values().forEach(line -> metrics.recordFailure(line.getStatus()));
+        }
+        return result;
+    }
+
+    /**
+     * Checks out a cart at most once per idempotency key; a retry of the
+     * key within the idempotency window returns the original result
+     * @param idempotencyKey the client's unique key for this checkout
+     * @param cart the cart to check out
+     * @return the result of the first checkout with the key
+     */
+    public CheckoutResult checkout(String idempotencyKey, Cart cart) {
+        return checkoutKeys.run(idempotencyKey, () -> checkout(cart));
+    }
+
+    /**
+     * @return an upper bound on the idempotency keys currently remembered
+     */
+    public int getIdempotencyKeyCount() {
+        return purchaseKeys.size() + checkoutKeys.size();
+    }
+
+    private CheckoutResult checkoutCart(Cart cart) {
+        Map<String, PurchaseResult> lineResults = new LinkedHashMap<>();
+        if (cart.isEmpty()) {
+            return checkoutFailure("Cart is empty", lineResults);
+        }
+
+        SortedMap<String, Integer> quantities = new TreeMap<>();
+        Map<String, Purchasable> books = new HashMap<>();
+        String failure = null;
+        for (Cart.Line line : cart.getLines()) {
+            try {
+                if (line.getQuantity() <= 0) {
+                    throw new InvalidQuantityException(line.getQuantity());
+                }
+                Book book = lookup(line.getIsbn());
+                if (book == null) {
+                    throw new BookNotFoundException(line.getIsbn());
+                }
+                if (!(book instanceof Purchasable)) {
+                    throw new BookNotPurchasableException(book.getTitle());
+                }
+                books.put(line.getIsbn(), (Purchasable) book);
+                quantities.merge(line.getIsbn(), line.getQuantity(), Integer::sum);
+            } catch (InvalidQuantityException ex) {
+                failure = ex.getMessage();
+                lineResults.put(line.getIsbn(), PurchaseResult.failure(PurchaseStatus.INVALID_QUANTITY, failure));
+            } catch (BookNotFoundException ex) {
+                failure = ex.getMessage();
+                lineResults.put(line.getIsbn(), PurchaseResult.failure(PurchaseStatus.BOOK_NOT_FOUND, failure));
+            } catch (BookNotPurchasableException ex) {
+                failure = ex.getMessage();
+                lineResults.put(line.getIsbn(), PurchaseResult.failure(PurchaseStatus.NOT_PURCHASABLE, failure));
+            }
+        }
+        if (failure != null) {
+            return checkoutFailure(failure, lineResults);
+        }
+
+        if (!admitOrder()) {
+            return checkoutFailure("Store is not taking orders", lineResults);
+        }
+        long orderId;
+        double total = 0;
+        boolean placed = false;
         try {
-            if (quantity <= 0) {
-                throw new InvalidQuantityException(quantity);
+            long cents = 0;
+            for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+                cents += Math.round(((Book) books.get(line.getKey())).getPrice() * line.getValue() * 100);
+            }
+            long orderCents = cents;
+            String[] shortIsbn = new String[1];
+            if (!(journal == null ? sellAll(quantities, books, shortIsbn, orderCents)
+                    : journal.commitOrder(quantities, () -> sellAll(quantities, books, shortIsbn, orderCents)))) {
+                String reason = describeFailure(PurchaseStatus.INSUFFICIENT_STOCK, shortIsbn[0],
+                        quantities.get(shortIsbn[0]));
+                lineResults.put(shortIsbn[0], PurchaseResult.failure(PurchaseStatus.INSUFFICIENT_STOCK, reason));
+                return checkoutFailure(reason, lineResults);
             }
 
-            Book book = inventory.get(isbn);
-            if (book == null) {
-                throw new BookNotFoundException(isbn);
+            orderId = orderSequence.incrementAndGet();
+            List<Supplier<CompletableFuture<Void>>> deliveries = new ArrayList<>();
+            for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+                Book book = (Book) books.get(line.getKey());
+                addDeliveries(deliveries, book, cart.getEmail(), cart.getAddress());
+                double lineTotal = book.getPrice() * line.getValue();
+                total += lineTotal;
+                if (metrics != null) {
+                    metrics.recordPurchase(book, line.getValue(), lineTotal);
+                }
+                lineResults.put(line.getKey(),
+                        PurchaseResult.purchased(lineTotal, line.getValue(), book.getTitle(), orderId));
+            }
+            placed = true;
+            fulfil(orderId, deliveries);
+        } finally {
+            if (!placed) {
+                withdrawOrder();
             }
+        }
+
+        String summary = String.format("Successfully checked out %d titles for $%.2f", quantities.size(), total);
+        logger.info("{}", summary);
+        return CheckoutResult.success(total, "Quantum book store: " + summary, lineResults, orderId);
+    }
 
-            if (!(book instanceof Purchasable)) {
-                throw new BookNotPurchasableException(book.getTitle());
+    /**
+     * Reserves every line in ISBN order, rolling back the reservations already
+     * made if a line is short
+     * @param shortIsbn receives the ISBN of the line that was short
+     * @return true if every line was reserved
+     */
+    private boolean reserveAll(SortedMap<String, Integer> quantities, Map<String, Purchasable> books,
+                               String[] shortIsbn) {
+        Deque<Map.Entry<String, Integer>> reserved = new ArrayDeque<>();
+        for (Map.Entry<String, Integer> line : quantities.entrySet()) {
+            if (books.get(line.getKey()).tryPurchase(line.getValue())) {
+                reserved.push(line);
+                continue;
             }
-            Purchasable purchasable = (Purchasable) book;
+            while (!reserved.isEmpty()) {
+                Map.Entry<String, Integer> undo = reserved.pop();
+                books.get(undo.getKey()).cancelPurchase(undo.getValue());
+            }
+            shortIsbn[0] = line.getKey();
+            return false;
+        }
+        return true;
+    }
 
-            purchasable.processPurchase(quantity);
-            double total = book.getPrice() * quantity;
+    private CheckoutResult checkoutFailure(String reason, Map<String, PurchaseResult> lineResults) {
+        logger.info("Checkout failed - {}", reason);
+        return CheckoutResult.failure("Quantum book store: Checkout failed - " + reason, lineResults);
+    }
+
+    private void addDeliveries(List<Supplier<CompletableFuture<Void>>> deliveries, Book book,
+                               String email, String address) {
+        if (book instanceof Shippable) {
+            deliveries.add(() -> ship((Shippable) book, address));
+        }
+        if (book instanceof Emailable) {
+            deliveries.add(() -> email((Emailable) book, email));
+        }
+    }
 
+    private void fulfil(long orderId, Book book, String email, String address) {
+        if (fulfilment == null) {
             if (book instanceof Shippable) {
-                ((Shippable) book).ship(address, shippingService);
+                ship((Shippable) book, address);
             }
             if (book instanceof Emailable) {
-                ((Emailable) book).email(email, mailService);
+                email((Emailable) book, email);
             }
+            return;
+        }
+        List<Supplier<CompletableFuture<Void>>> deliveries = new ArrayList<>(2);
+        addDeliveries(deliveries, book, email, address);
+        fulfilment.submitAdmitted(orderId, deliveries);
+    }
 
-            String successMsg = String.format(
-                    "Quantum book store: Successfully purchased %d copies of %s",
-                    quantity, book.getTitle()
-            );
-            System.out.println(successMsg);
-            return PurchaseResult.success(total, successMsg);
+    /**
+     * Reserves the order's place in the fulfilment pipeline before any stock
+     * is taken, so a pipeline that has shut down turns the purchase away
+     * instead of refusing to deliver a sale already made
+     * @return false if the pipeline no longer accepts orders
+     */
+    private boolean admitOrder() {
+        return fulfilment == null || fulfilment.admit();
+    }
 
-        } catch (InvalidQuantityException | BookNotFoundException | InsufficientStockException |
-                 BookNotPurchasableException ex) {
-            String err = "Quantum book store: Purchase failed - " + ex.getMessage();
-            System.out.println(err);
-            return PurchaseResult.failure(err);
+    private void withdrawOrder() {
+        if (fulfilment != null) {
+            fulfilment.withdraw();
+        }
+    }
 
+    /**
+     * Ships the book, recording the latency up to the moment it actually
+     * leaves, which for a batching service is when its parcel is dispatched
+     */
+    private CompletableFuture<Void> ship(Shippable book, String address) {
+        if (metrics == null) {
+            return book.shipAsync(address, shippingService);
+        }
+        long start = System.nanoTime();
+        try {
+            return book.shipAsync(address, shippingService)
+                    .whenComplete((done, failure) -> metrics.shippingLatency().recordSince(start));
+        } catch (RuntimeException e) {
+            metrics.shippingLatency().recordSince(start);
+            throw e;
         }
     }
 
+    private CompletableFuture<Void> email(Emailable book, String email) {
+        if (metrics == null) {
+            return book.emailAsync(email, mailService);
+        }
+        long start = System.nanoTime();
+        try {
+            return book.emailAsync(email, mailService)
+                    .whenComplete((done, failure) -> metrics.emailLatency().recordSince(start));
+        } catch (RuntimeException e) {
+            metrics.emailLatency().recordSince(start);
+            throw e;
+        }
+    }
+
+    /**
+     * Starts the deliveries inline, or hands them to the fulfilment pipeline
+     * when one is configured, which reports the order delivered only once
+     * every delivery has actually gone out. The order must have been admitted.
+     */
+    private void fulfil(long orderId, List<Supplier<CompletableFuture<Void>>> deliveries) {
+        if (fulfilment == null) {
+            deliveries.forEach(Supplier::get);
+        } else {
+            fulfilment.submitAdmitted(orderId, deliveries);
+        }
+    }
+
+    /**
+     * @param orderId the order id from a successful PurchaseResult or CheckoutResult
+     * @return the fulfilment status of the order
+     */
+    public FulfilmentStatus getFulfilmentStatus(long orderId) {
+        if (fulfilment != null) {
+            return fulfilment.status(orderId);
+        }
+        return orderId > 0 && orderId <= orderSequence.get()
+                ? FulfilmentStatus.DELIVERED : FulfilmentStatus.UNKNOWN;
+    }
+
+    /**
+     * Waits for the deliveries of an order to finish
+     * @param orderId the order id from a successful PurchaseResult or CheckoutResult
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout
+     * @return the final status, or PENDING if the timeout elapsed first
+     */
+    public FulfilmentStatus awaitFulfilment(long orderId, long timeout, TimeUnit unit) throws InterruptedException {
+        if (fulfilment != null) {
+            return fulfilment.await(orderId, timeout, unit);
+        }
+        return getFulfilmentStatus(orderId);
+    }
+
+    /**
+     * @param orderId the order id from a successful PurchaseResult or CheckoutResult
+     * @return a future completed with the final fulfilment status of the order
+     */
+    public CompletableFuture<FulfilmentStatus> onFulfilment(long orderId) {
+        if (fulfilment != null) {
+            return fulfilment.completion(orderId);
+        }
+        return CompletableFuture.completedFuture(getFulfilmentStatus(orderId));
+    }
+
+    /**
+     * Lists one page of the catalog. Pages follow publication year, then
+     * ISBN, which never change, so a token stays valid while books are
+     * added and removed: no book is listed twice, and every book present
+     * for the whole listing is listed once.
+     * @param pageToken the token from the previous page, or null for the first page
+     * @param pageSize the most books on the page
+     * @return the page and the token for the next one
+     * @throws IllegalArgumentException if the page size is not positive or
+     * the token is malformed
+     */
+    public InventoryPage listInventory(String pageToken, int pageSize) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        int year = 0;
+        String isbn = null;
+        if (pageToken != null) {
+            ByteBuffer cursor = decodePageToken(pageToken);
+            year = cursor.getInt();
+            isbn = StandardCharsets.UTF_8.decode(cursor).toString();
+        }
+        List<Book> books = inventory.listAfter(year, isbn, pageSize + 1);
+        if (books.size() <= pageSize) {
+            return new InventoryPage(books, null);
+        }
+        books = books.subList(0, pageSize);
+        return new InventoryPage(books, pageToken(books.get(pageSize - 1)));
+    }
+
+    private static String pageToken(Book last) {
+        byte[] isbn = last.getIsbn().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer cursor = ByteBuffer.allocate(Integer.BYTES + isbn.length).putInt(last.getYear()).put(isbn);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(cursor.array());
+    }
+
+    private static ByteBuffer decodePageToken(String pageToken) {
+        byte[] cursor;
+        try {
+            cursor = Base64.getUrlDecoder().decode(pageToken);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed page token: " + pageToken, e);
+        }
+        if (cursor.length <= Integer.BYTES) {
+            throw new IllegalArgumentException("Malformed page token: " + pageToken);
+        }
+        return ByteBuffer.wrap(cursor);
+    }
+
     /**
      * Displays the current inventory
      */
     public void displayInventory() {
-        System.out.println("Quantum book store: Current Inventory:");
-        inventory.values().forEach(book -> System.out.println("  " + book));
+        logger.info("Current Inventory:");
+        inventory.forEach(book -> logger.info("  {}", book));
+    }
+
+    /**
+     * Visits every book in the catalog, e.g. to export it
+     * @param action the action to run per book
+     */
+    public void forEachBook(Consumer<Book> action) {
+        inventory.forEach(action);
+    }
+
+    /**
+     * Takes a consistent point-in-time view of the catalog, its stock and
+     * the revenue booked so far, e.g. for a report. It waits only for
+     * changes already under way and never blocks purchases; close it when
+     * the report is done.
+     * @return the snapshot
+     */
+    public CatalogSnapshot snapshot() {
+        return snapshots.open(inventory, revenueCents);
+    }
+
+    /**
+     * @return the number of snapshots not yet closed
+     */
+    public int getOpenSnapshotCount() {
+        return snapshots.openCount();
+    }
+
+    /**
+     * Stops the hold timer if the store started it; a timer supplied through
+     * the builder is left running. Open holds no longer expire afterwards.
+     */
+    @Override
+    public void close() {
+        synchronized (holds) {
+            if (ownedHoldTimer != null) {
+                ownedHoldTimer.close();
+            }
+        }
     }
 
     /**
@@ -132,6 +1178,151 @@ public class QuantumBookStore {
      * @return the book if found, null otherwise
      */
     public Book getBook(String isbn) {
-        return inventory.get(isbn);
+        return lookup(isbn);
+    }
+
+    /**
+     * Looks a book up in the catalog, treating a null ISBN as unknown
+     * rather than passing it to a backend that may reject it
+     */
+    private Book lookup(String isbn) {
+        return isbn == null ? null : inventory.get(isbn);
+    }
+
+    /**
+     * Builder for stores that need non-default collaborators
+     */
+    public static class Builder {
+        private StoreLogger logger = StoreLogger.console();
+        private ShippingService shippingService;
+        private MailService mailService;
+        private FulfilmentPipeline fulfilment;
+        private Catalog catalog;
+        private Journal journal;
+        private MetricsRegistry metrics;
+        private TimingWheel holdTimer;
+        private BookTypeRegistry bookTypes;
+        private AdmissionControl admission;
+        private long idempotencyWindowNanos = TimeUnit.HOURS.toNanos(1);
+        private int idempotencyMaxKeys = 1 << 20;
+
+        private Builder() {
+        }
+
+        public Builder shippingService(ShippingService shippingService) {
+            this.shippingService = shippingService;
+            return this;
+        }
+
+        public Builder mailService(MailService mailService) {
+            this.mailService = mailService;
+            return this;
+        }
+
+        /**
+         * Delivers purchases asynchronously through the given pipeline
+         * instead of on the purchasing thread
+         */
+        public Builder fulfilment(FulfilmentPipeline fulfilment) {
+            this.fulfilment = fulfilment;
+            return this;
+        }
+
+        /**
+         * Sets the logger for store events; it is also used by the default
+         * delivery services unless custom ones are supplied
+         */
+        public Builder logger(StoreLogger logger) {
+            this.logger = logger;
+            return this;
+        }
+
+        /**
+         * Stores the catalog in the given backend instead of the default
+         * HashMapCatalog, e.g. a ColumnarCatalog for very large inventories
+         */
+        public Builder catalog(Catalog catalog) {
+            this.catalog = catalog;
+            return this;
+        }
+
+        /**
+         * Makes every mutation durable in the given journal before it is
+         * acknowledged; the store recovers its catalog from the journal when
+         * built, so the catalog must start empty and should not itself be
+         * persistent. Only books BookCodec can encode are journaled, so
+         * books of other registered types are then rejected by addBook
+         */
+        public Builder journal(Journal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        /**
+         * Records purchase counts, failure reasons, revenue, latencies and
+         * catalog gauges in the given registry
+         */
+        public Builder metrics(MetricsRegistry metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Expires stock holds on the given wheel instead of a default one
+         * with a 10 ms tick, created on the first reservation. The caller
+         * owns the wheel; closing the store does not close it.
+         */
+        public Builder holdTimer(TimingWheel holdTimer) {
+            this.holdTimer = holdTimer;
+            return this;
+        }
+
+        /**
+         * Resolves addBook type names against the given registry instead of
+         * one holding only the built-in types
+         */
+        public Builder bookTypes(BookTypeRegistry bookTypes) {
+            this.bookTypes = bookTypes;
+            return this;
+        }
+
+        /**
+         * Turns purchases away before any inventory work while a customer
+         * or ISBN is over its rate or the store is overloaded; the control
+         * must not be shared with another store
+         */
+        public Builder admission(AdmissionControl admission) {
+            this.admission = admission;
+            return this;
+        }
+
+        /**
+         * Sets how long idempotency keys are remembered, one hour by
+         * default, and how many of buyBook's and of checkout's are kept at
+         * most, 1,048,576 each by default; beyond that the oldest go early
+         */
+        public Builder idempotency(long window, TimeUnit unit, int maxKeys) {
+            this.idempotencyWindowNanos = unit.toNanos(window);
+            this.idempotencyMaxKeys = maxKeys;
+            return this;
+        }
+
+        public QuantumBookStore build() {
+            return new QuantumBookStore(this);
+        }
+    }
+
+    private static final class Hold {
+        final long token;
+        final Book book;
+        final int quantity;
+        final AtomicBoolean settled = new AtomicBoolean();
+        volatile TimingWheel.Timeout expiry;
+
+        Hold(long token, Book book, int quantity) {
+            this.token = token;
+            this.book = book;
+            this.quantity = quantity;
+        }
     }
-}
\ No newline at end of file
+}
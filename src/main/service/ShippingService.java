@@ -1,11 +1,23 @@
 package service;
 
+import logging.StoreLogger;
 import model.PaperBook;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Service for handling book shipping operations
  */
 public class ShippingService {
+    protected final StoreLogger logger;
+
+    public ShippingService() {
+        this(StoreLogger.console());
+    }
+
+    public ShippingService(StoreLogger logger) {
+        this.logger = logger;
+    }
 
     /**
      * Ships a paper book to the specified address
@@ -13,6 +25,18 @@ public class ShippingService {
      * @param address the shipping address
      */
     public void ship(PaperBook book, String address) {
-        System.out.println("Quantum book store: Shipping " + book.getTitle() + " to " + address);
+        logger.info("Shipping {} to {}", book.getTitle(), address);
+    }
+
+    /**
+     * Ships a paper book, for callers that need to know when it has actually
+     * left. This ships inline; services that defer shipping override it.
+     * @param book the book to ship
+     * @param address the shipping address
+     * @return a future completed once the book has been handed to the carrier
+     */
+    public CompletableFuture<Void> shipAsync(PaperBook book, String address) {
+        ship(book, address);
+        return CompletableFuture.completedFuture(null);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,115 @@
+package service;
+
+import interfaces.Catalog;
+import model.Book;
+import model.PaperBook;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The open snapshots of one store. Every in-memory change to the catalog,
+ * stock or revenue runs between enter and exit, and records what it is
+ * about to overwrite into each snapshot taken no later than its epoch.
+ * Opening a snapshot advances the epoch and waits only for changes already
+ * under way, so the snapshot holds everything before that point and
+ * nothing after it. Writers of the new epoch that arrive while it waits
+ * hold off recording until it is done, at most one in-memory change. With
+ * no snapshot open, recording is one volatile read.
+ */
+final class SnapshotRegistry {
+    private static final CatalogSnapshot[] NONE = new CatalogSnapshot[0];
+
+    private final EpochGate gate = new EpochGate();
+    private volatile CatalogSnapshot[] open = NONE;
+
+    long enter() {
+        return gate.enter();
+    }
+
+    void exit(long token) {
+        gate.exit(token);
+    }
+
+    void recordStock(long token, Book book) {
+        CatalogSnapshot[] snapshots = open;
+        if (snapshots.length != 0 && book instanceof PaperBook) {
+            int epoch = EpochGate.epochOf(token);
+            for (CatalogSnapshot snapshot : snapshots) {
+                if (snapshot.covers(epoch)) {
+                    snapshot.saveStock((PaperBook) book);
+                }
+            }
+        }
+    }
+
+    void recordRevenue(long token, LongAdder revenue) {
+        CatalogSnapshot[] snapshots = open;
+        if (snapshots.length != 0) {
+            int epoch = EpochGate.epochOf(token);
+            for (CatalogSnapshot snapshot : snapshots) {
+                if (snapshot.covers(epoch)) {
+                    snapshot.saveRevenue(revenue);
+                }
+            }
+        }
+    }
+
+    void recordAdd(long token, String isbn, Catalog catalog) {
+        CatalogSnapshot[] snapshots = open;
+        if (snapshots.length != 0) {
+            int epoch = EpochGate.epochOf(token);
+            for (CatalogSnapshot snapshot : snapshots) {
+                if (snapshot.covers(epoch)) {
+                    snapshot.saveAdd(isbn, catalog);
+                }
+            }
+        }
+    }
+
+    void recordRemove(long token, Book book) {
+        CatalogSnapshot[] snapshots = open;
+        if (snapshots.length != 0) {
+            int epoch = EpochGate.epochOf(token);
+            for (CatalogSnapshot snapshot : snapshots) {
+                if (snapshot.covers(epoch)) {
+                    snapshot.saveRemove(book);
+                }
+            }
+        }
+    }
+
+    CatalogSnapshot open(Catalog catalog, LongAdder revenue) {
+        CatalogSnapshot snapshot;
+        synchronized (this) {
+            snapshot = new CatalogSnapshot(this, gate.epoch() + 1);
+            CatalogSnapshot[] snapshots = Arrays.copyOf(open, open.length + 1);
+            snapshots[snapshots.length - 1] = snapshot;
+            open = snapshots;
+            gate.advance();
+            snapshot.ready();
+        }
+        snapshot.capture(catalog, revenue);
+        return snapshot;
+    }
+
+    synchronized void close(CatalogSnapshot snapshot) {
+        CatalogSnapshot[] snapshots = open;
+        for (int i = 0; i < snapshots.length; i++) {
+            if (snapshots[i] == snapshot) {
+                CatalogSnapshot[] rest = new CatalogSnapshot[snapshots.length - 1];
+                System.arraycopy(snapshots, 0, rest, 0, i);
+                System.arraycopy(snapshots, i + 1, rest, i, rest.length - i);
+                open = rest.length == 0 ? NONE : rest;
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the number of snapshots not yet closed
+     */
+    int openCount() {
+        return open.length;
+    }
+}
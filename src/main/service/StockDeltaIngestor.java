@@ -0,0 +1,168 @@
+package service;
+
+import logging.StoreLogger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * High-rate intake for warehouse stock events. Each event is merged into a
+ * running sum for its ISBN, so submitting is one map update and never
+ * touches a book. Micro-batches are drained periodically, or as soon as
+ * maxTitles ISBNs are pending, and applied with adjustStockAll: one atomic
+ * stock update per title however many events it received, and with a
+ * journal one wait for the whole batch. Checkouts therefore contend with
+ * one update per title per batch rather than with every event.
+ * <p>
+ * A batch that fails, e.g. on a journal I/O error, is not retried, as
+ * some of its titles may already have been adjusted. Its titles and
+ * events are logged and counted as dropped instead.
+ */
+public class StockDeltaIngestor implements AutoCloseable {
+    private final QuantumBookStore store;
+    private final int maxTitles;
+    private final Map<String, Long> pending = new ConcurrentHashMap<>();
+    private final LongAdder events = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder droppedTitles = new LongAdder();
+    private final ScheduledExecutorService drainer;
+    private final StoreLogger logger;
+
+    /**
+     * @param store the store to adjust
+     * @param maxTitles the number of pending ISBNs that triggers an immediate drain
+     * @param period the time between background drains
+     * @param unit the unit of the period
+     */
+    public StockDeltaIngestor(QuantumBookStore store, int maxTitles, long period, TimeUnit unit) {
+        this(store, maxTitles, period, unit, StoreLogger.console());
+    }
+
+    /**
+     * @param store the store to adjust
+     * @param maxTitles the number of pending ISBNs that triggers an immediate drain
+     * @param period the time between background drains
+     * @param unit the unit of the period
+     * @param logger reports batches that could not be applied
+     */
+    public StockDeltaIngestor(QuantumBookStore store, int maxTitles, long period, TimeUnit unit,
+                              StoreLogger logger) {
+        if (maxTitles <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.store = store;
+        this.maxTitles = maxTitles;
+        this.logger = logger;
+        this.drainer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "stock-ingest");
+            thread.setDaemon(true);
+            return thread;
+        });
+        drainer.scheduleWithFixedDelay(() -> {
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                // a failed batch is already logged and must not cancel later drains
+            }
+        }, period, period, unit);
+    }
+
+    public StockDeltaIngestor(QuantumBookStore store) {
+        this(store, 4096, 10, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a stock change; it takes effect with the next drain
+     * @param isbn the ISBN the warehouse reported
+     * @param delta the change in copies, positive for receipts
+     */
+    public void submit(String isbn, int delta) {
+        events.increment();
+        if (delta == 0) {
+            return;
+        }
+        pending.merge(isbn, (long) delta, Long::sum);
+        if (pending.size() >= maxTitles) {
+            flush();
+        }
+    }
+
+    /**
+     * Applies every pending change now
+     * @return the number of titles whose stock changed
+     * @throws RuntimeException if the store failed to apply the batch, whose
+     * changes are then dropped
+     */
+    public synchronized int flush() {
+        if (pending.isEmpty()) {
+            return 0;
+        }
+        Map<String, Integer> batch = new HashMap<>(pending.size() * 2);
+        for (String isbn : pending.keySet()) {
+            Long delta = pending.remove(isbn);
+            if (delta != null && delta != 0) {
+                batch.put(isbn, (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, delta)));
+            }
+        }
+        int adjusted;
+        try {
+            adjusted = store.adjustStockAll(batch);
+        } catch (RuntimeException e) {
+            droppedTitles.add(batch.size());
+            logger.warn("Dropped stock changes for {} titles - {}", batch.size(), e.getMessage());
+            throw e;
+        }
+        updates.add(adjusted);
+        batches.increment();
+        return adjusted;
+    }
+
+    /**
+     * @return the number of events submitted so far
+     */
+    public long getEventCount() {
+        return events.sum();
+    }
+
+    /**
+     * @return the number of per-title stock updates applied so far
+     */
+    public long getUpdateCount() {
+        return updates.sum();
+    }
+
+    /**
+     * @return the number of micro-batches applied so far
+     */
+    public long getBatchCount() {
+        return batches.sum();
+    }
+
+    /**
+     * @return the number of per-title changes dropped because their batch
+     * failed to apply
+     */
+    public long getDroppedCount() {
+        return droppedTitles.sum();
+    }
+
+    /**
+     * Stops background drains and applies what is still pending
+     */
+    @Override
+    public void close() {
+        drainer.shutdown();
+        try {
+            drainer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,204 @@
+package service;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hierarchical timing wheel running timeouts on one background thread.
+ * Four levels of 64 slots cover 64, 64², 64³ and 64⁴ ticks; a timeout sits
+ * in the level matching how far away it is and moves down a level each time
+ * its slot comes round, so scheduling, cancelling and expiring are all O(1)
+ * whatever the number of pending timeouts. Timeouts further out than the
+ * top level wait in its last slot and are placed again when it comes round.
+ * <p>
+ * Other threads never touch the slots: schedule and cancel only push onto
+ * lock-free queues that the wheel thread drains each tick. Timeouts fire
+ * up to one tick late and never early.
+ */
+public class TimingWheel implements AutoCloseable {
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final long tickNanos;
+    private final long startNanos;
+    private final Timeout[][] heads = new Timeout[LEVELS][SLOTS];
+    private final Queue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+    private long tick;
+
+    /**
+     * Starts the wheel thread
+     * @param tick the resolution of the wheel
+     * @param unit the unit of the tick
+     */
+    public TimingWheel(long tick, TimeUnit unit) {
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, "timing-wheel");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * @param task the task to run on the wheel thread once the delay elapses
+     * @param delay the delay
+     * @param unit the unit of the delay
+     * @return the handle to cancel the task with
+     */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long elapsed = System.nanoTime() - startNanos;
+        long delayNanos = unit.toNanos(Math.max(0, delay));
+        // saturate, so a delay too long to represent means never rather than now
+        long deadline = delayNanos > Long.MAX_VALUE - elapsed ? Long.MAX_VALUE : elapsed + delayNanos;
+        long expiryTick = deadline / tickNanos + (deadline % tickNanos == 0 ? 0 : 1);
+        Timeout timeout = new Timeout(task, expiryTick);
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Stops the wheel thread; pending timeouts never fire
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        while (running) {
+            long now = (System.nanoTime() - startNanos) / tickNanos;
+            while (tick < now && running) {
+                advance();
+            }
+            LockSupport.parkNanos(this, (tick + 1) * tickNanos - (System.nanoTime() - startNanos));
+        }
+    }
+
+    /**
+     * Moves the wheel on one tick: takes in new and cancelled timeouts,
+     * cascades any higher-level slot whose window starts now, then fires
+     * the current level-0 slot
+     */
+    private void advance() {
+        tick++;
+        Timeout timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            unlink(timeout);
+        }
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state.get() == Timeout.PENDING) {
+                place(timeout);
+            }
+        }
+        for (int level = LEVELS - 1; level > 0; level--) {
+            if ((tick & ((1L << (level * SLOT_BITS)) - 1)) == 0) {
+                int slot = (int) (tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+                Timeout head = heads[level][slot];
+                heads[level][slot] = null;
+                while (head != null) {
+                    Timeout next = head.next;
+                    head.prev = head.next = null;
+                    place(head);
+                    head = next;
+                }
+            }
+        }
+        int slot = (int) tick & SLOT_MASK;
+        Timeout head = heads[0][slot];
+        heads[0][slot] = null;
+        while (head != null) {
+            Timeout next = head.next;
+            head.prev = head.next = null;
+            head.level = -1;
+            if (head.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+                try {
+                    head.task.run();
+                } catch (RuntimeException e) {
+                    // one failing task must not stop the wheel
+                }
+            }
+            head = next;
+        }
+    }
+
+    /**
+     * Links a timeout into the level its remaining ticks fall in
+     */
+    private void place(Timeout timeout) {
+        long delta = Math.max(0, timeout.expiryTick - tick);
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= 1L << ((level + 1) * SLOT_BITS)) {
+            level++;
+        }
+        long target = delta >= 1L << (LEVELS * SLOT_BITS)
+                ? tick + (1L << (LEVELS * SLOT_BITS)) - (1L << (level * SLOT_BITS))
+                : Math.max(timeout.expiryTick, tick);
+        int slot = (int) (target >>> (level * SLOT_BITS)) & SLOT_MASK;
+        timeout.level = level;
+        timeout.slot = slot;
+        timeout.prev = null;
+        timeout.next = heads[level][slot];
+        if (timeout.next != null) {
+            timeout.next.prev = timeout;
+        }
+        heads[level][slot] = timeout;
+    }
+
+    private void unlink(Timeout timeout) {
+        if (timeout.level < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else if (heads[timeout.level][timeout.slot] == timeout) {
+            heads[timeout.level][timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = timeout.next = null;
+        timeout.level = -1;
+    }
+
+    /**
+     * Handle of a scheduled task. Its slot links are only touched by the
+     * wheel thread.
+     */
+    public final class Timeout {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long expiryTick;
+        private final AtomicInteger state = new AtomicInteger(PENDING);
+        private Timeout prev;
+        private Timeout next;
+        private int level = -1;
+        private int slot;
+
+        private Timeout(Runnable task, long expiryTick) {
+            this.task = task;
+            this.expiryTick = expiryTick;
+        }
+
+        /**
+         * @return true if this call stopped the task from running
+         */
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            cancelled.add(this);
+            return true;
+        }
+    }
+}
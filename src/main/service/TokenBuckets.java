@@ -0,0 +1,120 @@
+package service;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size, lock-free table of per-key rate limits. Each bucket is a
+ * single theoretical arrival time advanced with a CAS (the generic cell
+ * rate algorithm), which behaves like a token bucket without a refill
+ * thread. A key lives in one of a few slots after its hash. When they are
+ * all taken, the bucket with the most tokens left is replaced: an idle key's
+ * bucket is full, so dropping it loses nothing.
+ * <p>
+ * Two threads racing to insert the same key can briefly give it two
+ * buckets; the limit then errs towards admitting.
+ */
+final class TokenBuckets {
+    private static final int PROBES = 8;
+
+    private final AtomicReferenceArray<Bucket> slots;
+    private final int mask;
+    private final long interval;
+    private final long tolerance;
+
+    /**
+     * @param capacity the most keys tracked, rounded up to a power of two
+     * @param permitsPerSecond the sustained rate per key
+     * @param burst the requests a key may make at once after being idle
+     */
+    TokenBuckets(int capacity, double permitsPerSecond, int burst) {
+        if (capacity <= 0 || permitsPerSecond <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Capacity, rate and burst must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity - 1)) * 2;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.interval = Math.max(1, (long) (1_000_000_000L / permitsPerSecond));
+        this.tolerance = interval * (burst - 1);
+    }
+
+    /**
+     * @param key the key to charge
+     * @param now the current System.nanoTime
+     * @return false if the key is over its rate
+     */
+    boolean tryAcquire(String key, long now) {
+        return bucket(key, now).tryAcquire(now, interval, tolerance);
+    }
+
+    /**
+     * @return the number of keys currently tracked
+     */
+    int size() {
+        int size = 0;
+        for (int i = 0; i < slots.length(); i++) {
+            if (slots.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private Bucket bucket(String key, long now) {
+        int hash = key.hashCode();
+        int start = (hash ^ hash >>> 16) & mask;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            int victim = -1;
+            Bucket victimBucket = null;
+            for (int i = 0; i < PROBES; i++) {
+                int index = (start + i) & mask;
+                Bucket bucket = slots.get(index);
+                if (bucket == null) {
+                    Bucket fresh = new Bucket(key, now);
+                    if (slots.compareAndSet(index, null, fresh)) {
+                        return fresh;
+                    }
+                    bucket = slots.get(index);
+                }
+                if (bucket.key.equals(key)) {
+                    return bucket;
+                }
+                if (victimBucket == null || bucket.tat - victimBucket.tat < 0) {
+                    victim = index;
+                    victimBucket = bucket;
+                }
+            }
+            Bucket fresh = new Bucket(key, now);
+            if (slots.compareAndSet(victim, victimBucket, fresh)) {
+                return fresh;
+            }
+        }
+        return new Bucket(key, now);
+    }
+
+    private static final class Bucket {
+        private static final AtomicLongFieldUpdater<Bucket> TAT =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "tat");
+
+        final String key;
+        volatile long tat;
+
+        Bucket(String key, long now) {
+            this.key = key;
+            this.tat = now;
+        }
+
+        boolean tryAcquire(long now, long interval, long tolerance) {
+            while (true) {
+                long current = tat;
+                long start = current - now > 0 ? current : now;
+                if (start - now > tolerance) {
+                    return false;
+                }
+                if (TAT.compareAndSet(this, current, start + interval)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
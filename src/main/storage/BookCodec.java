@@ -0,0 +1,71 @@
+package storage;
+
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary encoding of books for the journal and its snapshots: a type byte,
+ * ISBN, title, year and price, then the stock or filetype of the type.
+ * Also used by the cluster wire protocol to move books between shards.
+ */
+public final class BookCodec {
+    private static final byte PAPER = 1;
+    private static final byte EBOOK = 2;
+    private static final byte SHOWCASE = 3;
+
+    private BookCodec() {
+    }
+
+    /**
+     * @throws IllegalArgumentException if the book's class has no encoding
+     */
+    public static void write(DataOutput out, Book book) throws IOException {
+        write(out, book, book instanceof PaperBook ? ((PaperBook) book).getStock() : 0);
+    }
+
+    /**
+     * Encodes a book with the given stock in place of its live stock
+     */
+    static void write(DataOutput out, Book book, int stock) throws IOException {
+        byte type = book.getClass() == PaperBook.class ? PAPER
+                : book.getClass() == EBook.class ? EBOOK
+                : book.getClass() == ShowcaseBook.class ? SHOWCASE : 0;
+        if (type == 0) {
+            throw new IllegalArgumentException("Cannot encode " + book.getClass().getSimpleName());
+        }
+        out.writeByte(type);
+        out.writeUTF(book.getIsbn());
+        out.writeUTF(book.getTitle());
+        out.writeInt(book.getYear());
+        out.writeDouble(book.getPrice());
+        if (type == PAPER) {
+            out.writeInt(stock);
+        } else if (type == EBOOK) {
+            out.writeUTF(((EBook) book).getFiletype());
+        }
+    }
+
+    public static Book read(DataInput in) throws IOException {
+        byte type = in.readByte();
+        String isbn = in.readUTF();
+        String title = in.readUTF();
+        int year = in.readInt();
+        double price = in.readDouble();
+        switch (type) {
+            case PAPER:
+                return new PaperBook(isbn, title, year, price, in.readInt());
+            case EBOOK:
+                return new EBook(isbn, title, year, price, in.readUTF());
+            case SHOWCASE:
+                return new ShowcaseBook(isbn, title, year, price);
+            default:
+                throw new IOException("Unknown book type " + type);
+        }
+    }
+}
@@ -0,0 +1,655 @@
+package storage;
+
+import interfaces.Catalog;
+import interfaces.CatalogSource;
+import interfaces.StockCell;
+import model.Book;
+import model.PaperBook;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Bounded read cache in front of a slower CatalogSource.
+ *
+ * Lookups go through a map of futures. The first miss on an ISBN installs a
+ * future and loads the book, and concurrent misses wait on that future, so a
+ * stampede on one hot ISBN costs a single backend load.
+ *
+ * Eviction follows W-TinyLFU. New entries enter a small LRU window. An entry
+ * leaving the window is admitted into the main LRU region only if a
+ * count-min sketch has seen it more often than the main region's LRU
+ * victim, so one-off scans do not flush hot titles. Entries also expire a
+ * fixed time after they were loaded. Reads update the recency order only
+ * when the policy lock is free, so a busy lock drops an update instead of
+ * making readers queue.
+ *
+ * Stock lives in the cached book and is written back to the source when
+ * the entry is evicted or flush is called. An evicted book's stock cell is
+ * retired and forwards later purchases to the freshly loaded entry, so a
+ * reference held across an eviction neither oversells nor loses a sale.
+ * Books returned by queries read stock without loading and forward stock
+ * changes the same way, so scans never load titles into the cache.
+ */
+public class CachingCatalog implements Catalog {
+    private static final Entry RETRY = new Entry(null, null, 0);
+    private static final int RETIRED = Integer.MIN_VALUE;
+
+    private final CatalogSource source;
+    private final long ttlNanos;
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final Map<String, CompletableFuture<Entry>> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param source the authoritative catalog tier
+     * @param maxEntries the maximum number of cached books, at least 2
+     * @param ttl the time after loading at which an entry expires, 0 for never
+     * @param unit the unit of the ttl
+     */
+    public CachingCatalog(CatalogSource source, int maxEntries, long ttl, TimeUnit unit) {
+        if (maxEntries < 2) {
+            throw new IllegalArgumentException("Cache needs at least 2 entries");
+        }
+        this.source = source;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.windowCapacity = Math.max(1, maxEntries / 100);
+        this.mainCapacity = maxEntries - windowCapacity;
+        this.sketch = new FrequencySketch(maxEntries);
+    }
+
+    @Override
+    public Book get(String isbn) {
+        while (true) {
+            CompletableFuture<Entry> future = entries.get(isbn);
+            if (future == null) {
+                CompletableFuture<Entry> loading = new CompletableFuture<>();
+                future = entries.putIfAbsent(isbn, loading);
+                if (future == null) {
+                    return load(isbn, loading);
+                }
+            }
+            Entry entry = await(future);
+            if (entry == null) {
+                return null;
+            }
+            if (entry == RETRY) {
+                continue;
+            }
+            if (ttlNanos > 0 && System.nanoTime() - entry.loadedAt > ttlNanos) {
+                forget(isbn, entry);
+                evict(isbn, entry);
+                continue;
+            }
+            hits.increment();
+            recordAccess(isbn);
+            return entry.book;
+        }
+    }
+
+    private Book load(String isbn, CompletableFuture<Entry> loading) {
+        misses.increment();
+        Book loaded;
+        try {
+            loaded = source.load(isbn);
+        } catch (RuntimeException e) {
+            entries.remove(isbn, loading);
+            loading.completeExceptionally(e);
+            throw e;
+        }
+        if (loaded == null) {
+            entries.remove(isbn, loading);
+            loading.complete(null);
+            return null;
+        }
+        Entry entry;
+        if (loaded instanceof PaperBook) {
+            PaperBook paper = (PaperBook) loaded;
+            CachedStockCell cell = new CachedStockCell(isbn, paper.getStock());
+            entry = new Entry(new PaperBook(isbn, paper.getTitle(), paper.getYear(), paper.getPrice(), cell),
+                    cell, System.nanoTime());
+        } else {
+            entry = new Entry(loaded, null, System.nanoTime());
+        }
+        loading.complete(entry);
+        admit(isbn, entry);
+        return entry.book;
+    }
+
+    @Override
+    public boolean contains(String isbn) {
+        CompletableFuture<Entry> future = entries.get(isbn);
+        Entry entry = future == null ? null : future.getNow(null);
+        if (entry != null && entry != RETRY) {
+            return true;
+        }
+        return source.load(isbn) != null;
+    }
+
+    /**
+     * Writes the book through to the source; it is cached on its first get
+     */
+    @Override
+    public boolean add(Book book) {
+        String isbn = book.getIsbn();
+        CompletableFuture<Entry> gate = new CompletableFuture<>();
+        while (true) {
+            CompletableFuture<Entry> existing = entries.putIfAbsent(isbn, gate);
+            if (existing == null) {
+                break;
+            }
+            Entry entry = await(existing);
+            if (entry != null && entry != RETRY) {
+                return false;
+            }
+        }
+        try {
+            if (source.load(isbn) != null) {
+                return false;
+            }
+            source.save(book);
+            return true;
+        } finally {
+            entries.remove(isbn, gate);
+            gate.complete(RETRY);
+        }
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        String isbn = book.getIsbn();
+        CompletableFuture<Entry> gate = new CompletableFuture<>();
+        CompletableFuture<Entry> cachedFuture = null;
+        Entry cached = null;
+        while (true) {
+            CompletableFuture<Entry> existing = entries.putIfAbsent(isbn, gate);
+            if (existing == null) {
+                break;
+            }
+            Entry entry = await(existing);
+            if (entry != null && entry != RETRY && entries.replace(isbn, existing, gate)) {
+                cachedFuture = existing;
+                cached = entry;
+                break;
+            }
+        }
+        boolean removed = false;
+        try {
+            Book stored = cached != null ? cached.book : source.load(isbn);
+            if (stored != null && stored.getYear() == book.getYear() && stored.getTitle().equals(book.getTitle())) {
+                if (cached != null) {
+                    forget(isbn, cached);
+                    if (cached.cell != null) {
+                        cached.cell.retire();
+                    }
+                }
+                removed = source.delete(isbn);
+            }
+            return removed;
+        } finally {
+            if (cached != null && !removed) {
+                entries.replace(isbn, gate, cachedFuture);
+            } else {
+                entries.remove(isbn, gate);
+            }
+            gate.complete(RETRY);
+        }
+    }
+
+    @Override
+    public List<Book> findByYearRange(int fromYear, int toYear) {
+        List<Book> found = scan(book -> book.getYear() >= fromYear && book.getYear() <= toYear);
+        found.sort(Comparator.comparingInt(Book::getYear).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public List<Book> findByPriceRange(double minPrice, double maxPrice) {
+        List<Book> found = scan(book -> book.getPrice() >= minPrice && book.getPrice() <= maxPrice);
+        found.sort(Comparator.comparingDouble(Book::getPrice).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public <T extends Book> List<T> findByType(Class<T> type) {
+        List<T> found = new ArrayList<>();
+        scan(type::isInstance).forEach(book -> found.add(type.cast(book)));
+        return found;
+    }
+
+    @Override
+    public List<Book> searchTitlePrefix(String prefix) {
+        List<Book> found = scan(book -> book.getTitle().regionMatches(true, 0, prefix, 0, prefix.length()));
+        found.sort(Comparator.comparing((Book book) -> book.getTitle().toLowerCase(Locale.ROOT))
+                .thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        source.forEach(book -> action.accept(view(book)));
+    }
+
+    @Override
+    public int size() {
+        return source.size();
+    }
+
+    /**
+     * Writes the stock of every cached book whose stock changed since its last write-back
+     * to the source, keeping the entries cached
+     */
+    public void flush() {
+        List<Entry> cached = new ArrayList<>();
+        policyLock.lock();
+        try {
+            cached.addAll(window.values());
+            cached.addAll(main.values());
+        } finally {
+            policyLock.unlock();
+        }
+        for (Entry entry : cached) {
+            writeBack(entry, false);
+        }
+    }
+
+    /**
+     * Evicts every expired entry; expired entries are otherwise only
+     * evicted when read or pushed out by newer ones
+     */
+    public void cleanUp() {
+        if (ttlNanos <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        List<Map.Entry<String, Entry>> expired = new ArrayList<>();
+        policyLock.lock();
+        try {
+            for (LinkedHashMap<String, Entry> region : List.of(window, main)) {
+                Iterator<Map.Entry<String, Entry>> it = region.entrySet().iterator();
+                while (it.hasNext()) {
+                    Map.Entry<String, Entry> e = it.next();
+                    if (now - e.getValue().loadedAt > ttlNanos) {
+                        expired.add(e);
+                        it.remove();
+                    }
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        expired.forEach(e -> evict(e.getKey(), e.getValue()));
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of books currently cached
+     */
+    public int getCachedCount() {
+        policyLock.lock();
+        try {
+            return window.size() + main.size();
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    private List<Book> scan(Predicate<Book> filter) {
+        List<Book> found = new ArrayList<>();
+        source.forEach(book -> {
+            if (filter.test(book)) {
+                found.add(view(book));
+            }
+        });
+        return found;
+    }
+
+    /**
+     * Returns the cached book if there is one, otherwise a copy of the source
+     * book that reads stock without loading it and only goes through the
+     * cache to change stock, so scans do not fill the cache
+     */
+    private Book view(Book book) {
+        CompletableFuture<Entry> future = entries.get(book.getIsbn());
+        Entry entry = future == null ? null : future.getNow(null);
+        if (entry != null && entry != RETRY) {
+            return entry.book;
+        }
+        if (book instanceof PaperBook) {
+            return new PaperBook(book.getIsbn(), book.getTitle(), book.getYear(), book.getPrice(),
+                    new ScannedStockCell(book.getIsbn(), ((PaperBook) book).getStock()));
+        }
+        return book;
+    }
+
+    /**
+     * @return the stock of the cached entry if the ISBN is cached and live,
+     * otherwise the given stock
+     */
+    private int peekStock(String isbn, int fallback) {
+        CompletableFuture<Entry> future = entries.get(isbn);
+        Entry entry = future == null ? null : future.getNow(null);
+        if (entry != null && entry != RETRY && entry.cell != null) {
+            int stock = entry.cell.value.get();
+            if (stock != RETIRED) {
+                return stock;
+            }
+        }
+        return fallback;
+    }
+
+    /**
+     * Places a freshly loaded entry in the window, moving the window's LRU
+     * entry into the main region if it is used more often than the entry
+     * that would make room for it
+     */
+    private void admit(String isbn, Entry entry) {
+        List<Map.Entry<String, Entry>> victims = new ArrayList<>(2);
+        policyLock.lock();
+        try {
+            sketch.increment(isbn);
+            window.put(isbn, entry);
+            while (window.size() > windowCapacity) {
+                Map.Entry<String, Entry> candidate = eldest(window);
+                window.remove(candidate.getKey());
+                if (main.size() < mainCapacity) {
+                    main.put(candidate.getKey(), candidate.getValue());
+                    continue;
+                }
+                Map.Entry<String, Entry> victim = eldest(main);
+                if (sketch.frequency(candidate.getKey()) > sketch.frequency(victim.getKey())) {
+                    main.remove(victim.getKey());
+                    main.put(candidate.getKey(), candidate.getValue());
+                    victims.add(victim);
+                } else {
+                    victims.add(candidate);
+                }
+            }
+        } finally {
+            policyLock.unlock();
+        }
+        victims.forEach(victim -> evict(victim.getKey(), victim.getValue()));
+    }
+
+    private void recordAccess(String isbn) {
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(isbn);
+                if (window.get(isbn) == null) {
+                    main.get(isbn);
+                }
+            } finally {
+                policyLock.unlock();
+            }
+        }
+    }
+
+    private void forget(String isbn, Entry entry) {
+        policyLock.lock();
+        try {
+            window.remove(isbn, entry);
+            main.remove(isbn, entry);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Retires the entry and writes its stock back while a gate future keeps
+     * loads of the ISBN waiting, so a reload always sees the written stock
+     */
+    private void evict(String isbn, Entry entry) {
+        CompletableFuture<Entry> current = entries.get(isbn);
+        if (current == null || current.getNow(null) != entry) {
+            return;
+        }
+        CompletableFuture<Entry> gate = new CompletableFuture<>();
+        if (!entries.replace(isbn, current, gate)) {
+            return;
+        }
+        try {
+            writeBack(entry, true);
+            evictions.increment();
+        } finally {
+            entries.remove(isbn, gate);
+            gate.complete(RETRY);
+        }
+    }
+
+    /**
+     * Saves the stock if it changed since the last save. Write-backs of one
+     * cell are serialized, so an older stock can never overwrite a newer one.
+     */
+    private void writeBack(Entry entry, boolean retire) {
+        CachedStockCell cell = entry.cell;
+        if (cell == null) {
+            return;
+        }
+        synchronized (cell) {
+            int stock = retire ? cell.retire() : cell.value.get();
+            if (stock != RETIRED && stock != cell.savedStock) {
+                Book book = entry.book;
+                source.save(new PaperBook(book.getIsbn(), book.getTitle(), book.getYear(), book.getPrice(), stock));
+                cell.savedStock = stock;
+            }
+        }
+    }
+
+    private static <K, V> Map.Entry<K, V> eldest(LinkedHashMap<K, V> region) {
+        return region.entrySet().iterator().next();
+    }
+
+    private static Entry await(CompletableFuture<Entry> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static final class Entry {
+        final Book book;
+        final CachedStockCell cell;
+        final long loadedAt;
+
+        Entry(Book book, CachedStockCell cell, long loadedAt) {
+            this.book = book;
+            this.cell = cell;
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Stock of a cached paper book. Once retired it holds no stock of its own
+     * and forwards every call to the book currently cached under its ISBN.
+     */
+    private final class CachedStockCell implements StockCell {
+        private final String isbn;
+        private final AtomicInteger value;
+        private int savedStock;
+
+        CachedStockCell(String isbn, int stock) {
+            this.isbn = isbn;
+            this.value = new AtomicInteger(stock);
+            this.savedStock = stock;
+        }
+
+        @Override
+        public int get() {
+            int current = value.get();
+            if (current != RETIRED) {
+                return current;
+            }
+            Book live = CachingCatalog.this.get(isbn);
+            return live instanceof PaperBook ? ((PaperBook) live).getStock() : 0;
+        }
+
+        @Override
+        public boolean tryTake(int quantity) {
+            while (true) {
+                int current = value.get();
+                if (current == RETIRED) {
+                    Book live = CachingCatalog.this.get(isbn);
+                    return live instanceof PaperBook && ((PaperBook) live).tryPurchase(quantity);
+                }
+                if (current < quantity) {
+                    return false;
+                }
+                if (value.compareAndSet(current, current - quantity)) {
+                    return true;
+                }
+            }
+        }
+
+        @Override
+        public void add(int quantity) {
+            while (true) {
+                int current = value.get();
+                if (current == RETIRED) {
+                    Book live = CachingCatalog.this.get(isbn);
+                    if (live instanceof PaperBook) {
+                        ((PaperBook) live).cancelPurchase(quantity);
+                    }
+                    return;
+                }
+                if (value.compareAndSet(current, current + quantity)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return the stock held when retired, or RETIRED if it already was
+         */
+        int retire() {
+            return value.getAndSet(RETIRED);
+        }
+    }
+
+    /**
+     * Stock of a paper book returned by a scan. Reads use the cached entry
+     * when there is one and otherwise the stock the source held when it was
+     * scanned; purchases and returns go through the cache.
+     */
+    private final class ScannedStockCell implements StockCell {
+        private final String isbn;
+        private final int scannedStock;
+
+        ScannedStockCell(String isbn, int scannedStock) {
+            this.isbn = isbn;
+            this.scannedStock = scannedStock;
+        }
+
+        @Override
+        public int get() {
+            return peekStock(isbn, scannedStock);
+        }
+
+        @Override
+        public boolean tryTake(int quantity) {
+            Book live = CachingCatalog.this.get(isbn);
+            return live instanceof PaperBook && ((PaperBook) live).tryPurchase(quantity);
+        }
+
+        @Override
+        public void add(int quantity) {
+            Book live = CachingCatalog.this.get(isbn);
+            if (live instanceof PaperBook) {
+                ((PaperBook) live).cancelPurchase(quantity);
+            }
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit access counters. All counters are halved
+     * after ten times the cache size in increments, so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97cb3127, 0x9e3779b9, 0x7f4a7c15, 0xc2b2ae35};
+
+        private final byte[] counters;
+        private final int mask;
+        private final int resetAt;
+        private int additions;
+
+        FrequencySketch(int maxEntries) {
+            int size = Integer.highestOneBit(Math.max(16, maxEntries * 4 - 1)) << 1;
+            this.counters = new byte[size];
+            this.mask = size - 1;
+            this.resetAt = maxEntries * 10;
+        }
+
+        void increment(String key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int seed : SEEDS) {
+                int i = index(hash, seed);
+                if (counters[i] < 15) {
+                    counters[i]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= resetAt) {
+                for (int i = 0; i < counters.length; i++) {
+                    counters[i] >>= 1;
+                }
+                additions /= 2;
+            }
+        }
+
+        int frequency(String key) {
+            int hash = spread(key.hashCode());
+            int min = 15;
+            for (int seed : SEEDS) {
+                min = Math.min(min, counters[index(hash, seed)]);
+            }
+            return min;
+        }
+
+        private int index(int hash, int seed) {
+            int h = hash * seed;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        private static int spread(int h) {
+            h ^= h >>> 17;
+            h *= 0xed5ad4bb;
+            return h ^ (h >>> 11);
+        }
+    }
+}
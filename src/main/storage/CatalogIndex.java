@@ -0,0 +1,156 @@
+package storage;
+
+import model.Book;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Secondary indexes over the catalog, maintained on every add and removal.
+ * Year and price are ordered skip lists keyed by (value, ISBN), so a range
+ * query is a single O(log n + k) sub-map walk with no per-value buckets to
+ * race on. Titles are ordered by their lower-cased text, so a prefix search
+ * is one ordered range scan, the same O(log n + k) bound as a trie walk.
+ */
+public class CatalogIndex {
+    private final ConcurrentSkipListMap<Key, Book> byYear = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<Key, Book> byPrice = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<String, Book> byTitle = new ConcurrentSkipListMap<>();
+    private final Map<Class<? extends Book>, Set<Book>> byType = new ConcurrentHashMap<>();
+
+    /**
+     * Indexes a book that was just inserted into the inventory
+     * @param book the book to index
+     */
+    public void add(Book book) {
+        byYear.put(new Key(book.getYear(), book.getIsbn()), book);
+        byPrice.put(new Key(book.getPrice(), book.getIsbn()), book);
+        byTitle.put(titleKey(book), book);
+        byType.computeIfAbsent(book.getClass(), type -> ConcurrentHashMap.newKeySet()).add(book);
+    }
+
+    /**
+     * Drops a book that was just removed from the inventory
+     * @param book the book to drop
+     */
+    public void remove(Book book) {
+        byYear.remove(new Key(book.getYear(), book.getIsbn()), book);
+        byPrice.remove(new Key(book.getPrice(), book.getIsbn()), book);
+        byTitle.remove(titleKey(book), book);
+        Set<Book> bucket = byType.get(book.getClass());
+        if (bucket != null) {
+            bucket.remove(book);
+        }
+    }
+
+    /**
+     * @return books published between the two years, inclusive, oldest first
+     */
+    public List<Book> yearRange(int fromYear, int toYear) {
+        if (fromYear > toYear) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(byYear.subMap(Key.lowest(fromYear), true, Key.highest(toYear), true).values());
+    }
+
+    /**
+     * @param isbn the ISBN of the last book already listed, or null to start
+     * @return up to limit books after (year, isbn) in year-then-ISBN order
+     */
+    public List<Book> yearOrderAfter(int year, String isbn, int limit) {
+        NavigableMap<Key, Book> tail = isbn == null ? byYear : byYear.tailMap(new Key(year, isbn), false);
+        List<Book> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Book book : tail.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(book);
+        }
+        return page;
+    }
+
+    /**
+     * @return books priced between the two bounds, inclusive, cheapest first
+     */
+    public List<Book> priceRange(double minPrice, double maxPrice) {
+        if (minPrice > maxPrice) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<>(byPrice.subMap(Key.lowest(minPrice), true, Key.highest(maxPrice), true).values());
+    }
+
+    /**
+     * @return books whose title starts with the prefix, ignoring case, in title order
+     */
+    public List<Book> titlePrefix(String prefix) {
+        String from = prefix.toLowerCase(Locale.ROOT);
+        return new ArrayList<>(byTitle.subMap(from, true, from + '\uffff', false).values());
+    }
+
+    /**
+     * @return every book of exactly the given class
+     */
+    public <T extends Book> List<T> ofType(Class<T> type) {
+        Set<Book> bucket = byType.get(type);
+        List<T> books = new ArrayList<>();
+        if (bucket != null) {
+            bucket.forEach(book -> books.add(type.cast(book)));
+        }
+        return books;
+    }
+
+    private static String titleKey(Book book) {
+        return book.getTitle().toLowerCase(Locale.ROOT) + '\u0000' + book.getIsbn();
+    }
+
+    /**
+     * Index key ordered by value, then ISBN. A null ISBN sorts after every
+     * ISBN with the same value so it can serve as an inclusive upper bound.
+     */
+    public static final class Key implements Comparable<Key> {
+        private final double value;
+        private final String isbn;
+
+        Key(double value, String isbn) {
+            this.value = value;
+            this.isbn = isbn;
+        }
+
+        static Key lowest(double value) {
+            return new Key(value, "");
+        }
+
+        static Key highest(double value) {
+            return new Key(value, null);
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int byValue = Double.compare(value, other.value);
+            if (byValue != 0) {
+                return byValue;
+            }
+            if (isbn == null || other.isbn == null) {
+                return isbn == null ? (other.isbn == null ? 0 : 1) : -1;
+            }
+            return isbn.compareTo(other.isbn);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(value) * 31 + (isbn == null ? 0 : isbn.hashCode());
+        }
+    }
+}
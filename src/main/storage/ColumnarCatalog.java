@@ -0,0 +1,497 @@
+package storage;
+
+import interfaces.Catalog;
+import interfaces.StockCell;
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Struct-of-arrays catalog for multi-million-title inventories.
+ * Each field is a primitive column split into fixed-size chunks: year,
+ * price in cents, stock, a type byte and a dictionary-encoded filetype.
+ * Numeric ISBNs, hyphenated or not, are packed into longs and found through
+ * an open-addressing index, so a title costs a few dozen bytes instead of a
+ * Book object graph and a boxed map entry. Book objects are only
+ * materialized when asked for.
+ *
+ * Structural changes take a write lock; lookups are optimistic reads that
+ * only fall back to a read lock when they race a writer. Stock lives in
+ * the column itself and is updated with a CAS on the array element, so
+ * purchases never take the lock. Removed rows go on a free list and are
+ * reused, oldest first, once they have been free for a grace period, so
+ * the columns stay as large as the live catalog under churn. Each stock
+ * word carries a generation in its high half that changes on reuse: a view
+ * of a removed title keeps its final stock until then, and afterwards
+ * reads as out of stock and fails every CAS, so it can never touch the
+ * new title's stock.
+ */
+public class ColumnarCatalog implements Catalog {
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final byte FREE = 0;
+    private static final byte PAPER = 1;
+    private static final byte EBOOK = 2;
+    private static final byte SHOWCASE = 3;
+    private static final VarHandle STOCK = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final long STOCK_BITS = 0xFFFFFFFFL;
+    private static final long REUSE_DELAY = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final StampedLock lock = new StampedLock();
+    private final IsbnIndex packedIndex;
+    private final Map<String, Integer> textIndex = new ConcurrentHashMap<>();
+    private final List<String> filetypes = new ArrayList<>();
+    private final Map<String, Short> filetypeCodes = new ConcurrentHashMap<>();
+    private final AtomicInteger live = new AtomicInteger();
+
+    private int[][] years = new int[0][];
+    private long[][] priceCents = new long[0][];
+    // generation << 32 | stock
+    private long[][] stocks = new long[0][];
+    private byte[][] types = new byte[0][];
+    private short[][] filetypeColumn = new short[0][];
+    private long[][] isbnKeys = new long[0][];
+    private String[][] titles = new String[0][];
+    private String[][] textIsbns = new String[0][];
+    private int rowCount;
+    // ring of free rows, oldest first, with the time each was freed
+    private int[] freeRows = new int[16];
+    private long[] freedAt = new long[16];
+    private int freeHead;
+    private int freeCount;
+
+    public ColumnarCatalog() {
+        this(1024);
+    }
+
+    /**
+     * @param expectedTitles the number of titles to size the ISBN index for
+     */
+    public ColumnarCatalog(int expectedTitles) {
+        this.packedIndex = new IsbnIndex(expectedTitles);
+    }
+
+    @Override
+    public Book get(String isbn) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                int row = findRow(isbn);
+                Book book = row < 0 ? null : materialize(row);
+                if (lock.validate(stamp)) {
+                    return book;
+                }
+            } catch (RuntimeException torn) {
+                // raced a writer; retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            int row = findRow(isbn);
+            return row < 0 ? null : materialize(row);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean contains(String isbn) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                boolean found = findRow(isbn) >= 0;
+                if (lock.validate(stamp)) {
+                    return found;
+                }
+            } catch (RuntimeException torn) {
+                // raced a writer; retry under the read lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return findRow(isbn) >= 0;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(Book book) {
+        byte type = typeOf(book);
+        long stamp = lock.writeLock();
+        try {
+            if (findRow(book.getIsbn()) >= 0) {
+                return false;
+            }
+            int row = claimRow();
+            int chunk = row >>> CHUNK_BITS;
+            int offset = row & CHUNK_MASK;
+            years[chunk][offset] = book.getYear();
+            priceCents[chunk][offset] = Math.round(book.getPrice() * 100);
+            titles[chunk][offset] = book.getTitle();
+            int stock = book instanceof PaperBook ? ((PaperBook) book).getStock() : 0;
+            long generation = ((long) STOCK.getVolatile(stocks[chunk], offset) >>> 32) + 1 & STOCK_BITS;
+            STOCK.setVolatile(stocks[chunk], offset, generation << 32 | stock & STOCK_BITS);
+            if (book instanceof EBook) {
+                filetypeColumn[chunk][offset] = filetypeCode(((EBook) book).getFiletype());
+            }
+            long key = IsbnIndex.pack(book.getIsbn());
+            isbnKeys[chunk][offset] = key;
+            if (key == IsbnIndex.NOT_PACKABLE) {
+                textIsbnChunk(chunk)[offset] = book.getIsbn();
+                textIndex.put(book.getIsbn(), row);
+            } else {
+                packedIndex.put(key, row);
+            }
+            types[chunk][offset] = type;
+            live.incrementAndGet();
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        long stamp = lock.writeLock();
+        try {
+            int row = findRow(book.getIsbn());
+            if (row < 0 || !sameRecord(row, book)) {
+                return false;
+            }
+            delete(row);
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public List<Book> findByYearRange(int fromYear, int toYear) {
+        List<Book> found = scan((chunk, offset) ->
+                years[chunk][offset] >= fromYear && years[chunk][offset] <= toYear);
+        found.sort(Comparator.comparingInt(Book::getYear).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public List<Book> findByPriceRange(double minPrice, double maxPrice) {
+        long min = (long) Math.ceil(minPrice * 100 - 1e-6);
+        long max = (long) Math.floor(maxPrice * 100 + 1e-6);
+        List<Book> found = scan((chunk, offset) ->
+                priceCents[chunk][offset] >= min && priceCents[chunk][offset] <= max);
+        found.sort(Comparator.comparingDouble(Book::getPrice).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public <T extends Book> List<T> findByType(Class<T> type) {
+        byte code = type == PaperBook.class ? PAPER
+                : type == EBook.class ? EBOOK
+                : type == ShowcaseBook.class ? SHOWCASE : FREE;
+        List<T> found = new ArrayList<>();
+        if (code != FREE) {
+            scan((chunk, offset) -> types[chunk][offset] == code).forEach(book -> found.add(type.cast(book)));
+        }
+        return found;
+    }
+
+    @Override
+    public List<Book> searchTitlePrefix(String prefix) {
+        List<Book> found = scan((chunk, offset) ->
+                titles[chunk][offset].regionMatches(true, 0, prefix, 0, prefix.length()));
+        found.sort(Comparator.comparing((Book book) -> book.getTitle().toLowerCase(Locale.ROOT))
+                .thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    /**
+     * One pass over the year column keeping the best limit rows; a row is
+     * only materialized if its year could still place it on the page
+     */
+    @Override
+    public List<Book> listAfter(int year, String isbn, int limit) {
+        PriorityQueue<Book> best = new PriorityQueue<>(limit + 1, CATALOG_ORDER.reversed());
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                int chunk = row >>> CHUNK_BITS;
+                int offset = row & CHUNK_MASK;
+                int rowYear = years[chunk][offset];
+                if (types[chunk][offset] == FREE || isbn != null && rowYear < year
+                        || best.size() == limit && rowYear > best.peek().getYear()) {
+                    continue;
+                }
+                Book book = materialize(row);
+                if (isbn != null && rowYear == year && book.getIsbn().compareTo(isbn) <= 0) {
+                    continue;
+                }
+                if (best.size() < limit) {
+                    best.add(book);
+                } else if (CATALOG_ORDER.compare(book, best.peek()) < 0) {
+                    best.poll();
+                    best.add(book);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        List<Book> page = new ArrayList<>(best);
+        page.sort(CATALOG_ORDER);
+        return page;
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        scan((chunk, offset) -> true).forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return live.get();
+    }
+
+    /**
+     * Estimates the heap held by the columns and indexes, excluding title strings
+     * @return the estimated footprint in bytes
+     */
+    public long footprintBytes() {
+        long stamp = lock.readLock();
+        try {
+            long perRow = Integer.BYTES + Long.BYTES * 3 + Byte.BYTES + Short.BYTES
+                    + 2L * 4; // two reference slots: title and text ISBN
+            return (long) years.length * CHUNK_SIZE * perRow + packedIndex.footprintBytes()
+                    + (long) textIndex.size() * 64 + (long) freeRows.length * (Integer.BYTES + Long.BYTES);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private List<Book> scan(RowFilter filter) {
+        List<Book> found = new ArrayList<>();
+        long stamp = lock.readLock();
+        try {
+            for (int row = 0; row < rowCount; row++) {
+                int chunk = row >>> CHUNK_BITS;
+                int offset = row & CHUNK_MASK;
+                if (types[chunk][offset] != FREE && filter.matches(chunk, offset)) {
+                    found.add(materialize(row));
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        return found;
+    }
+
+    private int findRow(String isbn) {
+        long key = IsbnIndex.pack(isbn);
+        if (key == IsbnIndex.NOT_PACKABLE) {
+            Integer row = textIndex.get(isbn);
+            return row == null ? -1 : row;
+        }
+        return packedIndex.get(key);
+    }
+
+    private Book materialize(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        long key = isbnKeys[chunk][offset];
+        String isbn = key == IsbnIndex.NOT_PACKABLE ? textIsbns[chunk][offset] : IsbnIndex.unpack(key);
+        String title = titles[chunk][offset];
+        int year = years[chunk][offset];
+        double price = priceCents[chunk][offset] / 100.0;
+        switch (types[chunk][offset]) {
+            case PAPER:
+                long word = (long) STOCK.getVolatile(stocks[chunk], offset);
+                return new PaperBook(isbn, title, year, price,
+                        new ColumnStockCell(stocks[chunk], offset, word & ~STOCK_BITS));
+            case EBOOK:
+                return new EBook(isbn, title, year, price, filetypes.get(filetypeColumn[chunk][offset]));
+            case SHOWCASE:
+                return new ShowcaseBook(isbn, title, year, price);
+            default:
+                throw new IllegalStateException("Row " + row + " is not in use");
+        }
+    }
+
+    private boolean sameRecord(int row, Book book) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        return types[chunk][offset] == typeOf(book)
+                && years[chunk][offset] == book.getYear()
+                && titles[chunk][offset].equals(book.getTitle());
+    }
+
+    private void delete(int row) {
+        int chunk = row >>> CHUNK_BITS;
+        int offset = row & CHUNK_MASK;
+        long key = isbnKeys[chunk][offset];
+        if (key == IsbnIndex.NOT_PACKABLE) {
+            textIndex.remove(textIsbns[chunk][offset]);
+            textIsbns[chunk][offset] = null;
+        } else {
+            packedIndex.remove(key);
+        }
+        types[chunk][offset] = FREE;
+        titles[chunk][offset] = null;
+        live.decrementAndGet();
+        if (freeCount == freeRows.length) {
+            int[] rows = new int[freeRows.length * 2];
+            long[] times = new long[rows.length];
+            for (int i = 0; i < freeCount; i++) {
+                rows[i] = freeRows[(freeHead + i) % freeRows.length];
+                times[i] = freedAt[(freeHead + i) % freeRows.length];
+            }
+            freeRows = rows;
+            freedAt = times;
+            freeHead = 0;
+        }
+        int tail = (freeHead + freeCount) % freeRows.length;
+        freeRows[tail] = row;
+        freedAt[tail] = System.nanoTime();
+        freeCount++;
+    }
+
+    /**
+     * Takes the oldest free row once its grace period is over, otherwise a
+     * new row at the end, adding a chunk when the last one is full
+     */
+    private int claimRow() {
+        if (freeCount > 0 && System.nanoTime() - freedAt[freeHead] >= REUSE_DELAY) {
+            int row = freeRows[freeHead];
+            freeHead = (freeHead + 1) % freeRows.length;
+            freeCount--;
+            return row;
+        }
+        int row = rowCount;
+        if ((row & CHUNK_MASK) == 0) {
+            addChunk();
+        }
+        rowCount = row + 1;
+        return row;
+    }
+
+    private void addChunk() {
+        int chunks = years.length + 1;
+        years = Arrays.copyOf(years, chunks);
+        priceCents = Arrays.copyOf(priceCents, chunks);
+        stocks = Arrays.copyOf(stocks, chunks);
+        types = Arrays.copyOf(types, chunks);
+        filetypeColumn = Arrays.copyOf(filetypeColumn, chunks);
+        isbnKeys = Arrays.copyOf(isbnKeys, chunks);
+        titles = Arrays.copyOf(titles, chunks);
+        textIsbns = Arrays.copyOf(textIsbns, chunks);
+        int last = chunks - 1;
+        years[last] = new int[CHUNK_SIZE];
+        priceCents[last] = new long[CHUNK_SIZE];
+        stocks[last] = new long[CHUNK_SIZE];
+        types[last] = new byte[CHUNK_SIZE];
+        filetypeColumn[last] = new short[CHUNK_SIZE];
+        isbnKeys[last] = new long[CHUNK_SIZE];
+        titles[last] = new String[CHUNK_SIZE];
+    }
+
+    /**
+     * Text ISBNs are rare, so their chunk is only allocated when first needed
+     */
+    private String[] textIsbnChunk(int chunk) {
+        if (textIsbns[chunk] == null) {
+            textIsbns[chunk] = new String[CHUNK_SIZE];
+        }
+        return textIsbns[chunk];
+    }
+
+    private short filetypeCode(String filetype) {
+        Short code = filetypeCodes.get(filetype);
+        if (code == null) {
+            if (filetypes.size() > Short.MAX_VALUE) {
+                throw new IllegalStateException("Too many distinct filetypes");
+            }
+            code = (short) filetypes.size();
+            filetypes.add(filetype);
+            filetypeCodes.put(filetype, code);
+        }
+        return code;
+    }
+
+    private static byte typeOf(Book book) {
+        if (book.getClass() == PaperBook.class) {
+            return PAPER;
+        }
+        if (book.getClass() == EBook.class) {
+            return EBOOK;
+        }
+        if (book.getClass() == ShowcaseBook.class) {
+            return SHOWCASE;
+        }
+        throw new IllegalArgumentException("Columnar catalog cannot store " + book.getClass().getSimpleName());
+    }
+
+    @FunctionalInterface
+    private interface RowFilter {
+        boolean matches(int chunk, int offset);
+    }
+
+    /**
+     * Stock cell that reads and CASes one element of a stock column chunk,
+     * as long as the element still carries the generation it was made for
+     */
+    private static final class ColumnStockCell implements StockCell {
+        private final long[] column;
+        private final int offset;
+        private final long generation;
+
+        ColumnStockCell(long[] column, int offset, long generation) {
+            this.column = column;
+            this.offset = offset;
+            this.generation = generation;
+        }
+
+        @Override
+        public int get() {
+            long word = (long) STOCK.getVolatile(column, offset);
+            return (word & ~STOCK_BITS) == generation ? (int) word : 0;
+        }
+
+        @Override
+        public boolean tryTake(int quantity) {
+            long word;
+            do {
+                word = (long) STOCK.getVolatile(column, offset);
+                if ((word & ~STOCK_BITS) != generation || (int) word < quantity) {
+                    return false;
+                }
+            } while (!STOCK.compareAndSet(column, offset, word, word - quantity));
+            return true;
+        }
+
+        @Override
+        public void add(int quantity) {
+            long word;
+            do {
+                word = (long) STOCK.getVolatile(column, offset);
+                if ((word & ~STOCK_BITS) != generation) {
+                    return;
+                }
+            } while (!STOCK.compareAndSet(column, offset, word, generation | (int) word + quantity & STOCK_BITS));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package storage;
+
+import interfaces.CatalogSource;
+import model.Book;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Local stand-in for a slow catalog tier: one file per book in a directory,
+ * named after the hex of its ISBN. An optional delay is added to every load
+ * and save to mimic the latency of a remote store.
+ */
+public class FileCatalogSource implements CatalogSource {
+    private final Path directory;
+    private final long latencyNanos;
+    private final LongAdder loads = new LongAdder();
+
+    /**
+     * @param directory the directory holding the book files
+     * @param latency the delay added to each load and save
+     * @param unit the unit of the delay
+     */
+    public FileCatalogSource(Path directory, long latency, TimeUnit unit) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.latencyNanos = unit.toNanos(latency);
+    }
+
+    public FileCatalogSource(Path directory) throws IOException {
+        this(directory, 0, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public Book load(String isbn) {
+        loads.increment();
+        simulateLatency();
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(fileOf(isbn)))) {
+            return BookCodec.read(in);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void save(Book book) {
+        simulateLatency();
+        Path file = fileOf(book.getIsbn());
+        Path temp = file.resolveSibling(file.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(temp))) {
+                BookCodec.write(out, book);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public boolean delete(String isbn) {
+        try {
+            return Files.deleteIfExists(fileOf(isbn));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.book")) {
+            for (Path file : files) {
+                Book book;
+                try (DataInputStream in = new DataInputStream(Files.newInputStream(file))) {
+                    book = BookCodec.read(in);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                action.accept(book);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public int size() {
+        int count = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.book")) {
+            for (Path ignored : files) {
+                count++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return count;
+    }
+
+    /**
+     * @return the number of loads issued against this source
+     */
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    private Path fileOf(String isbn) {
+        StringBuilder name = new StringBuilder();
+        for (byte b : isbn.getBytes(StandardCharsets.UTF_8)) {
+            name.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return directory.resolve(name.append(".book").toString());
+    }
+
+    private void simulateLatency() {
+        if (latencyNanos > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(latencyNanos);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
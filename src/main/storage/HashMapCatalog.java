@@ -0,0 +1,80 @@
+package storage;
+
+import interfaces.Catalog;
+import model.Book;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Default catalog: a concurrent map of Book objects with secondary indexes
+ */
+public class HashMapCatalog implements Catalog {
+    private final Map<String, Book> books = new ConcurrentHashMap<>();
+    private final CatalogIndex index = new CatalogIndex();
+
+    @Override
+    public Book get(String isbn) {
+        return books.get(isbn);
+    }
+
+    @Override
+    public boolean contains(String isbn) {
+        return books.containsKey(isbn);
+    }
+
+    @Override
+    public boolean add(Book book) {
+        if (books.putIfAbsent(book.getIsbn(), book) != null) {
+            return false;
+        }
+        index.add(book);
+        return true;
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        if (!books.remove(book.getIsbn(), book)) {
+            return false;
+        }
+        index.remove(book);
+        return true;
+    }
+
+    @Override
+    public List<Book> findByYearRange(int fromYear, int toYear) {
+        return index.yearRange(fromYear, toYear);
+    }
+
+    @Override
+    public List<Book> listAfter(int year, String isbn, int limit) {
+        return index.yearOrderAfter(year, isbn, limit);
+    }
+
+    @Override
+    public List<Book> findByPriceRange(double minPrice, double maxPrice) {
+        return index.priceRange(minPrice, maxPrice);
+    }
+
+    @Override
+    public <T extends Book> List<T> findByType(Class<T> type) {
+        return index.ofType(type);
+    }
+
+    @Override
+    public List<Book> searchTitlePrefix(String prefix) {
+        return index.titlePrefix(prefix);
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        books.values().forEach(action);
+    }
+
+    @Override
+    public int size() {
+        return books.size();
+    }
+}
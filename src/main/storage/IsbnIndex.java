@@ -0,0 +1,187 @@
+package storage;
+
+/**
+ * Open-addressing map from a packed numeric ISBN to a catalog row.
+ * Keys are primitive longs probed linearly, so lookups allocate nothing and
+ * there is no boxed entry per title. Not thread-safe: the owning catalog
+ * guards writes and validates optimistic reads. The table never fills past
+ * half, so a probe always reaches an empty slot even during a torn read.
+ */
+final class IsbnIndex {
+    static final long NOT_PACKABLE = 0L;
+    private static final long EMPTY = 0L;
+    private static final long DELETED = -1L;
+    private static final int MAX_DIGITS = 17;
+    private static final int MAX_SEPARATED_DIGITS = 13;
+    private static final int SEPARATOR_SHIFT = 44;
+    private static final int LENGTH_SHIFT = 57;
+
+    private long[] keys;
+    private int[] rows;
+    private int used;
+
+    IsbnIndex(int expected) {
+        int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+        keys = new long[capacity];
+        rows = new int[capacity];
+    }
+
+    /**
+     * Packs an ISBN into a long: up to 17 plain digits, or up to 13 digits
+     * with single hyphens between them, as in 978-1234567890 or
+     * 978-1-23-456789-0. The digit count is kept so leading zeros survive,
+     * and for up to 13 digits a 12-bit mask above the value records after
+     * which digits a hyphen sits, so unpack restores the ISBN as written.
+     * Returns NOT_PACKABLE for anything else.
+     */
+    static long pack(String isbn) {
+        int length = isbn.length();
+        if (length == 0 || length > 2 * MAX_SEPARATED_DIGITS - 1) {
+            return NOT_PACKABLE;
+        }
+        long value = 0;
+        int digits = 0;
+        int separators = 0;
+        for (int i = 0; i < length; i++) {
+            char c = isbn.charAt(i);
+            if (c == '-') {
+                int bit = 1 << (digits - 1);
+                if (digits == 0 || digits >= MAX_SEPARATED_DIGITS || i == length - 1 || (separators & bit) != 0) {
+                    return NOT_PACKABLE;
+                }
+                separators |= bit;
+            } else if (c >= '0' && c <= '9' && digits < MAX_DIGITS) {
+                value = value * 10 + (c - '0');
+                digits++;
+            } else {
+                return NOT_PACKABLE;
+            }
+        }
+        if (separators != 0 && digits > MAX_SEPARATED_DIGITS) {
+            return NOT_PACKABLE;
+        }
+        return ((long) digits << LENGTH_SHIFT) | ((long) separators << SEPARATOR_SHIFT) | value;
+    }
+
+    static String unpack(long key) {
+        int digits = (int) (key >>> LENGTH_SHIFT);
+        int separators = 0;
+        long value = key & ((1L << LENGTH_SHIFT) - 1);
+        if (digits <= MAX_SEPARATED_DIGITS) {
+            separators = (int) (value >>> SEPARATOR_SHIFT);
+            value &= (1L << SEPARATOR_SHIFT) - 1;
+        }
+        char[] chars = new char[digits + Integer.bitCount(separators)];
+        int pos = chars.length - 1;
+        for (int digit = digits; digit >= 1; digit--) {
+            chars[pos--] = (char) ('0' + value % 10);
+            value /= 10;
+            if (digit > 1 && (separators & 1 << (digit - 2)) != 0) {
+                chars[pos--] = '-';
+            }
+        }
+        return new String(chars);
+    }
+
+    /**
+     * @return the row stored for the key, or -1
+     */
+    int get(long key) {
+        long[] k = keys;
+        int[] r = rows;
+        int mask = k.length - 1;
+        for (int i = slot(key, mask), probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            long stored = k[i];
+            if (stored == key) {
+                return r[i];
+            }
+            if (stored == EMPTY) {
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int row) {
+        if ((used + 1) * 2 > keys.length) {
+            resize();
+        }
+        int mask = keys.length - 1;
+        int target = -1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long stored = keys[i];
+            if (stored == key) {
+                rows[i] = row;
+                return;
+            }
+            if (stored == DELETED && target < 0) {
+                target = i;
+            } else if (stored == EMPTY) {
+                if (target < 0) {
+                    target = i;
+                    used++;
+                }
+                rows[target] = row;
+                keys[target] = key;
+                return;
+            }
+        }
+    }
+
+    void remove(long key) {
+        int mask = keys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            long stored = keys[i];
+            if (stored == key) {
+                keys[i] = DELETED;
+                return;
+            }
+            if (stored == EMPTY) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return the heap held by the table, in bytes
+     */
+    long footprintBytes() {
+        return (long) keys.length * Long.BYTES + (long) rows.length * Integer.BYTES;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        int[] oldRows = rows;
+        int live = 0;
+        for (long key : oldKeys) {
+            if (key != EMPTY && key != DELETED) {
+                live++;
+            }
+        }
+        // tombstone-heavy tables are rehashed in place rather than doubled
+        int capacity = (live + 1) * 4 > oldKeys.length ? oldKeys.length * 2 : oldKeys.length;
+        long[] newKeys = new long[capacity];
+        int[] newRows = new int[capacity];
+        int mask = newKeys.length - 1;
+        for (int j = 0; j < oldKeys.length; j++) {
+            long key = oldKeys[j];
+            if (key == EMPTY || key == DELETED) {
+                continue;
+            }
+            int i = slot(key, mask);
+            while (newKeys[i] != EMPTY) {
+                i = (i + 1) & mask;
+            }
+            newRows[i] = oldRows[j];
+            newKeys[i] = key;
+        }
+        rows = newRows;
+        keys = newKeys;
+        used = live;
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+}
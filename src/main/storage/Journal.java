@@ -0,0 +1,935 @@
+package storage;
+
+import interfaces.Catalog;
+import interfaces.Purchasable;
+import model.Book;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+import java.util.function.ToIntBiFunction;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead journal of catalog mutations: added books,
+ * removed books, stock holds, stock adjustments and purchase orders.
+ *
+ * Each commit encodes its record, applies its in-memory mutation and
+ * appends the record under one lock, so the log order is exactly the order
+ * the mutations took effect, and a record that cannot be encoded rejects
+ * its mutation instead of leaving it unlogged. The caller then waits until
+ * a background flusher has written and fsynced its record. The flusher
+ * drains everything appended since its last write in one go, so concurrent
+ * purchases share a single fsync.
+ *
+ * The log is split into segments named after their first sequence number.
+ * Once enough segments have rolled, a snapshot of the catalog is written and
+ * the segments it covers are deleted. Recovery loads the newest snapshot,
+ * replays the records after it and truncates a torn record at the tail of
+ * the last segment. A bad record anywhere else, or a gap in the sequence
+ * numbers, fails recovery rather than silently skipping mutations. Records
+ * are framed as length, CRC32C, op, sequence number, payload.
+ */
+public class Journal implements AutoCloseable {
+    private static final long SNAPSHOT_MAGIC = 0x5142_534E_4150_3031L; // "QBSNAP01"
+    private static final int HEADER = 17;
+    private static final byte ADD = 1;
+    private static final byte ORDER = 3;
+    private static final byte REMOVE = 4;
+    private static final byte HOLD = 5;
+    private static final byte RELEASE = 6;
+    private static final byte HOLD_ORDER = 7;
+    private static final byte ADJUST = 8;
+    private static final Book ABSENT = new ShowcaseBook("", "", 0, 0);
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int segmentsPerCheckpoint;
+    private final NavigableMap<Long, Path> segments = new ConcurrentSkipListMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final ByteArrayOutputStream scratch = new ByteArrayOutputStream();
+    private final DataOutputStream payload = new DataOutputStream(scratch);
+    private final CRC32C crc = new CRC32C();
+    private final AtomicBoolean checkpointing = new AtomicBoolean();
+    private final Object checkpointLock = new Object();
+    private final Map<String, Integer> heldStock = new HashMap<>();
+    private final Map<Long, Hold> recoveredHolds = new HashMap<>();
+    private ExecutorService checkpointer;
+    private Thread flusher;
+    private Catalog catalog;
+    private FileChannel channel;
+    private ByteBuffer pending = ByteBuffer.allocate(64 * 1024);
+    private long lastSeq;
+    private long durableSeq;
+    private long orderCount;
+    private long flushCount;
+    private int segmentsSinceCheckpoint;
+    private IOException failure;
+    private boolean closed;
+    // while a checkpoint walks the catalog: each title changed since its
+    // cut, as it was at the cut, or ABSENT if it was not in the catalog
+    private volatile Map<String, Book> preImages;
+
+    private Journal(Path directory, long segmentBytes, int segmentsPerCheckpoint) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.segmentsPerCheckpoint = segmentsPerCheckpoint;
+    }
+
+    /**
+     * Opens a journal with 64 MB segments and a snapshot every 4 segments
+     * @param directory the directory holding segments and snapshots
+     * @return the journal, ready to recover
+     */
+    public static Journal open(Path directory) throws IOException {
+        return open(directory, 64L << 20, 4);
+    }
+
+    /**
+     * @param directory the directory holding segments and snapshots
+     * @param segmentBytes the size at which the active segment is rolled
+     * @param segmentsPerCheckpoint the rolled segments that trigger a snapshot
+     * @return the journal, ready to recover
+     */
+    public static Journal open(Path directory, long segmentBytes, int segmentsPerCheckpoint) throws IOException {
+        Files.createDirectories(directory);
+        return new Journal(directory, segmentBytes, segmentsPerCheckpoint);
+    }
+
+    /**
+     * Loads the newest snapshot into the catalog, replays the log after it
+     * and starts a new segment for appends. Must be called once, before any
+     * commit, with an empty in-memory catalog.
+     * @param catalog the catalog to rebuild and later snapshot
+     */
+    public void recover(Catalog catalog) throws IOException {
+        if (this.catalog != null) {
+            throw new IllegalStateException("Journal already recovered");
+        }
+        this.catalog = catalog;
+        long snapshotSeq = loadSnapshot(catalog);
+        lastSeq = snapshotSeq;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "wal-*.log")) {
+            files.forEach(file -> segments.put(sequenceOf(file), file));
+        }
+        Path last = segments.isEmpty() ? null : segments.lastEntry().getValue();
+        for (Path segment : segments.values()) {
+            replay(segment, snapshotSeq, catalog, segment.equals(last));
+        }
+        for (Hold hold : recoveredHolds.values()) {
+            Book book = catalog.get(hold.isbn);
+            if (book instanceof Purchasable) {
+                ((Purchasable) book).cancelPurchase(hold.quantity);
+            }
+        }
+        recoveredHolds.clear();
+        durableSeq = lastSeq;
+        openSegment(lastSeq + 1);
+        checkpointer = Executors.newSingleThreadExecutor(task -> daemon(task, "journal-checkpoint"));
+        flusher = daemon(this::flushLoop, "journal-flusher");
+        flusher.start();
+    }
+
+    /**
+     * Adds a book and waits until the addition is durable
+     * @param book the book being added
+     * @param apply adds the book to the catalog, returning false if it was not added
+     * @return the result of apply
+     * @throws IllegalArgumentException if BookCodec cannot encode the book;
+     * apply is then not called
+     */
+    public boolean commitAdd(Book book, BooleanSupplier apply) {
+        return commit(ADD, () -> {
+            preserve(book.getIsbn());
+            return apply.getAsBoolean();
+        }, out -> BookCodec.write(out, book));
+    }
+
+    /**
+     * Adds a batch of books and waits once until every addition is durable
+     * @param books the books being added
+     * @param add adds one book to the catalog, returning false if it was not added
+     * @return the number of books added
+     * @throws IllegalArgumentException if BookCodec cannot encode one of the
+     * books; none of the batch is then added
+     */
+    public int commitAddAll(List<Book> books, Predicate<Book> add) {
+        int added = 0;
+        long seq = -1;
+        lock.lock();
+        try {
+            checkWritable();
+            List<byte[]> records = new ArrayList<>(books.size());
+            for (Book book : books) {
+                records.add(encode(out -> BookCodec.write(out, book)));
+            }
+            for (int i = 0; i < books.size(); i++) {
+                preserve(books.get(i).getIsbn());
+                if (add.test(books.get(i))) {
+                    seq = append(ADD, records.get(i));
+                    added++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return added;
+    }
+
+    /**
+     * Removes a batch of books and waits once until every removal is durable
+     * @param books the books being removed
+     * @param remove removes one book from the catalog, returning false if it was already gone
+     * @return the books removed
+     */
+    public List<Book> commitRemoveAll(List<Book> books, Predicate<Book> remove) {
+        List<Book> removed = new ArrayList<>();
+        long seq = -1;
+        lock.lock();
+        try {
+            checkWritable();
+            for (Book book : books) {
+                preserve(book.getIsbn());
+                if (remove.test(book)) {
+                    seq = append(REMOVE, out -> out.writeUTF(book.getIsbn()));
+                    removed.add(book);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return removed;
+    }
+
+    /**
+     * Removes one book and waits until the removal is durable
+     * @param isbn the ISBN of the book being removed
+     * @param apply removes the book from the catalog, returning false if it was not there
+     * @return the result of apply
+     */
+    public boolean commitRemove(String isbn, BooleanSupplier apply) {
+        return commit(REMOVE, () -> {
+            preserve(isbn);
+            return apply.getAsBoolean();
+        }, out -> out.writeUTF(isbn));
+    }
+
+    /**
+     * Holds stock and waits until the hold is durable. Holds still open at a
+     * crash are released during recovery.
+     * @param token the token identifying the hold
+     * @param isbn the held ISBN
+     * @param quantity the held quantity
+     * @param apply takes the stock, returning false if there was too little
+     * @return the result of apply
+     */
+    public boolean commitHold(long token, String isbn, int quantity, BooleanSupplier apply) {
+        return commit(HOLD, () -> {
+            preserve(isbn);
+            if (!apply.getAsBoolean()) {
+                return false;
+            }
+            heldStock.merge(isbn, quantity, Integer::sum);
+            return true;
+        }, out -> writeHold(out, token, isbn, quantity));
+    }
+
+    /**
+     * Returns held stock without waiting for the release to be durable:
+     * if it is lost in a crash, recovery releases the hold anyway
+     * @param apply puts the stock back
+     * @see #commitHold
+     */
+    public void commitRelease(long token, String isbn, int quantity, Runnable apply) {
+        lock.lock();
+        try {
+            checkWritable();
+            byte[] record = encode(out -> writeHold(out, token, isbn, quantity));
+            preserve(isbn);
+            unhold(isbn, quantity);
+            apply.run();
+            append(RELEASE, record);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Turns a hold into an order and waits until the order is durable
+     * @param apply records that the stock is no longer held
+     * @see #commitHold
+     */
+    public void commitHeldOrder(long token, String isbn, int quantity, Runnable apply) {
+        commit(HOLD_ORDER, () -> {
+            unhold(isbn, quantity);
+            apply.run();
+            return true;
+        }, out -> writeHold(out, token, isbn, quantity));
+    }
+
+    /**
+     * Saves a title as it was at the running checkpoint's cut, before the
+     * first change to it since; called with the lock held
+     */
+    private void preserve(String isbn) {
+        Map<String, Book> images = preImages;
+        if (images != null && !images.containsKey(isbn)) {
+            Book book = catalog.get(isbn);
+            if (book == null) {
+                images.put(isbn, ABSENT);
+            } else if (book instanceof PaperBook) {
+                PaperBook paper = (PaperBook) book;
+                images.put(isbn, new PaperBook(paper.getIsbn(), paper.getTitle(), paper.getYear(),
+                        paper.getPrice(), paper.getStock()));
+            } else {
+                images.put(isbn, book);
+            }
+        }
+    }
+
+    private void unhold(String isbn, int quantity) {
+        heldStock.computeIfPresent(isbn, (key, held) -> held == quantity ? null : held - quantity);
+    }
+
+    private static void writeHold(DataOutputStream out, long token, String isbn, int quantity) throws IOException {
+        out.writeLong(token);
+        out.writeUTF(isbn);
+        out.writeInt(quantity);
+    }
+
+    /**
+     * Adjusts one title's stock and waits until the change is durable. The
+     * change actually applied is logged, so replay needs no clamping.
+     * @param isbn the adjusted ISBN
+     * @param apply adjusts the stock, returning the change applied
+     * @return the result of apply
+     */
+    public int commitAdjust(String isbn, IntSupplier apply) {
+        int applied;
+        long seq;
+        lock.lock();
+        try {
+            checkWritable();
+            preserve(isbn);
+            applied = apply.getAsInt();
+            if (applied == 0) {
+                return 0;
+            }
+            seq = append(ADJUST, out -> writeAdjust(out, isbn, applied));
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return applied;
+    }
+
+    /**
+     * Adjusts a batch of titles and waits once until every change is durable
+     * @param deltas the requested change per ISBN
+     * @param adjust adjusts one title, returning the change applied
+     * @return the number of titles whose stock changed
+     */
+    public int commitAdjustAll(Map<String, Integer> deltas, ToIntBiFunction<String, Integer> adjust) {
+        int adjusted = 0;
+        long seq = -1;
+        lock.lock();
+        try {
+            checkWritable();
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                preserve(delta.getKey());
+                int applied = adjust.applyAsInt(delta.getKey(), delta.getValue());
+                if (applied != 0) {
+                    seq = append(ADJUST, out -> writeAdjust(out, delta.getKey(), applied));
+                    adjusted++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return adjusted;
+    }
+
+    private static void writeAdjust(DataOutputStream out, String isbn, int delta) throws IOException {
+        out.writeUTF(isbn);
+        out.writeInt(delta);
+    }
+
+    /**
+     * Purchases one line and waits until the order is durable
+     * @param isbn the purchased ISBN
+     * @param quantity the purchased quantity
+     * @param apply reserves the stock, returning false if there was too little
+     * @return the result of apply
+     */
+    public boolean commitOrder(String isbn, int quantity, BooleanSupplier apply) {
+        return commit(ORDER, () -> {
+            preserve(isbn);
+            return apply.getAsBoolean();
+        }, out -> {
+            out.writeInt(1);
+            out.writeUTF(isbn);
+            out.writeInt(quantity);
+        });
+    }
+
+    /**
+     * Purchases every line as one order and waits until it is durable
+     * @param lines the purchased quantity per ISBN
+     * @param apply reserves all lines, returning false after rolling back if any failed
+     * @return the result of apply
+     */
+    public boolean commitOrder(Map<String, Integer> lines, BooleanSupplier apply) {
+        return commit(ORDER, () -> {
+            for (String isbn : lines.keySet()) {
+                preserve(isbn);
+            }
+            return apply.getAsBoolean();
+        }, out -> {
+            out.writeInt(lines.size());
+            for (Map.Entry<String, Integer> line : lines.entrySet()) {
+                out.writeUTF(line.getKey());
+                out.writeInt(line.getValue());
+            }
+        });
+    }
+
+    private boolean commit(byte op, BooleanSupplier apply, PayloadWriter writer) {
+        long seq;
+        lock.lock();
+        try {
+            checkWritable();
+            byte[] record = encode(writer);
+            if (!apply.getAsBoolean()) {
+                return false;
+            }
+            seq = append(op, record);
+        } finally {
+            lock.unlock();
+        }
+        awaitDurable(seq);
+        return true;
+    }
+
+    /**
+     * Encodes a record's payload; called with the lock held, before the
+     * mutation it records is applied
+     */
+    private byte[] encode(PayloadWriter writer) {
+        scratch.reset();
+        try {
+            writer.write(payload);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return scratch.toByteArray();
+    }
+
+    private long append(byte op, PayloadWriter writer) {
+        return append(op, encode(writer));
+    }
+
+    /**
+     * Frames an encoded payload into the pending buffer; called with the lock held
+     */
+    private long append(byte op, byte[] record) {
+        long seq = ++lastSeq;
+        if (op == ORDER || op == HOLD_ORDER) {
+            orderCount++;
+        }
+        int size = HEADER + record.length;
+        if (pending.remaining() < size) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+            pending.flip();
+            grown.put(pending);
+            pending = grown;
+        }
+        int start = pending.position();
+        pending.putInt(record.length).putInt(0).put(op).putLong(seq);
+        pending.put(record);
+        crc.reset();
+        crc.update(pending.array(), start + 8, size - 8);
+        pending.putInt(start + 4, (int) crc.getValue());
+        appended.signal();
+        return seq;
+    }
+
+    private void awaitDurable(long seq) {
+        if (seq < 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durableSeq < seq && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSeq < seq) {
+                throw new UncheckedIOException("Journal write failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkWritable() {
+        if (catalog == null) {
+            throw new IllegalStateException("Journal not recovered");
+        }
+        if (failure != null) {
+            throw new UncheckedIOException("Journal write failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Journal closed");
+        }
+    }
+
+    /**
+     * Writes everything appended since the last pass with a single fsync,
+     * then rolls the segment once it has grown past its size limit
+     */
+    private void flushLoop() {
+        ByteBuffer spare = ByteBuffer.allocate(pending.capacity());
+        while (true) {
+            long target;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    appended.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                ByteBuffer full = pending;
+                pending = spare;
+                spare = full;
+                target = lastSeq;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                spare.flip();
+                while (spare.hasRemaining()) {
+                    channel.write(spare);
+                }
+                channel.force(false);
+                spare.clear();
+                if (channel.size() >= segmentBytes) {
+                    roll(target + 1);
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+            lock.lock();
+            try {
+                durableSeq = target;
+                flushCount++;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void roll(long firstSeq) throws IOException {
+        channel.close();
+        openSegment(firstSeq);
+        if (++segmentsSinceCheckpoint >= segmentsPerCheckpoint && checkpointing.compareAndSet(false, true)) {
+            segmentsSinceCheckpoint = 0;
+            checkpointer.execute(() -> {
+                try {
+                    checkpoint();
+                } catch (IOException | RuntimeException e) {
+                    // the segments are kept, so recovery still replays them
+                } finally {
+                    checkpointing.set(false);
+                }
+            });
+        }
+    }
+
+    private void openSegment(long firstSeq) throws IOException {
+        Path file = directory.resolve(String.format("wal-%020d.log", firstSeq));
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        segments.put(firstSeq, file);
+    }
+
+    /**
+     * Writes a snapshot of the catalog and deletes the segments and older
+     * snapshots it makes redundant. Commits are paused only while the cut
+     * is taken, not while the catalog is walked and encoded: until the walk
+     * ends, each commit first saves the titles it changes as they were at
+     * the cut, once per title. Held stock is written back as available, as
+     * recovery would release it.
+     */
+    public void checkpoint() throws IOException {
+        synchronized (checkpointLock) {
+            checkpointAt();
+        }
+    }
+
+    private void checkpointAt() throws IOException {
+        long seq;
+        long orders;
+        Map<String, Integer> held;
+        Map<String, Book> images = new ConcurrentHashMap<>();
+        lock.lock();
+        try {
+            checkWritable();
+            seq = lastSeq;
+            orders = orderCount;
+            held = new HashMap<>(heldStock);
+            preImages = images;
+        } finally {
+            lock.unlock();
+        }
+        ByteArrayOutputStream books = new ByteArrayOutputStream();
+        int count;
+        try {
+            count = writeBooks(new DataOutputStream(books), images, held);
+        } finally {
+            preImages = null;
+        }
+        awaitDurable(seq);
+
+        ByteArrayOutputStream image = new ByteArrayOutputStream(28 + books.size());
+        DataOutputStream out = new DataOutputStream(image);
+        out.writeLong(SNAPSHOT_MAGIC);
+        out.writeLong(seq);
+        out.writeLong(orders);
+        out.writeInt(count);
+        books.writeTo(image);
+
+        Path target = directory.resolve(String.format("snapshot-%020d.snap", seq));
+        Path temp = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel file = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(image.toByteArray());
+            while (bytes.hasRemaining()) {
+                file.write(bytes);
+            }
+            file.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "snapshot-*.snap")) {
+            for (Path snapshot : snapshots) {
+                if (sequenceOf(snapshot) < seq) {
+                    Files.delete(snapshot);
+                }
+            }
+        }
+        Map.Entry<Long, Path> first = segments.firstEntry();
+        while (first != null) {
+            Long next = segments.higherKey(first.getKey());
+            if (next == null || next > seq + 1) {
+                break;
+            }
+            Files.delete(first.getValue());
+            segments.remove(first.getKey());
+            first = segments.firstEntry();
+        }
+    }
+
+    /**
+     * Encodes the catalog as of the cut. Each live book's stock is read
+     * before its pre-image is looked up: a commit saves the pre-image before
+     * it writes, so a change seen in the stock always finds it.
+     * @return the number of books written
+     */
+    private int writeBooks(DataOutputStream out, Map<String, Book> images, Map<String, Integer> held)
+            throws IOException {
+        Set<String> written = new HashSet<>();
+        IOException[] error = new IOException[1];
+        catalog.forEach(book -> {
+            int stock = book instanceof PaperBook ? ((PaperBook) book).getStock() : 0;
+            Book before = images.get(book.getIsbn());
+            if (before == ABSENT || error[0] != null) {
+                return;
+            }
+            if (before != null) {
+                book = before;
+                stock = before instanceof PaperBook ? ((PaperBook) before).getStock() : 0;
+            }
+            try {
+                writeBook(out, book, stock, held);
+                written.add(book.getIsbn());
+            } catch (IOException e) {
+                error[0] = e;
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        // titles removed since the cut
+        for (Map.Entry<String, Book> before : images.entrySet()) {
+            Book book = before.getValue();
+            if (book != ABSENT && written.add(before.getKey())) {
+                writeBook(out, book, book instanceof PaperBook ? ((PaperBook) book).getStock() : 0, held);
+            }
+        }
+        return written.size();
+    }
+
+    private static void writeBook(DataOutputStream out, Book book, int stock, Map<String, Integer> held)
+            throws IOException {
+        Integer heldCopies = held.get(book.getIsbn());
+        BookCodec.write(out, book, heldCopies != null && book instanceof PaperBook ? stock + heldCopies : stock);
+    }
+
+    private long loadSnapshot(Catalog catalog) throws IOException {
+        Path newest = null;
+        try (DirectoryStream<Path> snapshots = Files.newDirectoryStream(directory, "snapshot-*.snap")) {
+            for (Path snapshot : snapshots) {
+                if (newest == null || sequenceOf(snapshot) > sequenceOf(newest)) {
+                    newest = snapshot;
+                }
+            }
+        }
+        if (newest == null) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(newest)))) {
+            if (in.readLong() != SNAPSHOT_MAGIC) {
+                throw new IOException("Not a snapshot: " + newest);
+            }
+            long seq = in.readLong();
+            orderCount = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                catalog.add(BookCodec.read(in));
+            }
+            return seq;
+        }
+    }
+
+    /**
+     * Applies the valid records of a segment that come after the snapshot.
+     * Only the last segment can end in a record torn by a crash, since a
+     * segment is rolled after its records are fsynced; it is truncated
+     * there. A bad record in an earlier segment is corruption that would
+     * silently drop the mutations after it, so recovery fails instead.
+     */
+    private void replay(Path segment, long afterSeq, Catalog catalog, boolean last) throws IOException {
+        ByteBuffer log = ByteBuffer.wrap(Files.readAllBytes(segment));
+        while (log.remaining() >= HEADER) {
+            int start = log.position();
+            int length = log.getInt(start);
+            if (length < 0 || log.remaining() < HEADER + length) {
+                break;
+            }
+            crc.reset();
+            crc.update(log.array(), start + 8, HEADER - 8 + length);
+            if ((int) crc.getValue() != log.getInt(start + 4)) {
+                break;
+            }
+            byte op = log.get(start + 8);
+            long seq = log.getLong(start + 9);
+            if (seq > afterSeq) {
+                if (seq != lastSeq + 1) {
+                    throw new IOException("Journal record " + (lastSeq + 1) + " is missing; found " + seq
+                            + " in " + segment.getFileName());
+                }
+                apply(op, new DataInputStream(new ByteArrayInputStream(log.array(), start + HEADER, length)), catalog);
+                lastSeq = seq;
+            }
+            log.position(start + HEADER + length);
+        }
+        if (log.hasRemaining()) {
+            if (!last) {
+                throw new IOException("Corrupt journal record at offset " + log.position() + " of "
+                        + segment.getFileName() + ", before the last segment");
+            }
+            try (FileChannel file = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                file.truncate(log.position());
+            }
+        }
+    }
+
+    private void apply(byte op, DataInputStream in, Catalog catalog) throws IOException {
+        switch (op) {
+            case ADD:
+                catalog.add(BookCodec.read(in));
+                break;
+            case REMOVE:
+                Book removed = catalog.get(in.readUTF());
+                if (removed != null) {
+                    catalog.remove(removed);
+                }
+                break;
+            case ORDER:
+                orderCount++;
+                int lines = in.readInt();
+                for (int i = 0; i < lines; i++) {
+                    Book book = catalog.get(in.readUTF());
+                    int quantity = in.readInt();
+                    if (book instanceof Purchasable) {
+                        ((Purchasable) book).tryPurchase(quantity);
+                    }
+                }
+                break;
+            case HOLD:
+            case RELEASE:
+            case HOLD_ORDER:
+                applyHold(op, in.readLong(), in.readUTF(), in.readInt(), catalog);
+                break;
+            case ADJUST:
+                Book adjusted = catalog.get(in.readUTF());
+                int delta = in.readInt();
+                if (adjusted instanceof PaperBook) {
+                    ((PaperBook) adjusted).adjustStock(delta);
+                }
+                break;
+            default:
+                throw new IOException("Unknown journal op " + op);
+        }
+    }
+
+    /**
+     * Replays a hold record. A snapshot counts holds open at the time as
+     * available stock, so a release or order for a hold from before the
+     * snapshot is recognised by its unknown token: the release is skipped
+     * and the order takes the stock again.
+     */
+    private void applyHold(byte op, long token, String isbn, int quantity, Catalog catalog) {
+        Book book = catalog.get(isbn);
+        Purchasable purchasable = book instanceof Purchasable ? (Purchasable) book : null;
+        if (op == HOLD) {
+            if (purchasable != null && purchasable.tryPurchase(quantity)) {
+                recoveredHolds.put(token, new Hold(isbn, quantity));
+            }
+            return;
+        }
+        boolean known = recoveredHolds.remove(token) != null;
+        if (op == RELEASE) {
+            if (known && purchasable != null) {
+                purchasable.cancelPurchase(quantity);
+            }
+            return;
+        }
+        orderCount++;
+        if (!known && purchasable != null) {
+            purchasable.tryPurchase(quantity);
+        }
+    }
+
+    /**
+     * @return the number of orders committed, including recovered ones
+     */
+    public long getOrderCount() {
+        lock.lock();
+        try {
+            return orderCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of fsyncs issued; with concurrent commits this is
+     * well below the number of records
+     */
+    public long getFlushCount() {
+        lock.lock();
+        try {
+            return flushCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes every pending record and stops the background threads
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            appended.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            try {
+                flusher.join();
+                checkpointer.shutdown();
+                checkpointer.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            channel.close();
+        }
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(name.indexOf('-') + 1, name.indexOf('.')));
+    }
+
+    private static Thread daemon(Runnable task, String name) {
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+    @FunctionalInterface
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private static final class Hold {
+        final String isbn;
+        final int quantity;
+
+        Hold(String isbn, int quantity) {
+            this.isbn = isbn;
+            this.quantity = quantity;
+        }
+    }
+}
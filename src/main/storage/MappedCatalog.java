@@ -0,0 +1,414 @@
+package storage;
+
+import interfaces.Catalog;
+import interfaces.StockCell;
+import model.Book;
+import model.EBook;
+import model.PaperBook;
+import model.ShowcaseBook;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.zip.CRC32C;
+
+/**
+ * Persistent catalog stored as fixed-width records in a memory-mapped file.
+ * The file is mapped in 16 MB segments. Each 256-byte record holds a state
+ * word, the stock count, a CRC32C of the immutable fields, then type, year,
+ * price in cents, ISBN, filetype and title.
+ *
+ * Purchases CAS the stock word in place, so stock survives a restart with
+ * no replay. Opening the file maps it and scans the records to rebuild the
+ * ISBN index, which takes milliseconds rather than re-adding every title.
+ * A record only becomes live once its checksum is written and its state
+ * word is flipped, so a record torn by a crash fails its checksum on the
+ * next open and is discarded. Writes reach the OS page cache immediately;
+ * call sync to force them to disk before relying on them across power loss.
+ */
+public class MappedCatalog implements Catalog, AutoCloseable {
+    private static final long MAGIC = 0x5142_4D41_5030_3031L; // "QBMAP001"
+    private static final int RECORD_SIZE = 256;
+    private static final int SEGMENT_RECORDS = 1 << 16;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_RECORDS * RECORD_SIZE;
+
+    private static final int EMPTY = 0;
+    private static final int LIVE = 1;
+    private static final int DELETED = 2;
+
+    private static final int OFF_STATE = 0;
+    private static final int OFF_STOCK = 4;
+    private static final int OFF_CRC = 8;
+    private static final int OFF_TYPE = 12;
+    private static final int OFF_ISBN_LEN = 13;
+    private static final int OFF_FILETYPE_LEN = 14;
+    private static final int OFF_TITLE_LEN = 15;
+    private static final int OFF_YEAR = 16;
+    private static final int OFF_PRICE = 24;
+    private static final int OFF_ISBN = 32;
+    private static final int OFF_FILETYPE = 64;
+    private static final int OFF_TITLE = 80;
+    private static final int MAX_ISBN = OFF_FILETYPE - OFF_ISBN;
+    private static final int MAX_FILETYPE = OFF_TITLE - OFF_FILETYPE;
+    private static final int MAX_TITLE = RECORD_SIZE - OFF_TITLE;
+
+    private static final byte PAPER = 1;
+    private static final byte EBOOK = 2;
+    private static final byte SHOWCASE = 3;
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private final Deque<Integer> reusableSlots = new ArrayDeque<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private int nextSlot = 1;
+    private int discardedRecords;
+
+    private MappedCatalog(FileChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens or creates a catalog file and rebuilds its index from the records
+     * @param file the catalog file
+     * @return the opened catalog
+     * @throws IOException if the file cannot be mapped or is not a catalog file
+     */
+    public static MappedCatalog open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedCatalog catalog = new MappedCatalog(channel);
+        try {
+            catalog.load();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return catalog;
+    }
+
+    private void load() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            mapSegment();
+            ByteBuffer header = segments.get(0);
+            header.putLong(0, MAGIC);
+            header.putInt(8, RECORD_SIZE);
+            return;
+        }
+        long count = (size + SEGMENT_BYTES - 1) / SEGMENT_BYTES;
+        for (long i = 0; i < count; i++) {
+            mapSegment();
+        }
+        ByteBuffer header = segments.get(0);
+        if (header.getLong(0) != MAGIC || header.getInt(8) != RECORD_SIZE) {
+            throw new IOException("Not a catalog file");
+        }
+        int slots = segments.size() * SEGMENT_RECORDS;
+        int highest = 0;
+        for (int slot = 1; slot < slots; slot++) {
+            ByteBuffer buffer = segment(slot);
+            int base = base(slot);
+            int state = buffer.getInt(base + OFF_STATE);
+            if (state == LIVE && buffer.getInt(base + OFF_CRC) == checksum(buffer, base)) {
+                index.put(readString(buffer, base + OFF_ISBN, buffer.get(base + OFF_ISBN_LEN)), slot);
+                highest = slot;
+            } else if (state != EMPTY) {
+                if (state == LIVE) {
+                    discardedRecords++;
+                }
+                buffer.putInt(base + OFF_STATE, EMPTY);
+                reusableSlots.add(slot);
+                highest = slot;
+            }
+        }
+        nextSlot = highest + 1;
+    }
+
+    @Override
+    public Book get(String isbn) {
+        Integer slot = index.get(isbn);
+        return slot == null ? null : materialize(slot);
+    }
+
+    @Override
+    public boolean contains(String isbn) {
+        return index.containsKey(isbn);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the book does not fit a fixed-width record
+     */
+    @Override
+    public boolean add(Book book) {
+        byte type = typeOf(book);
+        byte[] isbn = encode(book.getIsbn(), MAX_ISBN, "ISBN");
+        byte[] title = encode(book.getTitle(), MAX_TITLE, "Title");
+        byte[] filetype = book instanceof EBook
+                ? encode(((EBook) book).getFiletype(), MAX_FILETYPE, "Filetype") : new byte[0];
+        writeLock.lock();
+        try {
+            if (index.containsKey(book.getIsbn())) {
+                return false;
+            }
+            int slot = allocateSlot();
+            ByteBuffer buffer = segment(slot);
+            int base = base(slot);
+            buffer.put(base + OFF_TYPE, type);
+            buffer.put(base + OFF_ISBN_LEN, (byte) isbn.length);
+            buffer.put(base + OFF_FILETYPE_LEN, (byte) filetype.length);
+            buffer.put(base + OFF_TITLE_LEN, (byte) title.length);
+            buffer.putInt(base + OFF_YEAR, book.getYear());
+            buffer.putLong(base + OFF_PRICE, Math.round(book.getPrice() * 100));
+            buffer.put(base + OFF_ISBN, isbn);
+            buffer.put(base + OFF_FILETYPE, filetype);
+            buffer.put(base + OFF_TITLE, title);
+            buffer.putInt(base + OFF_STOCK, book instanceof PaperBook ? ((PaperBook) book).getStock() : 0);
+            buffer.putInt(base + OFF_CRC, checksum(buffer, base));
+            INT.setRelease(buffer, base + OFF_STATE, LIVE);
+            index.put(book.getIsbn(), slot);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Book book) {
+        writeLock.lock();
+        try {
+            Integer slot = index.get(book.getIsbn());
+            if (slot == null || !sameRecord(slot, book)) {
+                return false;
+            }
+            INT.setRelease(segment(slot), base(slot) + OFF_STATE, DELETED);
+            index.remove(book.getIsbn());
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public List<Book> findByYearRange(int fromYear, int toYear) {
+        List<Book> found = scan(book -> book.getYear() >= fromYear && book.getYear() <= toYear);
+        found.sort(Comparator.comparingInt(Book::getYear).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public List<Book> findByPriceRange(double minPrice, double maxPrice) {
+        List<Book> found = scan(book -> book.getPrice() >= minPrice && book.getPrice() <= maxPrice);
+        found.sort(Comparator.comparingDouble(Book::getPrice).thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public <T extends Book> List<T> findByType(Class<T> type) {
+        List<T> found = new ArrayList<>();
+        scan(type::isInstance).forEach(book -> found.add(type.cast(book)));
+        return found;
+    }
+
+    @Override
+    public List<Book> searchTitlePrefix(String prefix) {
+        List<Book> found = scan(book -> book.getTitle().regionMatches(true, 0, prefix, 0, prefix.length()));
+        found.sort(Comparator.comparing((Book book) -> book.getTitle().toLowerCase(Locale.ROOT))
+                .thenComparing(Book::getIsbn));
+        return found;
+    }
+
+    @Override
+    public void forEach(Consumer<Book> action) {
+        index.values().forEach(slot -> action.accept(materialize(slot)));
+    }
+
+    @Override
+    public int size() {
+        return index.size();
+    }
+
+    /**
+     * @return the number of records discarded on open because their checksum failed
+     */
+    public int getDiscardedRecordCount() {
+        return discardedRecords;
+    }
+
+    /**
+     * Forces every mapped segment to disk
+     */
+    public void sync() {
+        writeLock.lock();
+        try {
+            segments.forEach(MappedByteBuffer::force);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        sync();
+        channel.close();
+    }
+
+    private List<Book> scan(Predicate<Book> filter) {
+        List<Book> found = new ArrayList<>();
+        for (Integer slot : index.values()) {
+            Book book = materialize(slot);
+            if (filter.test(book)) {
+                found.add(book);
+            }
+        }
+        return found;
+    }
+
+    private Book materialize(int slot) {
+        ByteBuffer buffer = segment(slot);
+        int base = base(slot);
+        String isbn = readString(buffer, base + OFF_ISBN, buffer.get(base + OFF_ISBN_LEN));
+        String title = readString(buffer, base + OFF_TITLE, buffer.get(base + OFF_TITLE_LEN));
+        int year = buffer.getInt(base + OFF_YEAR);
+        double price = buffer.getLong(base + OFF_PRICE) / 100.0;
+        switch (buffer.get(base + OFF_TYPE)) {
+            case PAPER:
+                return new PaperBook(isbn, title, year, price, new MappedStockCell(buffer, base + OFF_STOCK));
+            case EBOOK:
+                String filetype = readString(buffer, base + OFF_FILETYPE, buffer.get(base + OFF_FILETYPE_LEN));
+                return new EBook(isbn, title, year, price, filetype);
+            default:
+                return new ShowcaseBook(isbn, title, year, price);
+        }
+    }
+
+    private boolean sameRecord(int slot, Book book) {
+        ByteBuffer buffer = segment(slot);
+        int base = base(slot);
+        return buffer.getInt(base + OFF_YEAR) == book.getYear()
+                && readString(buffer, base + OFF_TITLE, buffer.get(base + OFF_TITLE_LEN)).equals(book.getTitle());
+    }
+
+    /**
+     * Slots deleted in this session are never reused, so a stale PaperBook
+     * view can only ever touch its own record; slots found free on open are.
+     */
+    private int allocateSlot() {
+        Integer reusable = reusableSlots.poll();
+        if (reusable != null) {
+            return reusable;
+        }
+        if (nextSlot == segments.size() * SEGMENT_RECORDS) {
+            try {
+                mapSegment();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot grow catalog file", e);
+            }
+        }
+        return nextSlot++;
+    }
+
+    private void mapSegment() throws IOException {
+        long position = segments.size() * SEGMENT_BYTES;
+        MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, position, SEGMENT_BYTES);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        segments.add(segment);
+    }
+
+    private ByteBuffer segment(int slot) {
+        return segments.get(slot / SEGMENT_RECORDS);
+    }
+
+    private static int base(int slot) {
+        return (slot % SEGMENT_RECORDS) * RECORD_SIZE;
+    }
+
+    private static int checksum(ByteBuffer buffer, int base) {
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.slice(base + OFF_TYPE, RECORD_SIZE - OFF_TYPE));
+        return (int) crc.getValue();
+    }
+
+    private static byte[] encode(String value, int max, String field) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > max) {
+            throw new IllegalArgumentException(field + " longer than " + max + " bytes: " + value);
+        }
+        return bytes;
+    }
+
+    private static String readString(ByteBuffer buffer, int offset, byte length) {
+        byte[] bytes = new byte[Byte.toUnsignedInt(length)];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static byte typeOf(Book book) {
+        if (book.getClass() == PaperBook.class) {
+            return PAPER;
+        }
+        if (book.getClass() == EBook.class) {
+            return EBOOK;
+        }
+        if (book.getClass() == ShowcaseBook.class) {
+            return SHOWCASE;
+        }
+        throw new IllegalArgumentException("Mapped catalog cannot store " + book.getClass().getSimpleName());
+    }
+
+    /**
+     * Stock cell that CASes the stock word of a record in place
+     */
+    private static final class MappedStockCell implements StockCell {
+        private final ByteBuffer buffer;
+        private final int offset;
+
+        MappedStockCell(ByteBuffer buffer, int offset) {
+            this.buffer = buffer;
+            this.offset = offset;
+        }
+
+        @Override
+        public int get() {
+            return (int) INT.getVolatile(buffer, offset);
+        }
+
+        @Override
+        public boolean tryTake(int quantity) {
+            int current;
+            do {
+                current = (int) INT.getVolatile(buffer, offset);
+                if (current < quantity) {
+                    return false;
+                }
+            } while (!INT.compareAndSet(buffer, offset, current, current - quantity));
+            return true;
+        }
+
+        @Override
+        public void add(int quantity) {
+            INT.getAndAdd(buffer, offset, quantity);
+        }
+    }
+}
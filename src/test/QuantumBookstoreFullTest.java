@@ -1,11 +1,67 @@
+import bulk.CatalogExporter;
+import cluster.LocalShard;
+import cluster.RemoteShard;
+import cluster.ShardServer;
+import cluster.ShardedBookStore;
+import bulk.CatalogFormat;
+import bulk.CatalogImporter;
+import bulk.ListingEncoder;
+import dto.BookField;
+import exception.BookNotFoundException;
+import factory.BookType;
+import factory.BookTypes;
+import dto.BulkReport;
+import service.AdmissionControl;
+import service.AsyncBookStore;
+import service.BatchingMailService;
+import service.CatalogSnapshot;
+import service.BatchingShippingService;
+import service.FakeCarrier;
+import service.FakeMailTransport;
+import service.FulfilmentPipeline;
+import service.OutdatedBookEvictor;
 import service.QuantumBookStore;
+import service.ShippingService;
+import service.StockDeltaIngestor;
+import service.TimingWheel;
+import storage.CachingCatalog;
+import storage.ColumnarCatalog;
+import storage.FileCatalogSource;
+import storage.HashMapCatalog;
+import storage.Journal;
+import storage.MappedCatalog;
+import dto.Cart;
+import dto.CheckoutResult;
+import dto.FulfilmentStatus;
+import dto.InventoryPage;
 import dto.PurchaseResult;
+import dto.PurchaseStatus;
+import dto.Reservation;
+import logging.AsyncAppender;
+import logging.ConsoleAppender;
+import logging.LogAppender;
+import logging.LogLevel;
+import logging.StoreLogger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
 import model.*;
 import org.junit.jupiter.api.*;
 
 import java.io.ByteArrayOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -107,6 +163,47 @@ public class QuantumBookstoreFullTest {
             assertTrue(log.contains("Failed to add book"));
             assertTrue(log.toLowerCase().contains("duplicate isbn"));
         }
+
+        @Test @DisplayName("Should reject a parameter of the wrong type without throwing")
+        void testAddWrongParameterType() {
+            bookstore.addBook("paper", "978-5555555555", "Bad Stock", 2020, 10.0, "ten");
+            bookstore.addBook("EBook", "978-6666666666", "Mixed Case", 2020, 10.0, "epub");
+
+            assertNull(bookstore.getBook("978-5555555555"));
+            assertInstanceOf(EBook.class, bookstore.getBook("978-6666666666"));
+            String log = outputStream.toString();
+            assertTrue(log.contains("Failed to add book - Parameter 1 of a paper book must be Integer but was String"));
+        }
+
+        @Test @DisplayName("Should add typed books through the fast path")
+        void testAddTypedBook() {
+            assertTrue(bookstore.addBook(BookTypes.PAPER.create("978-7777777777", "Typed", 2020, 10.0, 4)));
+            assertFalse(bookstore.addBook(BookTypes.SHOWCASE.create("978-7777777777", "Again", 2020, 0.0)));
+
+            assertEquals(4, ((PaperBook) bookstore.getBook("978-7777777777")).getStock());
+            assertTrue(outputStream.toString().toLowerCase().contains("duplicate isbn"));
+        }
+
+        @Test @DisplayName("Should add books of a type registered at runtime")
+        void testRegisteredBookType() {
+            class Audiobook extends EBook {
+                Audiobook(String isbn, String title, int year, double price) {
+                    super(isbn, title, year, price, "mp3");
+                }
+            }
+            bookstore.getBookTypes().register(new BookType<>("audio", Audiobook.class) {
+                @Override
+                public Audiobook create(String isbn, String title, int year, double price, Object... params) {
+                    return new Audiobook(isbn, title, year, price);
+                }
+            });
+            assertThrows(IllegalArgumentException.class, () -> bookstore.getBookTypes().register(BookTypes.PAPER));
+
+            bookstore.addBook("Audio", "978-8888888888", "Spoken", 2022, 15.0);
+            assertInstanceOf(Audiobook.class, bookstore.getBook("978-8888888888"));
+            assertTrue(bookstore.tryBuyBook("978-8888888888", 3, "a@d.com", "Addr").isSuccessful());
+            assertNull(new QuantumBookStore().getBookTypes().find("audio"));
+        }
     }
 
     @Nested
@@ -176,6 +273,15 @@ public class QuantumBookstoreFullTest {
             assertTrue(result.getMessage().toLowerCase().contains("book not found"));
         }
 
+        @Test @DisplayName("Should treat a null ISBN as an unknown book")
+        void testNullIsbn() {
+            assertNull(bookstore.getBook(null));
+            assertEquals(PurchaseStatus.BOOK_NOT_FOUND,
+                    bookstore.buyBook(null, 1, "cust@domain.com", "123 Main St").getStatus());
+            assertEquals(PurchaseStatus.BOOK_NOT_FOUND,
+                    bookstore.tryBuyBook(null, 1, "cust@domain.com", "123 Main St").getStatus());
+        }
+
         @Test @DisplayName("Should handle purchasing exact stock amount")
         void testPurchaseExactStockAmount() {
             bookstore.addBook("paper", "978-5555555555", "Limited Edition", 2023, 50.0, 3);
@@ -245,71 +351,2553 @@ public class QuantumBookstoreFullTest {
     }
 
     @Nested
-    @DisplayName("Edge Cases and Integration Tests")
-    class EdgeCasesAndIntegrationTests {
-        @Test
-        @DisplayName("Should reject zero quantity purchase")
-        void testZeroQuantityPurchase() {
-            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
-            PurchaseResult r = bookstore.buyBook("978-1234567890", 0, "x@d.com", "Addr");
+    @DisplayName("Outdated Book Eviction Tests")
+    class OutdatedEvictionTests {
+        private QuantumBookStore store;
 
-            assertFalse(r.isSuccessful());
-            assertEquals(0.0, r.getPaidAmount(), 0.01);
-            assertTrue(r.getMessage().toLowerCase().contains("invalid purchase quantity"));
-            assertEquals(10, ((PaperBook)bookstore.getBook("978-1234567890")).getStock());
+        @BeforeEach
+        void initStore() {
+            store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            for (int i = 0; i < 1000; i++) {
+                store.addBook("paper", "old-" + i, "Old " + i, 1900 + i % 50, 5.0, 1);
+            }
+            store.addBook("paper", "new-1", "Fresh", java.time.LocalDate.now().getYear(), 20.0, 1000);
         }
 
-        @Test
-        @DisplayName("Should reject negative quantity purchase")
-        void testNegativeQuantityPurchase() {
-            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
-            PurchaseResult r = bookstore.buyBook("978-1234567890", -5, "x@d.com", "Addr");
+        @Test @DisplayName("A parallel sweep removes every outdated book, oldest first")
+        void testParallelSweep() {
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try (OutdatedBookEvictor evictor = new OutdatedBookEvictor(store, 50, 16)) {
+                List<Book> removed = evictor.evictAll(pool);
+                assertEquals(1000, removed.size());
+                for (int i = 1; i < removed.size(); i++) {
+                    assertTrue(removed.get(i - 1).getYear() <= removed.get(i).getYear());
+                }
+                assertEquals(1000, evictor.getEvictedCount());
+                assertTrue(store.findByYearRange(0, 1999).isEmpty());
+                assertNotNull(store.getBook("new-1"));
+                assertTrue(evictor.evictAll(pool).isEmpty());
+            } finally {
+                pool.shutdown();
+            }
+        }
 
-            assertFalse(r.isSuccessful());
-            assertEquals(0.0, r.getPaidAmount(), 0.01);
-            assertTrue(r.getMessage().toLowerCase().contains("invalid purchase quantity"));
-            assertEquals(10, ((PaperBook)bookstore.getBook("978-1234567890")).getStock());
+        @Test @DisplayName("Time-sliced eviction resumes where it stopped and rescans when done")
+        void testIncrementalSlices() {
+            OutdatedBookEvictor evictor = new OutdatedBookEvictor(store, 50, 100);
+            int first = evictor.evictFor(0, TimeUnit.NANOSECONDS);
+            assertEquals(100, first);
+            assertEquals(900, store.findByYearRange(0, 1999).size());
+            assertTrue(store.findByYearRange(1900, 1901).isEmpty());
+            int total = first;
+            while (total < 1000) {
+                int slice = evictor.evictFor(0, TimeUnit.NANOSECONDS);
+                assertTrue(slice > 0);
+                total += slice;
+            }
+            assertEquals(1000, total);
+            assertEquals(0, evictor.evictFor(1, TimeUnit.SECONDS));
+
+            store.addBook("paper", "old-late", "Late", 1901, 5.0, 1);
+            assertEquals(1, evictor.evictFor(1, TimeUnit.SECONDS));
+        }
+
+        @Test @DisplayName("Background eviction runs while fresh titles keep selling")
+        void testBackgroundEviction() throws Exception {
+            try (OutdatedBookEvictor evictor = new OutdatedBookEvictor(store, 50, 50)) {
+                evictor.start(1, 1, TimeUnit.MILLISECONDS);
+                int sold = 0;
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                while (evictor.getEvictedCount() < 1000 && System.nanoTime() < deadline) {
+                    if (store.tryBuyBook("new-1", 1, "a@d.com", "Addr").isSuccessful()) {
+                        sold++;
+                    }
+                }
+                assertEquals(1000, evictor.getEvictedCount());
+                assertEquals(1000 - sold, ((PaperBook) store.getBook("new-1")).getStock());
+            }
         }
     }
 
     @Nested
-    @DisplayName("Additional Edge Case Tests")
-    class AdditionalEdgeCaseTests {
-        @Test
-        @DisplayName("Purchase from empty inventory fails")
-        void testPurchaseOnEmptyInventory() {
-            PurchaseResult r = bookstore.buyBook("no-isbn", 1, "x@d.com", "Addr");
-            assertFalse(r.isSuccessful());
-            assertTrue(r.getMessage().toLowerCase().contains("book not found"));
+    @DisplayName("Reservation Tests")
+    class ReservationTests {
+        private TimingWheel wheel;
+        private QuantumBookStore store;
+
+        @BeforeEach
+        void initStore() {
+            wheel = new TimingWheel(1, TimeUnit.MILLISECONDS);
+            store = QuantumBookStore.builder().holdTimer(wheel).logger(StoreLogger.off()).build();
+            store.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+            store.addBook("showcase", "9782222222222", "Showcase", 2000, 0.0);
         }
 
-        @Test
-        @DisplayName("Removing outdated from empty inventory yields empty list")
-        void testRemoveOutdatedEmptyInventory() {
-            List<Book> removed = bookstore.removeOutdatedBooks(5);
-            assertTrue(removed.isEmpty());
+        @AfterEach
+        void stopWheel() {
+            wheel.close();
         }
 
-        @Test
-        @DisplayName("Should handle large quantity ebook purchase")
-        void testLargeQuantityEbookPurchase() {
-            bookstore.addBook("ebook", "978-9999999998", "Big Data", 2021, 9.99, "pdf");
-            PurchaseResult r = bookstore.buyBook("978-9999999998", 10000, "y@d.com", "Addr");
-            assertTrue(r.isSuccessful());
-            assertEquals(9.99 * 10000, r.getPaidAmount(), 0.01);
+        @Test @DisplayName("Held copies cannot be bought by anyone else")
+        void testHoldReducesAvailableStock() {
+            Reservation hold = store.reserve("9781111111111", 3, 1, TimeUnit.MINUTES);
+            assertTrue(hold.isSuccessful());
+            assertNotEquals(0, hold.getToken());
+            assertEquals(2, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertEquals(3, store.getHeldStock("9781111111111"));
+
+            assertFalse(store.tryBuyBook("9781111111111", 3, "b@d.com", "Addr").isSuccessful());
+            assertEquals(PurchaseStatus.INSUFFICIENT_STOCK,
+                    store.reserve("9781111111111", 3, 1, TimeUnit.MINUTES).getStatus());
+            assertTrue(store.tryBuyBook("9781111111111", 2, "b@d.com", "Addr").isSuccessful());
         }
 
-        @Test
-        @DisplayName("Inventory stays correct after mixed operations")
-        void testInventoryIntegrity() {
-            bookstore.addBook("paper", "A", "T1", 2010, 5.0, 2);
-            bookstore.addBook("paper", "B", "T2", 2000, 5.0, 1);
-            bookstore.buyBook("A", 1, "a", "a");
-            List<Book> removed = bookstore.removeOutdatedBooks(24);
-            assertTrue(removed.stream().anyMatch(b -> b.getIsbn().equals("B")));
-            assertNull(bookstore.getBook("B"));
-            assertNotNull(bookstore.getBook("A"));
-            assertEquals(1, ((PaperBook) bookstore.getBook("A")).getStock());
+        @Test @DisplayName("Committing a hold places the order exactly once")
+        void testCommit() {
+            Reservation hold = store.reserve("9781111111111", 2, 1, TimeUnit.MINUTES);
+            PurchaseResult result = store.commit(hold.getToken(), "a@d.com", "Addr");
+            assertTrue(result.isSuccessful());
+            assertEquals(2, result.getQuantity());
+            assertEquals(91.98, result.getPaidAmount(), 0.001);
+            assertTrue(result.getOrderId() > 0);
+            assertEquals(0, store.getHeldStock("9781111111111"));
+            assertEquals(3, ((PaperBook) store.getBook("9781111111111")).getStock());
+
+            assertEquals(PurchaseStatus.HOLD_NOT_FOUND, store.commit(hold.getToken(), "a@d.com", "Addr").getStatus());
+            assertFalse(store.release(hold.getToken()));
+        }
+
+        @Test @DisplayName("Releasing a hold returns its copies")
+        void testRelease() {
+            Reservation hold = store.reserve("9781111111111", 4, 1, TimeUnit.MINUTES);
+            assertTrue(store.release(hold.getToken()));
+            assertFalse(store.release(hold.getToken()));
+            assertEquals(5, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertEquals(0, store.getOpenHoldCount());
+            assertEquals(PurchaseStatus.HOLD_NOT_FOUND, store.commit(hold.getToken(), "a@d.com", "Addr").getStatus());
+        }
+
+        @Test @DisplayName("Holds expire after their time to live")
+        void testExpiry() throws Exception {
+            Reservation hold = store.reserve("9781111111111", 5, 20, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (store.getOpenHoldCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, store.getOpenHoldCount());
+            assertEquals(5, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertEquals(PurchaseStatus.HOLD_NOT_FOUND, store.commit(hold.getToken(), "a@d.com", "Addr").getStatus());
+        }
+
+        @Test @DisplayName("A hold with an unrepresentably long time to live never expires")
+        void testEndlessHold() throws Exception {
+            Reservation hold = store.reserve("9781111111111", 2, Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            Thread.sleep(50);
+            assertEquals(1, store.getOpenHoldCount());
+            assertEquals(2, store.getHeldStock("9781111111111"));
+            assertTrue(store.release(hold.getToken()));
+        }
+
+        @Test @DisplayName("Invalid reservations are rejected without holding stock")
+        void testRejectedReservations() {
+            assertEquals(PurchaseStatus.INVALID_QUANTITY, store.reserve("9781111111111", 0, 1, TimeUnit.MINUTES).getStatus());
+            assertEquals(PurchaseStatus.BOOK_NOT_FOUND, store.reserve("978-missing", 1, 1, TimeUnit.MINUTES).getStatus());
+            assertEquals(PurchaseStatus.NOT_PURCHASABLE, store.reserve("9782222222222", 1, 1, TimeUnit.MINUTES).getStatus());
+            assertEquals(0, store.getOpenHoldCount());
+            assertEquals(PurchaseStatus.HOLD_NOT_FOUND, store.commit(0L, "a@d.com", "Addr").getStatus());
+        }
+
+        @Test @DisplayName("Closing the store stops only a hold timer it started itself")
+        void testCloseStopsOwnTimer() throws Exception {
+            List<Thread> before = wheelThreads();
+            QuantumBookStore owning = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            owning.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+            assertTrue(owning.reserve("9781111111111", 1, 1, TimeUnit.MINUTES).isSuccessful());
+            List<Thread> started = wheelThreads();
+            started.removeAll(before);
+            assertEquals(1, started.size());
+
+            owning.close();
+            started.get(0).join(5000);
+            assertFalse(started.get(0).isAlive());
+
+            store.close();
+            store.reserve("9781111111111", 2, 20, TimeUnit.MILLISECONDS);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (store.getOpenHoldCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertEquals(0, store.getOpenHoldCount());
+            assertEquals(0, store.getHeldStock("9781111111111"));
+        }
+
+        private List<Thread> wheelThreads() {
+            List<Thread> threads = new ArrayList<>();
+            for (Thread thread : Thread.getAllStackTraces().keySet()) {
+                if (thread.getName().equals("timing-wheel") && thread.isAlive()) {
+                    threads.add(thread);
+                }
+            }
+            return threads;
+        }
+
+        @Test @DisplayName("The timing wheel fires near and far timeouts and skips cancelled ones")
+        void testTimingWheel() throws Exception {
+            List<Integer> fired = new CopyOnWriteArrayList<>();
+            List<TimingWheel.Timeout> timeouts = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                int delay = i % 2 == 0 ? 50 + i : 300 + i;
+                int id = i;
+                timeouts.add(wheel.schedule(() -> fired.add(id), delay, TimeUnit.MILLISECONDS));
+            }
+            for (int i = 0; i < 200; i += 4) {
+                assertTrue(timeouts.get(i).cancel());
+            }
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (fired.size() < 150 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50);
+            assertEquals(150, fired.size());
+            assertTrue(fired.stream().noneMatch(id -> id % 4 == 0));
+            assertFalse(timeouts.get(1).cancel());
+        }
+    }
+
+    @Nested
+    @DisplayName("Restock Tests")
+    class RestockTests {
+        private QuantumBookStore store;
+
+        @BeforeEach
+        void initStore() {
+            store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            store.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+            store.addBook("ebook", "9782222222222", "Design Patterns", 1994, 29.99, "epub");
+        }
+
+        @Test @DisplayName("Restocks add copies and write-offs never go below zero")
+        void testRestockAndAdjust() throws Exception {
+            store.restock("9781111111111", 10);
+            assertEquals(15, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertEquals(-4, store.adjustStock("9781111111111", -4));
+            assertEquals(-11, store.adjustStock("9781111111111", -50));
+            assertEquals(0, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertEquals(0, store.adjustStock("9781111111111", Integer.MIN_VALUE));
+
+            assertThrows(BookNotFoundException.class, () -> store.restock("978-missing", 1));
+            assertThrows(IllegalArgumentException.class, () -> store.restock("9781111111111", 0));
+            assertThrows(IllegalArgumentException.class, () -> store.adjustStock("9782222222222", 3));
+        }
+
+        @Test @DisplayName("Restocking alongside purchases never loses or invents copies")
+        void testConcurrentRestock() throws Exception {
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            AtomicInteger sold = new AtomicInteger();
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 3; t++) {
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < 2000; i++) {
+                            if (store.tryBuyBook("9781111111111", 1, "a@d.com", "Addr").isSuccessful()) {
+                                sold.incrementAndGet();
+                            }
+                        }
+                    }));
+                }
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        store.restock("9781111111111", 2);
+                    }
+                    return null;
+                }));
+                for (Future<?> f : futures) {
+                    f.get(30, TimeUnit.SECONDS);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(5 + 2000 - sold.get(), ((PaperBook) store.getBook("9781111111111")).getStock());
+        }
+
+        @Test @DisplayName("The ingestor coalesces events into one update per title per batch")
+        void testDeltaIngestion() throws Exception {
+            for (int i = 0; i < 10; i++) {
+                store.addBook("paper", "97800000" + (10000 + i), "Title " + i, 2020, 1.0, 100);
+            }
+            try (StockDeltaIngestor ingestor = new StockDeltaIngestor(store, 1000, 1, TimeUnit.HOURS)) {
+                ExecutorService pool = Executors.newFixedThreadPool(4);
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < 4; t++) {
+                        futures.add(pool.submit(() -> {
+                            for (int i = 0; i < 5000; i++) {
+                                ingestor.submit("97800000" + (10000 + i % 10), i / 10 % 2 == 0 ? 3 : -1);
+                            }
+                        }));
+                    }
+                    for (Future<?> f : futures) {
+                        f.get(30, TimeUnit.SECONDS);
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+                ingestor.submit("978-missing", 5);
+                assertEquals(100, ((PaperBook) store.getBook("9780000010000")).getStock());
+                assertEquals(10, ingestor.flush());
+                assertEquals(20_001, ingestor.getEventCount());
+                assertEquals(10, ingestor.getUpdateCount());
+                assertEquals(1, ingestor.getBatchCount());
+
+                ingestor.submit("9780000010000", -1000);
+            }
+            assertEquals(1100, ((PaperBook) store.getBook("9780000010000")).getStock());
+            for (int i = 1; i < 10; i++) {
+                assertEquals(2100, ((PaperBook) store.getBook("97800000" + (10000 + i))).getStock());
+            }
+        }
+
+        @Test @DisplayName("A batch the store fails to apply is logged and counted as dropped")
+        void testFailedBatchIsReported() throws Exception {
+            AtomicBoolean broken = new AtomicBoolean();
+            List<String> warnings = new CopyOnWriteArrayList<>();
+            StoreLogger logger = new StoreLogger(LogLevel.WARN,
+                    (level, template, a1, a2) -> warnings.add(StoreLogger.format(template, a1, a2)));
+            QuantumBookStore failing = QuantumBookStore.builder().logger(logger)
+                    .catalog(new HashMapCatalog() {
+                        @Override
+                        public Book get(String isbn) {
+                            if (broken.get()) {
+                                throw new IllegalStateException("journal unavailable");
+                            }
+                            return super.get(isbn);
+                        }
+                    })
+                    .build();
+            failing.addBook("paper", "978-1", "Clean Code", 2008, 10.0, 5);
+            failing.addBook("paper", "978-2", "Refactoring", 1999, 10.0, 5);
+
+            try (StockDeltaIngestor ingestor = new StockDeltaIngestor(failing, 1000, 1, TimeUnit.HOURS, logger)) {
+                ingestor.submit("978-1", 3);
+                ingestor.submit("978-2", -1);
+                broken.set(true);
+                assertThrows(IllegalStateException.class, ingestor::flush);
+                broken.set(false);
+
+                assertEquals(2, ingestor.getDroppedCount());
+                assertEquals(0, ingestor.getUpdateCount());
+                assertEquals(List.of("Dropped stock changes for 2 titles - journal unavailable"), warnings);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Snapshot Tests")
+    class SnapshotTests {
+        @Test @DisplayName("A snapshot keeps its books, stock and revenue while the store changes")
+        void testSnapshotIsFrozen() throws Exception {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 40.00, 5);
+            store.addBook("paper", "978-2", "Refactoring", 2018, 10.00, 3);
+            store.addBook("ebook", "978-3", "Design Patterns", 1994, 30.00, "pdf");
+            store.tryBuyBook("978-1", 1, "a@d.com", "Addr");
+
+            try (CatalogSnapshot snapshot = store.snapshot()) {
+                store.tryBuyBook("978-1", 2, "a@d.com", "Addr");
+                store.restock("978-2", 7);
+                store.removeBook("978-2");
+                store.addBook("paper", "978-2", "Refactoring", 2018, 10.00, 1);
+                store.addBook("paper", "978-4", "Working Effectively", 2004, 50.00, 9);
+
+                assertEquals(3, snapshot.size());
+                assertNull(snapshot.getBook("978-4"));
+                assertEquals(4, snapshot.getStock("978-1"));
+                assertEquals(3, snapshot.getStock("978-2"));
+                assertEquals(0, snapshot.getStock("978-3"));
+                assertEquals(7, snapshot.getTotalStock());
+                assertEquals(4 * 40.00 + 3 * 10.00, snapshot.getStockValue(), 1e-9);
+                assertEquals(40.00, snapshot.getRevenue(), 1e-9);
+                List<String> isbns = new ArrayList<>();
+                snapshot.forEach((book, stock) -> isbns.add(book.getIsbn() + "=" + stock));
+                assertEquals(List.of("978-1=4", "978-2=3", "978-3=0"), isbns);
+                assertEquals(1, store.getOpenSnapshotCount());
+            }
+            assertEquals(0, store.getOpenSnapshotCount());
+            try (CatalogSnapshot snapshot = store.snapshot()) {
+                assertEquals(4, snapshot.size());
+                assertEquals(2 + 1 + 9, snapshot.getTotalStock());
+                assertEquals(120.00, snapshot.getRevenue(), 1e-9);
+            }
+        }
+
+        @Test @DisplayName("A columnar snapshot keeps removed books even when their rows are reused")
+        void testColumnarRowReuse() throws InterruptedException {
+            QuantumBookStore store = QuantumBookStore.builder()
+                    .catalog(new ColumnarCatalog(4)).logger(StoreLogger.off()).build();
+            store.addBook("paper", "978-1", "Old Title", 1990, 10.00, 5);
+            PaperBook old = (PaperBook) store.getBook("978-1");
+            try (CatalogSnapshot snapshot = store.snapshot()) {
+                assertEquals(1, store.removeOutdatedBooks(10).size());
+                Thread.sleep(150); // past the columnar reuse grace period
+                store.addBook("paper", "978-2", "New Title", 2024, 10.00, 50);
+                assertEquals(0, old.getStock(), "the old row should now belong to the new title");
+                assertEquals("Old Title", snapshot.getBook("978-1").getTitle());
+                assertEquals(5, snapshot.getStock("978-1"));
+                assertEquals(5, snapshot.getTotalStock());
+            }
+        }
+
+        @Test @DisplayName("Every snapshot taken during concurrent sales balances stock against revenue")
+        void testConsistentUnderLoad() throws Exception {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            for (int i = 0; i < 50; i++) {
+                store.addBook("paper", "978-" + (1000 + i), "Title " + i, 2020, 1.00, 200);
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            try {
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < 3; t++) {
+                    int seed = t;
+                    futures.add(pool.submit(() -> {
+                        for (int i = 0; i < 3000; i++) {
+                            if (i % 7 == 0) {
+                                Cart cart = new Cart("a@d.com", "Addr");
+                                cart.add("978-" + (1000 + (i + seed) % 50), 1);
+                                cart.add("978-" + (1000 + (i + seed + 1) % 50), 1);
+                                store.checkout(cart);
+                            } else {
+                                store.tryBuyBook("978-" + (1000 + (i * 3 + seed) % 50), 1, "a@d.com", "Addr");
+                            }
+                        }
+                    }));
+                }
+                Future<Integer> reports = pool.submit(() -> {
+                    int taken = 0;
+                    while (futures.stream().anyMatch(f -> !f.isDone())) {
+                        try (CatalogSnapshot snapshot = store.snapshot()) {
+                            long[] units = new long[1];
+                            snapshot.forEach((book, stock) -> units[0] += stock);
+                            assertEquals(units[0], snapshot.getTotalStock());
+                            assertEquals(50 * 200, snapshot.getTotalStock() + Math.round(snapshot.getRevenue()));
+                            taken++;
+                        }
+                    }
+                    return taken;
+                });
+                for (Future<?> f : futures) {
+                    f.get(30, TimeUnit.SECONDS);
+                }
+                assertTrue(reports.get(30, TimeUnit.SECONDS) > 0);
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(0, store.getOpenSnapshotCount());
+        }
+    }
+
+    @Nested
+    @DisplayName("Admission Control Tests")
+    class AdmissionTests {
+        private QuantumBookStore storeWith(AdmissionControl admission) {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).admission(admission).build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 100);
+            store.addBook("paper", "978-2", "Refactoring", 2018, 10.00, 100);
+            return store;
+        }
+
+        @Test @DisplayName("Each email is limited to its burst, then turned away before any stock is taken")
+        void testPerEmailLimit() {
+            AdmissionControl admission = AdmissionControl.builder().perEmail(0.001, 3).build();
+            QuantumBookStore store = storeWith(admission);
+            for (int i = 0; i < 3; i++) {
+                assertTrue(store.buyBook("978-1", 1, "bot@d.com", "Addr").isSuccessful());
+            }
+            PurchaseResult rejected = store.buyBook("978-1", 1, "bot@d.com", "Addr");
+            assertSame(PurchaseStatus.RATE_LIMITED.failure(), rejected);
+            assertSame(PurchaseStatus.RATE_LIMITED.failure(), store.tryBuyBook("978-missing", 1, "bot@d.com", "Addr"));
+            assertTrue(store.buyBook("978-1", 1, "human@d.com", "Addr").isSuccessful());
+            assertEquals(96, ((PaperBook) store.getBook("978-1")).getStock());
+            assertEquals(2, admission.getRateLimitedCount());
+        }
+
+        @Test @DisplayName("Each ISBN is limited across customers")
+        void testPerIsbnLimit() {
+            AdmissionControl admission = AdmissionControl.builder().perIsbn(0.001, 2).build();
+            QuantumBookStore store = storeWith(admission);
+            assertTrue(store.tryBuyBook("978-1", 1, "a@d.com", "Addr").isSuccessful());
+            assertTrue(store.tryBuyBook("978-1", 1, "b@d.com", "Addr").isSuccessful());
+            assertEquals(PurchaseStatus.RATE_LIMITED, store.tryBuyBook("978-1", 1, "c@d.com", "Addr").getStatus());
+            assertTrue(store.tryBuyBook("978-2", 1, "c@d.com", "Addr").isSuccessful());
+        }
+
+        @Test @DisplayName("Rate tables stay bounded while many keys come and go")
+        void testBoundedKeys() {
+            AdmissionControl admission = AdmissionControl.builder().perEmail(1000, 1).maxKeys(16).build();
+            QuantumBookStore store = storeWith(admission);
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(store.tryBuyBook("978-missing", 1, "user" + i + "@d.com", "Addr").getStatus()
+                        == PurchaseStatus.BOOK_NOT_FOUND);
+            }
+            assertEquals(0, admission.getRateLimitedCount());
+        }
+
+        @Test @DisplayName("Purchases are shed while admitted ones are slow, and admitted again once they recover")
+        void testShedOnLatency() throws Exception {
+            AdmissionControl admission = AdmissionControl.builder()
+                    .maxLatency(1, TimeUnit.NANOSECONDS).checkInterval(5, TimeUnit.MILLISECONDS).build();
+            QuantumBookStore store = storeWith(admission);
+            assertTrue(store.tryBuyBook("978-1", 1, "a@d.com", "Addr").isSuccessful());
+            Thread.sleep(10);
+            assertSame(PurchaseStatus.OVERLOADED.failure(), store.buyBook("978-1", 1, "a@d.com", "Addr"));
+            assertTrue(admission.isShedding());
+            Thread.sleep(10);
+            assertTrue(store.tryBuyBook("978-1", 1, "a@d.com", "Addr").isSuccessful());
+            assertEquals(1, admission.getShedCount());
+        }
+
+        @Test @DisplayName("Purchases are shed while the fulfilment backlog is over its limit")
+        void testShedOnBacklog() throws Exception {
+            CountDownLatch release = new CountDownLatch(1);
+            FulfilmentPipeline pipeline = new FulfilmentPipeline(1, 16);
+            AdmissionControl admission = AdmissionControl.builder()
+                    .maxBacklog(2).checkInterval(1, TimeUnit.MILLISECONDS).build();
+            QuantumBookStore store = QuantumBookStore.builder()
+                    .logger(StoreLogger.off())
+                    .fulfilment(pipeline)
+                    .admission(admission)
+                    .shippingService(new ShippingService() {
+                        @Override
+                        public void ship(PaperBook book, String address) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    })
+                    .build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 100);
+            try {
+                for (int i = 0; i < 3; i++) {
+                    assertTrue(store.tryBuyBook("978-1", 1, "a@d.com", "Addr").isSuccessful());
+                }
+                Thread.sleep(5);
+                assertEquals(PurchaseStatus.OVERLOADED, store.tryBuyBook("978-1", 1, "a@d.com", "Addr").getStatus());
+                assertEquals(97, ((PaperBook) store.getBook("978-1")).getStock());
+                release.countDown();
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                PurchaseResult result;
+                do {
+                    Thread.sleep(5);
+                    result = store.tryBuyBook("978-1", 1, "a@d.com", "Addr");
+                } while (!result.isSuccessful() && System.nanoTime() < deadline);
+                assertTrue(result.isSuccessful());
+            } finally {
+                release.countDown();
+                pipeline.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Idempotency Tests")
+    class IdempotencyTests {
+        private final AtomicInteger shipments = new AtomicInteger();
+
+        private QuantumBookStore.Builder countingStore() {
+            return QuantumBookStore.builder()
+                    .logger(StoreLogger.off())
+                    .shippingService(new ShippingService() {
+                        @Override
+                        public void ship(PaperBook book, String address) {
+                            shipments.incrementAndGet();
+                        }
+                    });
+        }
+
+        @Test @DisplayName("A retried purchase returns the original result without buying or shipping again")
+        void testRetryReturnsOriginal() throws Exception {
+            QuantumBookStore store = countingStore().build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 5);
+
+            PurchaseResult first = store.buyBook("req-1", "978-1", 2, "a@d.com", "Addr");
+            PurchaseResult retry = store.buyBook("req-1", "978-1", 2, "a@d.com", "Addr");
+            assertTrue(first.isSuccessful());
+            assertSame(first, retry);
+            assertEquals(3, ((PaperBook) store.getBook("978-1")).getStock());
+            assertEquals(1, shipments.get());
+
+            assertTrue(store.buyBook("req-2", "978-1", 2, "a@d.com", "Addr").isSuccessful());
+            assertEquals(1, ((PaperBook) store.getBook("978-1")).getStock());
+            PurchaseResult failed = store.buyBook("req-3", "978-1", 2, "a@d.com", "Addr");
+            assertFalse(failed.isSuccessful());
+            store.restock("978-1", 10);
+            assertSame(failed, store.buyBook("req-3", "978-1", 2, "a@d.com", "Addr"));
+        }
+
+        @Test @DisplayName("Concurrent retries of one key buy once and share the result")
+        void testConcurrentRetries() throws Exception {
+            QuantumBookStore store = countingStore().build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 100);
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            CountDownLatch start = new CountDownLatch(1);
+            try {
+                List<Future<PurchaseResult>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        return store.buyBook("req-1", "978-1", 1, "a@d.com", "Addr");
+                    }));
+                }
+                start.countDown();
+                PurchaseResult first = futures.get(0).get(30, TimeUnit.SECONDS);
+                for (Future<PurchaseResult> f : futures) {
+                    assertSame(first, f.get(30, TimeUnit.SECONDS));
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(99, ((PaperBook) store.getBook("978-1")).getStock());
+            assertEquals(1, shipments.get());
+        }
+
+        @Test @DisplayName("A retried checkout returns the original result")
+        void testCheckoutRetry() {
+            QuantumBookStore store = countingStore().build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 5);
+            store.addBook("paper", "978-2", "Refactoring", 2018, 20.00, 5);
+            Cart cart = new Cart("a@d.com", "Addr").add("978-1", 1).add("978-2", 2);
+
+            CheckoutResult first = store.checkout("order-1", cart);
+            assertTrue(first.isSuccessful());
+            assertSame(first, store.checkout("order-1", cart));
+            assertEquals(3, ((PaperBook) store.getBook("978-2")).getStock());
+            assertEquals(2, shipments.get());
+        }
+
+        @Test @DisplayName("Keys expire after the window and stay bounded in number")
+        void testExpiryAndBound() throws Exception {
+            QuantumBookStore store = countingStore().idempotency(20, TimeUnit.MILLISECONDS, 100).build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 10_000);
+
+            PurchaseResult first = store.buyBook("req-1", "978-1", 1, "a@d.com", "Addr");
+            Thread.sleep(40);
+            assertNotSame(first, store.buyBook("req-1", "978-1", 1, "a@d.com", "Addr"));
+            assertEquals(9_998, ((PaperBook) store.getBook("978-1")).getStock());
+
+            for (int i = 0; i < 5_000; i++) {
+                store.buyBook("bulk-" + i, "978-1", 1, "a@d.com", "Addr");
+            }
+            assertTrue(store.getIdempotencyKeyCount() <= 102, "keys: " + store.getIdempotencyKeyCount());
+        }
+
+        @Test @DisplayName("Keys stay bounded in number under concurrent requests")
+        void testBoundUnderConcurrency() throws Exception {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off())
+                    .idempotency(1, TimeUnit.HOURS, 1_000).build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 1_000_000);
+            int threads = 16;
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int t = 0; t < threads; t++) {
+                    int thread = t;
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 20_000; i++) {
+                            store.buyBook("req-" + thread + "-" + i, "978-1", 1, "a@d.com", "Addr");
+                        }
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> f : futures) {
+                    f.get(60, TimeUnit.SECONDS);
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertTrue(store.getIdempotencyKeyCount() <= 1_000 + threads, "keys: " + store.getIdempotencyKeyCount());
+        }
+
+        @Test @DisplayName("Transient admission rejections are not replayed")
+        void testRejectionsNotRemembered() throws Exception {
+            QuantumBookStore store = countingStore()
+                    .admission(AdmissionControl.builder().perEmail(100, 1).build()).build();
+            store.addBook("paper", "978-1", "Clean Code", 2008, 10.00, 5);
+
+            assertTrue(store.buyBook("req-1", "978-1", 1, "a@d.com", "Addr").isSuccessful());
+            assertEquals(PurchaseStatus.RATE_LIMITED,
+                    store.buyBook("req-2", "978-1", 1, "a@d.com", "Addr").getStatus());
+            Thread.sleep(30);
+            assertTrue(store.buyBook("req-2", "978-1", 1, "a@d.com", "Addr").isSuccessful());
+            assertEquals(3, ((PaperBook) store.getBook("978-1")).getStock());
+        }
+    }
+
+    @Nested
+    @DisplayName("Catalog Query Tests")
+    class CatalogQueryTests {
+        @BeforeEach
+        void initInventory() {
+            bookstore.addBook("paper",   "978-1111111111", "Clean Code",          2008, 45.99, 5);
+            bookstore.addBook("paper",   "978-2222222222", "Clean Architecture",  2017, 35.00, 3);
+            bookstore.addBook("ebook",   "978-3333333333", "Code Complete",       2004, 29.99, "pdf");
+            bookstore.addBook("showcase","978-4444444444", "Refactoring",         2018, 0.00);
+        }
+
+        @Test @DisplayName("Should find books within an inclusive year range")
+        void testFindByYearRange() {
+            List<Book> found = bookstore.findByYearRange(2004, 2017);
+            assertEquals(List.of("978-3333333333", "978-1111111111", "978-2222222222"),
+                    found.stream().map(Book::getIsbn).toList());
+            assertTrue(bookstore.findByYearRange(2019, 2030).isEmpty());
+            assertTrue(bookstore.findByYearRange(2017, 2004).isEmpty());
+        }
+
+        @Test @DisplayName("Should find books within an inclusive price range")
+        void testFindByPriceRange() {
+            List<Book> found = bookstore.findByPriceRange(29.99, 35.00);
+            assertEquals(List.of("978-3333333333", "978-2222222222"),
+                    found.stream().map(Book::getIsbn).toList());
+        }
+
+        @Test @DisplayName("Should find books by type")
+        void testFindByType() {
+            assertEquals(2, bookstore.findByType(PaperBook.class).size());
+            assertEquals(1, bookstore.findByType(EBook.class).size());
+            assertEquals(1, bookstore.findByType(ShowcaseBook.class).size());
+        }
+
+        @Test @DisplayName("Should search titles by case-insensitive prefix")
+        void testSearchTitlePrefix() {
+            assertEquals(List.of("Clean Architecture", "Clean Code"),
+                    bookstore.searchTitlePrefix("clean").stream().map(Book::getTitle).toList());
+            assertEquals(1, bookstore.searchTitlePrefix("CODE").size());
+            assertTrue(bookstore.searchTitlePrefix("xyz").isEmpty());
+        }
+
+        @Test @DisplayName("Removed books disappear from every index")
+        void testRemovalUpdatesIndexes() {
+            bookstore.removeOutdatedBooks(java.time.LocalDate.now().getYear() - 2010);
+
+            assertTrue(bookstore.findByYearRange(2000, 2009).isEmpty());
+            assertEquals(1, bookstore.findByType(PaperBook.class).size());
+            assertTrue(bookstore.findByType(EBook.class).isEmpty());
+            assertEquals(1, bookstore.searchTitlePrefix("clean").size());
+            assertTrue(bookstore.findByPriceRange(29.0, 30.0).isEmpty());
+        }
+    }
+
+    @Nested
+    @DisplayName("Columnar Catalog Tests")
+    class ColumnarCatalogTests {
+        private QuantumBookStore store;
+
+        @BeforeEach
+        void initColumnarStore() {
+            store = QuantumBookStore.builder().catalog(new ColumnarCatalog(4)).build();
+            store.addBook("paper",   "9781111111111", "Clean Code",          2008, 45.99, 5);
+            store.addBook("paper",   "0012345",       "Leading Zeros",       2017, 35.00, 3);
+            store.addBook("ebook",   "978-3333333333","Code Complete",       2004, 29.99, "epub");
+            store.addBook("showcase","9784444444444", "Refactoring",         2018, 0.00);
+        }
+
+        @Test @DisplayName("Should materialize every book type with its fields")
+        void testMaterializesBooks() {
+            PaperBook paper = (PaperBook) store.getBook("9781111111111");
+            assertEquals("Clean Code", paper.getTitle());
+            assertEquals(2008, paper.getYear());
+            assertEquals(45.99, paper.getPrice(), 0.001);
+            assertEquals(5, paper.getStock());
+            assertEquals("0012345", store.getBook("0012345").getIsbn());
+            assertEquals("epub", ((EBook) store.getBook("978-3333333333")).getFiletype());
+            assertInstanceOf(ShowcaseBook.class, store.getBook("9784444444444"));
+            assertNull(store.getBook("12345"));
+        }
+
+        @Test @DisplayName("Purchases write stock straight into the column")
+        void testPurchaseUpdatesColumn() {
+            PurchaseResult result = store.buyBook("9781111111111", 2, "a@d.com", "Addr");
+
+            assertTrue(result.isSuccessful());
+            assertEquals(3, ((PaperBook) store.getBook("9781111111111")).getStock());
+            assertFalse(store.buyBook("9781111111111", 4, "a@d.com", "Addr").isSuccessful());
+        }
+
+        @Test @DisplayName("Duplicates, removal and queries behave like the default catalog")
+        void testCatalogOperations() {
+            store.addBook("paper", "9781111111111", "Duplicate", 2020, 1.0, 1);
+            assertEquals("Clean Code", store.getBook("9781111111111").getTitle());
+
+            assertEquals(List.of("978-3333333333", "9781111111111"),
+                    store.findByYearRange(2000, 2010).stream().map(Book::getIsbn).toList());
+            assertEquals(List.of("Code Complete"),
+                    store.searchTitlePrefix("co").stream().map(Book::getTitle).toList());
+            assertEquals(2, store.findByType(PaperBook.class).size());
+
+            List<Book> removed = store.removeOutdatedBooks(java.time.LocalDate.now().getYear() - 2010);
+            assertEquals(2, removed.size());
+            assertNull(store.getBook("978-3333333333"));
+            assertNull(store.getBook("9781111111111"));
+            assertNotNull(store.getBook("0012345"));
+        }
+
+        @Test @DisplayName("Concurrent purchases on the column never oversell")
+        void testConcurrentColumnPurchases() throws Exception {
+            store.addBook("paper", "9785555555555", "Hot Title", 2024, 10.0, 300);
+            ExecutorService pool = Executors.newFixedThreadPool(8);
+            try {
+                List<Future<Integer>> futures = new ArrayList<>();
+                for (int t = 0; t < 8; t++) {
+                    futures.add(pool.submit(() -> {
+                        int sold = 0;
+                        for (int i = 0; i < 100; i++) {
+                            if (store.tryBuyBook("9785555555555", 1, "a@d.com", "Addr").isSuccessful()) {
+                                sold++;
+                            }
+                        }
+                        return sold;
+                    }));
+                }
+                int sold = 0;
+                for (Future<Integer> f : futures) {
+                    sold += f.get(30, TimeUnit.SECONDS);
+                }
+                assertEquals(300, sold);
+                assertEquals(0, ((PaperBook) store.getBook("9785555555555")).getStock());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        @Test @DisplayName("Hyphenated ISBNs are packed like plain ones")
+        void testHyphenatedIsbnPacked() {
+            ColumnarCatalog catalog = new ColumnarCatalog(4);
+            catalog.add(new PaperBook("9781111111111", "Plain", 2008, 10.0, 1));
+            long footprint = catalog.footprintBytes();
+
+            catalog.add(new PaperBook("978-1-23-456789-0", "Hyphenated", 2009, 10.0, 2));
+            assertEquals(footprint, catalog.footprintBytes());
+            assertEquals("978-1-23-456789-0", catalog.get("978-1-23-456789-0").getIsbn());
+            assertNull(catalog.get("9781234567890"));
+
+            catalog.add(new PaperBook("ISBN 978", "Text", 2010, 10.0, 3));
+            assertTrue(catalog.footprintBytes() > footprint);
+            assertEquals("ISBN 978", catalog.get("ISBN 978").getIsbn());
+        }
+
+        @Test @DisplayName("Removed rows are reused, and stale views never touch the new title")
+        void testRowsReusedUnderChurn() throws Exception {
+            ColumnarCatalog catalog = new ColumnarCatalog(4);
+            for (int i = 0; i < 100; i++) {
+                catalog.add(new PaperBook("97800000000" + (10 + i), "Old " + i, 2000, 10.0, 5));
+            }
+            PaperBook stale = (PaperBook) catalog.get("9780000000010");
+            for (int i = 0; i < 100; i++) {
+                assertTrue(catalog.remove(catalog.get("97800000000" + (10 + i))));
+            }
+            long footprint = catalog.footprintBytes();
+            assertEquals(5, stale.getStock());
+
+            Thread.sleep(150);
+            for (int i = 0; i < 100; i++) {
+                catalog.add(new PaperBook("97811111111" + (10 + i), "New " + i, 2020, 10.0, 7));
+            }
+            assertEquals(footprint, catalog.footprintBytes());
+            assertEquals(100, catalog.size());
+
+            assertEquals(0, stale.getStock());
+            assertFalse(stale.tryPurchase(1));
+            stale.restock(3);
+            catalog.forEach(book -> assertEquals(7, ((PaperBook) book).getStock()));
+        }
+    }
+
+    @Nested
+    @DisplayName("Mapped Catalog Tests")
+    class MappedCatalogTests {
+        private Path file;
+
+        @BeforeEach
+        void createFile() throws Exception {
+            file = Files.createTempFile("catalog", ".qbm");
+            Files.delete(file);
+        }
+
+        @AfterEach
+        void deleteFile() throws Exception {
+            Files.deleteIfExists(file);
+        }
+
+        @Test @DisplayName("Books and sold stock survive a restart")
+        void testWarmRestart() throws Exception {
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                QuantumBookStore store = QuantumBookStore.builder().catalog(catalog).build();
+                store.addBook("paper",   "9781111111111", "Clean Code",    2008, 45.99, 5);
+                store.addBook("ebook",   "978-3333333333","Code Complete", 2004, 29.99, "epub");
+                store.addBook("showcase","9784444444444", "Refactoring",   2018, 0.00);
+                store.addBook("paper",   "9785555555555", "Gone Soon",     1990, 10.00, 1);
+                assertTrue(store.buyBook("9781111111111", 2, "a@d.com", "Addr").isSuccessful());
+                store.removeOutdatedBooks(java.time.LocalDate.now().getYear() - 2000);
+            }
+
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                QuantumBookStore store = QuantumBookStore.builder().catalog(catalog).build();
+                assertEquals(3, catalog.size());
+                PaperBook paper = (PaperBook) store.getBook("9781111111111");
+                assertEquals("Clean Code", paper.getTitle());
+                assertEquals(45.99, paper.getPrice(), 0.001);
+                assertEquals(3, paper.getStock());
+                assertEquals("epub", ((EBook) store.getBook("978-3333333333")).getFiletype());
+                assertInstanceOf(ShowcaseBook.class, store.getBook("9784444444444"));
+                assertNull(store.getBook("9785555555555"));
+
+                store.addBook("paper", "9786666666666", "Reused Slot", 2024, 5.00, 2);
+                assertEquals(List.of("Code Complete"),
+                        store.searchTitlePrefix("co").stream().map(Book::getTitle).toList());
+                assertEquals(2, store.findByType(PaperBook.class).size());
+            }
+        }
+
+        @Test @DisplayName("A record torn by a crash is discarded on open")
+        void testTornRecordDiscarded() throws Exception {
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                catalog.add(new PaperBook("9781111111111", "Clean Code", 2008, 45.99, 5));
+                catalog.add(new PaperBook("9782222222222", "Torn Title", 2010, 15.00, 1));
+            }
+            try (RandomAccessFile raw = new RandomAccessFile(file.toFile(), "rw")) {
+                raw.seek(2 * 256 + 80);
+                raw.write('X');
+            }
+
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                assertEquals(1, catalog.getDiscardedRecordCount());
+                assertTrue(catalog.contains("9781111111111"));
+                assertFalse(catalog.contains("9782222222222"));
+            }
+        }
+
+        @Test @DisplayName("Rejects books that do not fit a record and files that are not catalogs")
+        void testRejections() throws Exception {
+            try (MappedCatalog catalog = MappedCatalog.open(file)) {
+                assertThrows(IllegalArgumentException.class,
+                        () -> catalog.add(new PaperBook("1", "x".repeat(200), 2020, 1.0, 1)));
+                assertEquals(0, catalog.size());
+            }
+            Files.write(file, new byte[64]);
+            assertThrows(java.io.IOException.class, () -> MappedCatalog.open(file));
+        }
+    }
+
+    @Nested
+    @DisplayName("Journal Tests")
+    class JournalTests {
+        private Path dir;
+
+        @BeforeEach
+        void createDir() throws Exception {
+            dir = Files.createTempDirectory("journal");
+        }
+
+        @AfterEach
+        void deleteDir() throws Exception {
+            try (var files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        private QuantumBookStore journaledStore(Journal journal) {
+            return QuantumBookStore.builder().journal(journal).logger(StoreLogger.off()).build();
+        }
+
+        @Test @DisplayName("A restart replays adds, purchases, checkouts and removals")
+        void testRecoveryReplaysLog() throws Exception {
+            long lastOrder;
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                store.addBook("paper", "9781111111111", "Clean Code",    2008, 45.99, 5);
+                store.addBook("ebook", "978-3333333333","Code Complete", 2004, 29.99, "epub");
+                store.addBook("paper", "9785555555555", "Gone Soon",     1990, 10.00, 1);
+                assertTrue(store.buyBook("9781111111111", 2, "a@d.com", "Addr").isSuccessful());
+                assertFalse(store.buyBook("9781111111111", 9, "a@d.com", "Addr").isSuccessful());
+                lastOrder = store.checkout(new Cart("a@d.com", "Addr")
+                        .add("9781111111111", 1).add("978-3333333333", 1)).getOrderId();
+                store.removeOutdatedBooks(java.time.LocalDate.now().getYear() - 2000);
+            }
+
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(2, ((PaperBook) store.getBook("9781111111111")).getStock());
+                assertEquals("epub", ((EBook) store.getBook("978-3333333333")).getFiletype());
+                assertNull(store.getBook("9785555555555"));
+                assertEquals(lastOrder + 1, store.tryBuyBook("9781111111111", 1, "a@d.com", "Addr").getOrderId());
+            }
+        }
+
+        @Test @DisplayName("Books the journal cannot encode are rejected before reaching the catalog")
+        void testUnencodableBookRejected() throws Exception {
+            class Rare extends PaperBook {
+                Rare(String isbn, String title, int year, double price) {
+                    super(isbn, title, year, price, 1);
+                }
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                store.getBookTypes().register(new BookType<>("rare", Rare.class) {
+                    @Override
+                    public Rare create(String isbn, String title, int year, double price, Object... params) {
+                        return new Rare(isbn, title, year, price);
+                    }
+                });
+                store.addBook("rare", "9781111111111", "First Folio", 1623, 99.0);
+                assertNull(store.getBook("9781111111111"));
+                assertThrows(IllegalArgumentException.class, () -> store.addBooks(List.of(
+                        new PaperBook("9782222222222", "Plain", 2020, 10.0, 1),
+                        new Rare("9783333333333", "Second Folio", 1632, 99.0))));
+                assertNull(store.getBook("9782222222222"));
+                store.addBook("paper", "9782222222222", "Plain", 2020, 10.0, 1);
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(1, store.findByType(PaperBook.class).size());
+                assertNull(store.getBook("9781111111111"));
+                assertNull(store.getBook("9783333333333"));
+            }
+        }
+
+        @Test @DisplayName("Concurrent purchases share fsyncs")
+        void testGroupCommit() throws Exception {
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                store.addBook("paper", "9781111111111", "Hot Title", 2024, 10.0, 800);
+                long flushesBefore = journal.getFlushCount();
+                ExecutorService pool = Executors.newFixedThreadPool(8);
+                try {
+                    List<Future<?>> futures = new ArrayList<>();
+                    for (int t = 0; t < 8; t++) {
+                        futures.add(pool.submit(() -> {
+                            for (int i = 0; i < 100; i++) {
+                                store.tryBuyBook("9781111111111", 1, "a@d.com", "Addr");
+                            }
+                        }));
+                    }
+                    for (Future<?> f : futures) {
+                        f.get(30, TimeUnit.SECONDS);
+                    }
+                } finally {
+                    pool.shutdownNow();
+                }
+                assertEquals(0, ((PaperBook) store.getBook("9781111111111")).getStock());
+                assertTrue(journal.getFlushCount() - flushesBefore < 800);
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(0, ((PaperBook) store.getBook("9781111111111")).getStock());
+                assertEquals(800, journal.getOrderCount());
+            }
+        }
+
+        @Test @DisplayName("A torn record at the log tail is dropped on recovery")
+        void testTornTail() throws Exception {
+            try (Journal journal = Journal.open(dir)) {
+                journaledStore(journal).addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+            }
+            Path segment;
+            try (var files = Files.list(dir)) {
+                segment = files.filter(f -> f.toFile().length() > 0).findFirst().orElseThrow();
+            }
+            Files.write(segment, new byte[] {40, 0, 0, 0, 1, 2, 3}, java.nio.file.StandardOpenOption.APPEND);
+
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(5, ((PaperBook) store.getBook("9781111111111")).getStock());
+                store.buyBook("9781111111111", 1, "a@d.com", "Addr");
+            }
+            try (Journal journal = Journal.open(dir)) {
+                assertEquals(4, ((PaperBook) journaledStore(journal).getBook("9781111111111")).getStock());
+            }
+        }
+
+        @Test @DisplayName("A corrupt record before the last segment fails recovery")
+        void testCorruptSegmentFailsRecovery() throws Exception {
+            try (Journal journal = Journal.open(dir, 128, 1000)) {
+                QuantumBookStore store = journaledStore(journal);
+                for (int i = 0; i < 20; i++) {
+                    store.addBook("paper", "97800000000" + (10 + i), "Title " + i, 2020, 10.0, 3);
+                }
+            }
+            Path first;
+            try (var files = Files.list(dir)) {
+                first = files.filter(f -> f.toString().endsWith(".log")).sorted().findFirst().orElseThrow();
+            }
+            byte[] bytes = Files.readAllBytes(first);
+            bytes[20] ^= 0x7F;
+            Files.write(first, bytes);
+
+            try (Journal journal = Journal.open(dir)) {
+                assertThrows(java.io.UncheckedIOException.class, () -> journaledStore(journal));
+            }
+        }
+
+        @Test @DisplayName("Checkpoints taken during concurrent commits restore the exact catalog")
+        void testCheckpointDuringCommits() throws Exception {
+            Map<String, Integer> expected = new HashMap<>();
+            long orders;
+            try (Journal journal = Journal.open(dir, 1 << 30, 1000)) {
+                QuantumBookStore store = journaledStore(journal);
+                for (int i = 0; i < 20; i++) {
+                    store.addBook("paper", "97800000000" + (10 + i), "Title " + i, 2020, 10.0, 1000);
+                }
+                AtomicBoolean done = new AtomicBoolean();
+                AtomicInteger checkpoints = new AtomicInteger();
+                Thread checkpointer = new Thread(() -> {
+                    while (!done.get()) {
+                        try {
+                            journal.checkpoint();
+                            checkpoints.incrementAndGet();
+                        } catch (Exception e) {
+                            throw new RuntimeException(e);
+                        }
+                    }
+                });
+                checkpointer.start();
+                try {
+                    for (int i = 0; i < 400; i++) {
+                        String isbn = "97800000000" + (10 + i % 20);
+                        store.tryBuyBook(isbn, 1 + i % 3, "a@d.com", "Addr");
+                        if (i % 50 == 0) {
+                            store.adjustStockAll(Map.of(isbn, 5));
+                            store.removeBook("97800000000" + (10 + (i / 50) % 20));
+                        }
+                    }
+                } finally {
+                    done.set(true);
+                    checkpointer.join();
+                }
+                assertTrue(checkpoints.get() > 0);
+                for (int i = 0; i < 20; i++) {
+                    Book book = store.getBook("97800000000" + (10 + i));
+                    if (book != null) {
+                        expected.put(book.getIsbn(), ((PaperBook) book).getStock());
+                    }
+                }
+                orders = journal.getOrderCount();
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(expected.size(), store.findByType(PaperBook.class).size());
+                for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+                    assertEquals(entry.getValue(), ((PaperBook) store.getBook(entry.getKey())).getStock());
+                }
+                assertEquals(orders, journal.getOrderCount());
+            }
+        }
+
+        @Test @DisplayName("Open holds are released on recovery and committed holds stay sold")
+        void testHoldRecovery() throws Exception {
+            try (TimingWheel wheel = new TimingWheel(10, TimeUnit.MILLISECONDS);
+                 Journal journal = Journal.open(dir, 128, 1000)) {
+                QuantumBookStore store = QuantumBookStore.builder()
+                        .journal(journal).holdTimer(wheel).logger(StoreLogger.off()).build();
+                store.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 10);
+                long sold = store.reserve("9781111111111", 2, 1, TimeUnit.MINUTES).getToken();
+                long released = store.reserve("9781111111111", 3, 1, TimeUnit.MINUTES).getToken();
+                store.reserve("9781111111111", 1, 1, TimeUnit.MINUTES);
+                journal.checkpoint();
+                store.reserve("9781111111111", 4, 1, TimeUnit.MINUTES);
+                assertTrue(store.commit(sold, "a@d.com", "Addr").isSuccessful());
+                assertTrue(store.release(released));
+                assertEquals(3, ((PaperBook) store.getBook("9781111111111")).getStock());
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(8, ((PaperBook) store.getBook("9781111111111")).getStock());
+                assertEquals(1, journal.getOrderCount());
+            }
+        }
+
+        @Test @DisplayName("Stock adjustments replay with the change that was applied")
+        void testAdjustmentRecovery() throws Exception {
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                store.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+                store.addBook("paper", "9782222222222", "Refactoring", 1999, 39.99, 1);
+                store.restock("9781111111111", 7);
+                assertTrue(store.buyBook("9782222222222", 1, "a@d.com", "Addr").isSuccessful());
+                assertEquals(0, store.adjustStock("9782222222222", -3));
+                assertEquals(1, store.adjustStockAll(Map.of("9781111111111", -2, "978-missing", 4)));
+            }
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(10, ((PaperBook) store.getBook("9781111111111")).getStock());
+                assertEquals(0, ((PaperBook) store.getBook("9782222222222")).getStock());
+                store.restock("9782222222222", 4);
+            }
+            try (Journal journal = Journal.open(dir)) {
+                assertEquals(4, ((PaperBook) journaledStore(journal).getBook("9782222222222")).getStock());
+            }
+        }
+
+        @Test @DisplayName("Checkpoints snapshot the catalog and delete covered segments")
+        void testCheckpoint() throws Exception {
+            try (Journal journal = Journal.open(dir, 128, 1000)) {
+                QuantumBookStore store = journaledStore(journal);
+                for (int i = 0; i < 20; i++) {
+                    store.addBook("paper", "97800000000" + (10 + i), "Title " + i, 2020, 10.0, 3);
+                }
+                store.buyBook("9780000000010", 2, "a@d.com", "Addr");
+                journal.checkpoint();
+                store.buyBook("9780000000011", 1, "a@d.com", "Addr");
+            }
+            try (var files = Files.list(dir)) {
+                assertTrue(files.filter(f -> f.toString().endsWith(".log")).count() <= 2);
+            }
+
+            try (Journal journal = Journal.open(dir)) {
+                QuantumBookStore store = journaledStore(journal);
+                assertEquals(20, store.findByType(PaperBook.class).size());
+                assertEquals(1, ((PaperBook) store.getBook("9780000000010")).getStock());
+                assertEquals(2, ((PaperBook) store.getBook("9780000000011")).getStock());
+                assertEquals(2, journal.getOrderCount());
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Bulk Import/Export Tests")
+    class BulkImportExportTests {
+        private Path file;
+
+        @BeforeEach
+        void createFile() throws Exception {
+            file = Files.createTempFile("catalog", ".txt");
+        }
+
+        @AfterEach
+        void deleteFile() throws Exception {
+            Files.deleteIfExists(file);
+        }
+
+        @Test @DisplayName("CSV import skips duplicates and reports rejected rows by line")
+        void testCsvImport() throws Exception {
+            bookstore.addBook("paper", "978-0", "Already Here", 2020, 5.0, 1);
+            Files.write(file, List.of(
+                    "type,isbn,title,year,price,extra",
+                    "paper,978-1,\"Code, \"\"Clean\"\" Edition\",2008,45.99,5",
+                    "ebook,978-2,Design Patterns,1994,29.99,epub",
+                    "showcase,978-3,Demo,2024,0",
+                    "paper,978-1,Second Copy,2010,1.00,1",
+                    "paper,978-0,Already Here,2020,5.0,1",
+                    "",
+                    "poster,978-4,Not A Book,2020,1.00,",
+                    "paper,978-5,Bad Year,soon,1.00,1"));
+
+            BulkReport report = new CatalogImporter(3, 2).importInto(file, CatalogFormat.CSV, bookstore);
+
+            assertEquals(7, report.getRows());
+            assertEquals(3, report.getAccepted());
+            assertEquals(2, report.getDuplicates());
+            assertEquals(2, report.getRejected());
+            assertEquals(List.of("line 8: Invalid book type: poster", "line 9: Invalid year: soon"), report.getErrors());
+            assertEquals("Code, \"Clean\" Edition", bookstore.getBook("978-1").getTitle());
+            assertEquals(5, ((PaperBook) bookstore.getBook("978-1")).getStock());
+            assertEquals("epub", ((EBook) bookstore.getBook("978-2")).getFiletype());
+            assertInstanceOf(ShowcaseBook.class, bookstore.getBook("978-3"));
+            assertTrue(report.getRowsPerSecond() > 0);
+        }
+
+        @Test @DisplayName("A store failure ends the import without leaving the reader blocked")
+        void testImportStoreFailure() throws Exception {
+            List<String> rows = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                rows.add("paper,978-" + i + ",Title " + i + ",2020,1.00,1");
+            }
+            Files.write(file, rows);
+            QuantumBookStore failing = QuantumBookStore.builder().logger(StoreLogger.off())
+                    .catalog(new HashMapCatalog() {
+                        @Override
+                        public boolean add(Book book) {
+                            throw new IllegalStateException("disk full");
+                        }
+                    })
+                    .build();
+
+            assertThrows(IllegalStateException.class,
+                    () -> new CatalogImporter(1, 1).importInto(file, CatalogFormat.CSV, failing));
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (readerThreadAlive() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            assertFalse(readerThreadAlive());
+        }
+
+        private boolean readerThreadAlive() {
+            return Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(thread -> thread.getName().equals("catalog-reader") && thread.isAlive());
+        }
+
+        @Test @DisplayName("Export then import round-trips every format")
+        void testRoundTrip() throws Exception {
+            bookstore.addBook("paper",   "978-1", "Quotes \"and\", commas", 2008, 45.99, 5);
+            bookstore.addBook("ebook",   "978-2", "Design Patterns", 1994, 29.99, "epub");
+            bookstore.addBook("showcase","978-3", "Demo", 2024, 0.00);
+
+            for (CatalogFormat format : CatalogFormat.values()) {
+                BulkReport exported = new CatalogExporter().export(bookstore, file, format);
+                assertEquals(3, exported.getRows());
+
+                QuantumBookStore copy = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+                BulkReport imported = new CatalogImporter().importInto(file, format, copy);
+                assertEquals(3, imported.getAccepted(), format.name());
+                assertEquals("Quotes \"and\", commas", copy.getBook("978-1").getTitle());
+                assertEquals(5, ((PaperBook) copy.getBook("978-1")).getStock());
+                assertEquals(29.99, copy.getBook("978-2").getPrice(), 0.001);
+                assertEquals("epub", ((EBook) copy.getBook("978-2")).getFiletype());
+                assertInstanceOf(ShowcaseBook.class, copy.getBook("978-3"));
+            }
+        }
+
+        @Test @DisplayName("JSON lines reject malformed objects")
+        void testJsonLinesRejects() throws Exception {
+            Files.write(file, List.of(
+                    "{\"type\":\"paper\",\"isbn\":\"978-1\",\"title\":\"Caf\\u00e9\",\"year\":2020,\"price\":3.5,\"stock\":2}",
+                    "{\"type\":\"paper\",\"isbn\":\"978-2\"",
+                    "{\"type\":\"ebook\",\"isbn\":\"978-3\",\"title\":\"No Price\",\"year\":2020}"));
+
+            BulkReport report = new CatalogImporter(2, 1).importInto(file, CatalogFormat.JSON_LINES, bookstore);
+
+            assertEquals(1, report.getAccepted());
+            assertEquals(2, report.getRejected());
+            assertEquals("Caf\u00e9", bookstore.getBook("978-1").getTitle());
+        }
+    }
+
+    @Nested
+    @DisplayName("Inventory Listing Tests")
+    class InventoryListingTests {
+        private List<Book> listAll(QuantumBookStore store, int pageSize) {
+            List<Book> listed = new ArrayList<>();
+            String token = null;
+            do {
+                InventoryPage page = store.listInventory(token, pageSize);
+                assertTrue(page.getBooks().size() <= pageSize);
+                listed.addAll(page.getBooks());
+                token = page.getNextPageToken();
+            } while (token != null);
+            return listed;
+        }
+
+        private void fill(QuantumBookStore store) {
+            for (int i = 0; i < 250; i++) {
+                store.addBook("paper", "97800000" + (10000 + i * 7 % 250), "Title " + i, 2000 + i % 9, 1.0 + i, i);
+            }
+        }
+
+        @Test @DisplayName("Pages cover the catalog once, in year then ISBN order, on every backend")
+        void testStablePaging() {
+            QuantumBookStore hashed = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            QuantumBookStore columnar = QuantumBookStore.builder()
+                    .catalog(new ColumnarCatalog(4)).logger(StoreLogger.off()).build();
+            fill(hashed);
+            fill(columnar);
+            List<Book> listed = listAll(hashed, 32);
+            assertEquals(250, listed.size());
+            for (int i = 1; i < listed.size(); i++) {
+                Book previous = listed.get(i - 1);
+                Book book = listed.get(i);
+                assertTrue(previous.getYear() < book.getYear() || previous.getYear() == book.getYear()
+                        && previous.getIsbn().compareTo(book.getIsbn()) < 0);
+            }
+            assertEquals(listed.stream().map(Book::getIsbn).toList(),
+                    listAll(columnar, 17).stream().map(Book::getIsbn).toList());
+            assertFalse(hashed.listInventory(null, 250).hasNext());
+        }
+
+        @Test @DisplayName("A page token survives changes made between pages")
+        void testTokenSurvivesChanges() {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            fill(store);
+            InventoryPage first = store.listInventory(null, 100);
+            Book last = first.getBooks().get(99);
+            store.removeBook(last.getIsbn());
+            store.addBook("paper", "978-early", "Early", 1990, 1.0, 1);
+            store.addBook("paper", "978-late", "Late", 2030, 1.0, 1);
+
+            List<Book> rest = new ArrayList<>();
+            String token = first.getNextPageToken();
+            while (token != null) {
+                InventoryPage page = store.listInventory(token, 100);
+                rest.addAll(page.getBooks());
+                token = page.getNextPageToken();
+            }
+            assertEquals(151, rest.size());
+            assertEquals("978-late", rest.get(rest.size() - 1).getIsbn());
+            assertTrue(rest.stream().noneMatch(book -> first.getBooks().contains(book)));
+        }
+
+        @Test @DisplayName("Malformed tokens and page sizes are rejected")
+        void testInvalidArguments() {
+            assertThrows(IllegalArgumentException.class, () -> bookstore.listInventory(null, 0));
+            assertThrows(IllegalArgumentException.class, () -> bookstore.listInventory("not*base64", 10));
+            assertThrows(IllegalArgumentException.class, () -> bookstore.listInventory("AAA", 10));
+        }
+
+        @Test @DisplayName("The encoder writes only the projected fields, escaped UTF-8")
+        void testProjection() {
+            ListingEncoder encoder = new ListingEncoder(EnumSet.of(BookField.STOCK, BookField.ISBN, BookField.TITLE));
+            ByteBuffer out = ByteBuffer.allocate(256);
+            assertTrue(encoder.encode(new PaperBook("978-1", "Caf\u00e9 \"Noir\"\t\ud83d\udcda", 2020, 9.5, 3), out));
+            assertTrue(encoder.encode(new EBook("978-2", "Byte", 2021, 4.0, "pdf"), out));
+            assertEquals("{\"isbn\":\"978-1\",\"title\":\"Caf\u00e9 \\\"Noir\\\"\\u0009\ud83d\udcda\",\"stock\":3}\n"
+                            + "{\"isbn\":\"978-2\",\"title\":\"Byte\"}\n",
+                    new String(out.array(), 0, out.position(), java.nio.charset.StandardCharsets.UTF_8));
+
+            ListingEncoder full = new ListingEncoder(EnumSet.allOf(BookField.class));
+            out.clear();
+            assertTrue(full.encode(new ShowcaseBook("978-3", "Demo", 1999, 12.05), out));
+            assertEquals("{\"type\":\"showcase\",\"isbn\":\"978-3\",\"title\":\"Demo\",\"year\":1999,\"price\":12.05}\n",
+                    new String(out.array(), 0, out.position(), java.nio.charset.StandardCharsets.UTF_8));
+
+            ByteBuffer tiny = ByteBuffer.allocate(8);
+            tiny.put((byte) 'x');
+            assertFalse(full.encode(new ShowcaseBook("978-3", "Demo", 1999, 12.05), tiny));
+            assertEquals(1, tiny.position());
+        }
+
+        @Test @DisplayName("Writing a whole catalog streams it page by page")
+        void testWriteAll() throws Exception {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            for (int i = 0; i < 3000; i++) {
+                store.addBook("paper", "97800000" + (10000 + i), "A fairly long title for book number " + i, 2000, 1.0, 1);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            long written = new ListingEncoder(EnumSet.of(BookField.ISBN, BookField.TITLE)).writeAll(store, 500, out);
+            assertEquals(3000, written);
+            String[] lines = out.toString(java.nio.charset.StandardCharsets.UTF_8).split("\n");
+            assertEquals(3000, lines.length);
+            assertEquals("{\"isbn\":\"9780000010000\",\"title\":\"A fairly long title for book number 0\"}", lines[0]);
+        }
+    }
+
+    @Nested
+    @DisplayName("Caching Catalog Tests")
+    class CachingCatalogTests {
+        private Path dir;
+
+        @BeforeEach
+        void createDir() throws Exception {
+            dir = Files.createTempDirectory("source");
+        }
+
+        @AfterEach
+        void deleteDir() throws Exception {
+            try (var files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        @Test @DisplayName("A stampede on one ISBN triggers a single load")
+        void testSingleFlight() throws Exception {
+            FileCatalogSource source = new FileCatalogSource(dir, 50, TimeUnit.MILLISECONDS);
+            source.save(new PaperBook("9781111111111", "Hot Title", 2024, 10.0, 5));
+            CachingCatalog cache = new CachingCatalog(source, 100, 0, TimeUnit.SECONDS);
+            ExecutorService pool = Executors.newFixedThreadPool(16);
+            try {
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<Book>> futures = new ArrayList<>();
+                for (int t = 0; t < 16; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        return cache.get("9781111111111");
+                    }));
+                }
+                start.countDown();
+                for (Future<Book> f : futures) {
+                    assertEquals("Hot Title", f.get(30, TimeUnit.SECONDS).getTitle());
+                }
+            } finally {
+                pool.shutdownNow();
+            }
+            assertEquals(1, source.getLoadCount());
+            assertEquals(1, cache.getMissCount());
+            assertEquals(15, cache.getHitCount());
+        }
+
+        @Test @DisplayName("Frequently read titles survive a scan of one-off reads")
+        void testAdmissionKeepsHotTitles() throws Exception {
+            FileCatalogSource source = new FileCatalogSource(dir);
+            for (int i = 0; i < 60; i++) {
+                source.save(new EBook("isbn-" + i, "Title " + i, 2020, 5.0, "pdf"));
+            }
+            CachingCatalog cache = new CachingCatalog(source, 10, 0, TimeUnit.SECONDS);
+            for (int round = 0; round < 5; round++) {
+                for (int i = 0; i < 5; i++) {
+                    cache.get("isbn-" + i);
+                }
+            }
+            for (int i = 10; i < 60; i++) {
+                cache.get("isbn-" + i);
+            }
+            long missesBefore = cache.getMissCount();
+            for (int i = 0; i < 5; i++) {
+                cache.get("isbn-" + i);
+            }
+
+            assertEquals(missesBefore, cache.getMissCount());
+            assertTrue(cache.getCachedCount() <= 10);
+            assertTrue(cache.getEvictionCount() > 0);
+        }
+
+        @Test @DisplayName("Reading stock from a scan neither loads titles nor fills the cache")
+        void testScanStockDoesNotLoad() throws Exception {
+            FileCatalogSource source = new FileCatalogSource(dir);
+            for (int i = 0; i < 20; i++) {
+                source.save(new PaperBook("isbn-" + i, "Title " + i, 2020, 5.0, i));
+            }
+            CachingCatalog cache = new CachingCatalog(source, 10, 0, TimeUnit.SECONDS);
+            long loadsBefore = source.getLoadCount();
+
+            AtomicInteger stock = new AtomicInteger();
+            cache.forEach(book -> stock.addAndGet(((PaperBook) book).getStock()));
+
+            assertEquals(190, stock.get());
+            assertEquals(0, cache.getMissCount());
+            assertEquals(loadsBefore, source.getLoadCount());
+            assertEquals(0, cache.getCachedCount());
+        }
+
+        @Test @DisplayName("Stock sold through the cache is written back, even via stale references")
+        void testWriteBack() throws Exception {
+            FileCatalogSource source = new FileCatalogSource(dir);
+            CachingCatalog cache = new CachingCatalog(source, 2, 0, TimeUnit.SECONDS);
+            QuantumBookStore store = QuantumBookStore.builder().catalog(cache).logger(StoreLogger.off()).build();
+            store.addBook("paper", "9781111111111", "Clean Code", 2008, 45.99, 5);
+            store.addBook("ebook", "978-2", "Filler A", 2008, 1.0, "pdf");
+            store.addBook("ebook", "978-3", "Filler B", 2008, 1.0, "pdf");
+
+            PaperBook stale = (PaperBook) store.getBook("9781111111111");
+            assertTrue(store.buyBook("9781111111111", 2, "a@d.com", "Addr").isSuccessful());
+            for (int i = 0; i < 5; i++) {
+                store.getBook("978-2");
+            }
+            store.getBook("978-3");
+            assertEquals(1, cache.getEvictionCount());
+            assertEquals(3, ((PaperBook) source.load("9781111111111")).getStock());
+            assertTrue(stale.tryPurchase(1));
+            cache.flush();
+
+            assertEquals(2, ((PaperBook) source.load("9781111111111")).getStock());
+            assertEquals(2, store.findByType(PaperBook.class).get(0).getStock());
+            assertFalse(store.buyBook("9781111111111", 3, "a@d.com", "Addr").isSuccessful());
+        }
+
+        @Test @DisplayName("Entries expire after their TTL and removals reach the source")
+        void testTtlAndRemoval() throws Exception {
+            FileCatalogSource source = new FileCatalogSource(dir);
+            CachingCatalog cache = new CachingCatalog(source, 10, 50, TimeUnit.MILLISECONDS);
+            QuantumBookStore store = QuantumBookStore.builder().catalog(cache).logger(StoreLogger.off()).build();
+            store.addBook("paper", "9781111111111", "Old Title", 1990, 10.0, 1);
+            store.getBook("9781111111111");
+            store.getBook("9781111111111");
+            assertEquals(1, cache.getMissCount());
+
+            Thread.sleep(80);
+            store.getBook("9781111111111");
+            assertEquals(2, cache.getMissCount());
+
+            assertEquals(1, store.removeOutdatedBooks(java.time.LocalDate.now().getYear() - 2000).size());
+            assertNull(store.getBook("9781111111111"));
+            assertEquals(0, source.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("Metrics Tests")
+    class MetricsTests {
+        private MetricsRegistry registry;
+        private QuantumBookStore store;
+
+        @BeforeEach
+        void initMeteredStore() {
+            registry = new MetricsRegistry();
+            store = QuantumBookStore.builder().metrics(registry).logger(StoreLogger.off()).build();
+            store.addBook("paper",   "978-1", "Clean Code",      2008, 45.99, 5);
+            store.addBook("ebook",   "978-2", "Design Patterns", 1994, 29.99, "epub");
+            store.addBook("showcase","978-3", "Demo",            2024, 0.00);
+        }
+
+        @Test @DisplayName("Counts purchases by type, failures by reason, revenue and gauges")
+        void testCountersAndGauges() {
+            store.buyBook("978-1", 2, "a@d.com", "Addr");
+            store.buyBook("978-2", 1, "a@d.com", "Addr");
+            store.buyBook("978-1", 9, "a@d.com", "Addr");
+            store.buyBook("978-3", 1, "a@d.com", "Addr");
+            store.buyBook("978-9", 1, "a@d.com", "Addr");
+            store.checkout(new Cart("a@d.com", "Addr").add("978-1", 1).add("978-2", 2));
+
+            Map<String, Double> metrics = registry.snapshot();
+            assertEquals(2.0, metrics.get("bookstore_purchases_total{type=\"PaperBook\"}"));
+            assertEquals(3.0, metrics.get("bookstore_copies_sold_total{type=\"PaperBook\"}"));
+            assertEquals(3.0, metrics.get("bookstore_copies_sold_total{type=\"EBook\"}"));
+            assertEquals(1.0, metrics.get("bookstore_purchase_failures_total{reason=\"insufficient_stock\"}"));
+            assertEquals(1.0, metrics.get("bookstore_purchase_failures_total{reason=\"not_purchasable\"}"));
+            assertEquals(1.0, metrics.get("bookstore_purchase_failures_total{reason=\"book_not_found\"}"));
+            assertEquals(3 * 45.99 + 3 * 29.99, metrics.get("bookstore_revenue_total"), 0.001);
+            assertEquals(3.0, metrics.get("bookstore_catalog_size"));
+            assertEquals(2.0, metrics.get("bookstore_stock_total"));
+            assertEquals(5.0, metrics.get("bookstore_operation_duration_seconds_count{operation=\"buy_book\"}"));
+            assertEquals(3.0, metrics.get("bookstore_operation_duration_seconds_count{operation=\"add_book\"}"));
+            assertEquals(2.0, metrics.get("bookstore_delivery_duration_seconds_count{service=\"shipping\"}"));
+            assertEquals(2.0, metrics.get("bookstore_delivery_duration_seconds_count{service=\"mail\"}"));
+        }
+
+        @Test @DisplayName("Exports Prometheus text to a file and over HTTP")
+        void testPrometheusExport() throws Exception {
+            store.buyBook("978-1", 1, "a@d.com", "Addr");
+            Path file = Files.createTempFile("metrics", ".prom");
+            try {
+                registry.exportTo(file);
+                String text = Files.readString(file);
+                assertTrue(text.contains("# TYPE bookstore_purchases_total counter\n"));
+                assertTrue(text.contains("bookstore_purchases_total{type=\"PaperBook\"} 1\n"));
+                assertTrue(text.contains("# TYPE bookstore_operation_duration_seconds summary\n"));
+                assertTrue(text.contains("bookstore_operation_duration_seconds{operation=\"buy_book\",quantile=\"0.99\"} "));
+            } finally {
+                Files.deleteIfExists(file);
+            }
+
+            com.sun.net.httpserver.HttpServer server = registry.serve(new java.net.InetSocketAddress("127.0.0.1", 0));
+            try {
+                java.net.URL url = new java.net.URL("http://127.0.0.1:" + server.getAddress().getPort() + "/metrics");
+                try (var in = url.openStream()) {
+                    String body = new String(in.readAllBytes(), java.nio.charset.StandardCharsets.UTF_8);
+                    assertTrue(body.contains("bookstore_catalog_size 3\n"));
+                }
+            } finally {
+                server.stop(0);
+            }
+        }
+
+        @Test @DisplayName("Histogram percentiles stay within a few percent")
+        void testHistogramAccuracy() {
+            LatencyHistogram histogram = registry.histogram("test_latency_seconds", "test");
+            for (long micros = 1; micros <= 100_000; micros++) {
+                histogram.record(micros * 1_000);
+            }
+            assertEquals(100_000, histogram.count());
+            assertEquals(50_000_000, histogram.percentileNanos(0.5), 50_000_000 * 0.04);
+            assertEquals(99_000_000, histogram.percentileNanos(0.99), 99_000_000 * 0.04);
+            assertEquals(100_000_000, histogram.percentileNanos(1.0));
+            assertEquals(0, registry.histogram("test_empty_seconds", "test").percentileNanos(0.5));
+        }
+    }
+
+    @Nested
+    @DisplayName("Sharded Store Tests")
+    class ShardedStoreTests {
+        private final List<QuantumBookStore> stores = new ArrayList<>();
+        private ShardedBookStore cluster;
+
+        @BeforeEach
+        void initCluster() {
+            cluster = new ShardedBookStore(List.of(localShard(), localShard(), localShard()));
+            for (int i = 0; i < 60; i++) {
+                cluster.addBook("paper", "978-" + i, "Book " + i, 1990 + i % 30, 10.0, 5);
+            }
+        }
+
+        @AfterEach
+        void closeCluster() throws Exception {
+            cluster.close();
+        }
+
+        private LocalShard localShard() {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            stores.add(store);
+            return new LocalShard(store);
+        }
+
+        private int totalBooks() {
+            int[] count = {0};
+            stores.forEach(store -> store.forEachBook(book -> count[0]++));
+            return count[0];
+        }
+
+        @Test @DisplayName("Routes each ISBN to exactly one shard")
+        void testRouting() {
+            assertEquals(60, totalBooks());
+            for (int i = 0; i < 60; i++) {
+                String isbn = "978-" + i;
+                assertEquals("Book " + i, cluster.getBook(isbn).getTitle());
+                QuantumBookStore owner = ((LocalShard) cluster.shardFor(isbn)).getStore();
+                assertEquals(1, stores.stream().filter(store -> store.getBook(isbn) != null).count());
+                assertNotNull(owner.getBook(isbn));
+            }
+            assertTrue(stores.stream().allMatch(store -> store.findByType(PaperBook.class).size() > 5));
+
+            cluster.addBook("paper", "978-0", "Again", 2000, 1.0, 1);
+            assertTrue(outputStream.toString().contains("Duplicate ISBN"));
+        }
+
+        @Test @DisplayName("Purchases go to the owning shard and order ids route back")
+        void testPurchaseRouting() {
+            PurchaseResult first = cluster.buyBook("978-7", 2, "a@d.com", "Addr");
+            PurchaseResult second = cluster.tryBuyBook("978-8", 1, "a@d.com", "Addr");
+            assertTrue(first.isSuccessful());
+            assertTrue(second.isSuccessful());
+            assertEquals(3, ((PaperBook) cluster.getBook("978-7")).getStock());
+            assertNotEquals(first.getOrderId(), second.getOrderId());
+            assertEquals(FulfilmentStatus.DELIVERED, cluster.getFulfilmentStatus(first.getOrderId()));
+            assertEquals(FulfilmentStatus.DELIVERED, cluster.getFulfilmentStatus(second.getOrderId()));
+            assertEquals(PurchaseStatus.INSUFFICIENT_STOCK, cluster.tryBuyBook("978-7", 9, "a@d.com", "Addr").getStatus());
+            assertEquals(PurchaseStatus.BOOK_NOT_FOUND, cluster.buyBook("978-x", 1, "a@d.com", "Addr").getStatus());
+        }
+
+        @Test @DisplayName("Fans out removals and inventory listings across shards")
+        void testFanOut() {
+            int cutoff = java.time.LocalDate.now().getYear() - 30;
+            long expected = java.util.stream.IntStream.range(0, 60).filter(i -> 1990 + i % 30 < cutoff).count();
+            assertEquals(expected, cluster.removeOutdatedBooks(30).size());
+            assertEquals(60 - expected, totalBooks());
+
+            outputStream.reset();
+            cluster.displayInventory();
+            String[] lines = outputStream.toString().split("\\R");
+            assertEquals("Quantum book store: Current Inventory:", lines[0]);
+            assertEquals(60 - expected, lines.length - 1);
+            assertTrue(lines[1].contains("978-"));
+        }
+
+        @Test @DisplayName("Adding a shard moves only the ISBNs it now owns, keeping their stock")
+        void testRebalance() {
+            cluster.buyBook("978-11", 3, "a@d.com", "Addr");
+            int moved = cluster.addShard(localShard());
+            QuantumBookStore added = stores.get(3);
+            int[] onNewShard = {0};
+            added.forEachBook(book -> onNewShard[0]++);
+
+            assertEquals(4, cluster.getShardCount());
+            assertEquals(moved, onNewShard[0]);
+            assertTrue(moved > 0 && moved < 40, "moved " + moved);
+            assertEquals(60, totalBooks());
+            for (int i = 0; i < 60; i++) {
+                assertNotNull(cluster.getBook("978-" + i));
+            }
+            assertEquals(2, ((PaperBook) cluster.getBook("978-11")).getStock());
+        }
+
+        @Test @DisplayName("Concurrent purchases during a rebalance never oversell")
+        void testRebalanceUnderLoad() throws Exception {
+            ExecutorService buyers = Executors.newFixedThreadPool(4);
+            AtomicInteger sold = new AtomicInteger();
+            CountDownLatch started = new CountDownLatch(4);
+            List<Future<?>> running = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                running.add(buyers.submit(() -> {
+                    started.countDown();
+                    for (int round = 0; round < 5; round++) {
+                        for (int i = 0; i < 60; i++) {
+                            if (cluster.tryBuyBook("978-" + i, 1, "a@d.com", "Addr").isSuccessful()) {
+                                sold.incrementAndGet();
+                            }
+                        }
+                    }
+                }));
+            }
+            started.await();
+            cluster.addShard(localShard());
+            cluster.addShard(localShard());
+            for (Future<?> buyer : running) {
+                buyer.get(30, TimeUnit.SECONDS);
+            }
+            buyers.shutdown();
+
+            int[] remaining = {0};
+            stores.forEach(store -> store.forEachBook(book -> remaining[0] += ((PaperBook) book).getStock()));
+            assertEquals(60 * 5, sold.get() + remaining[0]);
+            assertEquals(60, totalBooks());
+        }
+
+        @Test @DisplayName("Serves and rebalances onto shards in another process over sockets")
+        void testRemoteShards() throws Exception {
+            QuantumBookStore remoteStore = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            try (ShardServer server = new ShardServer(remoteStore, new java.net.InetSocketAddress("127.0.0.1", 0))) {
+                stores.add(remoteStore);
+                int moved = cluster.addShard(new RemoteShard(new java.net.InetSocketAddress("127.0.0.1", server.getPort())));
+                int[] onRemote = {0};
+                remoteStore.forEachBook(book -> onRemote[0]++);
+                assertEquals(moved, onRemote[0]);
+                assertEquals(60, totalBooks());
+
+                String remoteIsbn = java.util.stream.IntStream.range(0, 60).mapToObj(i -> "978-" + i)
+                        .filter(isbn -> remoteStore.getBook(isbn) != null).findFirst().orElseThrow();
+                PurchaseResult result = cluster.buyBook(remoteIsbn, 2, "a@d.com", "Addr");
+                assertTrue(result.isSuccessful(), result.getMessage());
+                assertEquals(3, ((PaperBook) remoteStore.getBook(remoteIsbn)).getStock());
+                assertEquals(3, ((PaperBook) cluster.getBook(remoteIsbn)).getStock());
+                assertEquals(FulfilmentStatus.DELIVERED, cluster.getFulfilmentStatus(result.getOrderId()));
+                assertSame(PurchaseStatus.INSUFFICIENT_STOCK.failure(),
+                        cluster.tryBuyBook(remoteIsbn, 9, "a@d.com", "Addr"));
+                assertTrue(cluster.buyBook(remoteIsbn, 9, "a@d.com", "Addr").getMessage().contains("Insufficient Stock"));
+                assertEquals(60, cluster.removeOutdatedBooks(0).size() + totalBooks());
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Edge Cases and Integration Tests")
+    class EdgeCasesAndIntegrationTests {
+        @Test
+        @DisplayName("Should reject zero quantity purchase")
+        void testZeroQuantityPurchase() {
+            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            PurchaseResult r = bookstore.buyBook("978-1234567890", 0, "x@d.com", "Addr");
+
+            assertFalse(r.isSuccessful());
+            assertEquals(0.0, r.getPaidAmount(), 0.01);
+            assertTrue(r.getMessage().toLowerCase().contains("invalid purchase quantity"));
+            assertEquals(10, ((PaperBook)bookstore.getBook("978-1234567890")).getStock());
+        }
+
+        @Test
+        @DisplayName("Should reject negative quantity purchase")
+        void testNegativeQuantityPurchase() {
+            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            PurchaseResult r = bookstore.buyBook("978-1234567890", -5, "x@d.com", "Addr");
+
+            assertFalse(r.isSuccessful());
+            assertEquals(0.0, r.getPaidAmount(), 0.01);
+            assertTrue(r.getMessage().toLowerCase().contains("invalid purchase quantity"));
+            assertEquals(10, ((PaperBook)bookstore.getBook("978-1234567890")).getStock());
+        }
+    }
+
+    @Nested
+    @DisplayName("Additional Edge Case Tests")
+    class AdditionalEdgeCaseTests {
+        @Test
+        @DisplayName("Purchase from empty inventory fails")
+        void testPurchaseOnEmptyInventory() {
+            PurchaseResult r = bookstore.buyBook("no-isbn", 1, "x@d.com", "Addr");
+            assertFalse(r.isSuccessful());
+            assertTrue(r.getMessage().toLowerCase().contains("book not found"));
+        }
+
+        @Test
+        @DisplayName("Removing outdated from empty inventory yields empty list")
+        void testRemoveOutdatedEmptyInventory() {
+            List<Book> removed = bookstore.removeOutdatedBooks(5);
+            assertTrue(removed.isEmpty());
+        }
+
+        @Test
+        @DisplayName("Should handle large quantity ebook purchase")
+        void testLargeQuantityEbookPurchase() {
+            bookstore.addBook("ebook", "978-9999999998", "Big Data", 2021, 9.99, "pdf");
+            PurchaseResult r = bookstore.buyBook("978-9999999998", 10000, "y@d.com", "Addr");
+            assertTrue(r.isSuccessful());
+            assertEquals(9.99 * 10000, r.getPaidAmount(), 0.01);
+        }
+
+        @Test
+        @DisplayName("Inventory stays correct after mixed operations")
+        void testInventoryIntegrity() {
+            bookstore.addBook("paper", "A", "T1", 2010, 5.0, 2);
+            bookstore.addBook("paper", "B", "T2", 2000, 5.0, 1);
+            bookstore.buyBook("A", 1, "a", "a");
+            List<Book> removed = bookstore.removeOutdatedBooks(24);
+            assertTrue(removed.stream().anyMatch(b -> b.getIsbn().equals("B")));
+            assertNull(bookstore.getBook("B"));
+            assertNotNull(bookstore.getBook("A"));
+            assertEquals(1, ((PaperBook) bookstore.getBook("A")).getStock());
+        }
+    }
+
+    @Nested
+    @DisplayName("Fast Path Purchase Tests")
+    class FastPathPurchaseTests {
+        @BeforeEach
+        void setUpBooks() {
+            bookstore.addBook("paper",   "978-1234567890", "Clean Code",           2008, 45.99, 2);
+            bookstore.addBook("showcase","978-1111111111", "New Release Preview",  2024,  0.00);
+            outputStream.reset();
+        }
+
+        @Test @DisplayName("Failures return shared results with status codes and print nothing")
+        void testFailuresAreShared() {
+            PurchaseResult notFound = bookstore.tryBuyBook("978-9999999999", 1, "a@d.com", "Addr");
+            PurchaseResult showcase = bookstore.tryBuyBook("978-1111111111", 1, "a@d.com", "Addr");
+            PurchaseResult shortStock = bookstore.tryBuyBook("978-1234567890", 3, "a@d.com", "Addr");
+            PurchaseResult badQuantity = bookstore.tryBuyBook("978-1234567890", 0, "a@d.com", "Addr");
+
+            assertSame(PurchaseStatus.BOOK_NOT_FOUND.failure(), notFound);
+            assertSame(PurchaseStatus.NOT_PURCHASABLE.failure(), showcase);
+            assertSame(PurchaseStatus.INSUFFICIENT_STOCK.failure(), shortStock);
+            assertSame(PurchaseStatus.INVALID_QUANTITY.failure(), badQuantity);
+            assertSame(shortStock, bookstore.tryBuyBook("978-1234567890", 5, "b@d.com", "Addr"));
+            assertFalse(shortStock.isSuccessful());
+            assertEquals(2, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+            assertEquals("", outputStream.toString());
+        }
+
+        @Test @DisplayName("Success formats its message only when asked")
+        void testSuccessMessageIsLazy() {
+            PurchaseResult result = bookstore.tryBuyBook("978-1234567890", 2, "a@d.com", "Addr");
+
+            assertTrue(result.isSuccessful());
+            assertEquals(PurchaseStatus.SUCCESS, result.getStatus());
+            assertEquals(45.99 * 2, result.getPaidAmount(), 0.01);
+            assertEquals("Quantum book store: Successfully purchased 2 copies of Clean Code", result.getMessage());
+            assertEquals(0, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+        }
+
+        @Test @DisplayName("buyBook wrapper keeps detailed failure messages and status")
+        void testWrapperKeepsDetails() {
+            PurchaseResult result = bookstore.buyBook("978-1234567890", 3, "a@d.com", "Addr");
+
+            assertEquals(PurchaseStatus.INSUFFICIENT_STOCK, result.getStatus());
+            assertTrue(result.getMessage().contains("3 copies were requested"));
+            assertTrue(result.getMessage().contains("only 2 copies are available"));
+            assertTrue(outputStream.toString().contains("Purchase failed"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Cart Checkout Tests")
+    class CartCheckoutTests {
+        @BeforeEach
+        void setUpBooks() {
+            bookstore.addBook("paper",   "978-1234567890", "Clean Code",           2008, 45.99, 10);
+            bookstore.addBook("paper",   "978-2222222222", "Refactoring",          2018, 40.00, 1);
+            bookstore.addBook("ebook",   "978-0987654321", "Design Patterns",      1994, 29.99, "epub");
+            bookstore.addBook("showcase","978-1111111111", "New Release Preview",  2024,  0.00);
+        }
+
+        @Test @DisplayName("Should check out a mixed cart as one order")
+        void testSuccessfulCheckout() {
+            CheckoutResult result = bookstore.checkout(new Cart("cust@domain.com", "123 Main St")
+                    .add("978-1234567890", 2)
+                    .add("978-0987654321", 1)
+                    .add("978-1234567890", 1));
+
+            assertTrue(result.isSuccessful());
+            assertEquals(45.99 * 3 + 29.99, result.getPaidAmount(), 0.01);
+            assertEquals(2, result.getLineResults().size());
+            assertEquals(45.99 * 3, result.getLineResults().get("978-1234567890").getPaidAmount(), 0.01);
+            assertEquals(7, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+
+            String output = outputStream.toString();
+            assertTrue(output.contains("Shipping Clean Code to 123 Main St"));
+            assertTrue(output.contains("Sending Design Patterns (epub) to cust@domain.com"));
+        }
+
+        @Test @DisplayName("Should roll back every reservation when one line is short")
+        void testRollbackOnInsufficientStock() {
+            CheckoutResult result = bookstore.checkout(new Cart("cust@domain.com", "123 Main St")
+                    .add("978-1234567890", 4)
+                    .add("978-2222222222", 2));
+
+            assertFalse(result.isSuccessful());
+            assertEquals(0.0, result.getPaidAmount(), 0.01);
+            assertTrue(result.getMessage().toLowerCase().contains("insufficient stock"));
+            assertFalse(result.getLineResults().get("978-2222222222").isSuccessful());
+            assertEquals(10, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+            assertEquals(1, ((PaperBook) bookstore.getBook("978-2222222222")).getStock());
+            assertFalse(outputStream.toString().contains("Shipping"));
+        }
+
+        @Test @DisplayName("Should reject the whole cart when a line is invalid")
+        void testInvalidLineRejectsCart() {
+            CheckoutResult result = bookstore.checkout(new Cart("cust@domain.com", "123 Main St")
+                    .add("978-1234567890", 1)
+                    .add("978-1111111111", 1)
+                    .add("978-9999999999", 1));
+
+            assertFalse(result.isSuccessful());
+            assertTrue(result.getLineResults().get("978-1111111111").getMessage().toLowerCase().contains("not for sale"));
+            assertTrue(result.getLineResults().get("978-9999999999").getMessage().toLowerCase().contains("book not found"));
+            assertEquals(10, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+        }
+
+        @Test @DisplayName("Should reject an empty cart")
+        void testEmptyCart() {
+            CheckoutResult result = bookstore.checkout(new Cart("cust@domain.com", "123 Main St"));
+            assertFalse(result.isSuccessful());
+            assertTrue(result.getMessage().contains("Cart is empty"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Fulfilment Pipeline Tests")
+    class FulfilmentPipelineTests {
+        private FulfilmentPipeline pipeline;
+
+        @AfterEach
+        void shutDownPipeline() throws InterruptedException {
+            if (pipeline != null) {
+                pipeline.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+
+        @Test @DisplayName("Purchase returns before a slow shipment completes")
+        void testPurchaseDoesNotWaitForShipping() throws Exception {
+            CountDownLatch release = new CountDownLatch(1);
+            pipeline = new FulfilmentPipeline(2, 16);
+            QuantumBookStore store = QuantumBookStore.builder()
+                    .shippingService(new ShippingService() {
+                        @Override
+                        public void ship(PaperBook book, String address) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                            super.ship(book, address);
+                        }
+                    })
+                    .fulfilment(pipeline)
+                    .build();
+            store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+
+            PurchaseResult result = store.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+
+            assertTrue(result.isSuccessful());
+            assertEquals(9, ((PaperBook) store.getBook("978-1234567890")).getStock());
+            assertEquals(FulfilmentStatus.PENDING, store.getFulfilmentStatus(result.getOrderId()));
+
+            release.countDown();
+            assertEquals(FulfilmentStatus.DELIVERED,
+                    store.awaitFulfilment(result.getOrderId(), 5, TimeUnit.SECONDS));
+            assertTrue(outputStream.toString().contains("Shipping Clean Code to Addr"));
+        }
+
+        @Test @DisplayName("Purchases after shutdown are turned away before any stock is sold")
+        void testPurchaseAfterShutdown() throws Exception {
+            pipeline = new FulfilmentPipeline(1, 16);
+            QuantumBookStore store = QuantumBookStore.builder().fulfilment(pipeline).logger(StoreLogger.off()).build();
+            store.addBook("paper", "978-1234567890", "Clean Code", 2008, 10.0, 5);
+            Reservation hold = store.reserve("978-1234567890", 1, 1, TimeUnit.MINUTES);
+            assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+
+            assertEquals(PurchaseStatus.SHUT_DOWN, store.buyBook("978-1234567890", 2, "a@d.com", "Addr").getStatus());
+            assertEquals(PurchaseStatus.SHUT_DOWN,
+                    store.buyBook("key-1", "978-1234567890", 2, "a@d.com", "Addr").getStatus());
+            assertEquals(PurchaseStatus.SHUT_DOWN,
+                    store.buyBook("key-1", "978-1234567890", 2, "a@d.com", "Addr").getStatus());
+            assertEquals(PurchaseStatus.SHUT_DOWN, store.commit(hold.getToken(), "a@d.com", "Addr").getStatus());
+            assertFalse(store.checkout(new Cart("a@d.com", "Addr").add("978-1234567890", 1)).isSuccessful());
+
+            assertEquals(4, ((PaperBook) store.getBook("978-1234567890")).getStock());
+            assertEquals(1, store.getHeldStock("978-1234567890"));
+            try (CatalogSnapshot snapshot = store.snapshot()) {
+                assertEquals(0.0, snapshot.getRevenue(), 1e-9);
+            }
+            assertTrue(store.release(hold.getToken()));
+            store.close();
+        }
+
+        @Test @DisplayName("Failed deliveries are retried and then reported")
+        void testRetriesThenFailure() throws Exception {
+            AtomicInteger attempts = new AtomicInteger();
+            pipeline = new FulfilmentPipeline(1, 16, 3, 1, Executors.defaultThreadFactory());
+            QuantumBookStore store = QuantumBookStore.builder()
+                    .shippingService(new ShippingService() {
+                        @Override
+                        public void ship(PaperBook book, String address) {
+                            if (attempts.incrementAndGet() < 10) {
+                                throw new IllegalStateException("carrier down");
+                            }
+                        }
+                    })
+                    .fulfilment(pipeline)
+                    .build();
+            store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+
+            PurchaseResult result = store.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+
+            assertEquals(FulfilmentStatus.FAILED,
+                    store.awaitFulfilment(result.getOrderId(), 5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+        }
+
+        @Test @DisplayName("Shutdown drains queued deliveries")
+        void testShutdownDrains() throws Exception {
+            pipeline = new FulfilmentPipeline(1, 4);
+            QuantumBookStore store = QuantumBookStore.builder().fulfilment(pipeline).build();
+            store.addBook("ebook", "978-0987654321", "Design Patterns", 1994, 29.99, "epub");
+
+            List<PurchaseResult> results = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                results.add(store.buyBook("978-0987654321", 1, "a@d.com", "Addr"));
+            }
+
+            assertTrue(pipeline.shutdown(5, TimeUnit.SECONDS));
+            assertEquals(0, pipeline.backlog());
+            for (PurchaseResult r : results) {
+                assertEquals(FulfilmentStatus.DELIVERED, store.getFulfilmentStatus(r.getOrderId()));
+            }
+        }
+
+        @Test @DisplayName("Synchronous stores report purchases as delivered")
+        void testSynchronousStatus() {
+            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            PurchaseResult result = bookstore.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+
+            assertEquals(FulfilmentStatus.DELIVERED, bookstore.getFulfilmentStatus(result.getOrderId()));
+            assertEquals(FulfilmentStatus.UNKNOWN, bookstore.getFulfilmentStatus(999));
+        }
+    }
+
+    @Nested
+    @DisplayName("Async Store Tests")
+    class AsyncStoreTests {
+        private QuantumBookStore store;
+        private AsyncBookStore async;
+
+        @BeforeEach
+        void initStore() {
+            store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            async = new AsyncBookStore(store);
+            for (int i = 0; i < 1000; i++) {
+                store.addBook("paper", "97800000" + (10000 + i), "Title " + i, 2020, 1.0, 2);
+            }
+        }
+
+        @AfterEach
+        void closeAsync() {
+            async.close();
+        }
+
+        @Test @DisplayName("Concurrent async purchases never oversell")
+        void testAsyncPurchases() {
+            List<CompletableFuture<PurchaseResult>> purchases = new ArrayList<>();
+            for (int i = 0; i < 300; i++) {
+                purchases.add(async.tryBuyBookAsync("9780000010000", 1, "a@d.com", "Addr"));
+            }
+            CompletableFuture.allOf(purchases.toArray(CompletableFuture<?>[]::new)).join();
+            assertEquals(2, purchases.stream().filter(f -> f.join().isSuccessful()).count());
+            assertEquals(0, ((PaperBook) store.getBook("9780000010000")).getStock());
+            assertFalse(async.buyBookAsync("9780000010000", 1, "a@d.com", "Addr").join().isSuccessful());
+
+            async.addBookAsync("ebook", "978-async", "Async Book", 2024, 5.0, "pdf").join();
+            assertNotNull(store.getBook("978-async"));
+        }
+
+        @Test @DisplayName("Fulfilment futures complete once deliveries finish")
+        void testFulfilmentFuture() throws Exception {
+            CountDownLatch release = new CountDownLatch(1);
+            FulfilmentPipeline pipeline = new FulfilmentPipeline(1, 16);
+            QuantumBookStore delayed = QuantumBookStore.builder()
+                    .shippingService(new ShippingService() {
+                        @Override
+                        public void ship(PaperBook book, String address) {
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    })
+                    .fulfilment(pipeline).logger(StoreLogger.off()).build();
+            delayed.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            try (AsyncBookStore facade = new AsyncBookStore(delayed)) {
+                CompletableFuture<FulfilmentStatus> delivered =
+                        facade.fulfilmentOf(facade.buyBookAsync("978-1234567890", 1, "a@d.com", "Addr"));
+                assertThrows(TimeoutException.class, () -> delivered.get(50, TimeUnit.MILLISECONDS));
+                release.countDown();
+                assertEquals(FulfilmentStatus.DELIVERED, delivered.get(5, TimeUnit.SECONDS));
+                assertEquals(FulfilmentStatus.UNKNOWN,
+                        facade.fulfilmentOf(facade.buyBookAsync("978-missing", 1, "a@d.com", "Addr")).join());
+            } finally {
+                pipeline.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+
+        @Test @DisplayName("The inventory stream only sends what the subscriber requested")
+        void testInventoryStreamBackpressure() throws Exception {
+            List<Book> received = new CopyOnWriteArrayList<>();
+            CompletableFuture<Void> completed = new CompletableFuture<>();
+            CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+            async.inventoryStream().subscribe(new Flow.Subscriber<>() {
+                @Override public void onSubscribe(Flow.Subscription subscription) { subscribed.complete(subscription); }
+                @Override public void onNext(Book book) { received.add(book); }
+                @Override public void onError(Throwable error) { completed.completeExceptionally(error); }
+                @Override public void onComplete() { completed.complete(null); }
+            });
+            Flow.Subscription subscription = subscribed.get(5, TimeUnit.SECONDS);
+            subscription.request(10);
+            Thread.sleep(100);
+            assertEquals(10, received.size());
+            assertFalse(completed.isDone());
+
+            subscription.request(Long.MAX_VALUE);
+            completed.get(5, TimeUnit.SECONDS);
+            assertEquals(1000, received.size());
+            assertEquals(1000, received.stream().map(Book::getIsbn).distinct().count());
+        }
+
+        @Test @DisplayName("Cancelling the inventory stream stops the walk")
+        void testInventoryStreamCancel() throws Exception {
+            List<Book> received = new CopyOnWriteArrayList<>();
+            CountDownLatch cancelled = new CountDownLatch(1);
+            async.inventoryStream().subscribe(new Flow.Subscriber<>() {
+                private Flow.Subscription subscription;
+                @Override public void onSubscribe(Flow.Subscription subscription) {
+                    this.subscription = subscription;
+                    subscription.request(1);
+                }
+                @Override public void onNext(Book book) {
+                    received.add(book);
+                    if (received.size() == 5) {
+                        subscription.cancel();
+                        cancelled.countDown();
+                    } else {
+                        subscription.request(1);
+                    }
+                }
+                @Override public void onError(Throwable error) { }
+                @Override public void onComplete() { }
+            });
+            assertTrue(cancelled.await(5, TimeUnit.SECONDS));
+            Thread.sleep(100);
+            assertEquals(5, received.size());
+        }
+    }
+
+    @Nested
+    @DisplayName("Batched Delivery Tests")
+    class BatchedDeliveryTests {
+        @Test @DisplayName("Shipments and emails to one destination are coalesced")
+        void testCoalescesPerDestination() {
+            FakeCarrier carrier = new FakeCarrier();
+            FakeMailTransport smtp = new FakeMailTransport();
+            try (BatchingShippingService shipping = new BatchingShippingService(carrier, 100, 1, TimeUnit.HOURS);
+                 BatchingMailService mail = new BatchingMailService(smtp, 100, 1, TimeUnit.HOURS)) {
+                QuantumBookStore store = QuantumBookStore.builder()
+                        .shippingService(shipping)
+                        .mailService(mail)
+                        .build();
+                store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 100);
+                store.addBook("ebook", "978-0987654321", "Design Patterns", 1994, 29.99, "epub");
+
+                for (int i = 0; i < 40; i++) {
+                    store.buyBook("978-1234567890", 1, "a@d.com", "Addr " + (i % 4));
+                    store.buyBook("978-0987654321", 1, "reader" + (i % 2) + "@d.com", "Addr");
+                }
+                assertEquals(0, carrier.getParcelCount());
+
+                shipping.flush();
+                mail.flush();
+            }
+
+            assertEquals(4, carrier.getParcelCount());
+            assertEquals(40, carrier.getBookCount());
+            assertEquals(2, smtp.getMessageCount());
+            assertEquals(40, smtp.getAttachmentCount());
+        }
+
+        @Test @DisplayName("Full batches flush on size and stale batches on time")
+        void testSizeAndTimeThresholds() throws Exception {
+            FakeCarrier carrier = new FakeCarrier();
+            try (BatchingShippingService shipping = new BatchingShippingService(carrier, 5, 20, TimeUnit.MILLISECONDS)) {
+                PaperBook book = new PaperBook("978-1234567890", "Clean Code", 2008, 45.99, 100);
+                for (int i = 0; i < 7; i++) {
+                    shipping.ship(book, "Addr");
+                }
+                assertEquals(1, carrier.getParcelCount());
+
+                long deadline = System.currentTimeMillis() + 5000;
+                while (carrier.getParcelCount() < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                }
+                assertEquals(2, carrier.getParcelCount());
+                assertEquals(7, carrier.getBookCount());
+            }
+        }
+
+        @Test @DisplayName("A batched order is delivered only once its parcel goes out, and refused parcels are retried")
+        void testBatchedFulfilmentTracksDispatch() throws Exception {
+            AtomicInteger dispatches = new AtomicInteger();
+            FulfilmentPipeline pipeline = new FulfilmentPipeline(1, 16, 3, 1, Executors.defaultThreadFactory());
+            try (BatchingShippingService shipping = new BatchingShippingService((address, manifest) -> {
+                if (dispatches.incrementAndGet() == 1) {
+                    throw new IllegalStateException("carrier down");
+                }
+            }, 100, 1, TimeUnit.HOURS, StoreLogger.off())) {
+                QuantumBookStore store = QuantumBookStore.builder()
+                        .shippingService(shipping)
+                        .fulfilment(pipeline)
+                        .build();
+                store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+
+                PurchaseResult result = store.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+                Thread.sleep(50);
+                assertEquals(FulfilmentStatus.PENDING, store.getFulfilmentStatus(result.getOrderId()));
+
+                shipping.flush();
+                long deadline = System.currentTimeMillis() + 5000;
+                while (dispatches.get() < 2 && System.currentTimeMillis() < deadline) {
+                    Thread.sleep(5);
+                    shipping.flush();
+                }
+                assertEquals(FulfilmentStatus.DELIVERED,
+                        store.awaitFulfilment(result.getOrderId(), 5, TimeUnit.SECONDS));
+                assertEquals(2, dispatches.get());
+            } finally {
+                pipeline.shutdown(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    @Nested
+    @DisplayName("Logging Tests")
+    class LoggingTests {
+        @Test @DisplayName("Logging can be turned off entirely")
+        void testLoggingOff() {
+            QuantumBookStore store = QuantumBookStore.builder().logger(StoreLogger.off()).build();
+            store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            store.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+            store.buyBook("978-9999999999", 1, "a@d.com", "Addr");
+            store.displayInventory();
+
+            assertEquals("", outputStream.toString());
+        }
+
+        @Test @DisplayName("Events below the threshold are not formatted")
+        void testThresholdSkipsFormatting() {
+            AtomicInteger appended = new AtomicInteger();
+            StoreLogger logger = new StoreLogger(LogLevel.WARN, (level, template, a1, a2) -> appended.incrementAndGet());
+            Object exploding = new Object() {
+                @Override
+                public String toString() {
+                    throw new AssertionError("formatted a disabled event");
+                }
+            };
+
+            logger.info("Added book - {}", exploding);
+            logger.warn("Failed {} - {}", "x", "y");
+
+            assertEquals(1, appended.get());
+        }
+
+        @Test @DisplayName("Async appender delivers every event in order on close")
+        void testAsyncAppenderDelivers() throws Exception {
+            List<String> lines = new CopyOnWriteArrayList<>();
+            LogAppender collector = (level, template, a1, a2) -> lines.add(StoreLogger.format(template, a1, a2));
+            AsyncAppender async = new AsyncAppender(collector, 1024);
+            StoreLogger logger = new StoreLogger(LogLevel.INFO, async);
+
+            for (int i = 0; i < 500; i++) {
+                logger.info("event {} of {}", i, 500);
+            }
+            async.close();
+
+            assertEquals(500, lines.size());
+            assertEquals("event 0 of 500", lines.get(0));
+            assertEquals("event 499 of 500", lines.get(499));
+            assertEquals(0, async.getDroppedCount());
+
+            logger.info("after close");
+            assertEquals(500, lines.size());
+            assertEquals(1, async.getDroppedCount());
+        }
+
+        @Test @DisplayName("Async store output keeps the console prefix")
+        void testAsyncConsoleOutput() throws Exception {
+            AsyncAppender async = new AsyncAppender(new ConsoleAppender(), 64);
+            QuantumBookStore store = QuantumBookStore.builder()
+                    .logger(new StoreLogger(LogLevel.INFO, async))
+                    .build();
+            store.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 10);
+            store.buyBook("978-1234567890", 1, "a@d.com", "Addr");
+            async.close();
+
+            String output = outputStream.toString();
+            assertTrue(output.contains("Quantum book store: Added book - ISBN: 978-1234567890"));
+            assertTrue(output.contains("Quantum book store: Shipping Clean Code to Addr"));
+            assertTrue(output.contains("Quantum book store: Successfully purchased 1 copies of Clean Code"));
+        }
+    }
+
+    @Nested
+    @DisplayName("Concurrency Tests")
+    class ConcurrencyTests {
+        private static final int THREADS = 16;
+
+        private List<PurchaseResult> hammer(int attemptsPerThread, Callable<PurchaseResult> purchase)
+                throws Exception {
+            ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<List<PurchaseResult>>> futures = new ArrayList<>();
+            try {
+                for (int t = 0; t < THREADS; t++) {
+                    futures.add(pool.submit(() -> {
+                        start.await();
+                        List<PurchaseResult> results = new ArrayList<>();
+                        for (int i = 0; i < attemptsPerThread; i++) {
+                            results.add(purchase.call());
+                        }
+                        return results;
+                    }));
+                }
+                start.countDown();
+                List<PurchaseResult> all = new ArrayList<>();
+                for (Future<List<PurchaseResult>> f : futures) {
+                    all.addAll(f.get(30, TimeUnit.SECONDS));
+                }
+                return all;
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+
+        @Test @DisplayName("Concurrent purchases of one title never oversell")
+        void testNoOversellUnderContention() throws Exception {
+            bookstore.addBook("paper", "978-1234567890", "Clean Code", 2008, 45.99, 500);
+
+            List<PurchaseResult> results = hammer(100,
+                    () -> bookstore.buyBook("978-1234567890", 1, "a@d.com", "Addr"));
+
+            long sold = results.stream().filter(PurchaseResult::isSuccessful).count();
+            assertEquals(500, sold);
+            assertEquals(0, ((PaperBook) bookstore.getBook("978-1234567890")).getStock());
+        }
+
+        @Test @DisplayName("Concurrent purchases across titles lose no stock")
+        void testNoStockLostAcrossTitles() throws Exception {
+            int titles = 8;
+            for (int i = 0; i < titles; i++) {
+                bookstore.addBook("paper", "ISBN-" + i, "Title " + i, 2020, 10.0, 1000);
+            }
+            AtomicInteger next = new AtomicInteger();
+
+            List<PurchaseResult> results = hammer(200, () ->
+                    bookstore.buyBook("ISBN-" + (next.getAndIncrement() % titles), 2, "a@d.com", "Addr"));
+
+            long sold = results.stream().filter(PurchaseResult::isSuccessful).count() * 2;
+            int remaining = 0;
+            for (int i = 0; i < titles; i++) {
+                remaining += ((PaperBook) bookstore.getBook("ISBN-" + i)).getStock();
+            }
+            assertEquals(titles * 1000, sold + remaining);
+        }
+
+        @Test @DisplayName("A split stock cell never oversells while restocked")
+        void testSplitCellNoOversell() throws Exception {
+            StripedStockCell cell = new StripedStockCell(2000);
+            cell.split();
+            PaperBook book = new PaperBook("978-9", "Launch Title", 2024, 20.0, cell);
+            bookstore.addBook(book);
+            Thread restocker = new Thread(() -> {
+                for (int i = 0; i < 100; i++) {
+                    book.restock(5);
+                }
+            });
+            restocker.start();
+
+            List<PurchaseResult> results = hammer(200,
+                    () -> bookstore.tryBuyBook("978-9", 1, "a@d.com", "Addr"));
+            restocker.join();
+
+            long sold = results.stream().filter(PurchaseResult::isSuccessful).count();
+            assertEquals(2500, sold + book.getStock());
+            assertTrue(sold >= 2000);
+        }
+
+        @Test @DisplayName("A split stock cell sells its last copies from any sub-counter")
+        void testSplitCellDrainsStripes() throws Exception {
+            StripedStockCell cell = new StripedStockCell(100);
+            cell.split();
+            Thread other = new Thread(() -> assertTrue(cell.tryTake(1)));
+            other.start();
+            other.join();
+            assertEquals(99, cell.get());
+            assertFalse(cell.tryTake(100));
+            assertTrue(cell.tryTake(99));
+            assertFalse(cell.tryTake(1));
+            cell.add(3);
+            assertEquals(3, cell.get());
+            assertTrue(cell.tryTake(3));
+            assertEquals(0, cell.get());
+        }
+
+        @Test @DisplayName("A split stock cell merges back once the title cools down")
+        void testSplitCellMerges() throws Exception {
+            StripedStockCell cell = new StripedStockCell(50);
+            cell.split();
+            assertTrue(cell.isSplit());
+            assertTrue(cell.tryTake(10));
+            for (int i = 0; i < 40 && cell.isSplit(); i++) {
+                Thread.sleep(50);
+                assertEquals(40, cell.get());
+            }
+            assertFalse(cell.isSplit());
+            assertTrue(cell.tryTake(40));
+            assertFalse(cell.tryTake(1));
+        }
+
+        @Test @DisplayName("A stock cell never fails a take it can serve while splitting and merging")
+        void testSplitCellMergeRace() throws Exception {
+            int takers = 4;
+            int perTaker = 50;
+            AtomicInteger failed = new AtomicInteger();
+            for (int round = 0; round < 300 && failed.get() == 0; round++) {
+                StripedStockCell cell = new StripedStockCell(takers * perTaker);
+                AtomicBoolean done = new AtomicBoolean();
+                Thread merger = new Thread(() -> {
+                    while (!done.get()) {
+                        cell.split();
+                        cell.merge();
+                    }
+                });
+                merger.start();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Thread> threads = new ArrayList<>();
+                for (int t = 0; t < takers; t++) {
+                    Thread taker = new Thread(() -> {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        for (int i = 0; i < perTaker; i++) {
+                            if (!cell.tryTake(1)) {
+                                failed.incrementAndGet();
+                            }
+                        }
+                    });
+                    threads.add(taker);
+                    taker.start();
+                }
+                start.countDown();
+                for (Thread taker : threads) {
+                    taker.join();
+                }
+                done.set(true);
+                merger.join();
+                assertEquals(0, cell.get());
+            }
+            assertEquals(0, failed.get());
+        }
+
+        @Test @DisplayName("Concurrent adds of the same ISBN keep exactly one book")
+        void testConcurrentDuplicateAdds() throws Exception {
+            AtomicInteger attempt = new AtomicInteger();
+            hammer(10, () -> {
+                bookstore.addBook("paper", "978-dup", "Copy " + attempt.getAndIncrement(), 2020, 10.0, 1);
+                return PurchaseResult.failure("n/a");
+            });
+
+            assertNotNull(bookstore.getBook("978-dup"));
+            long added = outputStream.toString().lines().filter(l -> l.contains("Added book")).count();
+            assertEquals(1, added);
         }
     }
 